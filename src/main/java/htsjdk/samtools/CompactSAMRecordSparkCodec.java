@@ -0,0 +1,283 @@
+package htsjdk.samtools;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.util.BinaryCodec;
+
+/**
+ * A compact alternative to {@link SAMRecordSparkCodec} for shipping headerless SAMRecords between Spark tasks.
+ *
+ * Compared to the BAM record layout, integer fields are written as variable-length ints, the mate reference name is
+ * omitted when it is the same as the read's, and the CIGAR is written as packed (length, operator) varints. Bases are
+ * packed two bits to a base, with the positions of any Ns listed separately (reads with other IUPAC codes, or with
+ * lower case bases, fall back to one byte per base). Base qualities are run-length encoded, or packed against a
+ * per-read dictionary of the distinct values present, whichever is smaller; this is very effective for binned
+ * qualities. Tags use the BAM binary encoding, which already stores each tag name in two bytes.
+ *
+ * Like {@link SAMRecordSparkCodec} this does not preserve reference indices, since they depend on having a header.
+ */
+public final class CompactSAMRecordSparkCodec {
+    private static final byte BASES_PACKED = 0;
+    private static final byte BASES_RAW = 1;
+
+    private static final byte QUALS_NONE = 0;
+    private static final byte QUALS_RAW = 1;
+    private static final byte QUALS_RUN_LENGTH = 2;
+    private static final byte QUALS_DICTIONARY = 3;
+
+    private static final int MAX_DICTIONARY_SIZE = 16;
+
+    private static final byte[] PACKED_BASES = {'A', 'C', 'G', 'T'};
+
+    /**
+     * Write a record to the given output.
+     */
+    public void encode(final SAMRecord record, final Output output) {
+        final String referenceName = record.getReferenceName();
+        final String mateReferenceName = record.getMateReferenceName();
+        output.writeVarInt(record.getFlags(), true);
+        output.writeString(referenceName);
+        // a null mate reference name means it is the same as the read's
+        output.writeString(referenceName.equals(mateReferenceName) ? null : mateReferenceName);
+        output.writeVarInt(record.getAlignmentStart(), true);
+        output.writeVarInt(record.getMateAlignmentStart(), true);
+        output.writeByte(record.getMappingQuality());
+        output.writeVarInt(record.getInferredInsertSize(), false);
+        output.writeString(record.getReadName());
+
+        final int[] binaryCigar = BinaryCigarCodec.encode(record.getCigar());
+        output.writeVarInt(binaryCigar.length, true);
+        for (final int cigarElement : binaryCigar) {
+            output.writeVarInt(cigarElement, true);
+        }
+
+        final byte[] bases = record.getReadBases();
+        output.writeVarInt(bases.length, true);
+        if (bases.length > 0) {
+            writeBases(bases, output);
+        }
+        final byte[] quals = record.getBaseQualities();
+        if (quals.length == 0) {
+            output.writeByte(QUALS_NONE);
+        } else {
+            if (quals.length != bases.length) {
+                throw new SAMException("Mismatch between read length and quals length writing read " +
+                        record.getReadName() + "; read length: " + bases.length + "; quals length: " + quals.length);
+            }
+            writeQuals(quals, output);
+        }
+
+        int attributesSize = 0;
+        for (SAMBinaryTagAndValue attribute = record.getBinaryAttributes(); attribute != null; attribute = attribute.getNext()) {
+            attributesSize += BinaryTagCodec.getTagSize(attribute.value);
+        }
+        output.writeVarInt(attributesSize, true);
+        if (attributesSize > 0) {
+            final BinaryTagCodec binaryTagCodec = new BinaryTagCodec(new BinaryCodec(output));
+            for (SAMBinaryTagAndValue attribute = record.getBinaryAttributes(); attribute != null; attribute = attribute.getNext()) {
+                binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
+            }
+        }
+    }
+
+    /**
+     * Read a headerless record from the given input.
+     */
+    public SAMRecord decode(final Input input) {
+        final SAMRecord record = new SAMRecord(null);
+        record.setFlags(input.readVarInt(true));
+        final String referenceName = input.readString();
+        final String mateReferenceName = input.readString();
+        record.setReferenceName(referenceName);
+        record.setMateReferenceName(mateReferenceName == null ? referenceName : mateReferenceName);
+        record.setAlignmentStart(input.readVarInt(true));
+        record.setMateAlignmentStart(input.readVarInt(true));
+        record.setMappingQuality(input.readByte() & 0xFF);
+        record.setInferredInsertSize(input.readVarInt(false));
+        record.setReadName(input.readString());
+
+        final int[] binaryCigar = new int[input.readVarInt(true)];
+        for (int i = 0; i < binaryCigar.length; i++) {
+            binaryCigar[i] = input.readVarInt(true);
+        }
+        record.setCigar(BinaryCigarCodec.decode(binaryCigar));
+
+        final int readLength = input.readVarInt(true);
+        record.setReadBases(readLength == 0 ? SAMRecord.NULL_SEQUENCE : readBases(readLength, input));
+        record.setBaseQualities(readQuals(readLength, input));
+
+        final int attributesSize = input.readVarInt(true);
+        if (attributesSize > 0) {
+            final byte[] attributes = input.readBytes(attributesSize);
+            record.setAttributes(BinaryTagCodec.readTags(attributes, 0, attributesSize, ValidationStringency.SILENT));
+        }
+
+        // clear the reference indices, which setReferenceName() will not have done for "*"
+        record.setHeaderStrict(null);
+        return record;
+    }
+
+    private static void writeBases(final byte[] bases, final Output output) {
+        int numNs = 0;
+        for (final byte base : bases) {
+            if (base == 'N') {
+                numNs++;
+            } else if (packedBaseCode(base) < 0) {
+                output.writeByte(BASES_RAW);
+                output.writeBytes(bases);
+                return;
+            }
+        }
+        output.writeByte(BASES_PACKED);
+        // the positions of the Ns, as deltas from the previous one
+        output.writeVarInt(numNs, true);
+        int previousN = 0;
+        for (int i = 0; i < bases.length && numNs > 0; i++) {
+            if (bases[i] == 'N') {
+                output.writeVarInt(i - previousN, true);
+                previousN = i;
+                numNs--;
+            }
+        }
+        // four bases to a byte, with Ns packed as As
+        for (int i = 0; i < bases.length; i += 4) {
+            int packed = 0;
+            for (int j = i; j < Math.min(i + 4, bases.length); j++) {
+                packed |= Math.max(packedBaseCode(bases[j]), 0) << (2 * (j - i));
+            }
+            output.writeByte(packed);
+        }
+    }
+
+    private static byte[] readBases(final int readLength, final Input input) {
+        if (input.readByte() == BASES_RAW) {
+            return input.readBytes(readLength);
+        }
+        final int[] nPositions = new int[input.readVarInt(true)];
+        int previousN = 0;
+        for (int i = 0; i < nPositions.length; i++) {
+            previousN += input.readVarInt(true);
+            nPositions[i] = previousN;
+        }
+        final byte[] bases = new byte[readLength];
+        for (int i = 0; i < readLength; i += 4) {
+            final int packed = input.readByte();
+            for (int j = i; j < Math.min(i + 4, readLength); j++) {
+                bases[j] = PACKED_BASES[(packed >> (2 * (j - i))) & 3];
+            }
+        }
+        for (final int nPosition : nPositions) {
+            bases[nPosition] = 'N';
+        }
+        return bases;
+    }
+
+    private static int packedBaseCode(final byte base) {
+        switch (base) {
+            case 'A': return 0;
+            case 'C': return 1;
+            case 'G': return 2;
+            case 'T': return 3;
+            default: return -1;
+        }
+    }
+
+    private static void writeQuals(final byte[] quals, final Output output) {
+        // find the distinct values and the number of bytes needed for each encoding
+        final boolean[] seen = new boolean[256];
+        final byte[] dictionary = new byte[MAX_DICTIONARY_SIZE];
+        int dictionarySize = 0;
+        int runLengthSize = 0;
+        int runStart = 0;
+        for (int i = 0; i < quals.length; i++) {
+            final int qual = quals[i] & 0xFF;
+            if (!seen[qual]) {
+                seen[qual] = true;
+                if (dictionarySize < MAX_DICTIONARY_SIZE) {
+                    dictionary[dictionarySize] = quals[i];
+                }
+                dictionarySize++;
+            }
+            if (i == quals.length - 1 || quals[i + 1] != quals[i]) {
+                runLengthSize += 1 + varIntSize(i + 1 - runStart);
+                runStart = i + 1;
+            }
+        }
+        final int bitsPerQual = dictionarySize <= 2 ? 1 : dictionarySize <= 4 ? 2 : 4;
+        final int dictionaryEncodedSize = dictionarySize <= MAX_DICTIONARY_SIZE ?
+                1 + dictionarySize + (quals.length * bitsPerQual + 7) / 8 : Integer.MAX_VALUE;
+
+        if (runLengthSize <= dictionaryEncodedSize && runLengthSize < quals.length) {
+            output.writeByte(QUALS_RUN_LENGTH);
+            runStart = 0;
+            for (int i = 0; i < quals.length; i++) {
+                if (i == quals.length - 1 || quals[i + 1] != quals[i]) {
+                    output.writeByte(quals[i]);
+                    output.writeVarInt(i + 1 - runStart, true);
+                    runStart = i + 1;
+                }
+            }
+        } else if (dictionaryEncodedSize < quals.length) {
+            output.writeByte(QUALS_DICTIONARY);
+            output.writeByte(dictionarySize);
+            output.writeBytes(dictionary, 0, dictionarySize);
+            final int[] codes = new int[256];
+            for (int i = 0; i < dictionarySize; i++) {
+                codes[dictionary[i] & 0xFF] = i;
+            }
+            final int qualsPerByte = 8 / bitsPerQual;
+            for (int i = 0; i < quals.length; i += qualsPerByte) {
+                int packed = 0;
+                for (int j = i; j < Math.min(i + qualsPerByte, quals.length); j++) {
+                    packed |= codes[quals[j] & 0xFF] << (bitsPerQual * (j - i));
+                }
+                output.writeByte(packed);
+            }
+        } else {
+            output.writeByte(QUALS_RAW);
+            output.writeBytes(quals);
+        }
+    }
+
+    private static byte[] readQuals(final int readLength, final Input input) {
+        switch (input.readByte()) {
+            case QUALS_NONE:
+                return SAMRecord.NULL_QUALS;
+            case QUALS_RAW:
+                return input.readBytes(readLength);
+            case QUALS_RUN_LENGTH: {
+                final byte[] quals = new byte[readLength];
+                int i = 0;
+                while (i < readLength) {
+                    final byte qual = input.readByte();
+                    final int runLength = input.readVarInt(true);
+                    for (int j = 0; j < runLength; j++) {
+                        quals[i++] = qual;
+                    }
+                }
+                return quals;
+            }
+            case QUALS_DICTIONARY: {
+                final int dictionarySize = input.readByte() & 0xFF;
+                final byte[] dictionary = input.readBytes(dictionarySize);
+                final int bitsPerQual = dictionarySize <= 2 ? 1 : dictionarySize <= 4 ? 2 : 4;
+                final int qualsPerByte = 8 / bitsPerQual;
+                final int mask = (1 << bitsPerQual) - 1;
+                final byte[] quals = new byte[readLength];
+                for (int i = 0; i < readLength; i += qualsPerByte) {
+                    final int packed = input.readByte();
+                    for (int j = i; j < Math.min(i + qualsPerByte, readLength); j++) {
+                        quals[j] = dictionary[(packed >> (bitsPerQual * (j - i))) & mask];
+                    }
+                }
+                return quals;
+            }
+            default:
+                throw new SAMException("Unknown base quality encoding");
+        }
+    }
+
+    private static int varIntSize(final int value) {
+        return value >>> 7 == 0 ? 1 : value >>> 14 == 0 ? 2 : value >>> 21 == 0 ? 3 : value >>> 28 == 0 ? 4 : 5;
+    }
+}
@@ -0,0 +1,19 @@
+package htsjdk.samtools;
+
+/**
+ * Gives access to {@link SAMRecord#setFileSource(SAMFileSource)}, so that records can be indexed (by {@link BAMIndexer}
+ * or Hadoop-BAM's SplittingBAMIndexer) as they are written, rather than after reading the written file back.
+ */
+public final class SAMRecordFileSources {
+    private SAMRecordFileSources() {
+    }
+
+    /**
+     * Sets the source of the record to the given span of a BAM file, with no reader.
+     * @param start the virtual file offset of the start of the record
+     * @param end the virtual file offset of the end of the record
+     */
+    public static void setBAMFileSpan(final SAMRecord record, final long start, final long end) {
+        record.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(start, end))));
+    }
+}
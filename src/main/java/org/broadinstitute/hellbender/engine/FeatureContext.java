@@ -11,7 +11,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Wrapper around FeatureManager that presents Feature data from a particular interval to a client tool
+ * Wrapper around a FeatureSource (usually a FeatureManager) that presents Feature data from a particular interval to a client tool
  * without improperly exposing engine internals.
  *
  * The client passes in one or more FeatureInputs that were declared as tool arguments, and gets back a List
@@ -36,10 +36,10 @@ import java.util.stream.Collectors;
 public class FeatureContext {
 
     /**
-     * FeatureManager containing backing data sources for all discovered Feature arguments.
+     * FeatureSource (usually a FeatureManager) containing backing data sources for all discovered Feature arguments.
      * Null if there are no sources of Features.
      */
-    private final FeatureManager featureManager;
+    private final FeatureSource featureManager;
 
     /**
      * We will return Features overlapping this interval. Null if this context has no known location
@@ -56,14 +56,14 @@ public class FeatureContext {
     }
 
     /**
-     * Creates a new FeatureContext given a FeatureManager and a query interval. These may be null if
+     * Creates a new FeatureContext given a FeatureSource and a query interval. These may be null if
      * no sources of Features are available and/or we don't have a known location on the reference,
      * in which case all queries on this context will return an empty List.
      *
-     * @param featureManager FeatureManager containing backing data sources for all discovered Feature arguments. Null if there are no sources of Features.
+     * @param featureManager FeatureSource (usually a FeatureManager) containing backing data sources for all discovered Feature arguments. Null if there are no sources of Features.
      * @param interval Interval to constrain queries on this FeatureContext. Null if we have no known location.
      */
-    public FeatureContext(final FeatureManager featureManager, final SimpleInterval interval) {
+    public FeatureContext(final FeatureSource featureManager, final SimpleInterval interval) {
         this.featureManager = featureManager;
         this.interval = interval;
     }
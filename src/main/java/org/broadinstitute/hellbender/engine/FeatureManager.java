@@ -43,7 +43,7 @@ import java.util.stream.Collectors;
  * Clients can then call {@link #getFeatures(FeatureInput, SimpleInterval)} to query the data source for
  * a particular FeatureInput over a specific interval.
  */
-public final class FeatureManager implements AutoCloseable {
+public final class FeatureManager implements FeatureSource, AutoCloseable {
     private static final Logger logger = LogManager.getLogger(FeatureManager.class);
 
     /**
@@ -235,6 +235,13 @@ public final class FeatureManager implements AutoCloseable {
         return featureSources.isEmpty();
     }
 
+    /**
+     * @return the FeatureInput arguments for which this manager has a source of Features
+     */
+    public Set<FeatureInput<? extends Feature>> getAllInputs() {
+        return Collections.unmodifiableSet(featureSources.keySet());
+    }
+
 
     /**
      * This method finds and returns all of the variant headers from the feature sources.
@@ -285,6 +292,7 @@ public final class FeatureManager implements AutoCloseable {
      * @return A List of all Features in the backing data source for the provided FeatureInput that overlap
      *         the provided interval (may be empty if there are none, but never null)
      */
+    @Override
     public <T extends Feature> List<T> getFeatures( final FeatureInput<T> featureDescriptor, final SimpleInterval interval ) {
         final FeatureDataSource<T> dataSource = lookupDataSource(featureDescriptor);
 
@@ -324,6 +332,7 @@ public final class FeatureManager implements AutoCloseable {
      * @param <T> type of Feature in our FeatureInput
      * @return header for the provided FeatureInput
      */
+    @Override
     public <T extends Feature> Object getHeader( final FeatureInput<T> featureDescriptor ) {
         final FeatureDataSource<T> dataSource = lookupDataSource(featureDescriptor);
         return dataSource.getHeader();
@@ -0,0 +1,34 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.tribble.Feature;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+
+import java.util.List;
+
+/**
+ * A FeatureSource can be queried by interval for the Features from each of a tool's FeatureInput arguments.
+ * This is what a {@link FeatureContext} queries: usually a {@link FeatureManager}, which reads the Features from
+ * their files on demand, or a {@link FeatureStore}, which holds them all in memory.
+ */
+public interface FeatureSource {
+    /**
+     * Given a FeatureInput argument field from our tool, queries the source of Features for that FeatureInput
+     * over the specified interval.
+     *
+     * @param featureDescriptor FeatureInput argument from our tool representing the Feature source to query
+     * @param interval interval to query over (returned Features will overlap this interval)
+     * @param <T> type of Feature in the source represented by featureDescriptor
+     * @return A List of all Features for the provided FeatureInput that overlap the provided interval
+     *         (may be empty if there are none, but never null)
+     */
+    <T extends Feature> List<T> getFeatures(final FeatureInput<T> featureDescriptor, final SimpleInterval interval);
+
+    /**
+     * Get the header associated with a particular FeatureInput
+     *
+     * @param featureDescriptor the FeatureInput whose header we want to retrieve
+     * @param <T> type of Feature in our FeatureInput
+     * @return header for the provided FeatureInput
+     */
+    <T extends Feature> Object getHeader(final FeatureInput<T> featureDescriptor);
+}
@@ -0,0 +1,69 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.tribble.Feature;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.collections.PackedIntervalIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds all the Features from each of the sources of a {@link FeatureManager} in memory, in a
+ * {@link PackedIntervalIndex} per FeatureInput, so that they can be queried without going back to the files.
+ *
+ * Unlike a FeatureManager, a FeatureStore is immutable once built, so it may be queried from many threads at once.
+ * It is only suitable for sources of Features that fit in memory, such as known sites.
+ */
+public final class FeatureStore implements FeatureSource {
+    private final Map<FeatureInput<? extends Feature>, PackedIntervalIndex<? extends Feature>> indexes = new HashMap<>();
+    private final Map<FeatureInput<? extends Feature>, Object> headers = new HashMap<>();
+
+    /**
+     * Reads all the Features from the sources of the given FeatureManager.
+     *
+     * @param featureManager the FeatureManager to read the Features from
+     */
+    public FeatureStore(final FeatureManager featureManager) {
+        Utils.nonNull(featureManager);
+        for (final FeatureInput<? extends Feature> featureInput : featureManager.getAllInputs()) {
+            indexes.put(featureInput, readFeatures(featureManager, featureInput));
+            headers.put(featureInput, featureManager.getHeader(featureInput));
+        }
+    }
+
+    private static <T extends Feature> PackedIntervalIndex<T> readFeatures(final FeatureManager featureManager, final FeatureInput<T> featureInput) {
+        return new PackedIntervalIndex<>(() -> featureManager.getFeatureIterator(featureInput));
+    }
+
+    @Override
+    public <T extends Feature> List<T> getFeatures(final FeatureInput<T> featureDescriptor, final SimpleInterval interval) {
+        @SuppressWarnings("unchecked")
+        final PackedIntervalIndex<T> index = (PackedIntervalIndex<T>) indexes.get(featureDescriptor);
+        if (index == null) {
+            throw new GATKException("FeatureInput " + featureDescriptor.getName() + " not found in feature store");
+        }
+        return index.getOverlapping(interval);
+    }
+
+    @Override
+    public <T extends Feature> Object getHeader(final FeatureInput<T> featureDescriptor) {
+        return headers.get(featureDescriptor);
+    }
+
+    /**
+     * @return the total number of Features held
+     */
+    public long getNumberOfFeatures() {
+        return indexes.values().stream().mapToLong(PackedIntervalIndex::size).sum();
+    }
+
+    /**
+     * @return the approximate size in bytes of the indexes of the Features, not counting the Features themselves
+     */
+    public long getIndexSizeInBytes() {
+        return indexes.values().stream().mapToLong(PackedIntervalIndex::getIndexSizeInBytes).sum();
+    }
+}
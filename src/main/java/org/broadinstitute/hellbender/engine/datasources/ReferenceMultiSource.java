@@ -6,6 +6,7 @@ import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import org.broadinstitute.hellbender.engine.AuthHolder;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMappedTwoBitSource;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceTwoBitSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
@@ -35,8 +36,23 @@ public class ReferenceMultiSource implements ReferenceSource, Serializable {
      */
     public ReferenceMultiSource( final PipelineOptions pipelineOptions, final String referenceURL,
                                  final SerializableFunction<GATKRead, SimpleInterval> referenceWindowFunction ) {
+        this(pipelineOptions, referenceURL, referenceWindowFunction, false);
+    }
+
+    /**
+     * @param pipelineOptions the pipeline options; must be GCSOptions if using the Google Genomics API
+     * @param referenceURL the name of the reference (if using the Google Genomics API), or a path to the reference file
+     * @param referenceWindowFunction the custom reference window function used to map reads to desired reference bases
+     * @param memoryMapTwoBit if true, and the reference is a .2bit file, memory-map it once per JVM rather than
+     *                        reading it into this object (see {@link ReferenceMappedTwoBitSource})
+     */
+    public ReferenceMultiSource( final PipelineOptions pipelineOptions, final String referenceURL,
+                                 final SerializableFunction<GATKRead, SimpleInterval> referenceWindowFunction,
+                                 final boolean memoryMapTwoBit ) {
         Utils.nonNull(referenceWindowFunction);
-        if (ReferenceTwoBitSource.isTwoBit(referenceURL)) {
+        if (ReferenceTwoBitSource.isTwoBit(referenceURL) && memoryMapTwoBit) {
+            referenceSource = new ReferenceMappedTwoBitSource(pipelineOptions, referenceURL);
+        } else if (ReferenceTwoBitSource.isTwoBit(referenceURL)) {
             try {
                 referenceSource = new ReferenceTwoBitSource(pipelineOptions, referenceURL);
             } catch (IOException e) {
@@ -98,6 +98,15 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
     @Argument(doc = "whether to use the shuffle implementation or not", shortName = "shuffle", fullName = "shuffle", optional = true)
     public boolean shuffle = false;
 
+    @Argument(fullName="adaptiveReadShards", shortName="adaptiveReadShards", doc = "Size read shards by the estimated number of reads in them rather than by bases, so that high-depth regions are split into more shards. A shard at average depth is readShardSize bases.", optional = true)
+    public boolean adaptiveReadShards = false;
+
+    @Argument(fullName="minAdaptiveReadShardSize", shortName="minAdaptiveReadShardSize", doc = "Minimum size of each read shard, in bases, when using adaptive read shards.", optional = true)
+    public int minAdaptiveReadShardSize = 1000;
+
+    @Argument(fullName="maxAdaptiveReadShardSize", shortName="maxAdaptiveReadShardSize", doc = "Maximum size of each read shard, in bases, when using adaptive read shards.", optional = true)
+    public int maxAdaptiveReadShardSize = 1000000;
+
     @Override
     public final boolean requiresReads() { return true; }
 
@@ -118,20 +127,21 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
      */
     public abstract AssemblyRegionEvaluator assemblyRegionEvaluator();
 
+    private List<SimpleInterval> unpaddedIntervals;
     private List<ShardBoundary> intervalShards;
 
     /**
-     * Note that this sets {@code intervalShards} as a side effect, in order to add padding to the intervals.
+     * Note that this sets {@code unpaddedIntervals} and {@code intervalShards} as a side effect, in order to add padding to the intervals.
      */
     @Override
     protected List<SimpleInterval> editIntervals(List<SimpleInterval> rawIntervals) {
         SAMSequenceDictionary sequenceDictionary = getBestAvailableSequenceDictionary();
-        List<SimpleInterval> intervals = rawIntervals == null ? IntervalUtils.getAllIntervalsForReference(sequenceDictionary) : rawIntervals;
-        intervalShards = intervals.stream()
+        unpaddedIntervals = rawIntervals == null ? IntervalUtils.getAllIntervalsForReference(sequenceDictionary) : rawIntervals;
+        intervalShards = unpaddedIntervals.stream()
                 .flatMap(interval -> Shard.divideIntervalIntoShards(interval, readShardSize, readShardPadding, sequenceDictionary).stream())
                 .collect(Collectors.toList());
         List<SimpleInterval> paddedIntervalsForReads =
-                intervals.stream().map(interval -> interval.expandWithinContig(readShardPadding, sequenceDictionary)).collect(Collectors.toList());
+                unpaddedIntervals.stream().map(interval -> interval.expandWithinContig(readShardPadding, sequenceDictionary)).collect(Collectors.toList());
         return paddedIntervalsForReads;
     }
 
@@ -144,7 +154,11 @@ public abstract class AssemblyRegionWalkerSpark extends GATKSparkTool {
      */
     protected JavaRDD<AssemblyRegionWalkerContext> getAssemblyRegions(JavaSparkContext ctx) {
         SAMSequenceDictionary sequenceDictionary = getBestAvailableSequenceDictionary();
-        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle);
+        JavaRDD<GATKRead> reads = getReads();
+        List<ShardBoundary> shardBoundaries = adaptiveReadShards ?
+                SparkSharder.divideIntervalsByLocatableDensity(reads, sequenceDictionary, unpaddedIntervals, readShardSize, minAdaptiveReadShardSize, maxAdaptiveReadShardSize, readShardPadding) :
+                intervalShards;
+        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, reads, GATKRead.class, sequenceDictionary, shardBoundaries, readShardSize, shuffle, targetTaskSize);
         Broadcast<ReferenceMultiSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
         return shardedReads.flatMap(getAssemblyRegionsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(),
@@ -4,7 +4,7 @@ import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
-import org.broadinstitute.hellbender.utils.collections.IntervalsSkipList;
+import org.broadinstitute.hellbender.utils.collections.PackedIntervalIndex;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.variant.GATKVariant;
@@ -15,21 +15,22 @@ import java.util.Collections;
 /**
  * Joins an RDD of GATKReads to variant data using a broadcast strategy.
  *
- * The variants RDD is materialized as a List then broadcast using Spark's Broadcast variable mechanism.  The reads are
- * then mapped over and overlapping variants are added for each read.
+ * The variants RDD is materialized as a {@link PackedIntervalIndex} then broadcast using Spark's Broadcast variable
+ * mechanism, so each executor deserializes the index once and shares it between its tasks.  The reads are then mapped
+ * over and overlapping variants are added for each read.
  */
 public final class BroadcastJoinReadsWithVariants {
     private BroadcastJoinReadsWithVariants(){}
 
     public static JavaPairRDD<GATKRead, Iterable<GATKVariant>> join(final JavaRDD<GATKRead> reads, final JavaRDD<GATKVariant> variants ) {
         final JavaSparkContext ctx = new JavaSparkContext(reads.context());
-        final IntervalsSkipList<GATKVariant> variantSkipList = new IntervalsSkipList<>(variants.collect());
-        final Broadcast<IntervalsSkipList<GATKVariant>> variantsBroadcast = ctx.broadcast(variantSkipList);
+        final PackedIntervalIndex<GATKVariant> variantIndex = new PackedIntervalIndex<>(variants.collect());
+        final Broadcast<PackedIntervalIndex<GATKVariant>> variantsBroadcast = ctx.broadcast(variantIndex);
 
         return reads.mapToPair(r -> {
-            final IntervalsSkipList<GATKVariant> intervalsSkipList = variantsBroadcast.getValue();
+            final PackedIntervalIndex<GATKVariant> broadcastIndex = variantsBroadcast.getValue();
             if (SimpleInterval.isValid(r.getContig(), r.getStart(), r.getEnd())) {
-                return new Tuple2<>(r, intervalsSkipList.getOverlapping(new SimpleInterval(r)));
+                return new Tuple2<>(r, broadcastIndex.getOverlapping(new SimpleInterval(r)));
             } else {
                 //Sometimes we have reads that do not form valid intervals (reads that do not consume any ref bases, eg CIGAR 61S90I
                 //In those cases, we'll just say that nothing overlaps the read
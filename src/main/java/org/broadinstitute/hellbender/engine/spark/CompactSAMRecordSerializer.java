@@ -0,0 +1,31 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.CompactSAMRecordSparkCodec;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Serializer for SAMRecords that uses {@link CompactSAMRecordSparkCodec}, which writes fewer bytes than
+ * {@link SAMRecordSerializer} at the cost of some extra CPU time.
+ * Assumes that the SAMRecords are headerless (and clears their header if they're not).
+ */
+public final class CompactSAMRecordSerializer extends Serializer<SAMRecord> {
+
+    private final CompactSAMRecordSparkCodec codec = new CompactSAMRecordSparkCodec();
+
+    @Override
+    public void write(Kryo kryo, Output output, SAMRecord record) {
+        // The read is likely to already be headerless, but as a defensive
+        // measure in case it's not, set the header to null explicitly.
+        record.setHeaderStrict(null);
+        codec.encode(record, output);
+    }
+
+    @Override
+    public SAMRecord read(Kryo kryo, Input input, Class<SAMRecord> type) {
+        return codec.decode(input);
+    }
+}
@@ -0,0 +1,33 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.CompactSAMRecordSparkCodec;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+
+/**
+ * Serializer for SAMRecordToGATKReadAdapters that uses {@link CompactSAMRecordSparkCodec}, which writes fewer bytes than
+ * {@link SAMRecordToGATKReadAdapterSerializer} at the cost of some extra CPU time.
+ * Assumes that the underlying SAMRecords are headerless (and clears their header if they're not).
+ */
+public final class CompactSAMRecordToGATKReadAdapterSerializer extends Serializer<SAMRecordToGATKReadAdapter> {
+
+    private final CompactSAMRecordSparkCodec codec = new CompactSAMRecordSparkCodec();
+
+    @Override
+    public void write(Kryo kryo, Output output, SAMRecordToGATKReadAdapter adapter) {
+        SAMRecord record = adapter.getEncapsulatedSamRecord();
+        // The underlying read is likely to already be headerless, but as a defensive
+        // measure in case it's not, set the header to null explicitly.
+        record.setHeaderStrict(null);
+        codec.encode(record, output);
+    }
+
+    @Override
+    public SAMRecordToGATKReadAdapter read(Kryo kryo, Input input, Class<SAMRecordToGATKReadAdapter> type) {
+        return SAMRecordToGATKReadAdapter.headerlessReadAdapter(codec.decode(input));
+    }
+}
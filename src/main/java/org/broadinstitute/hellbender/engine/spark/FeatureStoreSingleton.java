@@ -0,0 +1,45 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.broadcast.Broadcast;
+import org.broadinstitute.hellbender.engine.FeatureManager;
+import org.broadinstitute.hellbender.engine.FeatureStore;
+
+/**
+ * Manage a FeatureStore singleton, so that the Features from a broadcast FeatureManager are read into memory
+ * once per executor JVM and then shared by all the tasks running in it.
+ *
+ * The store is rebuilt if it is asked for with a different broadcast, so only the most recent one is held.
+ */
+public final class FeatureStoreSingleton {
+    private static final Logger logger = LogManager.getLogger(FeatureStoreSingleton.class);
+
+    private static long globalBroadcastId = -1;
+    private static FeatureStore globalInstance;
+
+    private FeatureStoreSingleton() {}
+
+    public static synchronized FeatureStore getInstance(final Broadcast<FeatureManager> bFeatureManager) {
+        if (globalInstance == null || globalBroadcastId != bFeatureManager.id()) {
+            // drop the old store first, so that it can be collected while the new one is built
+            globalInstance = null;
+            final Runtime runtime = Runtime.getRuntime();
+            final long usedMemoryBefore = runtime.totalMemory() - runtime.freeMemory();
+            final long startTime = System.nanoTime();
+            globalInstance = new FeatureStore(bFeatureManager.getValue());
+            globalBroadcastId = bFeatureManager.id();
+            final double seconds = (System.nanoTime() - startTime) / 1e9;
+            final long usedMemoryAfter = runtime.totalMemory() - runtime.freeMemory();
+            logger.info(String.format("Loaded %d features into memory in %.2f seconds; index size %d bytes, heap growth approx %d MB",
+                    globalInstance.getNumberOfFeatures(), seconds, globalInstance.getIndexSizeInBytes(),
+                    Math.max(usedMemoryAfter - usedMemoryBefore, 0) / (1024 * 1024)));
+        }
+        return globalInstance;
+    }
+
+    public static synchronized void closeInstance() {
+        globalBroadcastId = -1;
+        globalInstance = null;
+    }
+}
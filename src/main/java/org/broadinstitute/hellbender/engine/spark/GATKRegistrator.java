@@ -10,6 +10,7 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.FastGenotype;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
+import org.apache.spark.SparkEnv;
 import org.apache.spark.serializer.KryoRegistrator;
 import org.bdgenomics.adam.serialization.ADAMKryoRegistrator;
 import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
@@ -23,6 +24,13 @@ import java.util.Collections;
  */
 public class GATKRegistrator implements KryoRegistrator {
 
+    /**
+     * Spark property that, when set to true, makes reads use the compact serializers
+     * ({@link CompactSAMRecordToGATKReadAdapterSerializer} and {@link CompactSAMRecordSerializer}), which reduce
+     * shuffle sizes at the cost of some CPU time. Set it with <code>--conf spark.gatk.compactReadSerialization=true</code>.
+     */
+    public static final String COMPACT_READ_SERIALIZATION_PROPERTY = "spark.gatk.compactReadSerialization";
+
     private ADAMKryoRegistrator ADAMregistrator;
 
     public GATKRegistrator() {
@@ -49,9 +57,13 @@ public class GATKRegistrator implements KryoRegistrator {
 
         kryo.register(Collections.unmodifiableList(Collections.EMPTY_LIST).getClass(), new UnmodifiableCollectionsSerializer());
 
-        kryo.register(SAMRecordToGATKReadAdapter.class, new SAMRecordToGATKReadAdapterSerializer());
-
-        kryo.register(SAMRecord.class, new SAMRecordSerializer());
+        if (useCompactReadSerialization()) {
+            kryo.register(SAMRecordToGATKReadAdapter.class, new CompactSAMRecordToGATKReadAdapterSerializer());
+            kryo.register(SAMRecord.class, new CompactSAMRecordSerializer());
+        } else {
+            kryo.register(SAMRecordToGATKReadAdapter.class, new SAMRecordToGATKReadAdapterSerializer());
+            kryo.register(SAMRecord.class, new SAMRecordSerializer());
+        }
 
         //register to avoid writing the full name of this class over and over
         kryo.register(PairedEnds.class, new FieldSerializer<>(kryo, PairedEnds.class));
@@ -77,4 +89,13 @@ public class GATKRegistrator implements KryoRegistrator {
         //     ZippedTargetSet
         ADAMregistrator.registerClasses(kryo);
     }
+
+    /**
+     * The registrator is instantiated by Spark on the driver and on each executor, so the setting is read from the
+     * configuration of the running Spark environment (if any).
+     */
+    private static boolean useCompactReadSerialization() {
+        final SparkEnv env = SparkEnv.get();
+        return env != null && env.conf().getBoolean(COMPACT_READ_SERIALIZATION_PROPERTY, false);
+    }
 }
@@ -88,6 +88,17 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
             shortName = "numReducers", fullName = "numReducers", optional = true)
     protected int numReducers = 0;
 
+    @Argument(doc = "If the reference is a .2bit file, memory-map it once on each executor instead of copying its contents " +
+            "to every executor. The reference path must be readable from every executor.",
+            shortName = "memoryMapReference", fullName = "memoryMapReference", optional = true)
+    protected boolean memoryMapReference = false;
+
+    @Argument(doc = "For walkers that shard their input without a shuffle, pack adjacent partitions of input into tasks " +
+            "of up to this many bytes, estimated from the input splits. Useful when the partitions vary in size. " +
+            "Defaults to 0, which processes each partition in its own task.",
+            shortName = "targetTaskSize", fullName = "targetTaskSize", optional = true)
+    protected long targetTaskSize = 0;
+
     private ReadsSparkSource readsSource;
     private SAMFileHeader readsHeader;
     private String readInput;
@@ -246,13 +257,28 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
      * @param reads reads to write.
      */
     public void writeReads(final JavaSparkContext ctx, final String outputFile, JavaRDD<GATKRead> reads) {
+        writeReads(ctx, outputFile, reads, true);
+    }
+
+    /**
+     * Writes the reads from a {@link JavaRDD} to an output file.
+     * @param ctx the JavaSparkContext to write.
+     * @param outputFile path to the output bam/cram.
+     * @param reads reads to write.
+     * @param sortReadsToHeader if false, the reads must already be totally sorted in the sort order of the header,
+     *                          and are written without sorting them again.
+     */
+    public void writeReads(final JavaSparkContext ctx, final String outputFile, JavaRDD<GATKRead> reads, final boolean sortReadsToHeader) {
+        final String previousStage = SparkStageMetricsListener.setStage(ctx, "write");
         try {
             ReadsSparkSink.writeReads(ctx, outputFile,
                     hasReference() ? referenceArguments.getReferenceFile().getAbsolutePath() : null,
                     reads, readsHeader, shardedOutput ? ReadsWriteFormat.SHARDED : ReadsWriteFormat.SINGLE,
-                    getRecommendedNumReducers());
+                    getRecommendedNumReducers(), sortReadsToHeader);
         } catch (IOException e) {
             throw new UserException.CouldNotCreateOutputFile(outputFile,"writing failed", e);
+        } finally {
+            SparkStageMetricsListener.setStage(ctx, previousStage);
         }
     }
 
@@ -348,9 +374,15 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
 
     @Override
     protected void runPipeline( JavaSparkContext sparkContext ) {
-        initializeToolInputs(sparkContext);
-        validateToolInputs();
-        runTool(sparkContext);
+        final String previousStage = SparkStageMetricsListener.setStage(sparkContext, "load");
+        try {
+            initializeToolInputs(sparkContext);
+            validateToolInputs();
+            SparkStageMetricsListener.setStage(sparkContext, "apply");
+            runTool(sparkContext);
+        } finally {
+            SparkStageMetricsListener.setStage(sparkContext, previousStage);
+        }
     }
 
     /**
@@ -390,7 +422,7 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         final GCSOptions gcsOptions = getAuthenticatedGCSOptions(); // null if we have no api key
         final String referenceURL = referenceArguments.getReferenceFileName();
         if ( referenceURL != null ) {
-            referenceSource = new ReferenceMultiSource(gcsOptions, referenceURL, getReferenceWindowFunction());
+            referenceSource = new ReferenceMultiSource(gcsOptions, referenceURL, getReferenceWindowFunction(), memoryMapReference);
             referenceDictionary = referenceSource.getReferenceSequenceDictionary(readsHeader != null ? readsHeader.getSequenceDictionary() : null);
             if (referenceDictionary == null) {
                 throw new UserException.MissingReferenceDictFile(referenceURL);
@@ -59,7 +59,7 @@ public abstract class IntervalWalkerSpark extends GATKSparkTool {
         // don't shard the intervals themselves, since we want each interval to be processed by a single task
         final List<ShardBoundary> intervalShardBoundaries = getIntervals().stream()
                 .map(i -> new ShardBoundary(i, i)).collect(Collectors.toList());
-        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShardBoundaries, Integer.MAX_VALUE, shuffle);
+        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShardBoundaries, Integer.MAX_VALUE, shuffle, targetTaskSize);
         Broadcast<ReferenceMultiSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
         return shardedReads.map(getIntervalsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, intervalShardPadding));
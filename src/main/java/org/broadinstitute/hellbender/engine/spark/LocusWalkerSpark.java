@@ -12,6 +12,7 @@ import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineException;
 import org.broadinstitute.hellbender.engine.*;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.iterators.IntervalOverlappingIterator;
@@ -19,15 +20,18 @@ import org.broadinstitute.hellbender.utils.locusiterator.LIBSDownsamplingInfo;
 import org.broadinstitute.hellbender.utils.locusiterator.LocusIteratorByState;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
+import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 /**
  * A Spark version of {@link LocusWalker}. Subclasses should implement {@link #processAlignments(JavaRDD, JavaSparkContext)}
- * and operate on the passed in RDD.
+ * and operate on the passed in RDD, or, if they only need a small output per locus, override {@link #runTool(JavaSparkContext)}
+ * and call {@link #mapAlignments(JavaSparkContext, LocusFunction)} instead.
  */
 public abstract class LocusWalkerSpark extends GATKSparkTool {
     private static final long serialVersionUID = 1L;
@@ -52,6 +56,18 @@ public abstract class LocusWalkerSpark extends GATKSparkTool {
     @Argument(doc = "whether to use the shuffle implementation or overlaps partitioning (the default)", shortName = "shuffle", fullName = "shuffle", optional = true)
     public boolean shuffle = false;
 
+    @Argument(fullName="loadFeaturesIntoMemory", shortName="loadFeaturesIntoMemory", doc = "Read all the features from the feature inputs into memory once per executor, and share them between its tasks, rather than querying the feature files from each task. The features must fit in memory.", optional = true)
+    public boolean loadFeaturesIntoMemory = false;
+
+    @Argument(fullName="adaptiveReadShards", shortName="adaptiveReadShards", doc = "Size read shards by the estimated number of reads in them rather than by bases, so that high-depth regions are split into more shards. A shard at average depth is readShardSize bases.", optional = true)
+    public boolean adaptiveReadShards = false;
+
+    @Argument(fullName="minAdaptiveReadShardSize", shortName="minAdaptiveReadShardSize", doc = "Minimum size of each read shard, in bases, when using adaptive read shards.", optional = true)
+    public int minAdaptiveReadShardSize = 1000;
+
+    @Argument(fullName="maxAdaptiveReadShardSize", shortName="maxAdaptiveReadShardSize", doc = "Maximum size of each read shard, in bases, when using adaptive read shards.", optional = true)
+    public int maxAdaptiveReadShardSize = 1000000;
+
     @Override
     public boolean requiresReads() {
         return true;
@@ -67,6 +83,19 @@ public abstract class LocusWalkerSpark extends GATKSparkTool {
         return (maxDepthPerSample == 0) ? LocusIteratorByState.NO_DOWNSAMPLING : new LIBSDownsamplingInfo(true, maxDepthPerSample);
     }
 
+    /**
+     * A function applied to each locus by {@link #mapAlignments}, inside the task that produced the locus.
+     *
+     * @param <T> the type of the output for each locus
+     */
+    @FunctionalInterface
+    public interface LocusFunction<T> extends Serializable {
+        /**
+         * @return the output for the locus, or null if there is none
+         */
+        T apply(AlignmentContext alignmentContext, ReferenceContext referenceContext, FeatureContext featureContext);
+    }
+
     /**
      * Loads alignments and the corresponding reference and features into a {@link JavaRDD} for the intervals specified.
      *
@@ -75,37 +104,59 @@ public abstract class LocusWalkerSpark extends GATKSparkTool {
      * @return all alignments as a {@link JavaRDD}, bounded by intervals if specified.
      */
     public JavaRDD<LocusWalkerContext> getAlignments(JavaSparkContext ctx) {
+        return mapAlignments(ctx, LocusWalkerContext::new);
+    }
+
+    /**
+     * Applies a function to the alignments and the corresponding reference and features at each locus in the intervals
+     * specified (or at every locus, if no intervals were specified), and returns the outputs of the function.
+     *
+     * Unlike {@link #getAlignments}, the function is applied to each locus as it is produced, inside the task that
+     * produces it, so tools that only need a small output per locus (such as a line of text) don't create an RDD
+     * holding a context object for every locus.
+     *
+     * @param function the function to apply to each locus; loci for which it returns null have no output
+     * @param <T> the type of the output for each locus
+     * @return the non-null outputs of the function, in locus order within each shard
+     */
+    public <T> JavaRDD<T> mapAlignments(JavaSparkContext ctx, LocusFunction<T> function) {
         SAMSequenceDictionary sequenceDictionary = getBestAvailableSequenceDictionary();
         List<SimpleInterval> intervals = hasIntervals() ? getIntervals() : IntervalUtils.getAllIntervalsForReference(sequenceDictionary);
-        final List<ShardBoundary> intervalShards = intervals.stream()
-                .flatMap(interval -> Shard.divideIntervalIntoShards(interval, readShardSize, readShardPadding, sequenceDictionary).stream())
-                .collect(Collectors.toList());
+        JavaRDD<GATKRead> reads = getReads();
+        final List<ShardBoundary> intervalShards = adaptiveReadShards ?
+                SparkSharder.divideIntervalsByLocatableDensity(reads, sequenceDictionary, intervals, readShardSize, minAdaptiveReadShardSize, maxAdaptiveReadShardSize, readShardPadding) :
+                intervals.stream()
+                        .flatMap(interval -> Shard.divideIntervalIntoShards(interval, readShardSize, readShardPadding, sequenceDictionary).stream())
+                        .collect(Collectors.toList());
         int maxLocatableSize = Math.min(readShardSize, readShardPadding);
-        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, maxLocatableSize, shuffle);
+        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, reads, GATKRead.class, sequenceDictionary, intervalShards, maxLocatableSize, shuffle, targetTaskSize);
         Broadcast<ReferenceMultiSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
-        return shardedReads.flatMap(getAlignmentsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, getHeaderForReads(), getDownsamplingInfo()));
+        return shardedReads.flatMap(getAlignmentsFunction(bReferenceSource, bFeatureManager, loadFeaturesIntoMemory, sequenceDictionary, getHeaderForReads(), getDownsamplingInfo(), function));
     }
 
     /**
-     * Return a function that maps a {@link Shard} of reads into a tuple of alignments and their corresponding reference and features.
+     * Return a function that maps a {@link Shard} of reads into the outputs of a {@link LocusFunction} applied to the alignments and their corresponding reference and features.
      * @param bReferenceSource the reference source broadcast
      * @param bFeatureManager the feature manager broadcast
+     * @param loadFeaturesIntoMemory whether to query the features from a {@link FeatureStoreSingleton} rather than the feature manager
      * @param sequenceDictionary the sequence dictionary for the reads
      * @param header the reads header
      * @param downsamplingInfo the downsampling method for the reads
-     * @return a function that maps a {@link Shard} of reads into a tuple of alignments and their corresponding reference and features.
+     * @param function the function to apply to each locus
+     * @return a function that maps a {@link Shard} of reads into the non-null outputs of the function for each locus.
      */
-    private static FlatMapFunction<Shard<GATKRead>, LocusWalkerContext> getAlignmentsFunction(
-            Broadcast<ReferenceMultiSource> bReferenceSource, Broadcast<FeatureManager> bFeatureManager,
-            SAMSequenceDictionary sequenceDictionary, SAMFileHeader header, LIBSDownsamplingInfo downsamplingInfo) {
-        return (FlatMapFunction<Shard<GATKRead>, LocusWalkerContext>) shardedRead -> {
+    private static <T> FlatMapFunction<Shard<GATKRead>, T> getAlignmentsFunction(
+            Broadcast<ReferenceMultiSource> bReferenceSource, Broadcast<FeatureManager> bFeatureManager, boolean loadFeaturesIntoMemory,
+            SAMSequenceDictionary sequenceDictionary, SAMFileHeader header, LIBSDownsamplingInfo downsamplingInfo, LocusFunction<T> function) {
+        return (FlatMapFunction<Shard<GATKRead>, T>) shardedRead -> {
             SimpleInterval interval = shardedRead.getInterval();
             SimpleInterval paddedInterval = shardedRead.getPaddedInterval();
             Iterator<GATKRead> readIterator = shardedRead.iterator();
             ReferenceDataSource reference = bReferenceSource == null ? null :
                     new ReferenceMemorySource(bReferenceSource.getValue().getReferenceBases(null, paddedInterval), sequenceDictionary);
-            FeatureManager fm = bFeatureManager == null ? null : bFeatureManager.getValue();
+            FeatureSource fm = bFeatureManager == null ? null :
+                    loadFeaturesIntoMemory ? FeatureStoreSingleton.getInstance(bFeatureManager) : bFeatureManager.getValue();
 
             final Set<String> samples = header.getReadGroups().stream()
                     .map(SAMReadGroupRecord::getSample)
@@ -114,8 +165,8 @@ public abstract class LocusWalkerSpark extends GATKSparkTool {
             IntervalOverlappingIterator<AlignmentContext> alignmentContexts = new IntervalOverlappingIterator<>(libs, ImmutableList.of(interval), sequenceDictionary);
             return StreamSupport.stream(alignmentContexts.spliterator(), false).map(alignmentContext -> {
                 final SimpleInterval alignmentInterval = new SimpleInterval(alignmentContext);
-                return new LocusWalkerContext(alignmentContext, new ReferenceContext(reference, alignmentInterval), new FeatureContext(fm, alignmentInterval));
-            }).iterator();
+                return function.apply(alignmentContext, new ReferenceContext(reference, alignmentInterval), new FeatureContext(fm, alignmentInterval));
+            }).filter(Objects::nonNull).iterator();
         };
     }
 
@@ -125,10 +176,13 @@ public abstract class LocusWalkerSpark extends GATKSparkTool {
     }
 
     /**
-     * Process the alignments and write output. Must be implemented by subclasses.
+     * Process the alignments and write output. Must be implemented by subclasses that don't override
+     * {@link #runTool(JavaSparkContext)}.
      *
      * @param rdd a distributed collection of {@link LocusWalkerContext}
      * @param ctx our Spark context
      */
-    protected abstract void processAlignments(JavaRDD<LocusWalkerContext> rdd, JavaSparkContext ctx);
+    protected void processAlignments(JavaRDD<LocusWalkerContext> rdd, JavaSparkContext ctx) {
+        throw new GATKException.ShouldNeverReachHereException(getClass().getSimpleName() + " must implement processAlignments or override runTool");
+    }
 }
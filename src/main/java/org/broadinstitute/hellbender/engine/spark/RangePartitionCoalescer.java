@@ -4,12 +4,15 @@ import org.apache.spark.Partition;
 import org.apache.spark.rdd.PartitionCoalescer;
 import org.apache.spark.rdd.PartitionGroup;
 import org.apache.spark.rdd.RDD;
+import org.broadinstitute.hellbender.utils.Utils;
 import scala.collection.JavaConversions;
 import scala.collection.Seq;
 
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A {@link PartitionCoalescer} that allows a range of partitions to be coalesced into groups.
@@ -18,6 +21,7 @@ class RangePartitionCoalescer implements PartitionCoalescer, Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private List<Integer> startPartitionIndexes;
     private List<Integer> maxEndPartitionIndexes;
 
     /**
@@ -26,25 +30,43 @@ class RangePartitionCoalescer implements PartitionCoalescer, Serializable {
      *                               from index {@code i} to {@code maxEndPartitionIndexes.get(i)} (inclusive)
      */
     public RangePartitionCoalescer(List<Integer> maxEndPartitionIndexes) {
+        this(IntStream.range(0, maxEndPartitionIndexes.size()).boxed().collect(Collectors.toList()), maxEndPartitionIndexes);
+    }
+
+    /**
+     * @param startPartitionIndexes the indexes of the start of each coalesced partition, which must be increasing
+     * @param maxEndPartitionIndexes the indexes of the end of each coalesced partition, so that coalesced partition
+     *                               {@code i} is made up of partitions from index {@code startPartitionIndexes.get(i)}
+     *                               to {@code maxEndPartitionIndexes.get(i)} (inclusive)
+     */
+    public RangePartitionCoalescer(List<Integer> startPartitionIndexes, List<Integer> maxEndPartitionIndexes) {
+        Utils.validateArg(startPartitionIndexes.size() == maxEndPartitionIndexes.size(),
+                "There must be a start and an end index for each coalesced partition");
+        this.startPartitionIndexes = startPartitionIndexes;
         this.maxEndPartitionIndexes = maxEndPartitionIndexes;
     }
 
     @Override
     public PartitionGroup[] coalesce(int maxPartitions, RDD<?> parent) {
-        if (maxPartitions != parent.getNumPartitions()) {
+        if (maxPartitions != startPartitionIndexes.size()) {
             throw new IllegalArgumentException("Cannot use " + getClass().getSimpleName() +
-                    " with a different number of partitions to the parent RDD.");
+                    " with a different number of partitions to the number of coalesced partitions.");
         }
         List<Partition> partitions = Arrays.asList(parent.getPartitions());
-        PartitionGroup[] groups = new PartitionGroup[partitions.size()];
+        if (!startPartitionIndexes.isEmpty() && maxEndPartitionIndexes.get(maxEndPartitionIndexes.size() - 1) >= partitions.size()) {
+            throw new IllegalArgumentException("Cannot use " + getClass().getSimpleName() +
+                    " with fewer partitions in the parent RDD than are coalesced.");
+        }
+        PartitionGroup[] groups = new PartitionGroup[startPartitionIndexes.size()];
 
-        for (int i = 0; i < partitions.size(); i++) {
-            Seq<String> preferredLocations = parent.getPreferredLocations(partitions.get(i));
+        for (int i = 0; i < startPartitionIndexes.size(); i++) {
+            int startIndex = startPartitionIndexes.get(i);
+            Seq<String> preferredLocations = parent.getPreferredLocations(partitions.get(startIndex));
             scala.Option<String> preferredLocation = scala.Option.apply
                     (preferredLocations.isEmpty() ? null : preferredLocations.apply(0));
             PartitionGroup group = new PartitionGroup(preferredLocation);
             List<Partition> partitionsInGroup =
-                    partitions.subList(i, maxEndPartitionIndexes.get(i) + 1);
+                    partitions.subList(startIndex, maxEndPartitionIndexes.get(i) + 1);
             group.partitions().append(JavaConversions.asScalaBuffer(partitionsInGroup));
             groups[i] = group;
         }
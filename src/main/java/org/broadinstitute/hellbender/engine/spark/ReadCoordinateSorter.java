@@ -0,0 +1,222 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.util.PeekableIterator;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.spark.Partitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Sorts reads into the order given by {@link ReadCoordinateComparator}, without comparing whole reads except to break ties.
+ *
+ * Each read is given a primitive key that packs its assigned reference index and start into a long, which orders reads
+ * in the same way as {@link ReadCoordinateComparator#compareCoordinates}. Only keys are sampled to choose the range
+ * boundaries of the partitions, so the driver never sees any reads, and the shuffle sorts each partition by key alone,
+ * spilling to disk as it does for any other sort. The full comparator is used only for runs of reads with the same
+ * key, so placed reads are in exactly the order of sorting with {@link ReadCoordinateComparator}.
+ *
+ * Unmapped reads with no assigned position come after all the others, as they do with the comparator, but they are
+ * ordered by a hash of their names rather than by the comparator's tie-breaking rules. Giving them distinct keys lets
+ * them be divided among partitions and spilled like any other reads, rather than all going to the last partition as a
+ * single run that has to be sorted in memory. Reads with the same name are still kept together.
+ */
+public final class ReadCoordinateSorter {
+
+    // the number of keys to sample for each output partition, as for Spark's RangePartitioner
+    private static final int SAMPLES_PER_PARTITION = 20;
+    private static final int MAX_SAMPLES = 1_000_000;
+
+    // the high bits of the keys of unmapped reads with no assigned position, which sort after every placed read
+    private static final long UNPLACED_KEY = (long) Integer.MAX_VALUE << 32;
+
+    private ReadCoordinateSorter() {}
+
+    /**
+     * @return the coordinate sort key of the read: its assigned reference index in the high 32 bits and its assigned
+     * start in the low 32 bits, or, if it has no assigned reference, {@link #UNPLACED_KEY} with a hash of its name in
+     * the low 32 bits
+     */
+    public static long getCoordinateKey(final GATKRead read, final SAMFileHeader header) {
+        final int referenceIndex = ReadUtils.getAssignedReferenceIndex(read, header);
+        if (referenceIndex == -1) {
+            return UNPLACED_KEY | (hashName(read.getName()) & 0xFFFFFFFFL);
+        }
+        return ((long) referenceIndex << 32) | (read.getAssignedStart() & 0xFFFFFFFFL);
+    }
+
+    // String.hashCode, mixed (with Murmur3's 32-bit finalizer) so that similar names are spread over all the keys
+    private static int hashName(final String name) {
+        int hash = name == null ? 0 : name.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Sorts the reads by coordinate, so that all the reads in partition i come before those in partition i+1.
+     *
+     * @param reads the reads to sort
+     * @param header the header of the reads, whose sequence dictionary gives the order of the contigs
+     * @param numPartitions the number of partitions to sort into; there may be fewer if the reads have few distinct keys
+     */
+    public static JavaRDD<GATKRead> sort(final JavaRDD<GATKRead> reads, final SAMFileHeader header, final int numPartitions) {
+        Utils.nonNull(reads);
+        Utils.nonNull(header);
+        Utils.validateArg(numPartitions > 0, "numPartitions must be positive");
+
+        final int sampleSizePerInputPartition = (int) Math.ceil(3.0 *
+                Math.min((long) SAMPLES_PER_PARTITION * numPartitions, MAX_SAMPLES) / reads.getNumPartitions());
+        final List<Tuple2<Long, long[]>> samples = reads.mapPartitionsWithIndex((index, it) -> {
+            final Tuple2<Long, long[]> sample = sampleKeys(it, header, sampleSizePerInputPartition, index);
+            return Collections.singletonList(sample).iterator();
+        }, false).collect();
+        final CoordinateKeyRangePartitioner partitioner = new CoordinateKeyRangePartitioner(computeRangeBounds(samples, numPartitions));
+
+        final ReadCoordinateComparator comparator = new ReadCoordinateComparator(header);
+        return reads.mapToPair(read -> new Tuple2<>(getCoordinateKey(read, header), read))
+                .repartitionAndSortWithinPartitions(partitioner)
+                .mapPartitions(it -> sortRuns(it, comparator));
+    }
+
+    /**
+     * Takes a uniform sample of the keys of the reads, by reservoir sampling.
+     * @return the number of reads, and the sampled keys
+     */
+    private static Tuple2<Long, long[]> sampleKeys(final Iterator<GATKRead> reads, final SAMFileHeader header,
+                                                   final int sampleSize, final int seed) {
+        final long[] sample = new long[sampleSize];
+        final Random random = new Random(seed);
+        long count = 0;
+        while (reads.hasNext()) {
+            final long key = getCoordinateKey(reads.next(), header);
+            if (count < sampleSize) {
+                sample[(int) count] = key;
+            } else {
+                final long replace = (long) (random.nextDouble() * (count + 1));
+                if (replace < sampleSize) {
+                    sample[(int) replace] = key;
+                }
+            }
+            count++;
+        }
+        return new Tuple2<>(count, count < sampleSize ? Arrays.copyOf(sample, (int) count) : sample);
+    }
+
+    /**
+     * Chooses the upper bounds of the key ranges of the partitions, so that each range holds about the same number of
+     * reads. Each sampled key stands for the reads of its input partition divided by the size of its sample.
+     *
+     * @param samples for each input partition, the number of reads and a sample of their keys
+     * @param numPartitions the number of partitions wanted
+     * @return the distinct, increasing inclusive upper bounds of all the ranges but the last
+     */
+    static long[] computeRangeBounds(final List<Tuple2<Long, long[]>> samples, final int numPartitions) {
+        final List<Tuple2<Long, Double>> weightedKeys = new ArrayList<>();
+        double totalWeight = 0.0;
+        for (final Tuple2<Long, long[]> sample : samples) {
+            if (sample._2().length == 0) {
+                continue;
+            }
+            final double weight = (double) sample._1() / sample._2().length;
+            for (final long key : sample._2()) {
+                weightedKeys.add(new Tuple2<>(key, weight));
+            }
+            totalWeight += sample._1();
+        }
+        weightedKeys.sort((a, b) -> Long.compare(a._1(), b._1()));
+
+        final LongArrayList bounds = new LongArrayList();
+        final double step = totalWeight / numPartitions;
+        double cumulativeWeight = 0.0;
+        double target = step;
+        for (final Tuple2<Long, Double> weightedKey : weightedKeys) {
+            if (bounds.size() == numPartitions - 1) {
+                break;
+            }
+            cumulativeWeight += weightedKey._2();
+            if (cumulativeWeight >= target && (bounds.isEmpty() || weightedKey._1() > bounds.getLong(bounds.size() - 1))) {
+                bounds.add(weightedKey._1().longValue());
+                target += step;
+            }
+        }
+        return bounds.toLongArray();
+    }
+
+    /**
+     * Finishes the sort of a partition of reads that are already in key order, by sorting each run of reads having
+     * the same key with the full comparator. Only one run is held in memory at a time.
+     */
+    private static Iterator<GATKRead> sortRuns(final Iterator<Tuple2<Long, GATKRead>> it, final ReadCoordinateComparator comparator) {
+        final PeekableIterator<Tuple2<Long, GATKRead>> pairs = new PeekableIterator<>(it);
+        final List<GATKRead> run = new ArrayList<>();
+        return new Iterator<GATKRead>() {
+            private int runIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return runIndex < run.size() || pairs.hasNext();
+            }
+
+            @Override
+            public GATKRead next() {
+                if (runIndex == run.size()) {
+                    if (!pairs.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    run.clear();
+                    runIndex = 0;
+                    final long key = pairs.peek()._1();
+                    while (pairs.hasNext() && pairs.peek()._1() == key) {
+                        run.add(pairs.next()._2());
+                    }
+                    if (run.size() > 1) {
+                        // only reads at the same position need the full comparison
+                        run.sort(comparator);
+                    }
+                }
+                return run.get(runIndex++);
+            }
+        };
+    }
+
+    /**
+     * Assigns each coordinate key to the partition whose range holds it.
+     */
+    static final class CoordinateKeyRangePartitioner extends Partitioner {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] upperBounds;
+
+        CoordinateKeyRangePartitioner(final long[] upperBounds) {
+            this.upperBounds = upperBounds;
+        }
+
+        @Override
+        public int numPartitions() {
+            return upperBounds.length + 1;
+        }
+
+        @Override
+        public int getPartition(final Object key) {
+            final int index = Arrays.binarySearch(upperBounds, (Long) key);
+            // an exact match is the last key of its range; otherwise the key goes in the range of the next bound
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -43,6 +43,9 @@ public abstract class ReadWalkerSpark extends GATKSparkTool {
     @Argument(doc = "whether to use the shuffle implementation or not", shortName = "shuffle", fullName = "shuffle", optional = true)
     public boolean shuffle = false;
 
+    @Argument(fullName="loadFeaturesIntoMemory", shortName="loadFeaturesIntoMemory", doc = "Read all the features from the feature inputs into memory once per executor, and share them between its tasks, rather than querying the feature files from each task. The features must fit in memory.", optional = true)
+    public boolean loadFeaturesIntoMemory = false;
+
     void initializeFeatures() {
         features = new FeatureManager(this, FEATURE_CACHE_LOOKAHEAD);
         if ( features.isEmpty() ) {  // No available sources of Features discovered for this tool
@@ -64,21 +67,22 @@ public abstract class ReadWalkerSpark extends GATKSparkTool {
         final List<ShardBoundary> intervalShards = intervals.stream()
                 .flatMap(interval -> Shard.divideIntervalIntoShards(interval, readShardSize, 0, sequenceDictionary).stream())
                 .collect(Collectors.toList());
-        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle);
+        JavaRDD<Shard<GATKRead>> shardedReads = SparkSharder.shard(ctx, getReads(), GATKRead.class, sequenceDictionary, intervalShards, readShardSize, shuffle, targetTaskSize);
         Broadcast<ReferenceMultiSource> bReferenceSource = hasReference() ? ctx.broadcast(getReference()) : null;
         Broadcast<FeatureManager> bFeatureManager = features == null ? null : ctx.broadcast(features);
-        return shardedReads.flatMap(getReadsFunction(bReferenceSource, bFeatureManager, sequenceDictionary, readShardPadding));
+        return shardedReads.flatMap(getReadsFunction(bReferenceSource, bFeatureManager, loadFeaturesIntoMemory, sequenceDictionary, readShardPadding));
     }
 
     private static FlatMapFunction<Shard<GATKRead>, ReadWalkerContext> getReadsFunction(
             Broadcast<ReferenceMultiSource> bReferenceSource, Broadcast<FeatureManager> bFeatureManager,
-            SAMSequenceDictionary sequenceDictionary, int readShardPadding) {
+            boolean loadFeaturesIntoMemory, SAMSequenceDictionary sequenceDictionary, int readShardPadding) {
         return (FlatMapFunction<Shard<GATKRead>, ReadWalkerContext>) shard -> {
             // get reference bases for this shard (padded)
             SimpleInterval paddedInterval = shard.getInterval().expandWithinContig(readShardPadding, sequenceDictionary);
             ReferenceDataSource reference = bReferenceSource == null ? null :
                     new ReferenceMemorySource(bReferenceSource.getValue().getReferenceBases(null, paddedInterval), sequenceDictionary);
-            FeatureManager features = bFeatureManager == null ? null : bFeatureManager.getValue();
+            FeatureSource features = bFeatureManager == null ? null :
+                    loadFeaturesIntoMemory ? FeatureStoreSingleton.getInstance(bFeatureManager) : bFeatureManager.getValue();
 
             return StreamSupport.stream(shard.spliterator(), false)
                     .map(r -> {
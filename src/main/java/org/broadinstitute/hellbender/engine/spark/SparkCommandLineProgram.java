@@ -30,12 +30,39 @@ public abstract class SparkCommandLineProgram extends CommandLineProgram impleme
     @ArgumentCollection
     public SparkCommandLineArgumentCollection sparkArgs = new SparkCommandLineArgumentCollection();
 
+    @Argument(doc = "If specified, write a JSON report of the task metrics of each Spark stage to this path, for example next to the output",
+            shortName = "sparkMetricsReport", fullName = "sparkMetricsReport", optional = true)
+    public String sparkMetricsReport = null;
+
 
     @Override
     protected Object doWork() {
         final JavaSparkContext ctx = SparkContextFactory.getSparkContext(getProgramName(), sparkArgs.getSparkProperties(), sparkArgs.getSparkMaster());
         try{
-            runPipeline(ctx);
+            final SparkStageMetricsListener metricsListener = sparkMetricsReport == null ? null : SparkStageMetricsListener.register(ctx);
+            Throwable pipelineFailure = null;
+            try {
+                runPipeline(ctx);
+            } catch (final Throwable t) {
+                pipelineFailure = t;
+                throw t;
+            } finally {
+                // report the stages that ran even if the pipeline failed, and close the listener either way
+                if (metricsListener != null) {
+                    try {
+                        metricsListener.writeReport(ctx, sparkMetricsReport, getAuthenticatedGCSOptions());
+                    } catch (final RuntimeException e) {
+                        // a failure to write the report mustn't hide the failure of the pipeline itself
+                        if (pipelineFailure == null) {
+                            throw e;
+                        }
+                        logger.error("Unable to write the Spark metrics report after the pipeline failed", e);
+                        pipelineFailure.addSuppressed(e);
+                    } finally {
+                        metricsListener.close();
+                    }
+                }
+            }
             return null;
         } finally {
             afterPipeline(ctx);
@@ -6,6 +6,12 @@ import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.Locatable;
 import htsjdk.samtools.util.OverlapDetector;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.Dependency;
+import org.apache.spark.OneToOneDependency;
+import org.apache.spark.Partition;
 import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -14,21 +20,28 @@ import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.FlatMapFunction2;
 import org.apache.spark.api.java.function.MapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.rdd.NewHadoopPartition;
 import org.apache.spark.rdd.PartitionCoalescer;
 import org.apache.spark.rdd.RDD;
 import org.broadinstitute.hellbender.engine.Shard;
 import org.broadinstitute.hellbender.engine.ShardBoundary;
 import org.broadinstitute.hellbender.engine.ShardBoundaryShard;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.seqdoop.hadoop_bam.FileVirtualSplit;
 import scala.Option;
 import scala.Tuple2;
+import scala.collection.Seq;
 import scala.reflect.ClassTag;
 import scala.reflect.ClassTag$;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.broadinstitute.hellbender.utils.IntervalUtils.overlaps;
 
@@ -36,6 +49,8 @@ import static org.broadinstitute.hellbender.utils.IntervalUtils.overlaps;
  * Utility methods for sharding {@link Locatable} objects (such as reads) for given intervals, without using a shuffle.
  */
 public class SparkSharder {
+    private static final Logger logger = LogManager.getLogger(SparkSharder.class);
+
     /**
      * Create an RDD of {@link Shard} from an RDD of coordinate sorted {@link Locatable} <i>without using a shuffle</i>.
      * Each shard contains the {@link Locatable} objects that overlap it (including overlapping only padding).
@@ -70,6 +85,29 @@ public class SparkSharder {
     public static <L extends Locatable> JavaRDD<Shard<L>> shard(JavaSparkContext ctx, JavaRDD<L> locatables, Class<L> locatableClass,
                                                                 SAMSequenceDictionary sequenceDictionary, List<ShardBoundary> intervals,
                                                                 int maxLocatableLength, boolean useShuffle) {
+        return shard(ctx, locatables, locatableClass, sequenceDictionary, intervals, maxLocatableLength, useShuffle, 0);
+    }
+
+    /**
+     * Create an RDD of {@link Shard} from an RDD of coordinate sorted {@link Locatable}, optionally using a shuffle,
+     * and optionally packing adjacent partitions of locatables into tasks of a target size.
+     * @param ctx the Spark Context
+     * @param locatables the RDD of {@link Locatable}, must be coordinate sorted
+     * @param locatableClass the class of the {@link Locatable} objects in the RDD
+     * @param sequenceDictionary the sequence dictionary to use to find contig lengths
+     * @param intervals the {@link ShardBoundary} objects to create shards for, must be coordinate sorted
+     * @param maxLocatableLength the maximum length of a {@link Locatable}, if any is larger than this size then an exception will be thrown
+     * @param useShuffle whether to use a shuffle or not
+     * @param targetPartitionSize if positive (and not using a shuffle), adjacent partitions are packed into tasks of
+     *                            up to this many bytes, estimated from the input splits of the RDD (see
+     *                            {@link #estimatePartitionSizes}); if zero, each partition is processed in its own task
+     * @param <L> the {@link Locatable} type
+     * @return an RDD of {@link Shard} of overlapping {@link Locatable} objects (including overlapping only padding)
+     */
+    public static <L extends Locatable> JavaRDD<Shard<L>> shard(JavaSparkContext ctx, JavaRDD<L> locatables, Class<L> locatableClass,
+                                                                SAMSequenceDictionary sequenceDictionary, List<ShardBoundary> intervals,
+                                                                int maxLocatableLength, boolean useShuffle, long targetPartitionSize) {
+        Utils.validateArg(targetPartitionSize >= 0, "targetPartitionSize must be >= 0");
 
         List<ShardBoundary> paddedIntervals = intervals.stream().map(sb -> new ShardBoundary(sb.getInterval(), sb.getPaddedInterval()) {
             private static final long serialVersionUID = 1L;
@@ -96,7 +134,12 @@ public class SparkSharder {
             JavaPairRDD<ShardBoundary, Iterable<L>> grouped = intervalsToLocatables.groupByKey();
             return grouped.map((org.apache.spark.api.java.function.Function<Tuple2<ShardBoundary, Iterable<L>>, Shard<L>>) value -> new ShardBoundaryShard<>(value._1(), value._2()));
         }
+        final long[] partitionSizes = targetPartitionSize > 0 ? estimatePartitionSizes(locatables.rdd()) : null;
+        if (targetPartitionSize > 0 && partitionSizes == null) {
+            logger.warn("Unable to estimate the sizes of the partitions, so they will not be packed into larger tasks");
+        }
         return joinOverlapping(ctx, locatables, locatableClass, sequenceDictionary, paddedIntervals, maxLocatableLength,
+                partitionSizes, targetPartitionSize,
                 new MapFunction<Tuple2<ShardBoundary, Iterable<L>>, Shard<L>>() {
             private static final long serialVersionUID = 1L;
             @Override
@@ -106,6 +149,104 @@ public class SparkSharder {
         });
     }
 
+    /**
+     * Divide intervals into {@link ShardBoundary} objects that each hold roughly the same number of locatables, rather
+     * than the same number of bases, so that high-depth regions are split over several shards instead of producing a
+     * few shards that take much longer to process than the rest.
+     *
+     * The density of locatables is estimated without reading the whole RDD: only the first locatable in each partition
+     * is read (as in {@link #computePartitionReadExtents}). Since the partitions of a coordinate-sorted RDD loaded from
+     * a file hold similar amounts of data, each partition is assumed to hold the same number of locatables, spread
+     * evenly between its first locatable and the first locatable of the next partition.
+     *
+     * A shard over a region of average density is <code>shardSize</code> bases long; shards over denser regions are
+     * shorter, and shards over sparser regions are longer, within the bounds of <code>minShardSize</code> and
+     * <code>maxShardSize</code>. If the density cannot be estimated, because no partition starts in or before the
+     * intervals, then the intervals are divided into shards of <code>shardSize</code> bases.
+     *
+     * The estimated distribution of locatables per shard, with and without taking density into account, is logged.
+     *
+     * @param locatables the RDD of {@link Locatable}, must be coordinate sorted
+     * @param sequenceDictionary the sequence dictionary to use to find contig lengths
+     * @param intervals the intervals to divide, must be coordinate sorted
+     * @param shardSize the size of a shard over a region of average density, in bases
+     * @param minShardSize the minimum size of a shard, in bases (a shard at the end of an interval may be smaller)
+     * @param maxShardSize the maximum size of a shard, in bases
+     * @param shardPadding the number of bases of padding to add on each side of each shard
+     * @param <L> the {@link Locatable} type
+     * @return the {@link ShardBoundary} objects spanning the intervals, in coordinate order
+     */
+    public static <L extends Locatable> List<ShardBoundary> divideIntervalsByLocatableDensity(JavaRDD<L> locatables, SAMSequenceDictionary sequenceDictionary,
+                                                                                            List<SimpleInterval> intervals, int shardSize, int minShardSize,
+                                                                                            int maxShardSize, int shardPadding) {
+        Utils.validateArg(shardSize >= 1, "shardSize must be >= 1");
+        Utils.validateArg(minShardSize >= 1, "minShardSize must be >= 1");
+        Utils.validateArg(minShardSize <= maxShardSize, "minShardSize must be <= maxShardSize");
+
+        final List<ShardBoundary> fixedShards = intervals.stream()
+                .flatMap(interval -> Shard.divideIntervalIntoShards(interval, shardSize, shardPadding, sequenceDictionary).stream())
+                .collect(Collectors.toList());
+        final LocatableDensity density = new LocatableDensity(sequenceDictionary, collectPartitionSplitPoints(locatables));
+        final double totalCount = intervals.stream().mapToDouble(density::count).sum();
+        if (totalCount == 0) {
+            logger.warn("Unable to estimate the density of locatables in the intervals, using shards of " + shardSize + " bases");
+            return fixedShards;
+        }
+        final long totalSize = intervals.stream().mapToLong(SimpleInterval::size).sum();
+        final double targetCount = totalCount / totalSize * shardSize;
+
+        final List<ShardBoundary> shards = new ArrayList<>();
+        for (SimpleInterval interval : intervals) {
+            shards.addAll(divideIntervalByLocatableDensity(interval, density, targetCount, minShardSize, maxShardSize, shardPadding, sequenceDictionary));
+        }
+        logger.info(String.format("Estimated load of %d shards of %d bases: %s", fixedShards.size(), shardSize, describeLoad(fixedShards, density)));
+        logger.info(String.format("Estimated load of %d shards sized by density: %s", shards.size(), describeLoad(shards, density)));
+        return shards;
+    }
+
+    /**
+     * Divide an interval into shards that are each estimated to hold <code>targetCount</code> locatables, within the
+     * size bounds given.
+     */
+    static List<ShardBoundary> divideIntervalByLocatableDensity(SimpleInterval interval, LocatableDensity density, double targetCount,
+                                                                int minShardSize, int maxShardSize, int shardPadding,
+                                                                SAMSequenceDictionary sequenceDictionary) {
+        final List<ShardBoundary> shards = new ArrayList<>();
+        int start = interval.getStart();
+        while (start <= interval.getEnd()) {
+            // find the smallest end that gives a shard with the target count, using the fact that the count is monotonic in the end
+            int minEnd = (int) Math.min((long) start + minShardSize - 1, interval.getEnd());
+            int maxEnd = (int) Math.min((long) start + maxShardSize - 1, interval.getEnd());
+            while (minEnd < maxEnd) {
+                int mid = minEnd + (maxEnd - minEnd) / 2;
+                if (density.count(interval.getContig(), start, mid) >= targetCount) {
+                    maxEnd = mid;
+                } else {
+                    minEnd = mid + 1;
+                }
+            }
+            SimpleInterval shardInterval = new SimpleInterval(interval.getContig(), start, minEnd);
+            shards.add(new ShardBoundary(shardInterval, shardInterval.expandWithinContig(shardPadding, sequenceDictionary)));
+            start = minEnd + 1;
+        }
+        return shards;
+    }
+
+    /**
+     * @return a summary of the distribution of the estimated number of locatables per shard, where the unit is the
+     * contents of one partition
+     */
+    private static String describeLoad(List<ShardBoundary> shards, LocatableDensity density) {
+        if (shards.isEmpty()) {
+            return "no shards";
+        }
+        double[] counts = shards.stream().mapToDouble(density::count).sorted().toArray();
+        double median = counts[counts.length / 2];
+        double max = counts[counts.length - 1];
+        return String.format("median %.3g partitions, max %.3g partitions (%s times the median)",
+                median, max, median == 0 ? "n/a" : String.format("%.1f", max / median));
+    }
+
     /**
      * Join an RDD of locatables with a set of intervals, and apply a function to process the locatables that overlap each interval.
      * @param ctx the Spark Context
@@ -114,16 +255,21 @@ public class SparkSharder {
      * @param sequenceDictionary the sequence dictionary to use to find contig lengths
      * @param intervals the collection of intervals to apply the function to
      * @param maxLocatableLength the maximum length of a {@link Locatable}, if any is larger than this size then an exception will be thrown
+     * @param partitionSizes the estimated size of each partition of locatables, or null if not known
+     * @param targetPartitionSize if positive, and the partition sizes are known, adjacent partitions are packed into
+     *                            tasks of up to this size
      * @param f the function to process intervals and overlapping locatables with
      * @param <L> the {@link Locatable} type
      * @param <I> the interval type
      * @param <T> the return type of <code>f</code>
      * @return
      */
-    private static <L extends Locatable, I extends Locatable, T> JavaRDD<T> joinOverlapping(JavaSparkContext ctx, JavaRDD<L> locatables, Class<L> locatableClass,
-                                                                                            SAMSequenceDictionary sequenceDictionary, List<I> intervals,
-                                                                                            int maxLocatableLength, MapFunction<Tuple2<I, Iterable<L>>, T> f) {
+    static <L extends Locatable, I extends Locatable, T> JavaRDD<T> joinOverlapping(JavaSparkContext ctx, JavaRDD<L> locatables, Class<L> locatableClass,
+                                                                                    SAMSequenceDictionary sequenceDictionary, List<I> intervals,
+                                                                                    int maxLocatableLength, long[] partitionSizes, long targetPartitionSize,
+                                                                                    MapFunction<Tuple2<I, Iterable<L>>, T> f) {
         return joinOverlapping(ctx, locatables, locatableClass, sequenceDictionary, intervals, maxLocatableLength,
+                partitionSizes, targetPartitionSize,
                 (FlatMapFunction2<Iterator<L>, Iterator<I>, T>) (locatablesIterator, shardsIterator) -> Iterators.transform(locatablesPerShard(locatablesIterator, shardsIterator, sequenceDictionary, maxLocatableLength), new Function<Tuple2<I,Iterable<L>>, T>() {
                     @Nullable
                     @Override
@@ -139,7 +285,7 @@ public class SparkSharder {
 
     /**
      * Join an RDD of locatables with a set of intervals, and apply a function to process the locatables that overlap each interval.
-     * This differs from {@link #joinOverlapping(JavaSparkContext, JavaRDD, Class, SAMSequenceDictionary, List, int, MapFunction)}
+     * This differs from {@link #joinOverlapping(JavaSparkContext, JavaRDD, Class, SAMSequenceDictionary, List, int, long[], long, MapFunction)}
      * in that the function to apply is given two iterators: one over intervals, and one over locatables (for the partition),
      * and it is up to the function implemention to find overlaps between intervals and locatables.
      * @param ctx the Spark Context
@@ -148,6 +294,9 @@ public class SparkSharder {
      * @param sequenceDictionary the sequence dictionary to use to find contig lengths
      * @param intervals the collection of intervals to apply the function to
      * @param maxLocatableLength the maximum length of a {@link Locatable}, if any is larger than this size then an exception will be thrown
+     * @param partitionSizes the estimated size of each partition of locatables, or null if not known
+     * @param targetPartitionSize if positive, and the partition sizes are known, adjacent partitions are packed into
+     *                            tasks of up to this size
      * @param f the function to process intervals and overlapping locatables with
      * @param <L> the {@link Locatable} type
      * @param <I> the interval type
@@ -156,7 +305,8 @@ public class SparkSharder {
      */
     private static <L extends Locatable, I extends Locatable, T> JavaRDD<T> joinOverlapping(JavaSparkContext ctx, JavaRDD<L> locatables, Class<L> locatableClass,
                                                                                             SAMSequenceDictionary sequenceDictionary, List<I> intervals,
-                                                                                            int maxLocatableLength, FlatMapFunction2<Iterator<L>, Iterator<I>, T> f) {
+                                                                                            int maxLocatableLength, long[] partitionSizes, long targetPartitionSize,
+                                                                                            FlatMapFunction2<Iterator<L>, Iterator<I>, T> f) {
 
         List<PartitionLocatable<SimpleInterval>> partitionReadExtents = computePartitionReadExtents(locatables, sequenceDictionary, maxLocatableLength);
 
@@ -186,14 +336,45 @@ public class SparkSharder {
             }
         }
 
-        JavaRDD<L> coalescedRdd = coalesce(locatables, locatableClass, new RangePartitionCoalescer(maxEndPartitionIndexes));
+        // Each task processes the intervals that start in a run of adjacent partitions: by default a single partition,
+        // but small partitions are packed together if their sizes are known. A task reads the partitions from the
+        // first in its run up to the latest one needed by any of its intervals.
+        List<Integer> startPartitionIndexes = targetPartitionSize > 0 && partitionSizes != null ?
+                packPartitions(partitionSizes, targetPartitionSize) :
+                IntStream.range(0, locatables.getNumPartitions()).boxed().collect(Collectors.toList());
+        int[] taskIndexes = new int[locatables.getNumPartitions()];
+        List<Integer> taskMaxEndPartitionIndexes = new ArrayList<>();
+        for (int task = 0; task < startPartitionIndexes.size(); task++) {
+            int end = task < startPartitionIndexes.size() - 1 ? startPartitionIndexes.get(task + 1) : locatables.getNumPartitions();
+            int maxEndPartitionIndex = end - 1;
+            for (int i = startPartitionIndexes.get(task); i < end; i++) {
+                taskIndexes[i] = task;
+                maxEndPartitionIndex = Math.max(maxEndPartitionIndex, maxEndPartitionIndexes.get(i));
+            }
+            taskMaxEndPartitionIndexes.add(maxEndPartitionIndex);
+        }
+        if (startPartitionIndexes.size() < locatables.getNumPartitions()) {
+            logger.info(String.format("Packed %d partitions into %d tasks", locatables.getNumPartitions(), startPartitionIndexes.size()));
+        }
 
-        // Create an RDD of intervals with the same number of partitions as the locatables, and where each interval
-        // is in its start partition.
-        JavaRDD<I> intervalsRdd = ctx.parallelize(indexedIntervals)
-                .mapToPair(interval ->
-                        new Tuple2<>(interval.getPartitionIndex(), interval.getLocatable()))
-                .partitionBy(new KeyPartitioner(locatables.getNumPartitions())).values();
+        JavaRDD<L> coalescedRdd = coalesce(locatables, locatableClass,
+                new RangePartitionCoalescer(startPartitionIndexes, taskMaxEndPartitionIndexes), startPartitionIndexes.size());
+
+        // Create an RDD of intervals with the same number of partitions as there are tasks, and where each interval
+        // is in the task of its start partition. The intervals are numbered so that they can be put back in order
+        // after the shuffle.
+        List<Tuple2<Integer, Tuple2<Integer, I>>> keyedIntervals = new ArrayList<>(indexedIntervals.size());
+        for (int i = 0; i < indexedIntervals.size(); i++) {
+            PartitionLocatable<I> interval = indexedIntervals.get(i);
+            keyedIntervals.add(new Tuple2<>(taskIndexes[interval.getPartitionIndex()], new Tuple2<>(i, interval.getLocatable())));
+        }
+        JavaRDD<I> intervalsRdd = ctx.parallelizePairs(keyedIntervals)
+                .partitionBy(new KeyPartitioner(startPartitionIndexes.size())).values()
+                .mapPartitions(it -> {
+                    List<Tuple2<Integer, I>> numberedIntervals = Lists.newArrayList(it);
+                    numberedIntervals.sort(Comparator.comparing(Tuple2::_1));
+                    return Iterators.transform(numberedIntervals.iterator(), Tuple2::_2);
+                }, true);
 
         // zipPartitions on coalesced locatable partitions and intervals, and apply the function f
         return coalescedRdd.zipPartitions(intervalsRdd, f);
@@ -265,18 +446,7 @@ public class SparkSharder {
      * For each partition, find the interval that spans it.
      */
     static <L extends Locatable> List<PartitionLocatable<SimpleInterval>> computePartitionReadExtents(JavaRDD<L> locatables, SAMSequenceDictionary sequenceDictionary, int maxLocatableLength) {
-        // Find the first locatable in each partition. This is very efficient since only the first record in each partition is read.
-        // If a partition is empty then set the locatable to null
-        List<PartitionLocatable<L>> allSplitPoints = locatables.mapPartitions(
-                (FlatMapFunction<Iterator<L>, PartitionLocatable<L>>) it -> ImmutableList.of(new PartitionLocatable<>(-1, it.hasNext() ? it.next() : null)).iterator()
-        ).collect();
-        List<PartitionLocatable<L>> splitPoints = new ArrayList<>(); // fill in index and remove nulls (empty partitions)
-        for (int i = 0; i < allSplitPoints.size(); i++) {
-            L locatable = allSplitPoints.get(i).getLocatable();
-            if (locatable != null) {
-                splitPoints.add(new PartitionLocatable<L>(i, locatable));
-            }
-        }
+        List<PartitionLocatable<L>> splitPoints = collectPartitionSplitPoints(locatables);
         List<PartitionLocatable<SimpleInterval>> extents = new ArrayList<>();
         for (int i = 0; i < splitPoints.size(); i++) {
             PartitionLocatable<L> splitPoint = splitPoints.get(i);
@@ -312,13 +482,95 @@ public class SparkSharder {
         return extents;
     }
 
+    /**
+     * Find the first locatable in each non-empty partition. This is very efficient since only the first record in each partition is read.
+     */
+    private static <L extends Locatable> List<PartitionLocatable<L>> collectPartitionSplitPoints(JavaRDD<L> locatables) {
+        // If a partition is empty then set the locatable to null
+        List<PartitionLocatable<L>> allSplitPoints = locatables.mapPartitions(
+                (FlatMapFunction<Iterator<L>, PartitionLocatable<L>>) it -> ImmutableList.of(new PartitionLocatable<>(-1, it.hasNext() ? it.next() : null)).iterator()
+        ).collect();
+        List<PartitionLocatable<L>> splitPoints = new ArrayList<>(); // fill in index and remove nulls (empty partitions)
+        for (int i = 0; i < allSplitPoints.size(); i++) {
+            L locatable = allSplitPoints.get(i).getLocatable();
+            if (locatable != null) {
+                splitPoints.add(new PartitionLocatable<L>(i, locatable));
+            }
+        }
+        return splitPoints;
+    }
+
     private static void addPartitionReadExtent(List<PartitionLocatable<SimpleInterval>> extents, int partitionIndex, String contig, int start, int end) {
         SimpleInterval extent = new SimpleInterval(contig, start, end);
         extents.add(new PartitionLocatable<>(partitionIndex, extent));
     }
 
-    private static <T> JavaRDD<T> coalesce(JavaRDD<T> rdd, Class<T> cls, PartitionCoalescer partitionCoalescer) {
-        RDD<T> coalescedRdd = rdd.rdd().coalesce(rdd.getNumPartitions(), false, Option.apply(partitionCoalescer), null);
+    /**
+     * Choose runs of adjacent partitions to process together, so that each run holds up to the target size (or a single
+     * partition if it is larger than the target on its own). Packing only adjacent partitions keeps the locatables of
+     * each task in one coordinate range, as they are in each partition.
+     * @param partitionSizes the estimated size of each partition
+     * @param targetPartitionSize the maximum total size of a run of more than one partition
+     * @return the index of the first partition in each run
+     */
+    static List<Integer> packPartitions(long[] partitionSizes, long targetPartitionSize) {
+        Utils.validateArg(targetPartitionSize > 0, "targetPartitionSize must be positive");
+        List<Integer> startPartitionIndexes = new ArrayList<>();
+        long runSize = 0;
+        for (int i = 0; i < partitionSizes.length; i++) {
+            if (i == 0 || runSize + partitionSizes[i] > targetPartitionSize) {
+                startPartitionIndexes.add(i);
+                runSize = 0;
+            }
+            runSize += partitionSizes[i];
+        }
+        return startPartitionIndexes;
+    }
+
+    /**
+     * Estimate the size of each partition of an RDD from the Hadoop input splits it was read from: an RDD loaded with
+     * {@link JavaSparkContext#newAPIHadoopFile} (such as the reads from {@link org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource}),
+     * or derived from one by transformations that keep its partitions (such as map and filter). No data is read.
+     * @return the size in bytes of the input split of each partition, or null if the RDD wasn't derived from one in this way
+     */
+    static long[] estimatePartitionSizes(RDD<?> rdd) {
+        RDD<?> current = rdd;
+        while (true) {
+            Partition[] partitions = current.partitions();
+            if (partitions.length != rdd.getNumPartitions()) {
+                return null;
+            }
+            if (partitions.length > 0 && Arrays.stream(partitions).allMatch(p -> p instanceof NewHadoopPartition)) {
+                long[] sizes = new long[partitions.length];
+                for (int i = 0; i < partitions.length; i++) {
+                    InputSplit split = ((NewHadoopPartition) partitions[i]).serializableHadoopSplit().value();
+                    sizes[i] = getSplitLength(split);
+                }
+                return sizes;
+            }
+            Seq<Dependency<?>> dependencies = current.dependencies();
+            if (dependencies.size() != 1 || !(dependencies.apply(0) instanceof OneToOneDependency)) {
+                return null;
+            }
+            current = dependencies.apply(0).rdd();
+        }
+    }
+
+    private static long getSplitLength(InputSplit split) {
+        if (split instanceof FileVirtualSplit) {
+            // the length of a FileVirtualSplit is not in bytes, so use its compressed byte offsets
+            FileVirtualSplit virtualSplit = (FileVirtualSplit) split;
+            return Math.max((virtualSplit.getEndVirtualOffset() >>> 16) - (virtualSplit.getStartVirtualOffset() >>> 16), 1);
+        }
+        try {
+            return split.getLength();
+        } catch (IOException | InterruptedException e) {
+            throw new GATKException("Unable to get the length of input split " + split, e);
+        }
+    }
+
+    private static <T> JavaRDD<T> coalesce(JavaRDD<T> rdd, Class<T> cls, PartitionCoalescer partitionCoalescer, int numPartitions) {
+        RDD<T> coalescedRdd = rdd.rdd().coalesce(numPartitions, false, Option.apply(partitionCoalescer), null);
         ClassTag<T> tag = ClassTag$.MODULE$.apply(cls);
         return new JavaRDD<>(coalescedRdd, tag);
     }
@@ -345,6 +597,82 @@ public class SparkSharder {
 
     }
 
+    /**
+     * An estimate of the number of locatables at each position, made from the first locatable in each partition of a
+     * coordinate-sorted RDD. Each partition is counted as one unit, spread evenly from its first locatable up to the
+     * first locatable of the next partition (or the end of the contig for the last partition). Partitions that start
+     * at the same position as the next partition are counted as one unit at that position.
+     */
+    static final class LocatableDensity {
+        private final SAMSequenceDictionary sequenceDictionary;
+        // the position of the first base of each contig, with the contigs laid end to end
+        private final long[] contigOffsets;
+        // the 0-based half-open span of each partition, with the contigs laid end to end; both arrays are sorted
+        private final long[] starts;
+        private final long[] ends;
+
+        LocatableDensity(SAMSequenceDictionary sequenceDictionary, List<? extends Locatable> splitPoints) {
+            this.sequenceDictionary = sequenceDictionary;
+            contigOffsets = new long[sequenceDictionary.size() + 1];
+            for (int i = 0; i < sequenceDictionary.size(); i++) {
+                contigOffsets[i + 1] = contigOffsets[i] + sequenceDictionary.getSequence(i).getSequenceLength();
+            }
+            // unmapped locatables (which sort last) have no position so are ignored
+            List<? extends Locatable> mappedSplitPoints = splitPoints.stream()
+                    .filter(l -> l.getContig() != null && sequenceDictionary.getSequenceIndex(l.getContig()) != -1)
+                    .collect(Collectors.toList());
+            starts = new long[mappedSplitPoints.size()];
+            ends = new long[mappedSplitPoints.size()];
+            for (int i = 0; i < starts.length; i++) {
+                Locatable splitPoint = mappedSplitPoints.get(i);
+                starts[i] = contigOffsets[sequenceDictionary.getSequenceIndex(splitPoint.getContig())] + splitPoint.getStart() - 1;
+            }
+            for (int i = 0; i < starts.length; i++) {
+                long end = i < starts.length - 1 ? starts[i + 1] :
+                        contigOffsets[sequenceDictionary.getSequenceIndex(mappedSplitPoints.get(i).getContig()) + 1];
+                ends[i] = Math.max(end, starts[i] + 1);
+            }
+        }
+
+        /**
+         * @return the estimated number of locatables starting in the given locatable, in units of partitions
+         */
+        double count(Locatable locatable) {
+            return count(locatable.getContig(), locatable.getStart(), locatable.getEnd());
+        }
+
+        /**
+         * @return the estimated number of locatables starting in the given 1-based closed interval, in units of partitions
+         */
+        double count(String contig, int start, int end) {
+            long contigOffset = contigOffsets[sequenceDictionary.getSequenceIndex(contig)];
+            return countBefore(contigOffset + end) - countBefore(contigOffset + start - 1);
+        }
+
+        /**
+         * @return the estimated number of locatables starting before the given 0-based position
+         */
+        private double countBefore(long position) {
+            // the partitions that end at or before the position come first, since the ends are sorted
+            int lo = 0;
+            int hi = ends.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ends[mid] <= position) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            double count = lo;
+            // then add the parts of those that straddle the position (of which there are at most a few)
+            for (int i = lo; i < starts.length && starts[i] < position; i++) {
+                count += (double) (position - starts[i]) / (ends[i] - starts[i]);
+            }
+            return count;
+        }
+    }
+
     static class PartitionLocatable<L extends Locatable> implements Locatable {
         private static final long serialVersionUID = 1L;
 
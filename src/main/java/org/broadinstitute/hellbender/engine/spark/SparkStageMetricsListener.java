@@ -0,0 +1,408 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.AccumulableInfo;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerJobEnd;
+import org.apache.spark.scheduler.SparkListenerJobStart;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.SparkListenerStageSubmitted;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.scheduler.StageInfo;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+import scala.collection.JavaConversions;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the task metrics of every Spark stage run while it is registered, and writes them as a JSON report, so that
+ * the performance of a run can be looked at after the application (and its Spark UI) is gone, and compared between
+ * runs and versions, in local mode too.
+ *
+ * Each Spark stage is attributed to the logical GATK stage (such as "load", "apply" or "write") that was set with
+ * {@link #setStage} on the thread that ran its job. Since Spark runs narrow transformations in the stage of the action
+ * that forces them, a GATK stage covers the Spark stages of the jobs started while it was set; the Spark stage names
+ * (their call sites) distinguish the stages within it.
+ *
+ * For each stage the report has the distribution of task durations (min, 50th, 90th and 99th percentiles and max), its
+ * skew (the ratio of the longest task to the median), the records and bytes read and written (including shuffles),
+ * and the GC and run time of its tasks. The values of named accumulators, such as those a tool creates to count its
+ * own records, are reported for the stages that updated them.
+ *
+ * Spark (as of 2.0) has no public way to remove a listener, so once the report is written the listener is closed, and
+ * ignores any later events.
+ */
+public final class SparkStageMetricsListener extends SparkListener {
+    private static final Logger logger = LogManager.getLogger(SparkStageMetricsListener.class);
+
+    /**
+     * The Spark local property that holds the name of the current GATK stage.
+     */
+    public static final String GATK_STAGE_PROPERTY = "gatk.stage";
+
+    // the Spark local property that marks the job run to wait for the events of earlier jobs
+    private static final String MARKER_JOB_PROPERTY = "gatk.metricsMarker";
+
+    private static final String UNNAMED_STAGE = "other";
+    private static final long EVENT_TIMEOUT_MILLIS = 10000;
+
+    // the Spark stage attempts, in the order they were submitted
+    private final Map<String, StageMetrics> stages = new LinkedHashMap<>();
+    // the stages of the marker job, which aren't reported
+    private final Set<Integer> markerStageIds = new HashSet<>();
+    private int markerJobId = -1;
+    private boolean markerJobEnded = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a listener and adds it to the context.
+     */
+    public static SparkStageMetricsListener register(final JavaSparkContext ctx) {
+        final SparkStageMetricsListener listener = new SparkStageMetricsListener();
+        ctx.sc().addSparkListener(listener);
+        return listener;
+    }
+
+    /**
+     * Sets the GATK stage that the Spark jobs started from this thread belong to.
+     * @param stage the name of the stage, or null for none
+     * @return the previous stage, so that it can be restored, or null if there was none
+     */
+    public static String setStage(final JavaSparkContext ctx, final String stage) {
+        final String previous = ctx.getLocalProperty(GATK_STAGE_PROPERTY);
+        ctx.setLocalProperty(GATK_STAGE_PROPERTY, stage);
+        return previous;
+    }
+
+    @Override
+    public synchronized void onJobStart(final SparkListenerJobStart jobStart) {
+        if (!closed && jobStart.properties() != null && jobStart.properties().getProperty(MARKER_JOB_PROPERTY) != null) {
+            markerJobId = jobStart.jobId();
+            for (final Object stageId : JavaConversions.seqAsJavaList(jobStart.stageIds())) {
+                markerStageIds.add((Integer) stageId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onJobEnd(final SparkListenerJobEnd jobEnd) {
+        if (!closed && jobEnd.jobId() == markerJobId) {
+            markerJobEnded = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void onStageSubmitted(final SparkListenerStageSubmitted stageSubmitted) {
+        if (closed || markerStageIds.contains(stageSubmitted.stageInfo().stageId())) {
+            return;
+        }
+        final StageInfo info = stageSubmitted.stageInfo();
+        final String gatkStage = stageSubmitted.properties() == null ? null : stageSubmitted.properties().getProperty(GATK_STAGE_PROPERTY);
+        getStage(info.stageId(), info.attemptId()).setInfo(gatkStage == null ? UNNAMED_STAGE : gatkStage, info.name(), info.numTasks());
+    }
+
+    @Override
+    public synchronized void onTaskEnd(final SparkListenerTaskEnd taskEnd) {
+        // failed tasks may have no metrics, and would skew the durations of those that succeeded
+        if (closed || markerStageIds.contains(taskEnd.stageId())) {
+            return;
+        }
+        if (taskEnd.taskInfo() != null && taskEnd.taskInfo().successful() && taskEnd.taskMetrics() != null) {
+            getStage(taskEnd.stageId(), taskEnd.stageAttemptId()).addTask(taskEnd.taskInfo().duration(), taskEnd.taskMetrics());
+        }
+    }
+
+    @Override
+    public synchronized void onStageCompleted(final SparkListenerStageCompleted stageCompleted) {
+        if (closed || markerStageIds.contains(stageCompleted.stageInfo().stageId())) {
+            return;
+        }
+        final StageInfo info = stageCompleted.stageInfo();
+        final StageMetrics stage = getStage(info.stageId(), info.attemptId());
+        for (final AccumulableInfo accumulable : JavaConversions.asJavaIterable(info.accumulables().values())) {
+            if (!accumulable.internal() && accumulable.name().isDefined() && accumulable.value().isDefined()) {
+                stage.accumulators.put(accumulable.name().get(), accumulable.value().get().toString());
+            }
+        }
+    }
+
+    private StageMetrics getStage(final int stageId, final int attemptId) {
+        return stages.computeIfAbsent(stageId + "." + attemptId, k -> new StageMetrics(stageId, attemptId));
+    }
+
+    /**
+     * Waits for the events of the jobs that have finished to be delivered, closes this listener, and writes the report.
+     *
+     * @param path the local, HDFS or GCS path to write the JSON report to
+     * @param popts the pipeline options, needed to write to GCS (may be null otherwise)
+     */
+    public void writeReport(final JavaSparkContext ctx, final String path, final PipelineOptions popts) {
+        Utils.nonNull(path);
+        awaitEarlierEvents(ctx);
+        close();
+        try (final Writer writer = new OutputStreamWriter(BucketUtils.createFile(path, popts), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(path, "writing the Spark metrics report failed", e);
+        }
+        logger.info("Wrote Spark stage metrics to " + path);
+    }
+
+    /**
+     * Stops recording events. The metrics recorded so far can still be reported.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Runs a trivial marker job and waits for its end to be delivered: events are delivered in the order they are
+     * posted, so by then the events of every job that finished before it have been delivered too.
+     */
+    private void awaitEarlierEvents(final JavaSparkContext ctx) {
+        final String previous = ctx.getLocalProperty(MARKER_JOB_PROPERTY);
+        ctx.setLocalProperty(MARKER_JOB_PROPERTY, "true");
+        try {
+            ctx.parallelize(Collections.singletonList(0), 1).count();
+        } catch (final RuntimeException e) {
+            // e.g., the context was stopped by a failing pipeline
+            logger.warn("Couldn't wait for Spark events; the metrics report may be incomplete", e);
+            return;
+        } finally {
+            ctx.setLocalProperty(MARKER_JOB_PROPERTY, previous);
+        }
+        synchronized (this) {
+            final long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MILLIS;
+            try {
+                while (!markerJobEnded && !closed) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        logger.warn("Timed out waiting for Spark events; the metrics report may be incomplete");
+                        return;
+                    }
+                    wait(remaining);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted waiting for Spark events; the metrics report may be incomplete");
+            }
+        }
+    }
+
+    /**
+     * @return the report: the metrics of each Spark stage, and of each GATK stage over all its Spark stages
+     */
+    synchronized String toJson() {
+        final Map<String, StageMetrics> gatkStages = new LinkedHashMap<>();
+        for (final StageMetrics stage : stages.values()) {
+            gatkStages.computeIfAbsent(stage.gatkStage, name -> new StageMetrics(-1, -1).setInfo(name, name, 0)).add(stage);
+        }
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"gatkStages\": [");
+        appendStages(json, gatkStages.values(), false);
+        json.append("],\n  \"sparkStages\": [");
+        appendStages(json, stages.values(), true);
+        json.append("]\n}\n");
+        return json.toString();
+    }
+
+    private static void appendStages(final StringBuilder json, final Iterable<StageMetrics> stages, final boolean sparkStages) {
+        String separator = "\n";
+        for (final StageMetrics stage : stages) {
+            json.append(separator).append("    {");
+            if (sparkStages) {
+                appendField(json, "sparkStageId", stage.stageId);
+                appendField(json, "attemptId", stage.attemptId);
+                appendField(json, "name", stage.name);
+            }
+            appendField(json, "gatkStage", stage.gatkStage);
+            if (sparkStages) {
+                appendField(json, "numTasks", stage.numTasks);
+            } else {
+                appendField(json, "numSparkStages", stage.numSparkStages);
+            }
+            appendField(json, "numCompletedTasks", stage.taskDurations.size());
+            final long[] durations = stage.taskDurations.toLongArray();
+            Arrays.sort(durations);
+            appendField(json, "taskDurationMinMillis", percentile(durations, 0.0));
+            appendField(json, "taskDurationP50Millis", percentile(durations, 0.5));
+            appendField(json, "taskDurationP90Millis", percentile(durations, 0.9));
+            appendField(json, "taskDurationP99Millis", percentile(durations, 0.99));
+            appendField(json, "taskDurationMaxMillis", percentile(durations, 1.0));
+            appendField(json, "skew", String.format(Locale.US, "%.3f", skew(durations)), false);
+            appendField(json, "executorRunTimeMillis", stage.executorRunTime);
+            appendField(json, "gcTimeMillis", stage.gcTime);
+            appendField(json, "recordsIn", stage.inputRecords + stage.shuffleReadRecords);
+            appendField(json, "recordsOut", stage.outputRecords + stage.shuffleWriteRecords);
+            appendField(json, "inputBytes", stage.inputBytes);
+            appendField(json, "outputBytes", stage.outputBytes);
+            appendField(json, "shuffleReadBytes", stage.shuffleReadBytes);
+            appendField(json, "shuffleWriteBytes", stage.shuffleWriteBytes);
+            appendField(json, "memoryBytesSpilled", stage.memoryBytesSpilled);
+            appendField(json, "diskBytesSpilled", stage.diskBytesSpilled);
+            if (sparkStages) {
+                json.append(" \"accumulators\": {");
+                String accumulatorSeparator = "";
+                for (final Map.Entry<String, String> accumulator : stage.accumulators.entrySet()) {
+                    json.append(accumulatorSeparator);
+                    appendString(json, accumulator.getKey());
+                    json.append(": ");
+                    appendString(json, accumulator.getValue());
+                    accumulatorSeparator = ", ";
+                }
+                json.append("},");
+            }
+            // drop the comma after the last field
+            json.setLength(json.length() - 1);
+            json.append(" }");
+            separator = ",\n";
+        }
+        json.append("\n  ");
+    }
+
+    private static void appendField(final StringBuilder json, final String name, final long value) {
+        appendField(json, name, Long.toString(value), false);
+    }
+
+    private static void appendField(final StringBuilder json, final String name, final String value) {
+        appendField(json, name, value, true);
+    }
+
+    private static void appendField(final StringBuilder json, final String name, final String value, final boolean quote) {
+        json.append(' ');
+        appendString(json, name);
+        json.append(": ");
+        if (quote) {
+            appendString(json, value);
+        } else {
+            json.append(value);
+        }
+        json.append(',');
+    }
+
+    private static void appendString(final StringBuilder json, final String value) {
+        json.append('"');
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * @return the value at the given quantile of the sorted values (by the nearest rank), or 0 if there are none
+     */
+    static long percentile(final long[] sortedValues, final double quantile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(quantile * sortedValues.length);
+        return sortedValues[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * @return the ratio of the largest value to the median, which is 1 if the values are all the same, or 0 if there
+     * are none
+     */
+    static double skew(final long[] sortedValues) {
+        final long median = percentile(sortedValues, 0.5);
+        return median == 0 ? (sortedValues.length == 0 ? 0.0 : 1.0) : (double) sortedValues[sortedValues.length - 1] / median;
+    }
+
+    private static final class StageMetrics {
+        final int stageId;
+        final int attemptId;
+        String gatkStage = UNNAMED_STAGE;
+        String name = "";
+        int numTasks;
+        int numSparkStages = 1;
+        final LongArrayList taskDurations = new LongArrayList();
+        long executorRunTime;
+        long gcTime;
+        long inputRecords;
+        long inputBytes;
+        long outputRecords;
+        long outputBytes;
+        long shuffleReadRecords;
+        long shuffleReadBytes;
+        long shuffleWriteRecords;
+        long shuffleWriteBytes;
+        long memoryBytesSpilled;
+        long diskBytesSpilled;
+        final Map<String, String> accumulators = new TreeMap<>();
+
+        StageMetrics(final int stageId, final int attemptId) {
+            this.stageId = stageId;
+            this.attemptId = attemptId;
+        }
+
+        StageMetrics setInfo(final String gatkStage, final String name, final int numTasks) {
+            this.gatkStage = gatkStage;
+            this.name = name;
+            this.numTasks = numTasks;
+            if (stageId == -1) {
+                // a GATK stage, which starts with no Spark stages
+                numSparkStages = 0;
+            }
+            return this;
+        }
+
+        void addTask(final long duration, final TaskMetrics metrics) {
+            taskDurations.add(duration);
+            executorRunTime += metrics.executorRunTime();
+            gcTime += metrics.jvmGCTime();
+            inputRecords += metrics.inputMetrics().recordsRead();
+            inputBytes += metrics.inputMetrics().bytesRead();
+            outputRecords += metrics.outputMetrics().recordsWritten();
+            outputBytes += metrics.outputMetrics().bytesWritten();
+            shuffleReadRecords += metrics.shuffleReadMetrics().recordsRead();
+            shuffleReadBytes += metrics.shuffleReadMetrics().totalBytesRead();
+            shuffleWriteRecords += metrics.shuffleWriteMetrics().recordsWritten();
+            shuffleWriteBytes += metrics.shuffleWriteMetrics().bytesWritten();
+            memoryBytesSpilled += metrics.memoryBytesSpilled();
+            diskBytesSpilled += metrics.diskBytesSpilled();
+        }
+
+        void add(final StageMetrics other) {
+            numSparkStages++;
+            taskDurations.addAll(other.taskDurations);
+            executorRunTime += other.executorRunTime;
+            gcTime += other.gcTime;
+            inputRecords += other.inputRecords;
+            inputBytes += other.inputBytes;
+            outputRecords += other.outputRecords;
+            outputBytes += other.outputBytes;
+            shuffleReadRecords += other.shuffleReadRecords;
+            shuffleReadBytes += other.shuffleReadBytes;
+            shuffleWriteRecords += other.shuffleWriteRecords;
+            shuffleWriteBytes += other.shuffleWriteBytes;
+            memoryBytesSpilled += other.memoryBytesSpilled;
+            diskBytesSpilled += other.diskBytesSpilled;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.util.BinaryCodec;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Builds the BAM index (BAI) of a BAM file made by concatenating BAM parts from the indexes of the parts, as written
+ * by {@link HeaderlessIndexingBAMRecordWriter}, so that the records don't have to be read again.
+ *
+ * The index of each reference is merged by {@link BinningIndexContentMerger}, and the count of records with no
+ * coordinates is summed over the parts.
+ */
+public final class BAMIndexMerger {
+    static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+
+    private final BinningIndexContentMerger[] references;
+    private long noCoordinateCount = 0;
+
+    public BAMIndexMerger(final int numReferences) {
+        Utils.validateArg(numReferences >= 0, "numReferences must be non-negative");
+        references = new BinningIndexContentMerger[numReferences];
+        for (int i = 0; i < numReferences; i++) {
+            references[i] = new BinningIndexContentMerger();
+        }
+    }
+
+    /**
+     * Adds the index of the next part.
+     * @param partIndex the index of the part; not closed by this method
+     * @param partStart the position in bytes of the start of the part in the merged file
+     */
+    public void addPartIndex(final InputStream partIndex, final long partStart) {
+        Utils.nonNull(partIndex);
+        Utils.validateArg(partStart >= 0, "partStart must be non-negative");
+        final BinaryCodec codec = new BinaryCodec(partIndex);
+        final byte[] magic = new byte[BAI_MAGIC.length];
+        codec.readBytes(magic);
+        if (!Arrays.equals(magic, BAI_MAGIC)) {
+            throw new GATKException("Invalid BAM index for part at " + partStart);
+        }
+        final int numReferences = codec.readInt();
+        if (numReferences != references.length) {
+            throw new GATKException("BAM index for part at " + partStart + " has " + numReferences +
+                    " references, expected " + references.length);
+        }
+        for (final BinningIndexContentMerger reference : references) {
+            reference.addPart(codec, partStart);
+        }
+        noCoordinateCount += codec.readLong();
+    }
+
+    /**
+     * Writes the index of the merged file.
+     * @param out where to write the index; not closed by this method
+     */
+    public void writeIndex(final OutputStream out) {
+        Utils.nonNull(out);
+        final BinaryCodec codec = new BinaryCodec(out);
+        codec.writeBytes(BAI_MAGIC);
+        codec.writeInt(references.length);
+        for (final BinningIndexContentMerger reference : references) {
+            reference.write(codec);
+        }
+        codec.writeLong(noCoordinateCount);
+    }
+}
@@ -0,0 +1,116 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.util.BinaryCodec;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges the index content (the bins and the linear index) for one reference sequence from the BAI or tabix indexes
+ * of the consecutive parts of a BGZF file, added in order.
+ *
+ * The virtual file offsets in the index of a part are relative to {@link #PART_VIRTUAL_OFFSET_BASE}, which stands for
+ * the start of the part, and each part starts on a BGZF block boundary of the merged file, so an offset is rebased by
+ * moving its block address to the position of the part. The chunks of each bin are the (rebased) chunks of the parts;
+ * each window of the linear index takes the offset from the first part whose index covers it; and the metadata
+ * pseudo-bin, if present, is summed over the parts.
+ */
+final class BinningIndexContentMerger {
+    /**
+     * The virtual file offset of the start of a part, as seen by the indexer of the part. htsjdk's BinningIndexBuilder
+     * takes an offset of zero in the linear index to mean that no record has been seen in the window, so if the parts
+     * were indexed from zero the first record of each part would be dropped from the linear index.
+     */
+    static final long PART_VIRTUAL_OFFSET_BASE = 1L << 16;
+
+    // the pseudo-bin holding the metadata for a reference
+    private static final int METADATA_BIN = GenomicIndexUtil.MAX_BINS;
+
+    private final Map<Integer, List<Chunk>> bins = new TreeMap<>();
+    private long[] linearIndex = new long[0];
+    private boolean hasMetadata = false;
+    private long firstOffset;
+    private long lastOffset;
+    private long mappedCount;
+    private long unmappedCount;
+
+    /**
+     * Reads the index content for the reference from the index of the next part, and adds it.
+     * @param partStart the position in bytes of the start of the part in the merged file
+     */
+    void addPart(final BinaryCodec codec, final long partStart) {
+        final long offsetShift = (partStart << 16) - PART_VIRTUAL_OFFSET_BASE;
+        final int numBins = codec.readInt();
+        for (int i = 0; i < numBins; i++) {
+            final int bin = codec.readInt();
+            final int numChunks = codec.readInt();
+            if (bin == METADATA_BIN) {
+                if (numChunks != 2) {
+                    throw new GATKException("Invalid metadata in index for part");
+                }
+                final long partFirstOffset = codec.readLong() + offsetShift;
+                final long partLastOffset = codec.readLong() + offsetShift;
+                if (!hasMetadata) {
+                    firstOffset = partFirstOffset;
+                    hasMetadata = true;
+                }
+                lastOffset = partLastOffset;
+                mappedCount += codec.readLong();
+                unmappedCount += codec.readLong();
+            } else {
+                final List<Chunk> chunks = bins.computeIfAbsent(bin, b -> new ArrayList<>());
+                for (int j = 0; j < numChunks; j++) {
+                    chunks.add(new Chunk(codec.readLong() + offsetShift, codec.readLong() + offsetShift));
+                }
+            }
+        }
+        final int numWindows = codec.readInt();
+        final int previousNumWindows = linearIndex.length;
+        if (numWindows > previousNumWindows) {
+            linearIndex = Arrays.copyOf(linearIndex, numWindows);
+        }
+        for (int i = 0; i < numWindows; i++) {
+            final long offset = codec.readLong();
+            // windows covered by an earlier part keep its offsets; windows before the first record of this part
+            // have an offset of zero, and are given the start of the part
+            if (i >= previousNumWindows) {
+                linearIndex[i] = offset == 0 ? partStart << 16 : offset + offsetShift;
+            }
+        }
+    }
+
+    /**
+     * Writes the merged index content for the reference.
+     */
+    void write(final BinaryCodec codec) {
+        codec.writeInt(bins.size() + (hasMetadata ? 1 : 0));
+        for (final Map.Entry<Integer, List<Chunk>> bin : bins.entrySet()) {
+            // join the chunks of consecutive parts where possible
+            final List<Chunk> chunks = Chunk.optimizeChunkList(bin.getValue(), 0);
+            codec.writeInt(bin.getKey());
+            codec.writeInt(chunks.size());
+            for (final Chunk chunk : chunks) {
+                codec.writeLong(chunk.getChunkStart());
+                codec.writeLong(chunk.getChunkEnd());
+            }
+        }
+        if (hasMetadata) {
+            codec.writeInt(METADATA_BIN);
+            codec.writeInt(2);
+            codec.writeLong(firstOffset);
+            codec.writeLong(lastOffset);
+            codec.writeLong(mappedCount);
+            codec.writeLong(unmappedCount);
+        }
+        codec.writeInt(linearIndex.length);
+        for (final long offset : linearIndex) {
+            codec.writeLong(offset);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordFileSources;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.seqdoop.hadoop_bam.BAMOutputFormat;
+import org.seqdoop.hadoop_bam.SAMRecordWritable;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a headerless, unterminated BAM part, to be concatenated with the other parts into a single BAM file on the
+ * driver. As with Hadoop-BAM's BAMRecordWriter, a splitting index is written alongside the part if
+ * {@link BAMOutputFormat#WRITE_SPLITTING_BAI} is set.
+ *
+ * If the header is coordinate sorted a BAM index for the part is written too, at {@link #getPartIndexPath(Path)}. Its
+ * virtual file offsets are relative to the start of the part (taken to be at
+ * {@link BinningIndexContentMerger#PART_VIRTUAL_OFFSET_BASE}), which is always on a BGZF block boundary, so once the
+ * parts have been concatenated the index for the whole file can be built from them without reading the records
+ * again (see {@link BAMIndexMerger}).
+ *
+ * @param <K> the type of the keys, which are ignored
+ */
+public final class HeaderlessIndexingBAMRecordWriter<K> extends RecordWriter<K, SAMRecordWritable> {
+    private final OutputStream origOutput;
+    private final BlockCompressedOutputStream compressedOut;
+    private final BAMRecordCodec recordCodec;
+    private final SplittingBAMIndexer splittingBAMIndexer;
+    private final BAMIndexer bamIndexer;
+
+    public HeaderlessIndexingBAMRecordWriter(final Path output, final SAMFileHeader header, final TaskAttemptContext ctx) throws IOException {
+        final Configuration conf = ctx.getConfiguration();
+        final FileSystem fs = output.getFileSystem(conf);
+        origOutput = fs.create(output);
+        compressedOut = new BlockCompressedOutputStream(origOutput, null);
+        recordCodec = new BAMRecordCodec(header);
+        recordCodec.setOutputStream(compressedOut);
+        splittingBAMIndexer = conf.getBoolean(BAMOutputFormat.WRITE_SPLITTING_BAI, false) ?
+                new SplittingBAMIndexer(fs.create(output.suffix(SplittingBAMIndexer.OUTPUT_FILE_EXTENSION))) : null;
+        bamIndexer = header.getSortOrder() == SAMFileHeader.SortOrder.coordinate ?
+                new BAMIndexer(fs.create(getPartIndexPath(output)), header) : null;
+    }
+
+    /**
+     * @return the path of the index written for the given BAM part
+     */
+    public static Path getPartIndexPath(final Path part) {
+        return part.suffix(BAMIndex.BAMIndexSuffix);
+    }
+
+    @Override
+    public void write(final K ignored, final SAMRecordWritable writable) throws IOException {
+        final SAMRecord record = writable.get();
+        final long start = compressedOut.getFilePointer();
+        recordCodec.encode(record);
+        final long end = compressedOut.getFilePointer();
+        // both indexers take the position of the record from its file source
+        if (splittingBAMIndexer != null) {
+            SAMRecordFileSources.setBAMFileSpan(record, start, end);
+            splittingBAMIndexer.processAlignment(record);
+        }
+        if (bamIndexer != null) {
+            final long base = BinningIndexContentMerger.PART_VIRTUAL_OFFSET_BASE;
+            SAMRecordFileSources.setBAMFileSpan(record, base + start, base + end);
+            bamIndexer.processAlignment(record);
+        }
+    }
+
+    @Override
+    public void close(final TaskAttemptContext ctx) throws IOException {
+        // flush the last block, but don't write a terminator since this is only a part of the file
+        compressedOut.flush();
+        if (splittingBAMIndexer != null) {
+            splittingBAMIndexer.finish(compressedOut.getFilePointer() >> 16);
+        }
+        if (bamIndexer != null) {
+            bamIndexer.finish();
+        }
+        origOutput.close();
+    }
+}
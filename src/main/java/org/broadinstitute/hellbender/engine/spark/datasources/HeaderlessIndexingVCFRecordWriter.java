@@ -0,0 +1,92 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.seqdoop.hadoop_bam.LazyBCFGenotypesContext;
+import org.seqdoop.hadoop_bam.LazyParsingGenotypesContext;
+import org.seqdoop.hadoop_bam.LazyVCFGenotypesContext;
+import org.seqdoop.hadoop_bam.VariantContextWritable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a headerless, unterminated, BGZF-compressed VCF part, to be concatenated with the other parts into a single
+ * block compressed VCF file on the driver, together with a tabix index for the part at {@link #getPartIndexPath(Path)}.
+ * The virtual file offsets in the index are relative to the start of the part (taken to be at
+ * {@link BinningIndexContentMerger#PART_VIRTUAL_OFFSET_BASE}), which is always on a BGZF block boundary, so once the
+ * parts have been concatenated the index for the whole file can be built from them without reading the records again
+ * (see {@link TabixIndexMerger}).
+ *
+ * The variants must be sorted by the header's sequence dictionary.
+ *
+ * @param <K> the type of the keys, which are ignored
+ */
+public final class HeaderlessIndexingVCFRecordWriter<K> extends RecordWriter<K, VariantContextWritable> {
+    private final FileSystem fs;
+    private final Path output;
+    private final OutputStream origOutput;
+    private final BlockCompressedOutputStream compressedOut;
+    private final VCFEncoder encoder;
+    private final TabixIndexCreator indexCreator;
+
+    // as in Hadoop-BAM's VCFRecordWriter, for variants that were read by Hadoop-BAM with lazily decoded genotypes
+    private final LazyVCFGenotypesContext.HeaderDataCache vcfHeaderDataCache = new LazyVCFGenotypesContext.HeaderDataCache();
+    private final LazyBCFGenotypesContext.HeaderDataCache bcfHeaderDataCache = new LazyBCFGenotypesContext.HeaderDataCache();
+
+    public HeaderlessIndexingVCFRecordWriter(final Path output, final VCFHeader header, final TaskAttemptContext ctx) throws IOException {
+        this.output = output;
+        fs = output.getFileSystem(ctx.getConfiguration());
+        origOutput = fs.create(output);
+        compressedOut = new BlockCompressedOutputStream(origOutput, null);
+        encoder = new VCFEncoder(header, false, false);
+        indexCreator = header.getSequenceDictionary() == null ?
+                new TabixIndexCreator(TabixFormat.VCF) : new TabixIndexCreator(header.getSequenceDictionary(), TabixFormat.VCF);
+        vcfHeaderDataCache.setHeader(header);
+        bcfHeaderDataCache.setHeader(header);
+    }
+
+    /**
+     * @return the path of the tabix index written for the given VCF part
+     */
+    public static Path getPartIndexPath(final Path part) {
+        return part.suffix(TabixUtils.STANDARD_INDEX_EXTENSION);
+    }
+
+    @Override
+    public void write(final K ignored, final VariantContextWritable writable) throws IOException {
+        final VariantContext vc = writable.get();
+        final GenotypesContext genotypes = vc.getGenotypes();
+        if (genotypes instanceof LazyParsingGenotypesContext) {
+            ((LazyParsingGenotypesContext) genotypes).getParser().setHeaderDataCache(
+                    genotypes instanceof LazyVCFGenotypesContext ? vcfHeaderDataCache : bcfHeaderDataCache);
+        }
+        indexCreator.addFeature(vc, BinningIndexContentMerger.PART_VIRTUAL_OFFSET_BASE + compressedOut.getFilePointer());
+        compressedOut.write(encoder.encode(vc).getBytes(VCFEncoder.VCF_CHARSET));
+        compressedOut.write('\n');
+    }
+
+    @Override
+    public void close(final TaskAttemptContext ctx) throws IOException {
+        final Index index = indexCreator.finalizeIndex(BinningIndexContentMerger.PART_VIRTUAL_OFFSET_BASE + compressedOut.getFilePointer());
+        // flush the last block, but don't write a terminator since this is only a part of the file
+        compressedOut.flush();
+        origOutput.close();
+        try (final LittleEndianOutputStream indexOut = new LittleEndianOutputStream(
+                new BlockCompressedOutputStream(fs.create(getPartIndexPath(output)), null))) {
+            index.write(indexOut);
+        }
+    }
+}
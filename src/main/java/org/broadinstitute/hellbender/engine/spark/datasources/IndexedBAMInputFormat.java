@@ -0,0 +1,312 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.common.annotations.VisibleForTesting;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BamFileIoUtils;
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.LRUCache;
+import org.seqdoop.hadoop_bam.BAMInputFormat;
+import org.seqdoop.hadoop_bam.FileVirtualSplit;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A BAM input format that finds record-aligned splits without guessing where records start, when it can, and that
+ * caches the splits it computes so that reading the same BAM again in the same driver doesn't compute them again. Only
+ * the most recently used split plans are kept.
+ *
+ * Hadoop-BAM uses a splitting index (.splitting-bai) next to the BAM if there is one, and otherwise guesses the start of
+ * the first record after each split boundary by reading and decoding the data there. If there is no splitting index
+ * but there is a BAI, this format instead takes the virtual offsets of record starts from the BAI (its chunk starts
+ * and linear index), and starts each split at the first of those in it. The BAI says nothing about the unplaced
+ * unmapped reads at the end of the file, so splits after the last record start it has are still guessed.
+ *
+ * When intervals are set the splits are always computed by Hadoop-BAM, which also uses the BAI to drop the splits that
+ * have no reads in the intervals; they are still cached.
+ */
+public class IndexedBAMInputFormat extends BAMInputFormat {
+    private static final Logger logger = LogManager.getLogger(IndexedBAMInputFormat.class);
+
+    // the number of split plans to keep: one per BAM (or split size, or set of intervals) read recently in this driver,
+    // so that a long-lived driver that reads many BAMs doesn't keep the splits of all of them
+    @VisibleForTesting
+    static final int MAX_CACHED_SPLIT_PLANS = 16;
+
+    private static final Map<SplitPlanKey, List<FileVirtualSplit>> splitPlans =
+            Collections.synchronizedMap(new LRUCache<>(MAX_CACHED_SPLIT_PLANS));
+
+    @Override
+    public List<InputSplit> getSplits(final List<InputSplit> splits, final Configuration conf) throws IOException {
+        if (splits.isEmpty()) {
+            return super.getSplits(splits, conf);
+        }
+        final List<FileSplit> fileSplits = new ArrayList<>(splits.size());
+        for (final InputSplit split : splits) {
+            fileSplits.add((FileSplit) split);
+        }
+        fileSplits.sort(Comparator.comparing((FileSplit split) -> split.getPath().toString()).thenComparingLong(FileSplit::getStart));
+
+        final SplitPlanKey key = new SplitPlanKey(fileSplits, conf);
+        List<FileVirtualSplit> plan = splitPlans.get(key);
+        if (plan == null) {
+            final long startTime = System.nanoTime();
+            plan = computeSplits(fileSplits, conf);
+            splitPlans.put(key, plan);
+            logger.info(String.format("Computed %d splits for %s in %.2f seconds", plan.size(),
+                    fileSplits.get(0).getPath(), (System.nanoTime() - startTime) / 1e9));
+        } else {
+            logger.debug("Using cached splits for " + fileSplits.get(0).getPath());
+        }
+        // return copies, since splits are mutable
+        final List<InputSplit> copies = new ArrayList<>(plan.size());
+        for (final FileVirtualSplit split : plan) {
+            copies.add(new FileVirtualSplit(split.getPath(), split.getStartVirtualOffset(), split.getEndVirtualOffset(),
+                    split.getLocations(), split.getIntervalFilePointers()));
+        }
+        return copies;
+    }
+
+    /**
+     * Removes all the cached splits.
+     */
+    public static void clearCachedSplits() {
+        splitPlans.clear();
+    }
+
+    @VisibleForTesting
+    static int getNumCachedSplitPlans() {
+        return splitPlans.size();
+    }
+
+    private List<FileVirtualSplit> computeSplits(final List<FileSplit> fileSplits, final Configuration conf) throws IOException {
+        final Path path = fileSplits.get(0).getPath();
+        final FileSystem fs = path.getFileSystem(conf);
+        final Path baiPath = findBAI(fs, path);
+        final boolean useBAI = conf.get(INTERVALS_PROPERTY) == null &&
+                !fs.exists(path.suffix(SplittingBAMIndexer.OUTPUT_FILE_EXTENSION)) && baiPath != null &&
+                fileSplits.stream().allMatch(split -> split.getPath().equals(path));
+        if (!useBAI) {
+            return toFileVirtualSplits(super.getSplits(new ArrayList<>(fileSplits), conf));
+        }
+
+        final long fileLength = fs.getFileStatus(path).getLen();
+        final long[] recordStarts;
+        try (final InputStream in = fs.open(baiPath)) {
+            recordStarts = readRecordStarts(in);
+        }
+        if (recordStarts.length == 0 || BlockCompressedFilePointerUtil.getBlockAddress(recordStarts[recordStarts.length - 1]) >= fileLength) {
+            logger.warn("Index " + baiPath + " does not match " + path + "; guessing splits instead");
+            return toFileVirtualSplits(super.getSplits(new ArrayList<>(fileSplits), conf));
+        }
+        return computeSplits(fileSplits, recordStarts, fileLength, tail -> toFileVirtualSplits(super.getSplits(new ArrayList<>(tail), conf)));
+    }
+
+    @FunctionalInterface
+    interface SplitGuesser {
+        List<FileVirtualSplit> guessSplits(List<FileSplit> fileSplits) throws IOException;
+    }
+
+    /**
+     * Computes record-aligned splits of a BAM file from the virtual offsets of (some of) its record starts.
+     *
+     * @param fileSplits the byte ranges to split the file into, in order
+     * @param recordStarts the known virtual offsets of record starts, sorted, including the first record
+     * @param fileLength the length of the file in bytes
+     * @param tailGuesser computes the splits for the given byte ranges at the end of the file, or throws an IOException
+     *                    if it finds no record in the first
+     */
+    static List<FileVirtualSplit> computeSplits(final List<FileSplit> fileSplits, final long[] recordStarts,
+                                                final long fileLength, final SplitGuesser tailGuesser) throws IOException {
+        int numIndexed = 0;
+        while (numIndexed < fileSplits.size() && nextRecordStart(recordStarts, fileSplits.get(numIndexed).getStart()) != null) {
+            numIndexed++;
+        }
+        // the byte ranges after the last known record start have to be guessed. Hadoop-BAM fails if it can't find a
+        // record in the first range it is given (which it may not, even if there is one), so start guessing from
+        // earlier ranges until it succeeds; guessing from the start of the file is what would be done without the BAI
+        List<FileVirtualSplit> tail = Collections.emptyList();
+        for (int guessFrom = numIndexed; guessFrom < fileSplits.size(); guessFrom--) {
+            try {
+                tail = tailGuesser.guessSplits(fileSplits.subList(guessFrom, fileSplits.size()));
+                break;
+            } catch (final IOException e) {
+                if (guessFrom == 0) {
+                    throw e;
+                }
+            }
+        }
+        final long tailStart = tail.isEmpty() ? Long.MAX_VALUE : tail.get(0).getStartVirtualOffset();
+
+        // each split runs from the first known record start in its byte range up to the start of the next split, so
+        // every record is read once; a byte range with no record starting in it is covered by the split before it
+        final List<FileVirtualSplit> splits = new ArrayList<>();
+        for (int i = 0; i < numIndexed; i++) {
+            final FileSplit fileSplit = fileSplits.get(i);
+            final long splitStart = nextRecordStart(recordStarts, fileSplit.getStart());
+            if (splitStart >= tailStart) {
+                break;
+            }
+            if (!splits.isEmpty()) {
+                final FileVirtualSplit previous = splits.get(splits.size() - 1);
+                if (previous.getStartVirtualOffset() == splitStart) {
+                    continue;
+                }
+                previous.setEndVirtualOffset(splitStart);
+            }
+            // as for the last split from a splitting index, the end of the last split is past the last record
+            splits.add(new FileVirtualSplit(fileSplit.getPath(), splitStart, (fileLength << 16) | 0xffff, fileSplit.getLocations()));
+        }
+        if (!tail.isEmpty()) {
+            if (!splits.isEmpty()) {
+                splits.get(splits.size() - 1).setEndVirtualOffset(tailStart);
+            }
+            splits.addAll(tail);
+        }
+        return splits;
+    }
+
+    // the first known record start at or after the given byte position, or null if there is none
+    private static Long nextRecordStart(final long[] recordStarts, final long position) {
+        final long virtualPosition = position << 16;
+        int index = Arrays.binarySearch(recordStarts, virtualPosition);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < recordStarts.length ? recordStarts[index] : null;
+    }
+
+    /**
+     * Reads the virtual offsets at which records start from a BAI: the starts of the chunks of all the bins, and the
+     * offsets in the linear indexes.
+     *
+     * @return the distinct offsets, sorted
+     */
+    static long[] readRecordStarts(final InputStream bai) {
+        final BinaryCodec codec = new BinaryCodec(bai);
+        final byte[] magic = new byte[BAMIndexMerger.BAI_MAGIC.length];
+        codec.readBytes(magic);
+        if (!Arrays.equals(magic, BAMIndexMerger.BAI_MAGIC)) {
+            throw new GATKException("Invalid BAM index");
+        }
+        final LongArrayList offsets = new LongArrayList();
+        final int numReferences = codec.readInt();
+        for (int i = 0; i < numReferences; i++) {
+            final int numBins = codec.readInt();
+            for (int j = 0; j < numBins; j++) {
+                final int bin = codec.readInt();
+                final int numChunks = codec.readInt();
+                for (int k = 0; k < numChunks; k++) {
+                    final long chunkStart = codec.readLong();
+                    codec.readLong();
+                    // the chunks of the metadata pseudo-bin hold offsets and counts, not chunks
+                    if (bin != GenomicIndexUtil.MAX_BINS) {
+                        offsets.add(chunkStart);
+                    }
+                }
+            }
+            final int numWindows = codec.readInt();
+            for (int j = 0; j < numWindows; j++) {
+                final long offset = codec.readLong();
+                // windows with no records may have an offset of zero
+                if (offset != 0) {
+                    offsets.add(offset);
+                }
+            }
+        }
+        final long[] sorted = offsets.toLongArray();
+        Arrays.sort(sorted);
+        int numDistinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[numDistinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, numDistinct);
+    }
+
+    private static Path findBAI(final FileSystem fs, final Path bam) throws IOException {
+        final Path appended = bam.suffix(BAMIndex.BAMIndexSuffix);
+        if (fs.exists(appended)) {
+            return appended;
+        }
+        final String name = bam.getName();
+        if (name.endsWith(BamFileIoUtils.BAM_FILE_EXTENSION)) {
+            final Path replaced = new Path(bam.getParent(),
+                    name.substring(0, name.length() - BamFileIoUtils.BAM_FILE_EXTENSION.length()) + BAMIndex.BAMIndexSuffix);
+            if (fs.exists(replaced)) {
+                return replaced;
+            }
+        }
+        return null;
+    }
+
+    private static List<FileVirtualSplit> toFileVirtualSplits(final List<InputSplit> splits) {
+        final List<FileVirtualSplit> fileVirtualSplits = new ArrayList<>(splits.size());
+        for (final InputSplit split : splits) {
+            fileVirtualSplits.add((FileVirtualSplit) split);
+        }
+        return fileVirtualSplits;
+    }
+
+    /**
+     * Identifies a split plan: the files (including their lengths and modification times, so that a changed file isn't
+     * read with stale splits), the byte ranges they are divided into, and the intervals.
+     */
+    private static final class SplitPlanKey {
+        private final List<String> files = new ArrayList<>();
+        private final List<Long> ranges = new ArrayList<>();
+        private final String intervals;
+
+        SplitPlanKey(final List<FileSplit> fileSplits, final Configuration conf) throws IOException {
+            Path previousPath = null;
+            for (final FileSplit split : fileSplits) {
+                if (!split.getPath().equals(previousPath)) {
+                    final FileStatus status = split.getPath().getFileSystem(conf).getFileStatus(split.getPath());
+                    files.add(split.getPath() + ":" + status.getLen() + ":" + status.getModificationTime());
+                    previousPath = split.getPath();
+                }
+                ranges.add(split.getStart());
+                ranges.add(split.getLength());
+            }
+            intervals = conf.get(INTERVALS_PROPERTY);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final SplitPlanKey that = (SplitPlanKey) o;
+            return files.equals(that.files) && ranges.equals(that.ranges) && Objects.equals(intervals, that.intervals);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(files, ranges, intervals);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.io.MappedFile;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A .2bit reference that is memory-mapped read-only rather than read onto the heap, so that its packed bases are
+ * held once per JVM in the page cache and shared by all the threads (and, on the same machine, all the processes)
+ * that read it. Bases are decoded straight from the mapping into the array returned for each query.
+ *
+ * Use {@link #getInstance} to get the image of a reference, which is mapped (see {@link MappedFile}) the first time it
+ * is asked for in a JVM.
+ */
+public final class MappedTwoBitReference {
+    private static final int TWO_BIT_SIGNATURE = 0x1A412743;
+
+    // the four bases packed in each byte, as .2bit encodes them (T=0, C=1, A=2, G=3, most significant bits first)
+    private static final byte[] UNPACKED_BASES = new byte[256 * 4];
+    static {
+        final byte[] codes = {'T', 'C', 'A', 'G'};
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 4; i++) {
+                UNPACKED_BASES[b * 4 + i] = codes[(b >> (6 - 2 * i)) & 3];
+            }
+        }
+    }
+
+    private static final MappedFile.Singleton<MappedTwoBitReference> globalInstance =
+            new MappedFile.Singleton<>(ReferenceTwoBitSource.TWO_BIT_EXTENSION);
+
+    private final String referenceURL;
+    private final MappedFile file;
+    private final long length;
+    private final ByteOrder byteOrder;
+    private final Map<String, Contig> contigs = new LinkedHashMap<>();
+
+    /**
+     * @return the image of the given reference, mapping it if it is not the one that is already mapped
+     * @param referenceURL the path of the .2bit file
+     * @param popts the pipeline options, needed to read the reference from GCS (may be null otherwise)
+     */
+    public static MappedTwoBitReference getInstance(final String referenceURL, final PipelineOptions popts) {
+        return globalInstance.get(referenceURL, popts, file -> new MappedTwoBitReference(referenceURL, file));
+    }
+
+    /**
+     * Drops the mapped reference, if there is one. The mapping itself is released when the image is garbage collected.
+     */
+    public static void closeInstance() {
+        globalInstance.close();
+    }
+
+    private MappedTwoBitReference(final String referenceURL, final MappedFile file) {
+        this.referenceURL = referenceURL;
+        this.file = file;
+        length = file.length();
+        if (length < 16) {
+            throw new UserException.CouldNotReadInputFile(referenceURL, "File is too short to be a .2bit file");
+        }
+
+        // the signature gives the byte order of the rest of the file
+        byteOrder = readInt(0, ByteOrder.LITTLE_ENDIAN) == TWO_BIT_SIGNATURE ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        if (readInt(0, byteOrder) != TWO_BIT_SIGNATURE || readInt(4, byteOrder) != 0) {
+            throw new UserException.CouldNotReadInputFile(referenceURL, "Not a version 0 .2bit file");
+        }
+        final int numContigs = readInt(8, byteOrder);
+        long indexPosition = 16;
+        for (int i = 0; i < numContigs; i++) {
+            final int nameLength = getByte(indexPosition) & 0xFF;
+            final byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = getByte(indexPosition + 1 + j);
+            }
+            final long recordPosition = readInt(indexPosition + 1 + nameLength, byteOrder) & 0xFFFFFFFFL;
+            contigs.put(new String(name, StandardCharsets.US_ASCII), readContig(recordPosition));
+            indexPosition += 1 + nameLength + 4;
+        }
+    }
+
+    private Contig readContig(long position) {
+        final int dnaSize = readInt(position, byteOrder);
+        position += 4;
+        final int numNBlocks = readInt(position, byteOrder);
+        position += 4;
+        final int[] nBlockStarts = new int[numNBlocks];
+        final int[] nBlockEnds = new int[numNBlocks];
+        for (int i = 0; i < numNBlocks; i++) {
+            nBlockStarts[i] = readInt(position + 4L * i, byteOrder);
+        }
+        for (int i = 0; i < numNBlocks; i++) {
+            nBlockEnds[i] = nBlockStarts[i] + readInt(position + 4L * (numNBlocks + i), byteOrder);
+        }
+        position += 8L * numNBlocks;
+        // skip the mask blocks, since lower case bases aren't returned, and the reserved word
+        final int numMaskBlocks = readInt(position, byteOrder);
+        position += 4 + 8L * numMaskBlocks + 4;
+        if (position + (dnaSize + 3L) / 4 > length) {
+            throw new UserException.CouldNotReadInputFile(referenceURL, "The bases of a contig run past the end of the file");
+        }
+        return new Contig(dnaSize, position, nBlockStarts, nBlockEnds);
+    }
+
+    private byte getByte(final long position) {
+        return file.getByte(position);
+    }
+
+    private int readInt(final long position, final ByteOrder order) {
+        final int value = file.getInt(position);
+        return order == ByteOrder.LITTLE_ENDIAN ? Integer.reverseBytes(value) : value;
+    }
+
+    /**
+     * @return the length of the contig, or -1 if there is no such contig
+     */
+    public int getContigLength(final String contig) {
+        final Contig record = contigs.get(contig);
+        return record == null ? -1 : record.dnaSize;
+    }
+
+    /**
+     * @return a dictionary of the contigs, in the order of the file
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        final List<SAMSequenceRecord> records = new ArrayList<>(contigs.size());
+        for (final Map.Entry<String, Contig> entry : contigs.entrySet()) {
+            records.add(new SAMSequenceRecord(entry.getKey(), entry.getValue().dnaSize));
+        }
+        return new SAMSequenceDictionary(records);
+    }
+
+    /**
+     * @return the upper case bases of the interval, which must be within its contig, with N for unknown bases
+     */
+    public byte[] getBases(final SimpleInterval interval) {
+        final Contig contig = contigs.get(interval.getContig());
+        Utils.nonNull(contig, () -> "Contig " + interval.getContig() + " not found in reference dictionary");
+        Utils.validateArg(interval.getEnd() <= contig.dnaSize, () -> "Interval " + interval + " is past the end of its contig");
+        final byte[] bases = new byte[interval.size()];
+        copyBases(contig, interval.getStart() - 1, bases);
+        return bases;
+    }
+
+    private void copyBases(final Contig contig, final int start, final byte[] dest) {
+        final int end = start + dest.length;
+        int position = start;
+        while (position < end) {
+            final int packed = getByte(contig.dnaPosition + position / 4) & 0xFF;
+            final int firstInByte = position % 4;
+            final int count = Math.min(4 - firstInByte, end - position);
+            System.arraycopy(UNPACKED_BASES, packed * 4 + firstInByte, dest, position - start, count);
+            position += count;
+        }
+
+        // overwrite the runs of unknown bases, which are stored as T; the blocks are sorted and don't overlap
+        int block = Arrays.binarySearch(contig.nBlockEnds, start + 1);
+        block = block < 0 ? -block - 1 : block;
+        for (; block < contig.nBlockStarts.length && contig.nBlockStarts[block] < end; block++) {
+            final int from = Math.max(contig.nBlockStarts[block], start);
+            final int to = Math.min(contig.nBlockEnds[block], end);
+            if (from < to) {
+                Arrays.fill(dest, from - start, to - start, (byte) 'N');
+            }
+        }
+    }
+
+    private static final class Contig {
+        final int dnaSize;
+        // the position in the file of the packed bases
+        final long dnaPosition;
+        // the zero-based, half-open runs of unknown bases
+        final int[] nBlockStarts;
+        final int[] nBlockEnds;
+
+        Contig(final int dnaSize, final long dnaPosition, final int[] nBlockStarts, final int[] nBlockEnds) {
+            this.dnaSize = dnaSize;
+            this.dnaPosition = dnaPosition;
+            this.nBlockStarts = nBlockStarts;
+            this.nBlockEnds = nBlockEnds;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import htsjdk.samtools.BAMIndex;
 import htsjdk.samtools.BamFileIoUtils;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.FileAlreadyExistsException;
@@ -17,6 +23,7 @@ import org.apache.spark.broadcast.Broadcast;
 import org.bdgenomics.adam.models.RecordGroupDictionary;
 import org.bdgenomics.adam.models.SequenceDictionary;
 import org.bdgenomics.formats.avro.AlignmentRecord;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
@@ -26,11 +33,16 @@ import org.broadinstitute.hellbender.utils.read.HeaderlessSAMRecordCoordinateCom
 import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 import org.seqdoop.hadoop_bam.*;
 import org.seqdoop.hadoop_bam.util.SAMFileMerger;
+import org.seqdoop.hadoop_bam.util.SAMOutputPreparer;
 import scala.Tuple2;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.regex.Pattern;
 
 /**
  * ReadsSparkSink writes GATKReads to a file. This code lifts from the HadoopGenomics/Hadoop-BAM
@@ -38,6 +50,9 @@ import java.util.Comparator;
  */
 public final class ReadsSparkSink {
 
+    // part files as named by Hadoop, and matched by SAMFileMerger
+    private static final Pattern PART_FILE_PATTERN = Pattern.compile("part-[mr]-[0-9]{5}.*");
+
     // Output format class for writing BAM files through saveAsNewAPIHadoopFile. Must be public.
     public static class SparkBAMOutputFormat extends KeyIgnoringBAMOutputFormat<NullWritable> {
         public static SAMFileHeader bamHeader = null;
@@ -69,6 +84,12 @@ public final class ReadsSparkSink {
         public SparkHeaderlessBAMOutputFormat() {
             setWriteHeader(false);
         }
+
+        @Override
+        public RecordWriter<NullWritable, SAMRecordWritable> getRecordWriter(TaskAttemptContext ctx) throws IOException {
+            // write an index for each part too, so that the index of the merged file can be built from them
+            return new HeaderlessIndexingBAMRecordWriter<>(getDefaultWorkFile(ctx, BamFileIoUtils.BAM_FILE_EXTENSION), bamHeader, ctx);
+        }
     }
 
     // Output format class for writing CRAM files through saveAsNewAPIHadoopFile. Must be public.
@@ -133,6 +154,26 @@ public final class ReadsSparkSink {
     public static void writeReads(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
             final SAMFileHeader header, ReadsWriteFormat format, final int numReducers) throws IOException {
+        writeReads(ctx, outputFile, referenceFile, reads, header, format, numReducers, true);
+    }
+
+    /**
+     * writeReads writes rddReads to outputFile with header as the file header.
+     * @param ctx the JavaSparkContext to write.
+     * @param outputFile path to the output bam.
+     * @param referenceFile path to the reference. required for cram output, otherwise may be null.
+     * @param reads reads to write.
+     * @param header the header to put at the top of the files
+     * @param format should the output be a single file, sharded, ADAM, etc.
+     * @param numReducers the number of reducers to use when writing a single file. A value of zero indicates that the default
+     *                    should be used.
+     * @param sortReadsToHeader if true, the reads are sorted into the sort order of the header before a single file is
+     *                          written. If false, the reads must already be totally sorted in that order (so that
+     *                          all the reads in partition i come before those in partition i+1), which saves a shuffle.
+     */
+    public static void writeReads(
+            final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header, ReadsWriteFormat format, final int numReducers, final boolean sortReadsToHeader) throws IOException {
 
         SAMFormat samOutputFormat = IOUtils.isCramFileName(outputFile) ? SAMFormat.CRAM : SAMFormat.BAM;
 
@@ -149,7 +190,7 @@ public final class ReadsSparkSink {
         final JavaRDD<SAMRecord> samReads = reads.map(read -> read.convertToSAMRecord(null));
 
         if (format == ReadsWriteFormat.SINGLE) {
-            writeReadsSingle(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, numReducers);
+            writeReadsSingle(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, numReducers, sortReadsToHeader);
         } else if (format == ReadsWriteFormat.SHARDED) {
             saveAsShardedHadoopFiles(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, true);
         } else if (format == ReadsWriteFormat.ADAM) {
@@ -222,12 +263,58 @@ public final class ReadsSparkSink {
 
     private static void writeReadsSingle(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile, final SAMFormat samOutputFormat, final JavaRDD<SAMRecord> reads,
-            final SAMFileHeader header, final int numReducers) throws IOException {
+            final SAMFileHeader header, final int numReducers, final boolean sortReadsToHeader) throws IOException {
 
-        final JavaRDD<SAMRecord> sortedReads = sortReads(reads, header, numReducers);
+        final JavaRDD<SAMRecord> sortedReads = sortReadsToHeader ? sortReads(reads, header, numReducers) : reads;
         final String outputPartsDirectory = outputFile + ".parts";
         saveAsShardedHadoopFiles(ctx, outputPartsDirectory, referenceFile, samOutputFormat, sortedReads,  header, false);
-        SAMFileMerger.mergeParts(outputPartsDirectory, outputFile, samOutputFormat, header);
+        if (samOutputFormat == SAMFormat.BAM && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+            mergePartsAndIndexes(ctx.hadoopConfiguration(), outputPartsDirectory, outputFile, header);
+        } else {
+            SAMFileMerger.mergeParts(outputPartsDirectory, outputFile, samOutputFormat, header);
+        }
+    }
+
+    /**
+     * Merges the BAM parts into a single file, and builds its index from the indexes written for the parts, which
+     * saves reading the merged file again to index it.
+     */
+    private static void mergePartsAndIndexes(final Configuration conf, final String outputPartsDirectory,
+                                             final String outputFile, final SAMFileHeader header) throws IOException {
+        final Path partsPath = new Path(outputPartsDirectory);
+        final FileSystem fs = partsPath.getFileSystem(conf);
+        // the same parts, in the same order, as SAMFileMerger will merge
+        final FileStatus[] parts = fs.listStatus(partsPath, path ->
+                PART_FILE_PATTERN.matcher(path.getName()).matches() && path.getName().endsWith(BamFileIoUtils.BAM_FILE_EXTENSION));
+        Arrays.sort(parts, Comparator.comparing(part -> part.getPath().getName()));
+
+        // the parts follow the header that SAMFileMerger writes
+        final CountingOutputStream headerOut = new CountingOutputStream(ByteStreams.nullOutputStream());
+        new SAMOutputPreparer().prepareForRecords(headerOut, SAMFormat.BAM, header);
+        long partStart = headerOut.getCount();
+
+        final BAMIndexMerger indexMerger = new BAMIndexMerger(header.getSequenceDictionary().size());
+        for (final FileStatus part : parts) {
+            final Path partIndex = HeaderlessIndexingBAMRecordWriter.getPartIndexPath(part.getPath());
+            try (final InputStream in = fs.open(partIndex)) {
+                indexMerger.addPartIndex(in, partStart);
+            }
+            // remove the part index so that it isn't taken for a part
+            fs.delete(partIndex, false);
+            partStart += part.getLen();
+        }
+
+        SAMFileMerger.mergeParts(outputPartsDirectory, outputFile, SAMFormat.BAM, header);
+
+        final Path outputPath = new Path(outputFile);
+        final long expectedLength = partStart + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length;
+        if (fs.getFileStatus(outputPath).getLen() != expectedLength) {
+            throw new GATKException("Merged BAM file " + outputFile + " does not have the expected length of " +
+                    expectedLength + " bytes, so cannot be indexed from its parts");
+        }
+        try (final OutputStream out = outputPath.getFileSystem(conf).create(outputPath.suffix(BAMIndex.BAMIndexSuffix))) {
+            indexMerger.writeIndex(out);
+        }
     }
 
     private static JavaRDD<SAMRecord> sortReads(final JavaRDD<SAMRecord> reads, final SAMFileHeader header, final int numReducers) {
@@ -106,9 +106,16 @@ public final class ReadsSparkSource implements Serializable {
             conf.unset(BAMInputFormat.INTERVALS_PROPERTY);
         }
 
-        rdd2 = ctx.newAPIHadoopFile(
+        if (isBam && isFile(readFileName)) {
+            // a single BAM can be split using its BAI, if it has one, and its splits are cached
+            rdd2 = ctx.newAPIHadoopFile(
+                    readFileName, IndexedBAMInputFormat.class, LongWritable.class, SAMRecordWritable.class,
+                    conf);
+        } else {
+            rdd2 = ctx.newAPIHadoopFile(
                     readFileName, AnySAMInputFormat.class, LongWritable.class, SAMRecordWritable.class,
                     conf);
+        }
 
         JavaRDD<GATKRead> reads= rdd2.map(v1 -> {
             SAMRecord sam = v1._2().get();
@@ -205,6 +212,15 @@ public final class ReadsSparkSource implements Serializable {
         }
     }
 
+    private boolean isFile(final String filePath) {
+        try {
+            final Path path = new Path(filePath);
+            return path.getFileSystem(ctx.hadoopConfiguration()).isFile(path);
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     /**
      * Ensure reads in a pair fall in the same partition (input split), if the reads are queryname-sorted,
      * so they are processed together. No shuffle is needed.
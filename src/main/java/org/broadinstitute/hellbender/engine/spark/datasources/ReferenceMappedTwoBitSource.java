@@ -0,0 +1,67 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import htsjdk.samtools.SAMSequenceDictionary;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceSource;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A ReferenceSource impl that is backed by a memory-mapped .2bit file (see {@link MappedTwoBitReference}).
+ *
+ * Unlike {@link ReferenceTwoBitSource}, this holds only the path of the reference, so it is cheap to serialize and
+ * broadcast. The reference is mapped once per JVM, the first time bases are asked for, and then shared by all the
+ * tasks running there, so the bases are never on the heap except for those returned by queries. The path must be
+ * readable from every executor: a local path must be present on every node, and a GCS path can only be read if
+ * pipeline options are passed to the queries.
+ */
+public class ReferenceMappedTwoBitSource implements ReferenceSource, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String referenceURL;
+    private final transient PipelineOptions popts;
+
+    public ReferenceMappedTwoBitSource(final PipelineOptions popts, final String referenceURL) {
+        Utils.validateArg(ReferenceTwoBitSource.isTwoBit(referenceURL), "ReferenceMappedTwoBitSource can only take .2bit files");
+        this.referenceURL = referenceURL;
+        this.popts = popts;
+        // map the reference now, so that a bad file is reported when the source is made
+        getReference(popts);
+    }
+
+    private MappedTwoBitReference getReference(final PipelineOptions pipelineOptions) {
+        return MappedTwoBitReference.getInstance(referenceURL, pipelineOptions != null ? pipelineOptions : popts);
+    }
+
+    /**
+     * Gets the reference bases spanning the requested interval. If the interval ends beyond the end of its
+     * contig according to our reference source's dictionary, it will be truncated at the contig end.
+     *
+     * @param pipelineOptions pipeline options (may be null)
+     * @param interval query interval
+     * @return A ReferenceBases containing the reference bases spanning the requested interval, cropped at the
+     *         contig end if necessary
+     */
+    @Override
+    public ReferenceBases getReferenceBases(final PipelineOptions pipelineOptions, final SimpleInterval interval) throws IOException {
+        final MappedTwoBitReference reference = getReference(pipelineOptions);
+        final int contigLength = reference.getContigLength(interval.getContig());
+        Utils.validateArg(contigLength != -1, () -> "Contig " + interval.getContig() + " not found in reference dictionary");
+        final SimpleInterval queryInterval = new SimpleInterval(interval.getContig(), interval.getStart(), Math.min(interval.getEnd(), contigLength));
+        return new ReferenceBases(reference.getBases(queryInterval), queryInterval);
+    }
+
+    @Override
+    public SAMSequenceDictionary getReferenceSequenceDictionary(final SAMSequenceDictionary optReadSequenceDictionaryToMatch) throws IOException {
+        return getReference(null).getSequenceDictionary();
+    }
+
+    @Override
+    public boolean isCompatibleWithSparkBroadcast() {
+        return true;
+    }
+}
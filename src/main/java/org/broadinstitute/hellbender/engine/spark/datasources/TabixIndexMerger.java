@@ -0,0 +1,104 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the tabix index of a BGZF file made by concatenating BGZF parts from the tabix indexes of the parts, as
+ * written by {@link HeaderlessIndexingVCFRecordWriter}, so that the records don't have to be read again.
+ *
+ * The index of each sequence is merged by {@link BinningIndexContentMerger}. Sequences are matched by name, since
+ * the index of a part only lists the sequences it has records for (unless it was created with a sequence dictionary),
+ * and are listed in the order they are first seen, which is the order of the records in the merged file.
+ */
+public final class TabixIndexMerger {
+    private final Map<String, BinningIndexContentMerger> sequences = new LinkedHashMap<>();
+    private final TabixFormat formatSpec;
+
+    /**
+     * @param formatSpec the format of the merged index, which the indexes of the parts must have too. It's given
+     *                   up front so that a file with no parts still gets a valid (empty) index.
+     */
+    public TabixIndexMerger(final TabixFormat formatSpec) {
+        this.formatSpec = Utils.nonNull(formatSpec);
+    }
+
+    /**
+     * Adds the index of the next part.
+     * @param partIndex the (BGZF compressed) tabix index of the part; not closed by this method
+     * @param partStart the position in bytes of the start of the part in the merged file
+     */
+    public void addPartIndex(final InputStream partIndex, final long partStart) {
+        Utils.nonNull(partIndex);
+        Utils.validateArg(partStart >= 0, "partStart must be non-negative");
+        final BinaryCodec codec = new BinaryCodec(new BlockCompressedInputStream(partIndex));
+        if (codec.readInt() != TabixIndex.MAGIC_NUMBER) {
+            throw new GATKException("Invalid tabix index for part at " + partStart);
+        }
+        final int numSequences = codec.readInt();
+        final TabixFormat partFormatSpec = new TabixFormat(codec.readInt(), codec.readInt(), codec.readInt(),
+                codec.readInt(), (char) codec.readInt(), codec.readInt());
+        if (!formatSpec.equals(partFormatSpec)) {
+            throw new GATKException("Tabix index for part at " + partStart + " has a different format to the merged index");
+        }
+        final byte[] names = new byte[codec.readInt()];
+        codec.readBytes(names);
+        int nameStart = 0;
+        for (int i = 0; i < numSequences; i++) {
+            // the names are null terminated
+            int nameEnd = nameStart;
+            while (names[nameEnd] != 0) {
+                nameEnd++;
+            }
+            final String name = new String(names, nameStart, nameEnd - nameStart, StandardCharsets.US_ASCII);
+            nameStart = nameEnd + 1;
+            sequences.computeIfAbsent(name, n -> new BinningIndexContentMerger()).addPart(codec, partStart);
+        }
+    }
+
+    /**
+     * Writes the (BGZF compressed) index of the merged file.
+     * @param out where to write the index; not closed by this method
+     */
+    public void writeIndex(final OutputStream out) throws IOException {
+        Utils.nonNull(out);
+        final BlockCompressedOutputStream compressedOut = new BlockCompressedOutputStream(out, null);
+        final BinaryCodec codec = new BinaryCodec(compressedOut);
+        codec.writeInt(TabixIndex.MAGIC_NUMBER);
+        codec.writeInt(sequences.size());
+        codec.writeInt(formatSpec.flags);
+        codec.writeInt(formatSpec.sequenceColumn);
+        codec.writeInt(formatSpec.startPositionColumn);
+        codec.writeInt(formatSpec.endPositionColumn);
+        codec.writeInt(formatSpec.metaCharacter);
+        codec.writeInt(formatSpec.numHeaderLinesToSkip);
+        int namesLength = 0;
+        for (final String name : sequences.keySet()) {
+            namesLength += name.length() + 1;
+        }
+        codec.writeInt(namesLength);
+        for (final String name : sequences.keySet()) {
+            codec.writeBytes(name.getBytes(StandardCharsets.US_ASCII));
+            codec.writeByte(0);
+        }
+        for (final BinningIndexContentMerger sequence : sequences.values()) {
+            sequence.write(codec);
+        }
+        // finish the last block and terminate the file without closing the underlying stream
+        compressedOut.flush();
+        out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+    }
+}
@@ -1,10 +1,19 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.util.TabixUtils;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFHeader;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -13,11 +22,13 @@ import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.seqdoop.hadoop_bam.KeyIgnoringVCFOutputFormat;
 import org.seqdoop.hadoop_bam.VCFFormat;
@@ -28,12 +39,26 @@ import scala.Tuple2;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.regex.Pattern;
 
 /**
  * VariantsSparkSink writes variants to a VCF file in parallel using Hadoop-BAM. BCF is not supported.
+ *
+ * If the output file name ends with {@value #BLOCK_COMPRESSED_VCF_EXTENSION} then each task writes a block compressed
+ * part together with a tabix index for it, and the driver concatenates the parts and merges their indexes into a
+ * tabix index for the output file (see {@link TabixIndexMerger}), so that the output doesn't have to be read again
+ * to index it. Output file names ending with {@value BGZFCodec#DEFAULT_EXTENSION} are block compressed by Hadoop-BAM's
+ * codec, and are not indexed.
  */
 public final class VariantsSparkSink {
+    public static final String BLOCK_COMPRESSED_VCF_EXTENSION = ".vcf.gz";
+
+    // Hadoop-BAM's glob for the part files, as used by VCFFileMerger
+    private static final Pattern PART_FILE_PATTERN = Pattern.compile("part-[mr]-[0-9]{5}.*");
 
     // Output format class for writing VCF files through saveAsNewAPIHadoopFile. Must be public.
     public static class SparkVCFOutputFormat extends KeyIgnoringVCFOutputFormat<NullWritable> {
@@ -74,6 +99,13 @@ public final class VariantsSparkSink {
         }
     }
 
+    public static class SparkHeaderlessIndexingVCFOutputFormat extends SparkVCFOutputFormat {
+        @Override
+        public RecordWriter<NullWritable, VariantContextWritable> getRecordWriter(TaskAttemptContext ctx) throws IOException {
+            return new HeaderlessIndexingVCFRecordWriter<>(getDefaultWorkFile(ctx, BLOCK_COMPRESSED_VCF_EXTENSION), vcfHeader, ctx);
+        }
+    }
+
     /**
      * Write variants to the given output file in VCF format with the given header. Note that writing sharded output is not supported.
      * @param ctx the JavaSparkContext
@@ -110,6 +142,7 @@ public final class VariantsSparkSink {
             final VCFHeader header, final int numReducers) throws IOException {
 
         final Configuration conf = ctx.hadoopConfiguration();
+        final boolean indexed = outputFile.endsWith(BLOCK_COMPRESSED_VCF_EXTENSION);
         if (outputFile.endsWith(BGZFCodec.DEFAULT_EXTENSION)) {
             conf.setBoolean(FileOutputFormat.COMPRESS, true);
             conf.setClass(FileOutputFormat.COMPRESS_CODEC, BGZFCodec.class, CompressionCodec.class);
@@ -119,8 +152,53 @@ public final class VariantsSparkSink {
 
         final JavaRDD<VariantContext> sortedVariants = sortVariants(variants, header, numReducers);
         final String outputPartsDirectory = outputFile + ".parts";
-        saveAsShardedHadoopFiles(ctx, conf, outputPartsDirectory, sortedVariants,  header, false);
-        VCFFileMerger.mergeParts(outputPartsDirectory, outputFile, header);
+        if (indexed) {
+            // the parts are compressed by the record writer, not by Hadoop
+            saveAsShardedHadoopFiles(ctx, conf, outputPartsDirectory, sortedVariants, header, SparkHeaderlessIndexingVCFOutputFormat.class);
+            mergePartsAndIndexes(conf, outputPartsDirectory, outputFile, header);
+        } else {
+            saveAsShardedHadoopFiles(ctx, conf, outputPartsDirectory, sortedVariants, header, SparkHeaderlessVCFOutputFormat.class);
+            VCFFileMerger.mergeParts(outputPartsDirectory, outputFile, header);
+        }
+    }
+
+    /**
+     * Writes the header, followed by the block compressed parts written by {@link HeaderlessIndexingVCFRecordWriter},
+     * to the output file, and the tabix index built from the indexes of the parts alongside it. The parts directory
+     * is deleted.
+     */
+    private static void mergePartsAndIndexes(final Configuration conf, final String outputPartsDirectory,
+                                             final String outputFile, final VCFHeader header) throws IOException {
+        final Path partsPath = new Path(outputPartsDirectory);
+        final FileSystem fs = partsPath.getFileSystem(conf);
+        if (!fs.exists(new Path(partsPath, FileOutputCommitter.SUCCEEDED_FILE_NAME))) {
+            throw new GATKException("Unable to find " + FileOutputCommitter.SUCCEEDED_FILE_NAME + " file in " + outputPartsDirectory);
+        }
+        final FileStatus[] parts = fs.listStatus(partsPath, path ->
+                PART_FILE_PATTERN.matcher(path.getName()).matches() && path.getName().endsWith(BLOCK_COMPRESSED_VCF_EXTENSION));
+        Arrays.sort(parts, Comparator.comparing(part -> part.getPath().getName()));
+
+        final Path outputPath = new Path(outputFile);
+        final TabixIndexMerger indexMerger = new TabixIndexMerger(TabixFormat.VCF);
+        try (final CountingOutputStream out = new CountingOutputStream(fs.create(outputPath))) {
+            // the header is in blocks of its own, so the parts start on a block boundary
+            final BlockCompressedOutputStream headerOut = new BlockCompressedOutputStream(out, null);
+            new VariantContextWriterBuilder().clearOptions().setOutputVCFStream(headerOut).build().writeHeader(header);
+            headerOut.flush();
+            for (final FileStatus part : parts) {
+                try (final InputStream in = fs.open(HeaderlessIndexingVCFRecordWriter.getPartIndexPath(part.getPath()))) {
+                    indexMerger.addPartIndex(in, out.getCount());
+                }
+                try (final InputStream in = fs.open(part.getPath())) {
+                    ByteStreams.copy(in, out);
+                }
+            }
+            out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+        }
+        try (final OutputStream out = fs.create(outputPath.suffix(TabixUtils.STANDARD_INDEX_EXTENSION))) {
+            indexMerger.writeIndex(out);
+        }
+        fs.delete(partsPath, true);
     }
 
     private static JavaRDD<VariantContext> sortVariants(final JavaRDD<VariantContext> variants, final VCFHeader header, final int numReducers) {
@@ -144,7 +222,7 @@ public final class VariantsSparkSink {
 
     private static void saveAsShardedHadoopFiles(
             final JavaSparkContext ctx, final Configuration conf, final String outputFile, JavaRDD<VariantContext> variants,
-            final VCFHeader header, final boolean writeHeader) throws IOException {
+            final VCFHeader header, final Class<? extends OutputFormat<NullWritable, VariantContextWritable>> outputFormat) throws IOException {
         // Set the static header on the driver thread.
         SparkVCFOutputFormat.setVCFHeader(header);
 
@@ -156,7 +234,7 @@ public final class VariantsSparkSink {
         // The expected format for writing is JavaPairRDD where the key is ignored and the value is VariantContextWritable.
         final JavaPairRDD<VariantContext, VariantContextWritable> rddVariantContextWriteable = pairVariantsWithVariantContextWritables(variantsRDD);
 
-        rddVariantContextWriteable.saveAsNewAPIHadoopFile(outputFile, VariantContext.class, VariantContextWritable.class, getOutputFormat(writeHeader), conf);
+        rddVariantContextWriteable.saveAsNewAPIHadoopFile(outputFile, VariantContext.class, VariantContextWritable.class, outputFormat, conf);
     }
 
     private static JavaRDD<VariantContext> setHeaderForEachPartition(final JavaRDD<VariantContext> variants, final Broadcast<VCFHeader> headerBroadcast) {
@@ -173,8 +251,4 @@ public final class VariantsSparkSink {
             return new Tuple2<>(variantContext, variantContextWritable);
         });
     }
-
-    private static Class<? extends OutputFormat<NullWritable, VariantContextWritable>> getOutputFormat(final boolean writeHeader) {
-        return writeHeader ? SparkVCFOutputFormat.class : SparkHeaderlessVCFOutputFormat.class;
-    }
 }
@@ -1,5 +1,6 @@
 package org.broadinstitute.hellbender.tools.picard.sam.markduplicates;
 
+import com.google.common.collect.AbstractIterator;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SamReader;
@@ -17,6 +18,7 @@ import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.markduplicates.AbstractOpticalDuplicateFinderCommandLineProgram;
 import org.broadinstitute.hellbender.utils.read.markduplicates.DuplicationMetrics;
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
@@ -31,10 +33,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.pow;
 
@@ -104,6 +110,23 @@ public final class EstimateLibraryComplexity extends AbstractOpticalDuplicateFin
             "group size would be approximately 10 reads.")
     public int MAX_GROUP_RATIO = 500;
 
+    @Argument(doc = "Number of threads used to search the prefix groups for duplicates. Groups are handed to the " +
+            "threads in sorted order, and at most this many groups are held in memory at once beyond the one being read.",
+            optional = true)
+    public int NUM_THREADS = 1;
+
+    /**
+     * Groups with fewer read pairs than this are compared exhaustively, since building the pigeonhole index
+     * for them costs more than it saves.
+     */
+    static final int MIN_GROUP_SIZE_FOR_INDEX = 16;
+
+    /**
+     * The pigeonhole index is not used if the exact-match segments it would use are shorter than this,
+     * since such short segments reject too few candidate pairs.
+     */
+    static final int MIN_INDEX_SEGMENT_LENGTH = 8;
+
     /**
      * Little class to hold the sequence of a pair of reads and tile location information.
      */
@@ -329,76 +352,59 @@ public final class EstimateLibraryComplexity extends AbstractOpticalDuplicateFin
             final Map<String, Histogram<Integer>> duplicationHistosByLibrary = new HashMap<>();
             final Map<String, Histogram<Integer>> opticalHistosByLibrary = new HashMap<>();
 
-            int groupsProcessed = 0;
-            long lastLogTime = System.currentTimeMillis();
             final int meanGroupSize = Math.max(1, (recordsRead / 2) / (int) pow(4.0, (double) MIN_IDENTICAL_BASES * 2));
 
-            while (iterator.hasNext()) {
-                // Get the next group and split it apart by library
-                final List<PairedReadSequence> group = getNextGroup(iterator);
-
-                if (group.size() > meanGroupSize * MAX_GROUP_RATIO) {
-                    final PairedReadSequence prs = group.get(0);
-                    logger.warn("Omitting group with over " + MAX_GROUP_RATIO + " times the expected mean number of read pairs. " +
-                            "Mean=" + meanGroupSize + ", Actual=" + group.size() + ". Prefixes: " +
-                            StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES) +
-                            " / " +
-                            StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES));
-                } else {
-                    final Map<String, List<PairedReadSequence>> sequencesByLibrary = splitByLibrary(group, readGroups);
-
-                    // Now process the reads by library
-                    for (final Map.Entry<String, List<PairedReadSequence>> entry : sequencesByLibrary.entrySet()) {
-                        final String library = entry.getKey();
-                        final List<PairedReadSequence> seqs = entry.getValue();
-
-                        Histogram<Integer> duplicationHisto = duplicationHistosByLibrary.get(library);
-                        Histogram<Integer> opticalHisto = opticalHistosByLibrary.get(library);
-                        if (duplicationHisto == null) {
-                            duplicationHisto = new Histogram<>("duplication_group_count", library);
-                            opticalHisto = new Histogram<>("duplication_group_count", "optical_duplicates");
-                            duplicationHistosByLibrary.put(library, duplicationHisto);
-                            opticalHistosByLibrary.put(library, opticalHisto);
-                        }
-
-                        // Figure out if any reads within this group are duplicates of one another
-                        for (int i = 0; i < seqs.size(); ++i) {
-                            final PairedReadSequence lhs = seqs.get(i);
-                            if (lhs == null) continue;
-                            final List<PairedReadSequence> dupes = new ArrayList<>();
-
-                            for (int j = i + 1; j < seqs.size(); ++j) {
-                                final PairedReadSequence rhs = seqs.get(j);
-                                if (rhs == null) continue;
-
-                                if (matches(lhs, rhs, MAX_DIFF_RATE)) {
-                                    dupes.add(rhs);
-                                    seqs.set(j, null);
-                                }
-                            }
-
-                            if (!dupes.isEmpty()) {
-                                dupes.add(lhs);
-                                final int duplicateCount = dupes.size();
-                                duplicationHisto.increment(duplicateCount);
-
-                                final boolean[] flags = opticalDuplicateFinder.findOpticalDuplicates(dupes);
-                                for (final boolean b : flags) {
-                                    if (b) opticalHisto.increment(duplicateCount);
-                                }
-                            } else {
-                                duplicationHisto.increment(1);
-                            }
+            // Pull the groups out of the sorted reads, dropping the self-similar ones, and search them for duplicates
+            // on NUM_THREADS threads. Results come back in group order and are merged on this thread.
+            final Iterator<List<PairedReadSequence>> groups = new AbstractIterator<List<PairedReadSequence>>() {
+                @Override
+                protected List<PairedReadSequence> computeNext() {
+                    while (iterator.hasNext()) {
+                        final List<PairedReadSequence> group = getNextGroup(iterator);
+                        if (group.size() > meanGroupSize * MAX_GROUP_RATIO) {
+                            final PairedReadSequence prs = group.get(0);
+                            logger.warn("Omitting group with over " + MAX_GROUP_RATIO + " times the expected mean number of read pairs. " +
+                                    "Mean=" + meanGroupSize + ", Actual=" + group.size() + ". Prefixes: " +
+                                    StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES) +
+                                    " / " +
+                                    StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES));
+                        } else {
+                            return group;
                         }
                     }
+                    return endOfData();
+                }
+            };
+            final Iterator<GroupDuplicationCounts> groupCounts =
+                    Utils.transformParallel(groups, group -> findDuplicates(group, readGroups), NUM_THREADS);
 
-                    ++groupsProcessed;
-                    if (lastLogTime < System.currentTimeMillis() - 60000) {
-                        logger.info("Processed " + groupsProcessed + " groups.");
-                        lastLogTime = System.currentTimeMillis();
+            int groupsProcessed = 0;
+            final long startTime = System.currentTimeMillis();
+            long lastLogTime = startTime;
+            while (groupCounts.hasNext()) {
+                final GroupDuplicationCounts counts = groupCounts.next();
+                for (final Map.Entry<String, Histogram<Integer>> entry : counts.duplicationHistosByLibrary.entrySet()) {
+                    final String library = entry.getKey();
+                    Histogram<Integer> duplicationHisto = duplicationHistosByLibrary.get(library);
+                    Histogram<Integer> opticalHisto = opticalHistosByLibrary.get(library);
+                    if (duplicationHisto == null) {
+                        duplicationHisto = new Histogram<>("duplication_group_count", library);
+                        opticalHisto = new Histogram<>("duplication_group_count", "optical_duplicates");
+                        duplicationHistosByLibrary.put(library, duplicationHisto);
+                        opticalHistosByLibrary.put(library, opticalHisto);
                     }
+                    duplicationHisto.addHistogram(entry.getValue());
+                    opticalHisto.addHistogram(counts.opticalHistosByLibrary.get(library));
+                }
+
+                ++groupsProcessed;
+                if (lastLogTime < System.currentTimeMillis() - 60000) {
+                    logger.info("Processed " + groupsProcessed + " groups (" + groupsPerSecond(groupsProcessed, startTime) + " groups/second).");
+                    lastLogTime = System.currentTimeMillis();
                 }
             }
+            logger.info("Finished scanning " + groupsProcessed + " groups for duplicates using " + NUM_THREADS +
+                    " thread(s) (" + groupsPerSecond(groupsProcessed, startTime) + " groups/second).");
             sorter.cleanup();
 
             final MetricsFile<DuplicationMetrics, Integer> file = getMetricsFile();
@@ -431,11 +437,198 @@ public final class EstimateLibraryComplexity extends AbstractOpticalDuplicateFin
         return null;
     }
 
+    /**
+     * Duplicate set sizes found within a single prefix group, by library.
+     */
+    static final class GroupDuplicationCounts {
+        final Map<String, Histogram<Integer>> duplicationHistosByLibrary = new LinkedHashMap<>();
+        final Map<String, Histogram<Integer>> opticalHistosByLibrary = new LinkedHashMap<>();
+    }
+
+    /**
+     * Finds the duplicate sets within one prefix group and counts them by library. Only reads state that is
+     * fixed once the reads have been sorted, so groups can be processed concurrently.
+     */
+    GroupDuplicationCounts findDuplicates(final List<PairedReadSequence> group, final List<SAMReadGroupRecord> readGroups) {
+        final GroupDuplicationCounts counts = new GroupDuplicationCounts();
+        final Map<String, List<PairedReadSequence>> sequencesByLibrary = splitByLibrary(group, readGroups);
+
+        // Now process the reads by library
+        for (final Map.Entry<String, List<PairedReadSequence>> entry : sequencesByLibrary.entrySet()) {
+            final String library = entry.getKey();
+            final List<PairedReadSequence> seqs = entry.getValue();
+
+            final Histogram<Integer> duplicationHisto = new Histogram<>("duplication_group_count", library);
+            final Histogram<Integer> opticalHisto = new Histogram<>("duplication_group_count", "optical_duplicates");
+            counts.duplicationHistosByLibrary.put(library, duplicationHisto);
+            counts.opticalHistosByLibrary.put(library, opticalHisto);
+
+            final PigeonholeIndex index = PigeonholeIndex.create(seqs, MIN_IDENTICAL_BASES, MAX_DIFF_RATE);
+
+            // Figure out if any reads within this group are duplicates of one another
+            for (int i = 0; i < seqs.size(); ++i) {
+                final PairedReadSequence lhs = seqs.get(i);
+                if (lhs == null) continue;
+                final List<PairedReadSequence> dupes = new ArrayList<>();
+
+                // Candidates are visited in increasing order, exactly as in the exhaustive search, so that
+                // each read pair is claimed by the same duplicate set either way.
+                final int[] candidates = index == null ? null : index.candidatesAfter(i);
+                final int numCandidates = index == null ? seqs.size() - i - 1 : candidates.length;
+                for (int c = 0; c < numCandidates; ++c) {
+                    final int j = index == null ? i + 1 + c : candidates[c];
+                    final PairedReadSequence rhs = seqs.get(j);
+                    if (rhs == null) continue;
+
+                    if (matches(lhs, rhs, MAX_DIFF_RATE)) {
+                        dupes.add(rhs);
+                        seqs.set(j, null);
+                    }
+                }
+
+                if (!dupes.isEmpty()) {
+                    dupes.add(lhs);
+                    final int duplicateCount = dupes.size();
+                    duplicationHisto.increment(duplicateCount);
+
+                    final boolean[] flags = opticalDuplicateFinder.findOpticalDuplicates(dupes);
+                    for (final boolean b : flags) {
+                        if (b) opticalHisto.increment(duplicateCount);
+                    }
+                } else {
+                    duplicationHisto.increment(1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static String groupsPerSecond(final int groupsProcessed, final long startTime) {
+        final double seconds = Math.max(1L, System.currentTimeMillis() - startTime) / 1000.0;
+        return String.format("%.1f", groupsProcessed / seconds);
+    }
+
+    /**
+     * Pigeonhole filter for the pairwise comparisons within a group of read pairs that share a prefix.
+     *
+     * Two pairs that {@link #matches} may differ at no more than maxErrors positions of the compared region,
+     * and every pair in the group is compared at least over bases [minIdenticalBases, shortest read length) of
+     * each read. Cutting that common region into maxErrors + 1 disjoint segments means any two matching pairs
+     * must be identical over at least one whole segment. Pairs are bucketed by the hash of each segment, and
+     * only pairs that share a bucket for some segment are compared base by base. The filter never rejects a
+     * pair that matches, so it does not change the results.
+     */
+    static final class PigeonholeIndex {
+        private final int numSeqs;
+        // for each segment, the indices of the read pairs sorted by segment hash, and the hash of each read pair
+        private final int[][] orderBySegment;
+        private final long[][] hashesBySegment;
+        // for each segment, the position of each read pair in orderBySegment
+        private final int[][] rankBySegment;
+        private final int[] lastSeen;
+        private final int[] candidateBuffer;
+
+        private PigeonholeIndex(final int numSeqs, final int[][] orderBySegment, final long[][] hashesBySegment, final int[][] rankBySegment) {
+            this.numSeqs = numSeqs;
+            this.orderBySegment = orderBySegment;
+            this.hashesBySegment = hashesBySegment;
+            this.rankBySegment = rankBySegment;
+            this.lastSeen = new int[numSeqs];
+            this.candidateBuffer = new int[numSeqs];
+        }
+
+        /**
+         * Builds the index for a list of read pairs, or returns null if the filter would not pay for itself
+         * (small groups, or segments too short to be selective).
+         */
+        static PigeonholeIndex create(final List<PairedReadSequence> seqs, final int minIdenticalBases, final double maxDiffRate) {
+            final int numSeqs = seqs.size();
+            if (numSeqs < MIN_GROUP_SIZE_FOR_INDEX) return null;
+
+            int minRead1Length = Integer.MAX_VALUE, minRead2Length = Integer.MAX_VALUE;
+            int maxRead1Length = 0, maxRead2Length = 0;
+            for (final PairedReadSequence seq : seqs) {
+                minRead1Length = Math.min(minRead1Length, seq.read1.length);
+                minRead2Length = Math.min(minRead2Length, seq.read2.length);
+                maxRead1Length = Math.max(maxRead1Length, seq.read1.length);
+                maxRead2Length = Math.max(maxRead2Length, seq.read2.length);
+            }
+
+            // no pair of reads can be allowed more errors than the two longest reads would be
+            final int maxErrors = (int) Math.floor((maxRead1Length + maxRead2Length) * maxDiffRate);
+            final int read1RegionLength = Math.max(0, minRead1Length - minIdenticalBases);
+            final int regionLength = read1RegionLength + Math.max(0, minRead2Length - minIdenticalBases);
+            final int numSegments = maxErrors + 1;
+            final int segmentLength = regionLength / numSegments;
+            if (segmentLength < MIN_INDEX_SEGMENT_LENGTH) return null;
+
+            final int[][] orderBySegment = new int[numSegments][];
+            final long[][] hashesBySegment = new long[numSegments][];
+            final int[][] rankBySegment = new int[numSegments][];
+            for (int segment = 0; segment < numSegments; ++segment) {
+                final int segmentStart = segment * segmentLength;
+                final int segmentEnd = segment == numSegments - 1 ? regionLength : segmentStart + segmentLength;
+                final long[] hashes = new long[numSeqs];
+                for (int i = 0; i < numSeqs; ++i) {
+                    hashes[i] = hashSegment(seqs.get(i), minIdenticalBases, read1RegionLength, segmentStart, segmentEnd);
+                }
+                final int[] order = IntStream.range(0, numSeqs).boxed()
+                        .sorted(Comparator.comparingLong(i -> hashes[i]))
+                        .mapToInt(Integer::intValue).toArray();
+                final int[] rank = new int[numSeqs];
+                for (int r = 0; r < numSeqs; ++r) {
+                    rank[order[r]] = r;
+                }
+                orderBySegment[segment] = order;
+                hashesBySegment[segment] = hashes;
+                rankBySegment[segment] = rank;
+            }
+            return new PigeonholeIndex(numSeqs, orderBySegment, hashesBySegment, rankBySegment);
+        }
+
+        private static long hashSegment(final PairedReadSequence seq, final int minIdenticalBases, final int read1RegionLength,
+                                        final int segmentStart, final int segmentEnd) {
+            long hash = 1125899906842597L;
+            for (int pos = segmentStart; pos < segmentEnd; ++pos) {
+                final byte base = pos < read1RegionLength ? seq.read1[minIdenticalBases + pos] : seq.read2[minIdenticalBases + pos - read1RegionLength];
+                hash = 31 * hash + base;
+            }
+            return hash;
+        }
+
+        /**
+         * @return the indices greater than i of the read pairs that share at least one segment hash with read pair i, in increasing order
+         */
+        int[] candidatesAfter(final int i) {
+            // the index is only ever queried by the thread processing its group, so the scratch arrays can be reused
+            final int stamp = i + 1;
+            int numCandidates = 0;
+            for (int segment = 0; segment < orderBySegment.length; ++segment) {
+                final int[] order = orderBySegment[segment];
+                final long[] hashes = hashesBySegment[segment];
+                final long hash = hashes[i];
+                final int rank = rankBySegment[segment][i];
+                int r = rank;
+                while (r > 0 && hashes[order[r - 1]] == hash) --r;
+                for ( ; r < numSeqs && hashes[order[r]] == hash; ++r) {
+                    final int j = order[r];
+                    if (j > i && lastSeen[j] != stamp) {
+                        lastSeen[j] = stamp;
+                        candidateBuffer[numCandidates++] = j;
+                    }
+                }
+            }
+            final int[] candidates = Arrays.copyOf(candidateBuffer, numCandidates);
+            Arrays.sort(candidates);
+            return candidates;
+        }
+    }
+
     /**
      * Checks to see if two reads pairs have sequence that are the same, give or take a few
      * errors/diffs as dictated by the maxDiffRate.
      */
-    private boolean matches(final PairedReadSequence lhs, final PairedReadSequence rhs, final double maxDiffRate) {
+    boolean matches(final PairedReadSequence lhs, final PairedReadSequence rhs, final double maxDiffRate) {
         final int read1Length = Math.min(lhs.read1.length, rhs.read1.length);
         final int read2Length = Math.min(lhs.read2.length, rhs.read2.length);
         final int maxErrors = (int) Math.floor((read1Length + read2Length) * maxDiffRate);
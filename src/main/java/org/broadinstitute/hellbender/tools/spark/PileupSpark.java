@@ -1,23 +1,18 @@
 package org.broadinstitute.hellbender.tools.spark;
 
 import htsjdk.tribble.Feature;
-import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.Function;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.Hidden;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.barclay.help.DocumentedFeature;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.SparkProgramGroup;
-import org.broadinstitute.hellbender.engine.AlignmentContext;
 import org.broadinstitute.hellbender.engine.FeatureContext;
 import org.broadinstitute.hellbender.engine.FeatureInput;
-import org.broadinstitute.hellbender.engine.ReferenceContext;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
-import org.broadinstitute.hellbender.engine.spark.LocusWalkerContext;
 import org.broadinstitute.hellbender.utils.pileup.PileupElement;
 import org.broadinstitute.hellbender.utils.pileup.ReadPileup;
 import org.broadinstitute.hellbender.engine.spark.LocusWalkerSpark;
@@ -82,16 +77,14 @@ public final class PileupSpark extends LocusWalkerSpark {
     }
 
     @Override
-    protected void processAlignments(JavaRDD<LocusWalkerContext> rdd, JavaSparkContext ctx) {
-        rdd.map(pileupFunction(metadata, outputInsertLength, showVerbose)).saveAsTextFile(outputFile);
+    protected void runTool(JavaSparkContext ctx) {
+        // make the pileup strings inside the tasks, rather than going through an RDD of locus contexts
+        mapAlignments(ctx, pileupFunction(metadata, outputInsertLength, showVerbose)).saveAsTextFile(outputFile);
     }
 
-    private static Function<LocusWalkerContext, String> pileupFunction(List<FeatureInput<Feature>> metadata,
-                                                                       boolean outputInsertLength, boolean showVerbose) {
-        return (Function<LocusWalkerContext, String>) context -> {
-            AlignmentContext alignmentContext = context.getAlignmentContext();
-            ReferenceContext referenceContext = context.getReferenceContext();
-            FeatureContext featureContext = context.getFeatureContext();
+    private static LocusFunction<String> pileupFunction(List<FeatureInput<Feature>> metadata,
+                                                        boolean outputInsertLength, boolean showVerbose) {
+        return (alignmentContext, referenceContext, featureContext) -> {
             final String features = getFeaturesString(featureContext, metadata);
             final ReadPileup basePileup = alignmentContext.getBasePileup();
             final StringBuilder s = new StringBuilder();
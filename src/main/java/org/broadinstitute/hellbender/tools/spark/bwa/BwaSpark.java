@@ -29,6 +29,10 @@ public final class BwaSpark extends GATKSparkTool {
             fullName = "bwamemIndexImage")
     private String indexImageFile;
 
+    @Argument(doc = "the number of reads (from interleaved read pairs) to align at a time in each partition; must be even",
+            fullName = "readsPerAlignmentBatch", optional = true)
+    private int readsPerAlignmentBatch = BwaSparkEngine.DEFAULT_READS_PER_BATCH;
+
     @Override
     public boolean requiresReference() {
         return true;
@@ -42,7 +46,8 @@ public final class BwaSpark extends GATKSparkTool {
     @Override
     protected void runTool(final JavaSparkContext ctx) {
         try ( final BwaSparkEngine engine =
-                      new BwaSparkEngine(ctx, indexImageFile, getHeaderForReads(), getReferenceSequenceDictionary()) ) {
+                      new BwaSparkEngine(ctx, indexImageFile, getHeaderForReads(), getReferenceSequenceDictionary(),
+                                         readsPerAlignmentBatch) ) {
             final JavaRDD<GATKRead> reads = engine.align(getReads());
 
             try {
@@ -4,6 +4,9 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFlag;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceDictionary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
@@ -18,6 +21,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The BwaSparkEngine provides a simple interface for transforming a JavaRDD<GATKRead> in which the reads are paired
@@ -31,18 +39,40 @@ import java.util.List;
  * See {@link BwaSpark#runTool runTool} for an example.
  */
 public final class BwaSparkEngine implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(BwaSparkEngine.class);
+
+    /**
+     * The default number of reads (from interleaved read pairs) aligned at a time in each partition.
+     */
+    public static final int DEFAULT_READS_PER_BATCH = 100000;
+
     private final JavaSparkContext ctx;
     private final String indexFileName;
     private final Broadcast<SAMFileHeader> broadcastHeader;
+    private final int readsPerBatch;
 
     public BwaSparkEngine(final JavaSparkContext ctx,
                           final String indexFileName,
                           SAMFileHeader inputHeader,
                           final SAMSequenceDictionary refDictionary) {
+        this(ctx, indexFileName, inputHeader, refDictionary, DEFAULT_READS_PER_BATCH);
+    }
+
+    /**
+     * @param readsPerBatch the number of reads aligned at a time in each partition, which must be even so that the
+     *                      pairs aren't split between batches
+     */
+    public BwaSparkEngine(final JavaSparkContext ctx,
+                          final String indexFileName,
+                          SAMFileHeader inputHeader,
+                          final SAMSequenceDictionary refDictionary,
+                          final int readsPerBatch) {
         Utils.nonNull(indexFileName);
         Utils.nonNull(inputHeader);
+        Utils.validateArg(readsPerBatch > 0 && (readsPerBatch & 1) == 0, "readsPerBatch must be positive and even");
         this.ctx = ctx;
         this.indexFileName = indexFileName;
+        this.readsPerBatch = readsPerBatch;
         if (inputHeader.getSequenceDictionary() == null || inputHeader.getSequenceDictionary().isEmpty()) {
             Utils.nonNull(refDictionary);
             inputHeader = inputHeader.clone();
@@ -56,7 +86,8 @@ public final class BwaSparkEngine implements AutoCloseable {
     public JavaRDD<GATKRead> align(final JavaRDD<GATKRead> unalignedReads) {
         final Broadcast<SAMFileHeader> broadcastHeader = this.broadcastHeader;
         final String indexFileName = this.indexFileName;
-        return unalignedReads.mapPartitions(itr -> new ReadAligner(indexFileName, broadcastHeader.value()).apply(itr));
+        final int readsPerBatch = this.readsPerBatch;
+        return unalignedReads.mapPartitions(itr -> new ReadAligner(indexFileName, broadcastHeader.value(), itr, readsPerBatch));
     }
 
     @Override
@@ -65,66 +96,182 @@ public final class BwaSparkEngine implements AutoCloseable {
         BwaMemIndexSingleton.closeAllDistributedInstances(ctx);
     }
 
-    private static final class ReadAligner {
+    /**
+     * Aligns the reads of a partition in batches of read pairs, lazily, as the aligned reads are consumed. While a batch
+     * is aligned on a separate thread, the next batch is read and the aligned reads of the previous batch are converted
+     * to GATKReads on the task thread (which is the thread that has to consume the input iterator), so that memory use
+     * is bounded by the batch size rather than the partition size.
+     */
+    private static final class ReadAligner implements Iterator<GATKRead> {
         private final BwaMemIndex bwaMemIndex;
         private final SAMFileHeader readsHeader;
+        private final Iterator<GATKRead> unalignedReads;
+        private final int readsPerBatch;
+        private final List<String> refNames;
+        private final BwaMemAligner aligner;
+        private final ExecutorService alignmentExecutor;
 
-        // assumes 128Mb partitions, with reads needing about 100bytes each when BAM compressed
-        private static final int READS_PER_PARTITION_GUESS = 1500000;
+        // the batch being aligned, if any
+        private List<GATKRead> pendingReads;
+        private Future<List<List<BwaMemAlignment>>> pendingAlignments;
+        private Iterator<GATKRead> alignedReads = Collections.emptyIterator();
 
-        ReadAligner( final String indexFileName, final SAMFileHeader readsHeader ) {
+        private final long startTime = System.nanoTime();
+        private long alignmentWaitTime = 0;
+        private long nReads = 0;
+        private boolean closed = false;
+
+        ReadAligner( final String indexFileName, final SAMFileHeader readsHeader,
+                     final Iterator<GATKRead> unalignedReads, final int readsPerBatch ) {
             this.bwaMemIndex = BwaMemIndexSingleton.getInstance(indexFileName);
             this.readsHeader = readsHeader;
+            this.unalignedReads = unalignedReads;
+            this.readsPerBatch = readsPerBatch;
+            this.refNames = bwaMemIndex.getReferenceContigNames();
+            this.aligner = new BwaMemAligner(bwaMemIndex);
+            // we are dealing with interleaved, paired reads.  tell BWA that they're paired.
+            aligner.alignPairs();
+            this.alignmentExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "BwaSparkEngine aligner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final TaskContext taskContext = TaskContext.get();
+            if ( taskContext != null ) {
+                // don't leave the aligner running if the task fails, or stops consuming the reads early
+                taskContext.addTaskCompletionListener(context -> close());
+            }
+            submitBatch(readBatch());
         }
 
-        Iterator<GATKRead> apply( final Iterator<GATKRead> readItr ) {
-            final List<GATKRead> inputReads = new ArrayList<>(READS_PER_PARTITION_GUESS);
-            while ( readItr.hasNext() ) {
-                inputReads.add(readItr.next());
+        @Override
+        public boolean hasNext() {
+            while ( !alignedReads.hasNext() ) {
+                if ( pendingReads == null ) {
+                    close();
+                    return false;
+                }
+                final List<GATKRead> reads = pendingReads;
+                final List<List<BwaMemAlignment>> alignments = getPendingAlignments();
+                // read the next batch and start aligning it before converting this one
+                submitBatch(readBatch());
+                alignedReads = applyAlignments(reads, alignments).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public GATKRead next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
             }
-            final int nReads = inputReads.size();
-            if ( (nReads & 1) != 0 ) {
+            return alignedReads.next();
+        }
+
+        private List<GATKRead> readBatch() {
+            final List<GATKRead> reads = new ArrayList<>(readsPerBatch);
+            while ( reads.size() < readsPerBatch && unalignedReads.hasNext() ) {
+                reads.add(unalignedReads.next());
+            }
+            // the batch size is even, so only the last batch can have an odd number of reads
+            if ( (reads.size() & 1) != 0 ) {
                 throw new GATKException("We're supposed to be aligning paired reads, but there are an odd number of them.");
             }
-            final List<List<BwaMemAlignment>> allAlignments;
-            if ( nReads == 0 ) allAlignments = Collections.emptyList();
-            else {
-                final List<byte[]> seqs = new ArrayList<>(nReads);
-                for (final GATKRead read : inputReads) {
-                    seqs.add(read.getBases());
-                }
-                final BwaMemAligner aligner = new BwaMemAligner(bwaMemIndex);
-                // we are dealing with interleaved, paired reads.  tell BWA that they're paired.
-                aligner.alignPairs();
-                allAlignments = aligner.alignSeqs(seqs);
+            return reads;
+        }
+
+        private void submitBatch( final List<GATKRead> reads ) {
+            if ( reads.isEmpty() ) {
+                pendingReads = null;
+                pendingAlignments = null;
+                return;
+            }
+            final List<byte[]> seqs = new ArrayList<>(reads.size());
+            for ( final GATKRead read : reads ) {
+                seqs.add(read.getBases());
             }
-            final List<String> refNames = bwaMemIndex.getReferenceContigNames();
+            pendingReads = reads;
+            pendingAlignments = alignmentExecutor.submit(() -> aligner.alignSeqs(seqs));
+        }
+
+        private List<List<BwaMemAlignment>> getPendingAlignments() {
+            final long waitStart = System.nanoTime();
+            try {
+                return pendingAlignments.get();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new GATKException("Interrupted while aligning reads", e);
+            } catch ( final ExecutionException e ) {
+                throw new GATKException("Unable to align reads", e.getCause());
+            } finally {
+                alignmentWaitTime += System.nanoTime() - waitStart;
+            }
+        }
+
+        private List<GATKRead> applyAlignments( final List<GATKRead> reads, final List<List<BwaMemAlignment>> allAlignments ) {
+            nReads += reads.size();
             final List<GATKRead> outputReads = new ArrayList<>(allAlignments.stream().mapToInt(List::size).sum());
-            for ( int idx = 0; idx != nReads; ++idx ) {
-                final GATKRead originalRead = inputReads.get(idx);
+            for ( int idx = 0; idx != reads.size(); ++idx ) {
+                final GATKRead originalRead = reads.get(idx);
                 final String readName = originalRead.getName();
                 final byte[] bases = originalRead.getBases();
                 final byte[] quals = originalRead.getBaseQualities();
                 final String readGroup = originalRead.getReadGroup();
                 final List<BwaMemAlignment> alignments = allAlignments.get(idx);
-                final long nPrimaries = alignments.stream().filter(aln->(aln.getSamFlag()&SAMFlag.NOT_PRIMARY_ALIGNMENT.intValue())==0).count();
-                for ( final BwaMemAlignment alignment : alignments ) {
+                final String[] saTags = getSATags(alignments);
+                for ( int alignmentIdx = 0; alignmentIdx != alignments.size(); ++alignmentIdx ) {
                     final SAMRecord samRecord =
                             BwaMemAlignmentUtils.applyAlignment(readName, bases, quals, readGroup,
-                                                                alignment, refNames, readsHeader, false, true);
+                                                                alignments.get(alignmentIdx), refNames, readsHeader, false, true);
                     final GATKRead rec = SAMRecordToGATKReadAdapter.headerlessReadAdapter(samRecord);
-                    if ( nPrimaries > 1 ) {
+                    if ( saTags != null ) {
+                        // the SA tag lists the other primary alignments
                         final StringBuilder saTag = new StringBuilder();
-                        alignments.stream()
-                                .filter(aln->aln != alignment)
-                                .filter(aln->(aln.getSamFlag()&SAMFlag.NOT_PRIMARY_ALIGNMENT.intValue())==0)
-                                .forEach(aln->saTag.append(BwaMemAlignmentUtils.asTag(aln, refNames)));
+                        for ( int otherIdx = 0; otherIdx != saTags.length; ++otherIdx ) {
+                            if ( otherIdx != alignmentIdx && saTags[otherIdx] != null ) {
+                                saTag.append(saTags[otherIdx]);
+                            }
+                        }
                         rec.setAttribute("SA", saTag.toString());
                     }
                     outputReads.add(rec);
                 }
             }
-            return outputReads.iterator();
+            return outputReads;
+        }
+
+        /**
+         * @return the SA tag entry for each primary alignment (and null for the others), or null if there aren't
+         * several primary alignments, in which case no SA tags are needed
+         */
+        private String[] getSATags( final List<BwaMemAlignment> alignments ) {
+            int nPrimaries = 0;
+            for ( final BwaMemAlignment alignment : alignments ) {
+                if ( isPrimary(alignment) ) ++nPrimaries;
+            }
+            if ( nPrimaries <= 1 ) return null;
+            final String[] saTags = new String[alignments.size()];
+            for ( int idx = 0; idx != alignments.size(); ++idx ) {
+                if ( isPrimary(alignments.get(idx)) ) {
+                    saTags[idx] = BwaMemAlignmentUtils.asTag(alignments.get(idx), refNames);
+                }
+            }
+            return saTags;
+        }
+
+        private static boolean isPrimary( final BwaMemAlignment alignment ) {
+            return (alignment.getSamFlag() & SAMFlag.NOT_PRIMARY_ALIGNMENT.intValue()) == 0;
+        }
+
+        private synchronized void close() {
+            if ( closed ) return;
+            closed = true;
+            // close the aligner on its own thread, so that it isn't closed under an alignment still in progress
+            alignmentExecutor.submit(aligner::close);
+            alignmentExecutor.shutdown();
+            final double seconds = (System.nanoTime() - startTime) / 1e9;
+            logger.info(String.format("Aligned %d reads in %.1f s (%.0f reads/s per core), waiting %.1f s for alignment",
+                    nReads, seconds, nReads / Math.max(seconds, 1e-9), alignmentWaitTime / 1e9));
         }
     }
 }
@@ -1,24 +1,39 @@
 package org.broadinstitute.hellbender.tools.spark.pathseq;
 
+import org.broadinstitute.hellbender.engine.AuthHolder;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
-import org.broadinstitute.hellbender.tools.spark.sv.SVKmer;
 import org.broadinstitute.hellbender.tools.spark.sv.SVKmerShort;
 import org.broadinstitute.hellbender.tools.spark.sv.SVKmerizer;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
-import java.util.Set;
-
 /**
- * Keep reads that DO NOT contain at least one kmer from a Set of SVKmerShorts
+ * Keep reads that DO NOT contain at least one kmer from a set of SVKmerShorts (given as a LongHashSet or the path of
+ * a MappedKmerLibrary of their packed bits)
  */
 public class ContainsKmerReadFilter extends ReadFilter {
 
     private static final long serialVersionUID = 1L;
-    private Set<SVKmer> kmerLib;
-    private int kSize;
+    private final LongHashSet kmerSet;
+    private final String libraryPath;
+    private final AuthHolder authHolder;
+    private final int kSize;
+    // mapped the first time it's needed in each JVM, rather than serialized
+    private transient MappedKmerLibrary mappedLibrary;
+
+    public ContainsKmerReadFilter(final LongHashSet kmer_lib, int kmer_size) {
+        kmerSet = kmer_lib;
+        libraryPath = null;
+        authHolder = null;
+        kSize = kmer_size;
+    }
 
-    public ContainsKmerReadFilter(final Set<SVKmer> kmer_lib, int kmer_size) {
-        kmerLib = kmer_lib;
+    /** the authHolder is only needed, and may otherwise be null, if the library is on GCS */
+    public ContainsKmerReadFilter(final String library_path, final AuthHolder auth_holder, int kmer_size) {
+        kmerSet = null;
+        libraryPath = library_path;
+        authHolder = auth_holder;
         kSize = kmer_size;
     }
 
@@ -26,8 +41,19 @@ public class ContainsKmerReadFilter extends ReadFilter {
     public boolean test( final GATKRead read ) {
         final SVKmerizer kmers = new SVKmerizer(read.getBases(),kSize,new SVKmerShort(kSize));
         while (kmers.hasNext()) {
-            if (kmerLib.contains(kmers.next())) {return false;}
+            if (containsKmer(((SVKmerShort)kmers.next()).getValLow())) {return false;}
         }
         return true;
     }
+
+    private boolean containsKmer( final long kmer ) {
+        if (kmerSet != null) {
+            return kmerSet.contains(kmer);
+        }
+        if (mappedLibrary == null) {
+            mappedLibrary = MappedKmerLibrary.getInstance(libraryPath, kSize,
+                    BucketUtils.isCloudStorageUrl(libraryPath) ? authHolder.asPipelineOptionsDeprecated() : null);
+        }
+        return mappedLibrary.contains(kmer);
+    }
 }
@@ -0,0 +1,87 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.io.MappedFile;
+
+/**
+ * A {@link SortedKmerLibrary} that is memory-mapped read-only rather than read onto the heap, so that its kmers are
+ * held once per JVM in the page cache and shared by all the tasks (and, on the same machine, all the processes) that
+ * filter reads with it.  Nothing is deserialized:  a lookup reads the bounds of the kmer's bucket from the library's
+ * index, and does a binary search of the (typically few dozen) kmers in the bucket.
+ *
+ * Use {@link #getInstance} to get a library, which is mapped (see {@link MappedFile}) the first time it is asked for
+ * in a JVM.
+ */
+public final class MappedKmerLibrary {
+    private static final MappedFile.Singleton<MappedKmerLibrary> globalInstance = new MappedFile.Singleton<>(".bin");
+
+    private final MappedFile file;
+    private final int kSize;
+    private final int prefixBits;
+    private final long nKmers;
+    private final long indexPosition;
+
+    /**
+     * @return the given library, mapping it if it is not the one that is already mapped
+     * @param libraryURL the path of the library
+     * @param kSize the expected kmer size
+     * @param popts the pipeline options, needed to read the library from GCS (may be null otherwise)
+     */
+    public static MappedKmerLibrary getInstance( final String libraryURL, final int kSize,
+                                                 final PipelineOptions popts ) {
+        final MappedKmerLibrary library =
+                globalInstance.get(libraryURL, popts, file -> new MappedKmerLibrary(libraryURL, file));
+        if ( library.kSize != kSize ) {
+            throw new UserException.BadInput("The kmer library " + libraryURL + " has kmers of size " +
+                    library.kSize + ", but the kmer size is " + kSize);
+        }
+        return library;
+    }
+
+    /**
+     * Drops the mapped library, if there is one. The mapping itself is released when the library is garbage collected.
+     */
+    public static void closeInstance() {
+        globalInstance.close();
+    }
+
+    private MappedKmerLibrary( final String libraryURL, final MappedFile file ) {
+        this.file = file;
+        final long length = file.length();
+        if ( length < SortedKmerLibrary.HEADER_LENGTH || file.getInt(0) != SortedKmerLibrary.MAGIC ) {
+            throw new UserException.CouldNotReadInputFile(libraryURL,
+                    "Not a kmer library written by this version of PathSeqKmerSpark");
+        }
+        if ( file.getInt(4) != SortedKmerLibrary.VERSION ) {
+            throw new UserException.CouldNotReadInputFile(libraryURL, "Unsupported kmer library version " + file.getInt(4));
+        }
+        kSize = file.getInt(8);
+        prefixBits = file.getInt(12);
+        nKmers = file.getLong(16);
+        indexPosition = SortedKmerLibrary.HEADER_LENGTH + 8L * nKmers;
+        if ( length != indexPosition + 8L * (SortedKmerLibrary.getNBuckets(prefixBits) + 1) ) {
+            throw new UserException.CouldNotReadInputFile(libraryURL, "The kmer library is truncated");
+        }
+    }
+
+    public int getKSize() { return kSize; }
+
+    public long size() { return nKmers; }
+
+    /** true if the library contains the kmer (the packed bits of a canonical SVKmerShort) */
+    public boolean contains( final long kmer ) {
+        final int bucket = SortedKmerLibrary.getBucket(kmer, kSize, prefixBits);
+        if ( bucket < 0 || bucket >= SortedKmerLibrary.getNBuckets(prefixBits) ) return false;
+        long lo = file.getLong(indexPosition + 8L * bucket);
+        long hi = file.getLong(indexPosition + 8L * (bucket + 1));
+        while ( lo < hi ) {
+            final long mid = (lo + hi) >>> 1;
+            final long midKmer = file.getLong(SortedKmerLibrary.HEADER_LENGTH + 8L * mid);
+            if ( midKmer < kmer ) lo = mid + 1;
+            else if ( midKmer > kmer ) hi = mid;
+            else return true;
+        }
+        return false;
+    }
+}
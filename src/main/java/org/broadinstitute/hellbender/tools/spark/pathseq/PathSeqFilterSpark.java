@@ -20,10 +20,13 @@ import org.broadinstitute.hellbender.engine.filters.*;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.spark.bwa.BwaSparkEngine;
 import org.broadinstitute.hellbender.tools.spark.sv.ContainsKmerReadFilterSpark;
 import org.broadinstitute.hellbender.tools.spark.sv.SVKmer;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmerShort;
 import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
 import org.broadinstitute.hellbender.tools.spark.utils.ReadFilterSparkifier;
 import org.broadinstitute.hellbender.tools.spark.utils.ReadTransformerSparkifier;
 import org.broadinstitute.hellbender.transformers.BaseQualityClipReadTransformer;
@@ -35,10 +38,11 @@ import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesSco
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
 import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSpark;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Set;
 
 /**
  * This Spark tool is the first step in the PathSeq sample processing pipeline. It takes in a BAM file
@@ -218,19 +222,73 @@ public final class PathSeqFilterSpark extends GATKSparkTool {
         return engine.align(reads);
     }
 
-    @SuppressWarnings("unchecked")
     private JavaRDD<GATKRead> doKmerFiltering(final JavaSparkContext ctx, final JavaRDD<GATKRead> reads) {
 
         final PipelineOptions options = getAuthenticatedGCSOptions();
-        Input input = new Input(BucketUtils.openFile(KMER_LIB_PATH, options));
-        Kryo kryo=new Kryo();
-        kryo.setReferences(false);
-
-        Set<SVKmer> kmerLibSet = (HopscotchSet<SVKmer>)kryo.readClassAndObject(input);
+        if (isSortedKmerLibrary(KMER_LIB_PATH, KMER_SIZE, options)) {
+            // each executor maps the library for itself, so there's nothing to load or broadcast
+            return reads.filter(new ContainsKmerReadFilterSpark(KMER_LIB_PATH, getAuthHolder(), KMER_SIZE));
+        }
+        final LongHashSet kmerLibSet = readKmerLibrary(KMER_LIB_PATH, KMER_SIZE, options);
 
         return reads.filter(new ContainsKmerReadFilterSpark(ctx.broadcast(kmerLibSet),KMER_SIZE));
     }
 
+    /**
+     * True if the kmer library is a SortedKmerLibrary, rather than a Kryo-serialized set written by an older version
+     * of PathSeqKmerSpark. Checks that its kmers have the expected size.
+     */
+    static boolean isSortedKmerLibrary(final String path, final int kSize, final PipelineOptions options) {
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(BucketUtils.openFile(path, options)))) {
+            if (input.readInt() != SortedKmerLibrary.MAGIC) {
+                return false;
+            }
+            SortedKmerLibrary.readHeader(input, path, kSize);
+            return true;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile("Unable to read the kmer library " + path, e);
+        }
+    }
+
+    /**
+     * Reads a kmer library written by PathSeqKmerSpark as a SortedKmerLibrary, checking that its kmers have the
+     * expected size. Libraries written as a Kryo-serialized LongHashSet or HopscotchSet of SVKmerShorts by older
+     * versions, which don't record their kmer size, are also accepted.
+     */
+    @SuppressWarnings("unchecked")
+    static LongHashSet readKmerLibrary(final String path, final int kSize, final PipelineOptions options) {
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(BucketUtils.openFile(path, options)))) {
+            input.mark(Integer.BYTES);
+            if (input.readInt() == SortedKmerLibrary.MAGIC) {
+                final long[] kmers = SortedKmerLibrary.read(input, path, kSize).getKmers();
+                final LongHashSet kmerLibSet = new LongHashSet(kmers.length);
+                for (final long kmer : kmers) {
+                    kmerLibSet.add(kmer);
+                }
+                return kmerLibSet;
+            }
+            input.reset();
+
+            final Kryo kryo = new Kryo();
+            kryo.setReferences(false);
+            final Object kmerLib = kryo.readClassAndObject(new Input(input));
+            if (kmerLib instanceof LongHashSet) {
+                return (LongHashSet) kmerLib;
+            }
+            if (kmerLib instanceof HopscotchSet) {
+                final HopscotchSet<SVKmer> kmers = (HopscotchSet<SVKmer>) kmerLib;
+                final LongHashSet kmerLibSet = new LongHashSet(kmers.size());
+                for (final SVKmer kmer : kmers) {
+                    kmerLibSet.add(((SVKmerShort) kmer).getValLow());
+                }
+                return kmerLibSet;
+            }
+            throw new UserException.BadInput("The kmer library " + path + " is not a set of kmers written by PathSeqKmerSpark");
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile("Unable to read the kmer library " + path, e);
+        }
+    }
+
     private static JavaRDD<GATKRead> retainPairs(JavaRDD<GATKRead> reads) {
         JavaRDD<GATKRead> pairedReads = reads.groupBy(read -> read.getName())
                                             .values()
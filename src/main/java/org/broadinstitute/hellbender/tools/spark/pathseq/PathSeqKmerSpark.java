@@ -1,22 +1,44 @@
 package org.broadinstitute.hellbender.tools.spark.pathseq;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Output;
 import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.spark.Partitioner;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.SparkProgramGroup;
+import org.broadinstitute.hellbender.engine.AuthHolder;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.spark.sv.*;
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+import scala.Tuple2;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,6 +53,8 @@ public final class PathSeqKmerSpark extends GATKSparkTool {
     private static final int REF_RECORD_LEN = 10000;
     // assuming we have ~1Gb/core, we can process ~1M kmers per partition
     private static final int REF_RECORDS_PER_PARTITION = 1024*1024 / REF_RECORD_LEN;
+    // the number of each partition's sorted kmers per kmer sampled to choose the splitters for the shuffle
+    private static final int KMERS_PER_SAMPLE = 1000;
 
     @Argument(doc = "file for kmer output",
             shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
@@ -48,7 +72,10 @@ public final class PathSeqKmerSpark extends GATKSparkTool {
         return true;
     }
 
-    /** Get the list of distinct kmers in the reference, and write them to a file as a HopScotchSet. */
+    /**
+     * Get the distinct kmers in the reference, and write them to a file as a SortedKmerLibrary.
+     * The executors find, sort, and write the kmers; the driver only coordinates.
+     */
     @Override
     protected void runTool( final JavaSparkContext ctx ) {
 
@@ -58,42 +85,249 @@ public final class PathSeqKmerSpark extends GATKSparkTool {
         final PipelineOptions options = getAuthenticatedGCSOptions();
         final ReferenceMultiSource referenceMultiSource = getReference();
 
-        final List<SVKmer> kmerList = findKmers(ctx, KMER_SIZE, referenceMultiSource, options, dict);
-        final HopscotchSet<SVKmer> kmerSet = new HopscotchSet<>(kmerList);
+        // Generate reference sequence RDD.
+        final JavaRDD<byte[]> refRDD = SVUtils.getRefRDD(ctx, KMER_SIZE, referenceMultiSource, options, dict,
+                                                        REF_RECORD_LEN, REF_RECORDS_PER_PARTITION);
+
+        writeLibrary(refRDD, KMER_SIZE, OUTPUT_FILE, getAuthHolder());
+    }
+
+    /**
+     * Kmerize the reference, and write its distinct canonical kmers as a SortedKmerLibrary.
+     * Each partition first gathers its own kmers into a LongHashSet, which removes the (many) duplicates before the
+     * shuffle.  Then the kmers are shuffled by range, using splitters chosen from a sample of each partition's kmers,
+     * so that each part of the library receives the kmers in a range that lies above those of the parts before it:
+     * sorting each part's kmers, and removing the duplicates that come from different source partitions, therefore
+     * gives us the library in parts that can simply be concatenated.
+     * The parts count their kmers in each bucket of the library's index, from which the driver works out the header
+     * and the index.  The parts are then written through a Hadoop output format, so that only the output of a
+     * successful attempt at each task is committed:  the first part starts with the header, and the last ends with the
+     * index.  Finally, a single task concatenates the parts.
+     */
+    @VisibleForTesting
+    static void writeLibrary( final JavaRDD<byte[]> refRDD, final int kSize,
+                              final String outputFile, final AuthHolder authHolder ) {
+        // there's always at least one part, to hold the header and index, even if the reference is empty
+        final int nParts = Math.max(1, refRDD.getNumPartitions());
+        final JavaRDD<long[]> partitionKmersRDD = refRDD.mapPartitions(seqItr -> {
+            final LongHashSet kmerSet = new LongHashSet(REF_RECORDS_PER_PARTITION * REF_RECORD_LEN);
+            while ( seqItr.hasNext() ) {
+                SVKmerizer.stream(seqItr.next(), kSize, new SVKmerShort(kSize))
+                        .forEach(kmer -> kmerSet.add(((SVKmerShort)kmer.canonical(kSize)).getValLow()));
+            }
+            final long[] kmers = kmerSet.toArray();
+            Arrays.sort(kmers);
+            return Collections.singletonList(kmers).iterator();
+        }).persist(StorageLevel.MEMORY_AND_DISK());
+
+        final List<Long> sample = partitionKmersRDD.flatMap(kmers -> {
+            final List<Long> partitionSample = new ArrayList<>(kmers.length / KMERS_PER_SAMPLE + 1);
+            for ( int idx = 0; idx < kmers.length; idx += KMERS_PER_SAMPLE ) {
+                partitionSample.add(kmers[idx]);
+            }
+            return partitionSample.iterator();
+        }).collect();
+        final long[] splitters = chooseSplitters(sample, nParts);
+        // the sample overestimates the number of distinct kmers a little, since a kmer may be in many partitions
+        final int prefixBits = SortedKmerLibrary.choosePrefixBits((long)sample.size() * KMERS_PER_SAMPLE, kSize);
+
+        final JavaRDD<long[]> libraryKmersRDD = partitionKmersRDD
+                .flatMapToPair(kmers -> {
+                    final List<Tuple2<Integer, long[]>> slices = new ArrayList<>(splitters.length + 1);
+                    int sliceStart = 0;
+                    for ( int partIdx = 0; partIdx <= splitters.length; ++partIdx ) {
+                        final int sliceEnd =
+                                partIdx == splitters.length ? kmers.length : lowerBound(kmers, splitters[partIdx]);
+                        if ( sliceEnd > sliceStart ) {
+                            slices.add(new Tuple2<>(partIdx, Arrays.copyOfRange(kmers, sliceStart, sliceEnd)));
+                        }
+                        sliceStart = sliceEnd;
+                    }
+                    return slices.iterator();
+                })
+                .partitionBy(new PartIndexPartitioner(nParts))
+                .mapPartitions(sliceItr -> {
+                    final List<long[]> slices = new ArrayList<>();
+                    int nKmers = 0;
+                    while ( sliceItr.hasNext() ) {
+                        final long[] slice = sliceItr.next()._2();
+                        slices.add(slice);
+                        nKmers += slice.length;
+                    }
+                    final long[] kmers = new long[nKmers];
+                    int offset = 0;
+                    for ( final long[] slice : slices ) {
+                        System.arraycopy(slice, 0, kmers, offset, slice.length);
+                        offset += slice.length;
+                    }
+                    slices.clear();
+                    final int nDistinct = SortedKmerLibrary.sortAndRemoveDuplicates(kmers, nKmers);
+                    return Collections.singletonList(Arrays.copyOf(kmers, nDistinct)).iterator();
+                }, true)
+                .persist(StorageLevel.MEMORY_AND_DISK());
+
+        final List<LibraryPart> libraryParts =
+                libraryKmersRDD.map(kmers -> new LibraryPart(kmers, kmers.length, kSize, prefixBits)).collect();
+        partitionKmersRDD.unpersist();
 
-        final Output output = new Output(BucketUtils.createFile(OUTPUT_FILE, options));
-        final Kryo kryo=new Kryo();
-        kryo.setReferences(false);
-        kryo.writeClassAndObject(output, kmerSet);
-        output.close();
+        final long[] bucketCounts = new long[SortedKmerLibrary.getNBuckets(prefixBits)];
+        long nKmers = 0;
+        for ( final LibraryPart libraryPart : libraryParts ) {
+            nKmers += libraryPart.nKmers;
+            for ( int idx = 0; idx != libraryPart.bucketCounts.length; ++idx ) {
+                bucketCounts[libraryPart.firstBucket + idx] += libraryPart.bucketCounts[idx];
+            }
+        }
+        final long[] header = SortedKmerLibrary.getHeader(kSize, prefixBits, nKmers);
+        final JavaSparkContext ctx = JavaSparkContext.fromSparkContext(refRDD.context());
+        final Broadcast<long[]> broadcastIndex = ctx.broadcast(SortedKmerLibrary.getIndex(bucketCounts));
+        final String partsDirectory = outputFile + ".parts";
+        libraryKmersRDD
+                .mapPartitionsWithIndex((partIdx, kmersItr) -> {
+                    final List<long[]> partContents = new ArrayList<>(3);
+                    if ( partIdx == 0 ) partContents.add(header);
+                    while ( kmersItr.hasNext() ) partContents.add(kmersItr.next());
+                    if ( partIdx == nParts - 1 ) partContents.add(broadcastIndex.value());
+                    return partContents.iterator();
+                }, true)
+                .mapToPair(longs -> new Tuple2<>(NullWritable.get(), longs))
+                .saveAsNewAPIHadoopFile(partsDirectory, NullWritable.class, long[].class,
+                                        LibraryPartOutputFormat.class, ctx.hadoopConfiguration());
+        broadcastIndex.destroy();
+        libraryKmersRDD.unpersist();
 
+        ctx.parallelize(Collections.singletonList(outputFile), 1)
+                .foreach(path -> concatenateLibraryParts(partsDirectory, nParts, path, authHolder));
+        try {
+            final Path partsPath = new Path(partsDirectory);
+            partsPath.getFileSystem(ctx.hadoopConfiguration()).delete(partsPath, true);
+        } catch ( final IOException ioe ) {
+            throw new UserException.CouldNotCreateOutputFile(partsDirectory, "Unable to delete kmer library parts", ioe);
+        }
     }
 
-    /** Get kmers in the reference sequence */
-    private static List<SVKmer> findKmers(final JavaSparkContext ctx,
-                                               final int kSize,
-                                               final ReferenceMultiSource ref,
-                                               final PipelineOptions options,
-                                               final SAMSequenceDictionary readsDict ) {
-        // Generate reference sequence RDD.
-        final JavaRDD<byte[]> refRDD = SVUtils.getRefRDD(ctx, kSize, ref, options, readsDict, REF_RECORD_LEN, REF_RECORDS_PER_PARTITION);
+    /** Write the library by concatenating its parts. */
+    private static void concatenateLibraryParts( final String partsDirectory, final int nParts,
+                                                 final String outputFile, final AuthHolder authHolder ) {
+        final PipelineOptions options = authHolder == null ? null : authHolder.asPipelineOptionsDeprecated();
+        try ( final OutputStream output = BucketUtils.createFile(outputFile, options) ) {
+            for ( int partIdx = 0; partIdx != nParts; ++partIdx ) {
+                try ( final InputStream input = BucketUtils.openFile(getPartPath(partsDirectory, partIdx), options) ) {
+                    ByteStreams.copy(input, output);
+                }
+            }
+        } catch ( final IOException ioe ) {
+            throw new UserException.CouldNotCreateOutputFile(outputFile, "Unable to write kmer library", ioe);
+        }
+    }
+
+    /** Writes one part of a kmer library, as the big-endian longs of each long[] it is given. Must be public. */
+    public static final class LibraryPartOutputFormat extends FileOutputFormat<NullWritable, long[]> {
+        @Override
+        public RecordWriter<NullWritable, long[]> getRecordWriter( final TaskAttemptContext context )
+                throws IOException {
+            final Path file = getDefaultWorkFile(context, "");
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    file.getFileSystem(context.getConfiguration()).create(file, false)));
+            return new RecordWriter<NullWritable, long[]>() {
+                @Override
+                public void write( final NullWritable key, final long[] longs ) throws IOException {
+                    SortedKmerLibrary.writeLongs(output, longs);
+                }
 
-        // List of kmers
-        return processRefRDD(kSize, refRDD);
+                @Override
+                public void close( final TaskAttemptContext context ) throws IOException {
+                    output.close();
+                }
+            };
+        }
+
+        @Override
+        public void checkOutputSpecs( final JobContext job ) throws IOException {
+            try {
+                super.checkOutputSpecs(job);
+            } catch ( final FileAlreadyExistsException e ) {
+                // delete the parts left by an earlier run before overwriting them
+                final Path outDir = getOutputPath(job);
+                outDir.getFileSystem(job.getConfiguration()).delete(outDir, true);
+            }
+        }
+    }
+
+    /** Sends each slice of kmers to the part whose index is its key. */
+    private static final class PartIndexPartitioner extends Partitioner {
+        private static final long serialVersionUID = 1L;
+        private final int nParts;
+
+        PartIndexPartitioner( final int nParts ) {
+            this.nParts = nParts;
+        }
+
+        @Override
+        public int numPartitions() {
+            return nParts;
+        }
+
+        @Override
+        public int getPartition( final Object key ) {
+            return (Integer)key;
+        }
     }
 
     /**
-     * Turn a text file of overlapping records from a reference sequence into an RDD, and do a classic map/reduce:
-     * Kmerize, mapping map to the collection of all canonicalized kmers and returning result to the driver. Note we do
-     * not remove duplicates at this stage because the shuffle is expensive. Assuming there are relatively few
-     * duplicates, we will collect all kmers and rely on HopscotchSet to do the work later.
+     * The number of kmers in one part of the library, and the number in each bucket of the index that the part's
+     * kmers span.
      */
-    private static List<SVKmer> processRefRDD(final int kSize, final JavaRDD<byte[]> refRDD ) {
-        return refRDD.flatMap(seq ->
-                    SVKmerizer.stream(seq, kSize, new SVKmerShort(kSize))
-                        .map(kmer -> kmer.canonical(kSize))
-                        .collect(SVUtils.arrayListCollector(Math.max(0,seq.length-kSize+1)))
-                        .iterator())
-                .collect();
+    @VisibleForTesting
+    static final class LibraryPart implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int prefixBits;
+        final long nKmers;
+        final int firstBucket;
+        final int[] bucketCounts;
+
+        LibraryPart( final long[] sortedKmers, final int nKmers, final int kSize, final int prefixBits ) {
+            this.prefixBits = prefixBits;
+            this.nKmers = nKmers;
+            if ( nKmers == 0 ) {
+                firstBucket = 0;
+                bucketCounts = new int[0];
+                return;
+            }
+            firstBucket = SortedKmerLibrary.getBucket(sortedKmers[0], kSize, prefixBits);
+            bucketCounts =
+                    new int[SortedKmerLibrary.getBucket(sortedKmers[nKmers - 1], kSize, prefixBits) - firstBucket + 1];
+            for ( int idx = 0; idx != nKmers; ++idx ) {
+                bucketCounts[SortedKmerLibrary.getBucket(sortedKmers[idx], kSize, prefixBits) - firstBucket] += 1;
+            }
+        }
+    }
+
+    /** the name that FileOutputFormat gives to the output of a task */
+    private static String getPartPath( final String partsDirectory, final int partIdx ) {
+        return String.format("%s/part-r-%05d", partsDirectory, partIdx);
+    }
+
+    /** Choose nParts-1 splitters that divide the sampled kmers evenly. */
+    private static long[] chooseSplitters( final List<Long> sample, final int nParts ) {
+        final long[] sortedSample = sample.stream().mapToLong(Long::longValue).sorted().toArray();
+        final long[] splitters = new long[nParts - 1];
+        if ( sortedSample.length == 0 ) return splitters;
+        for ( int idx = 0; idx != splitters.length; ++idx ) {
+            splitters[idx] = sortedSample[(int)((idx + 1L) * sortedSample.length / nParts)];
+        }
+        return splitters;
+    }
+
+    /** index of the first kmer in the sorted array that is greater than or equal to the value */
+    private static int lowerBound( final long[] sortedKmers, final long value ) {
+        int lo = 0;
+        int hi = sortedKmers.length;
+        while ( lo < hi ) {
+            final int mid = (lo + hi) >>> 1;
+            if ( sortedKmers[mid] < value ) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
     }
 }
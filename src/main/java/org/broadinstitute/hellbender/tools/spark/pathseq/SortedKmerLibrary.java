@@ -0,0 +1,150 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The file format of the kmer library written by PathSeqKmerSpark:  a fixed-length header, the distinct canonical
+ * kmers of the host reference (the packed bits of SVKmerShorts) as big-endian longs in ascending order, and a
+ * prefix-bucket index to the kmers.
+ *
+ * The header is the magic number, the format version, the kmer size, the number of prefix bits, and the number of
+ * kmers, so the kmers start at an 8-byte boundary.  Since the whole file is a sequence of big-endian longs, it can be
+ * written in parts, one per Spark partition, that are simply concatenated:  the first part starts with the header
+ * (see {@link #getHeader}), each part holds a range of kmers that lies above the ranges of the parts before it, and the
+ * last part ends with the index (see {@link #getIndex}).
+ *
+ * The index has an entry for each value of the kmers' leading prefixBits bits (their "bucket"), plus one:  entry i is
+ * the number of kmers in buckets before i, so the kmers in bucket i are those from entry i up to entry i+1.
+ * A lookup need only search that small range, which lets {@link MappedKmerLibrary} search the file in place.
+ */
+public final class SortedKmerLibrary {
+    public static final int MAGIC = 0x50534b4c; // "PSKL"
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 24;
+
+    // we aim to have about this many kmers in each bucket
+    private static final int TARGET_BUCKET_SIZE = 64;
+    // but we don't allow more than 2^MAX_PREFIX_BITS buckets, so the index is no more than 128MB
+    private static final int MAX_PREFIX_BITS = 24;
+
+    private final int kSize;
+    private final long[] kmers;
+
+    private SortedKmerLibrary( final int kSize, final long[] kmers ) {
+        this.kSize = kSize;
+        this.kmers = kmers;
+    }
+
+    public int getKSize() { return kSize; }
+
+    /** the kmers, in ascending order */
+    public long[] getKmers() { return kmers; }
+
+    /** the number of prefix bits to use in indexing about the given number of kmers */
+    public static int choosePrefixBits( final long expectedNKmers, final int kSize ) {
+        int prefixBits = 0;
+        while ( prefixBits < Math.min(MAX_PREFIX_BITS, 2 * kSize) &&
+                (expectedNKmers >> prefixBits) > TARGET_BUCKET_SIZE ) {
+            prefixBits += 1;
+        }
+        return prefixBits;
+    }
+
+    /** the bucket to which a kmer belongs */
+    public static int getBucket( final long kmer, final int kSize, final int prefixBits ) {
+        return prefixBits == 0 ? 0 : (int)(kmer >>> (2 * kSize - prefixBits));
+    }
+
+    public static int getNBuckets( final int prefixBits ) { return 1 << prefixBits; }
+
+    /** the header, as the longs that are written in its place */
+    public static long[] getHeader( final int kSize, final int prefixBits, final long nKmers ) {
+        return new long[] { ((long)MAGIC << 32) | VERSION, ((long)kSize << 32) | prefixBits, nKmers };
+    }
+
+    public static void writeHeader( final DataOutputStream output, final int kSize, final int prefixBits,
+                                    final long nKmers ) throws IOException {
+        writeLongs(output, getHeader(kSize, prefixBits, nKmers));
+    }
+
+    /** writes one part of the library:  the kmers must be sorted, distinct, and greater than those in earlier parts */
+    public static void writeKmers( final DataOutputStream output, final long[] kmers, final int nKmers )
+            throws IOException {
+        for ( int idx = 0; idx != nKmers; ++idx ) {
+            output.writeLong(kmers[idx]);
+        }
+    }
+
+    /** the index, given the number of kmers in each bucket */
+    public static long[] getIndex( final long[] bucketCounts ) {
+        final long[] index = new long[bucketCounts.length + 1];
+        for ( int idx = 0; idx != bucketCounts.length; ++idx ) {
+            index[idx + 1] = index[idx] + bucketCounts[idx];
+        }
+        return index;
+    }
+
+    /** writes the index, given the number of kmers in each bucket */
+    public static void writeIndex( final DataOutputStream output, final long[] bucketCounts ) throws IOException {
+        writeLongs(output, getIndex(bucketCounts));
+    }
+
+    public static void writeLongs( final DataOutputStream output, final long[] values ) throws IOException {
+        for ( final long value : values ) {
+            output.writeLong(value);
+        }
+    }
+
+    /**
+     * Reads the header of a library, given an input positioned just after its magic number, and checks that the
+     * kmers have the expected size.  Returns the number of kmers.
+     */
+    public static long readHeader( final DataInputStream input, final String path, final int expectedKSize )
+            throws IOException {
+        final int version = input.readInt();
+        if ( version != VERSION ) {
+            throw new UserException.BadInput("The kmer library " + path + " has version " + version +
+                    ", but only version " + VERSION + " is supported");
+        }
+        final int kSize = input.readInt();
+        if ( kSize != expectedKSize ) {
+            throw new UserException.BadInput("The kmer library " + path + " has kmers of size " + kSize +
+                    ", but the kmer size is " + expectedKSize);
+        }
+        input.readInt();
+        return input.readLong();
+    }
+
+    /** reads the kmers of a library, given an input positioned just after its magic number */
+    public static SortedKmerLibrary read( final DataInputStream input, final String path, final int expectedKSize )
+            throws IOException {
+        final long nKmers = readHeader(input, path, expectedKSize);
+        if ( nKmers < 0 || nKmers > Integer.MAX_VALUE - 8 ) {
+            throw new UserException.BadInput("The kmer library " + path + " has too many kmers to load: " + nKmers);
+        }
+        final long[] kmers = new long[(int)nKmers];
+        for ( int idx = 0; idx != kmers.length; ++idx ) {
+            kmers[idx] = input.readLong();
+        }
+        return new SortedKmerLibrary(expectedKSize, kmers);
+    }
+
+    /**
+     * Sorts the kmers in the first nKmers elements of the array, and squeezes out the duplicates.
+     * Returns the number of distinct kmers, which are left at the start of the array.
+     */
+    public static int sortAndRemoveDuplicates( final long[] kmers, final int nKmers ) {
+        if ( nKmers == 0 ) return 0;
+        Arrays.sort(kmers, 0, nKmers);
+        int nDistinct = 1;
+        for ( int idx = 1; idx != nKmers; ++idx ) {
+            if ( kmers[idx] != kmers[nDistinct - 1] ) kmers[nDistinct++] = kmers[idx];
+        }
+        return nDistinct;
+    }
+}
@@ -1,11 +1,15 @@
 package org.broadinstitute.hellbender.tools.spark.pipelines;
 
+import htsjdk.samtools.SAMFileHeader;
 import org.broadinstitute.barclay.help.DocumentedFeature;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
+import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.utils.SerializableFunction;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.ArgumentCollection;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
@@ -16,6 +20,7 @@ import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.spark.AddContextDataToReadSpark;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.engine.spark.JoinStrategy;
+import org.broadinstitute.hellbender.engine.spark.ReadCoordinateSorter;
 import org.broadinstitute.hellbender.engine.spark.datasources.VariantsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.ApplyBQSRUniqueArgumentCollection;
@@ -24,6 +29,7 @@ import org.broadinstitute.hellbender.tools.spark.transforms.BaseRecalibratorSpar
 import org.broadinstitute.hellbender.tools.spark.transforms.markduplicates.MarkDuplicatesSpark;
 import org.broadinstitute.hellbender.tools.walkers.bqsr.BaseRecalibrator;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.collections.PackedIntervalIndex;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
@@ -79,6 +85,16 @@ public class ReadsPipelineSpark extends GATKSparkTool {
     @Argument(fullName="readShardSize", shortName="readShardSize", doc = "Maximum size of each read shard, in bases. Only applies when using the OVERLAPS_PARTITIONER join strategy.", optional = true)
     public int readShardSize = 10000;
 
+    /**
+     * In the fused pipeline the reads are sorted once, straight after duplicate marking, and cached. Recalibration
+     * tables are then collected from the cached reads, with the reference and known sites broadcast, and BQSR is
+     * applied to the same cached reads, which are written without sorting them again. This saves recomputing the
+     * duplicate marking for the apply pass, the shuffles of the join with the reference and known sites, and the
+     * sort before writing, at the cost of holding the reads in executor memory (spilling to disk if need be).
+     */
+    @Argument(fullName="fusedPipeline", shortName="fusedPipeline", doc = "Sort and cache the reads once after marking duplicates, and run both BQSR passes over them. Requires a 2bit reference; joinStrategy, readShardSize and readShardPadding are ignored.", optional = true)
+    public boolean fusedPipeline = false;
+
     @Argument(fullName="readShardPadding", shortName="readShardPadding", doc = "Each read shard has this many bases of extra context on each side. Only applies when using the OVERLAPS_PARTITIONER join strategy.", optional = true)
     public int readShardPadding = 1000;
 
@@ -95,9 +111,13 @@ public class ReadsPipelineSpark extends GATKSparkTool {
 
     @Override
     protected void runTool(final JavaSparkContext ctx) {
-        if (joinStrategy == JoinStrategy.BROADCAST && ! getReference().isCompatibleWithSparkBroadcast()){
+        if ((fusedPipeline || joinStrategy == JoinStrategy.BROADCAST) && ! getReference().isCompatibleWithSparkBroadcast()){
             throw new UserException.Require2BitReferenceForBroadcast();
         }
+        if (fusedPipeline) {
+            runFusedPipeline(ctx);
+            return;
+        }
 
         //TOOO: should this use getUnfilteredReads? getReads will apply default and command line filters
         final JavaRDD<GATKRead> initialReads = getReads();
@@ -124,4 +144,43 @@ public class ReadsPipelineSpark extends GATKSparkTool {
 
         writeReads(ctx, output, finalReads);
     }
+
+    private void runFusedPipeline(final JavaSparkContext ctx) {
+        final SAMFileHeader header = getHeaderForReads();
+        final long startTime = System.nanoTime();
+
+        final JavaRDD<GATKRead> markedReadsWithOD = MarkDuplicatesSpark.mark(getReads(), header, duplicatesScoringStrategy, new OpticalDuplicateFinder(), getRecommendedNumReducers());
+        final JavaRDD<GATKRead> markedReads = MarkDuplicatesSpark.cleanupTemporaryAttributes(markedReadsWithOD);
+
+        // sort into the order the output will be written in now, so that both BQSR passes run over the same
+        // partitions and the reads need not be shuffled again before writing
+        final boolean coordinateSorted = header.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+        final JavaRDD<GATKRead> sortedReads = coordinateSorted ?
+                ReadCoordinateSorter.sort(markedReads, header, getRecommendedNumReducers()) : markedReads;
+        sortedReads.persist(StorageLevel.MEMORY_AND_DISK_SER());
+
+        //NOTE: as in the standard pipeline, this doesn't honor enabled/disabled commandline filters
+        final ReadFilter bqsrReadFilter = ReadFilter.fromList(BaseRecalibrator.getBQSRSpecificReadFilterList(), header);
+        final JavaRDD<GATKRead> readsForBQSR = sortedReads.filter(read -> ReadFilterLibrary.MAPPED.test(read) && bqsrReadFilter.test(read));
+
+        final List<GATKVariant> bqsrKnownVariants = new VariantsSparkSource(ctx).getParallelVariants(baseRecalibrationKnownVariants, getIntervals()).collect();
+        final Broadcast<PackedIntervalIndex<GATKVariant>> knownSitesBroadcast = ctx.broadcast(new PackedIntervalIndex<>(bqsrKnownVariants));
+        final Broadcast<ReferenceMultiSource> referenceBroadcast = ctx.broadcast(getReference());
+
+        // collecting the tables is the first action, so this includes marking duplicates and sorting
+        final RecalibrationReport bqsrReport = BaseRecalibratorSparkFn.apply(readsForBQSR, referenceBroadcast, knownSitesBroadcast, header, getReferenceSequenceDictionary(), bqsrArgs);
+        final long recalibratedTime = System.nanoTime();
+        logger.info(String.format("Marked duplicates, sorted and collected recalibration tables in %.2f seconds", (recalibratedTime - startTime) / 1e9));
+
+        final Broadcast<RecalibrationReport> reportBroadcast = ctx.broadcast(bqsrReport);
+        final JavaRDD<GATKRead> finalReads = ApplyBQSRSparkFn.apply(sortedReads, reportBroadcast, header, applyBqsrArgs.toApplyBQSRArgumentCollection(bqsrArgs.PRESERVE_QSCORES_LESS_THAN));
+
+        writeReads(ctx, output, finalReads, !coordinateSorted);
+        logger.info(String.format("Applied recalibration and wrote reads in %.2f seconds", (System.nanoTime() - recalibratedTime) / 1e9));
+
+        sortedReads.unpersist();
+        knownSitesBroadcast.destroy();
+        referenceBroadcast.destroy();
+        reportBroadcast.destroy();
+    }
 }
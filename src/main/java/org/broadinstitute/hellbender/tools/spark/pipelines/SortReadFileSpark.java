@@ -10,9 +10,8 @@ import org.broadinstitute.hellbender.cmdline.programgroups.SparkProgramGroup;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.engine.spark.ReadCoordinateSorter;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
-import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
-import scala.Tuple2;
 
 import java.util.Collections;
 import java.util.List;
@@ -41,17 +40,9 @@ public final class SortReadFileSpark extends GATKSparkTool {
         logger.info("Using %s reducers" + numReducers);
 
         final SAMFileHeader readsHeader = getHeaderForReads();
-        ReadCoordinateComparator comparator = new ReadCoordinateComparator(readsHeader);
-        JavaRDD<GATKRead> sortedReads;
-        if (shardedOutput) {
-            sortedReads = reads
-                    .mapToPair(read -> new Tuple2<>(read, null))
-                    .sortByKey(comparator, true, numReducers)
-                    .keys();
-        } else {
-            sortedReads = reads; // sorting is done by writeReads below
-        }
+        // sort on packed coordinate keys rather than whole reads; the order is the same as with ReadCoordinateComparator
+        final JavaRDD<GATKRead> sortedReads = ReadCoordinateSorter.sort(reads, readsHeader, numReducers);
         readsHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
-        writeReads(ctx, outputFile, sortedReads);
+        writeReads(ctx, outputFile, sortedReads, false);
     }
 }
@@ -9,6 +9,7 @@ import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.StructuralVariationSparkProgramGroup;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemIndexSingleton;
+import scala.Tuple2;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +28,10 @@ public final class AlignAssembledContigsSpark extends GATKSparkTool {
      */
     private static final int NUM_ASSEMBLIES_PER_PARTITION = 400;
     private static final int EXPECTED_CONTIGS_PER_ASSEMBLY = 15;
+    /**
+     * Number of assemblies whose contigs are aligned together in one call to bwa-mem.
+     */
+    private static final int NUM_ASSEMBLIES_PER_ALIGNMENT_BATCH = 100;
 
     @Argument(doc = "file for breakpoint alignment output", shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
             fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME)
@@ -38,6 +43,10 @@ public final class AlignAssembledContigsSpark extends GATKSparkTool {
     @Argument(doc = "the bwa mem index image file name that you've distributed to each executor", fullName = "bwamemIndexImage")
     private String indexImageFile;
 
+    @Argument(doc = "number of threads bwa-mem uses to align each batch of contigs (you may want to set spark.task.cpus to match)",
+            fullName = "alignerThreads", optional = true)
+    private int alignerThreads = 1;
+
     @Override
     protected void runTool(final JavaSparkContext ctx) {
 
@@ -46,17 +55,21 @@ public final class AlignAssembledContigsSpark extends GATKSparkTool {
         final long numInputAssemblies = breakpointIdsToContigsCollection.count();
         final int numPartitions = Math.max(ctx.defaultParallelism(), (int) Math.ceil((double) numInputAssemblies / (double) NUM_ASSEMBLIES_PER_PARTITION));
         final String indexImageFile = this.indexImageFile;
+        final int alignerThreads = this.alignerThreads;
         final JavaRDD<AlignmentRegion> allContigAlignments =
                 breakpointIdsToContigsCollection
                         .coalesce(numPartitions)
                         .mapPartitions(iter -> {
-                final ContigAligner contigAligner = new ContigAligner(indexImageFile);
+                final ContigAligner contigAligner = new ContigAligner(indexImageFile, alignerThreads);
                 final List<AlignmentRegion> results = new ArrayList<>(NUM_ASSEMBLIES_PER_PARTITION * EXPECTED_CONTIGS_PER_ASSEMBLY);
-                iter.forEachRemaining(cc -> {
-                    String breakpointId = cc._1;
-                    final List<AlignmentRegion> contigAlignments = contigAligner.alignContigs(breakpointId, cc._2);
-                    contigAlignments.forEach(results::add);
-                });
+                final List<Tuple2<String, ContigsCollection>> batch = new ArrayList<>(NUM_ASSEMBLIES_PER_ALIGNMENT_BATCH);
+                while ( iter.hasNext() ) {
+                    batch.add(iter.next());
+                    if ( batch.size() == NUM_ASSEMBLIES_PER_ALIGNMENT_BATCH || !iter.hasNext() ) {
+                        contigAligner.alignContigs(batch).forEach(results::addAll);
+                        batch.clear();
+                    }
+                }
                 return results.iterator();});
         allContigAlignments.saveAsTextFile(output);
         BwaMemIndexSingleton.closeAllDistributedInstances(ctx);
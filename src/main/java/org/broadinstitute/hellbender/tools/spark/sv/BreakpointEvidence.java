@@ -98,7 +98,7 @@ public class BreakpointEvidence implements Comparable<BreakpointEvidence> {
 
     /**
      * to make a sentinel (a bit of evidence that serves no function other than to mark the end of a stream).
-     * used by the MapPartitioner to flush pending evidence in the FindBreakEvidenceSpark.WindowSorter.
+     * used by the MapPartitioner to flush pending evidence in the StreamingEvidenceClusterer.
      */
     public BreakpointEvidence( final int contigIndex ) {
         this.contigIndex = contigIndex;
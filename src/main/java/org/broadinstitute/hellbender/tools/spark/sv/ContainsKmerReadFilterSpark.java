@@ -2,28 +2,47 @@ package org.broadinstitute.hellbender.tools.spark.sv;
 
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.broadcast.Broadcast;
+import org.broadinstitute.hellbender.engine.AuthHolder;
 import org.broadinstitute.hellbender.tools.spark.pathseq.ContainsKmerReadFilter;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
-import java.util.Set;
-
 /**
- * Spark version of ContainsKmerReadFilter that efficiently handles kmer Set broadcasting
+ * Spark version of ContainsKmerReadFilter that efficiently handles kmer Set broadcasting, or, given the path of a
+ * sorted kmer library, maps the library once on each executor rather than broadcasting it.
  */
 public class ContainsKmerReadFilterSpark implements Function<GATKRead, Boolean> {
     private static final long serialVersionUID = 1L;
-    final Broadcast<Set<SVKmer>> broadcastSet;
+    final Broadcast<LongHashSet> broadcastSet;
+    final String libraryPath;
+    final AuthHolder authHolder;
     final int kmerSize;
     transient ContainsKmerReadFilter filter;
 
-    public ContainsKmerReadFilterSpark(final Broadcast<Set<SVKmer>> broadcastSet, final int kmerSize ) {
+    public ContainsKmerReadFilterSpark(final Broadcast<LongHashSet> broadcastSet, final int kmerSize ) {
         this.broadcastSet = broadcastSet;
+        this.libraryPath = null;
+        this.authHolder = null;
+        this.kmerSize = kmerSize;
+    }
+
+    /** the authHolder is only needed, and may otherwise be null, if the library is on GCS */
+    public ContainsKmerReadFilterSpark(final String libraryPath, final AuthHolder authHolder, final int kmerSize ) {
+        this.broadcastSet = null;
+        this.libraryPath = libraryPath;
+        this.authHolder = authHolder;
         this.kmerSize = kmerSize;
     }
 
     @Override
     public Boolean call( final GATKRead read ) {
-        if ( filter == null ) filter = new ContainsKmerReadFilter(broadcastSet.value(), kmerSize);
+        if ( filter == null ) {
+            if ( broadcastSet != null ) {
+                filter = new ContainsKmerReadFilter(broadcastSet.value(), kmerSize);
+            } else {
+                filter = new ContainsKmerReadFilter(libraryPath, authHolder, kmerSize);
+            }
+        }
         return filter.test(read);
     }
-}
\ No newline at end of file
+}
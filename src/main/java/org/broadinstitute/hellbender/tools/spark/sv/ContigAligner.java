@@ -1,6 +1,7 @@
 package org.broadinstitute.hellbender.tools.spark.sv;
 
 import htsjdk.samtools.SAMFlag;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemAligner;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemAlignment;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemIndex;
@@ -15,9 +16,19 @@ import static org.broadinstitute.hellbender.tools.spark.sv.ContigsCollection.Con
 public class ContigAligner {
 
     private final String indexImageFile;
+    private final int nThreads;
 
     public ContigAligner(final String indexImageFile) {
+        this(indexImageFile, 1);
+    }
+
+    /**
+     * @param nThreads The number of threads bwa-mem may use to align each batch of contigs.
+     */
+    public ContigAligner(final String indexImageFile, final int nThreads) {
+        Utils.validateArg(nThreads > 0, "the number of alignment threads must be positive");
         this.indexImageFile = indexImageFile;
+        this.nThreads = nThreads;
     }
 
     /**
@@ -30,31 +41,53 @@ public class ContigAligner {
      * @param contigsCollection The set of all canonical (primary or supplementary) alignments for the contigs.
      */
     public List<AlignmentRegion> alignContigs(final String assemblyId, final ContigsCollection contigsCollection) {
-        final List<AlignmentRegion> alignedContigs = new ArrayList<>(contigsCollection.getContents().size());
+        return alignContigs(Collections.singletonList(new Tuple2<>(assemblyId, contigsCollection))).get(0);
+    }
+
+    /**
+     * Aligns the contigs of many assemblies in a single call to bwa-mem, rather than making a separate (small) call for
+     * each assembly, and hands the alignments back to the assemblies they came from.
+     * The i-th list of the output holds the alignments for the i-th assembly, filtered and sorted as described for
+     * {@link #alignContigs(String, ContigsCollection)}.
+     *
+     * @param assemblies Pairs of assembly identifier and the set of contigs for that assembly
+     */
+    public List<List<AlignmentRegion>> alignContigs(final List<Tuple2<String, ContigsCollection>> assemblies) {
+        final List<byte[]> seqs = new ArrayList<>();
+        for ( final Tuple2<String, ContigsCollection> assembly : assemblies ) {
+            for ( final Tuple2<ContigID, ContigSequence> contigInfo : assembly._2().getContents() ) {
+                seqs.add(contigInfo._2().toString().getBytes());
+            }
+        }
+
+        final List<List<AlignmentRegion>> alignedAssemblies = new ArrayList<>(assemblies.size());
         final BwaMemIndex index = BwaMemIndexSingleton.getInstance(indexImageFile);
         try ( final BwaMemAligner aligner = new BwaMemAligner(index) ) {
+            aligner.setNThreadsOption(nThreads);
             final List<String> refNames = index.getReferenceContigNames();
-            final List<Tuple2<ContigID, ContigSequence>> contents = contigsCollection.getContents();
-            final List<byte[]> seqs = new ArrayList<>(contents.size());
-            for ( final Tuple2<ContigID, ContigSequence> contigInfo : contents ) {
-                seqs.add(contigInfo._2().toString().getBytes());
-            }
-            final Iterator<List<BwaMemAlignment>> alignmentsItr = aligner.alignSeqs(seqs).iterator();
-            for ( final Tuple2<ContigID, ContigSequence> contigInfo : contents ) {
-                final String contigId = contigInfo._1.toString();
-                final int contigLen = contigInfo._2().toString().length();
-                final List<BwaMemAlignment> alignments = alignmentsItr.next();
-
-                // filter out secondary alignments, convert to AlignmentRegion objects and sort by alignment start pos
-                alignments.stream()
-                        .filter(a -> (a.getSamFlag()&SAMFlag.NOT_PRIMARY_ALIGNMENT.intValue())==0)
-                        .filter(a -> (a.getSamFlag()&SAMFlag.READ_UNMAPPED.intValue())==0)
-                        .map(a -> new AlignmentRegion(assemblyId, contigId, contigLen, a, refNames))
-                        .sorted(Comparator.comparing(a -> a.startInAssembledContig))
-                        .forEach(alignedContigs::add);
+            final Iterator<List<BwaMemAlignment>> alignmentsItr =
+                    seqs.isEmpty() ? Collections.emptyIterator() : aligner.alignSeqs(seqs).iterator();
+            for ( final Tuple2<String, ContigsCollection> assembly : assemblies ) {
+                final String assemblyId = assembly._1();
+                final List<Tuple2<ContigID, ContigSequence>> contents = assembly._2().getContents();
+                final List<AlignmentRegion> alignedContigs = new ArrayList<>(contents.size());
+                for ( final Tuple2<ContigID, ContigSequence> contigInfo : contents ) {
+                    final String contigId = contigInfo._1.toString();
+                    final int contigLen = contigInfo._2().toString().length();
+                    final List<BwaMemAlignment> alignments = alignmentsItr.next();
+
+                    // filter out secondary alignments, convert to AlignmentRegion objects and sort by alignment start pos
+                    alignments.stream()
+                            .filter(a -> (a.getSamFlag()&SAMFlag.NOT_PRIMARY_ALIGNMENT.intValue())==0)
+                            .filter(a -> (a.getSamFlag()&SAMFlag.READ_UNMAPPED.intValue())==0)
+                            .map(a -> new AlignmentRegion(assemblyId, contigId, contigLen, a, refNames))
+                            .sorted(Comparator.comparing(a -> a.startInAssembledContig))
+                            .forEach(alignedContigs::add);
+                }
+                alignedAssemblies.add(alignedContigs);
             }
         }
 
-        return alignedContigs;
+        return alignedAssemblies;
     }
 }
@@ -0,0 +1,267 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.broadinstitute.hellbender.tools.spark.sv.FindBadGenomicKmersSpark.KmerAndCount;
+import org.broadinstitute.hellbender.tools.spark.sv.SVFastqUtils.FastqRead;
+import org.broadinstitute.hellbender.tools.spark.utils.HopscotchMap;
+import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.utils.BaseUtils;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A simple de Bruijn graph assembler for the reads of a single breakpoint interval, which runs in the JVM (e.g., in a
+ * Spark task) rather than in an external process.
+ *
+ * The reads are kmerized, and each canonical kmer is counted.  Kmers seen fewer than minKmerCount times are assumed to
+ * contain sequencing errors and are ignored, as are branches of the graph having less than a fraction
+ * (MIN_BRANCH_FRACTION) of the coverage of the best alternative.  Dead-end branches shorter than K (tips) are also
+ * ignored, and where a branch soon rejoins the main path (a bubble, as made by a heterozygous SNP or a recurrent
+ * error) just the better-covered side is kept.  The contigs are the unbranched paths (unitigs) of what remains:  starting
+ * from each kmer not yet used, we extend in both directions as long as there is just one way forward, and just one
+ * way back.  Contigs shorter than minContigLength are discarded.
+ *
+ * Contigs are returned as a {@link ContigsCollection}, longest first, named like SGA's contigs, so that they can be
+ * handed straight to a {@link ContigAligner}.
+ */
+public final class DeBruijnLocalAssembler implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_MIN_KMER_COUNT = 2;
+    public static final int DEFAULT_MIN_CONTIG_LENGTH = 100;
+    // a branch with less than this fraction of the coverage of a sibling is treated as an error
+    private static final double MIN_BRANCH_FRACTION = .1;
+    // bubbles are popped if their branches differ in length by no more than this
+    private static final int MAX_BUBBLE_INDEL_LENGTH = 5;
+    private static final char[] BASE_CHARS = {'A', 'C', 'G', 'T'};
+
+    private final int kSize;
+    private final int minKmerCount;
+    private final int minContigLength;
+
+    public DeBruijnLocalAssembler() {
+        this(SVConstants.KMER_SIZE, DEFAULT_MIN_KMER_COUNT, DEFAULT_MIN_CONTIG_LENGTH);
+    }
+
+    public DeBruijnLocalAssembler( final int kSize, final int minKmerCount, final int minContigLength ) {
+        Utils.validateArg((kSize & 1) != 0, "K must be odd, so that kmers can be canonicalized.");
+        Utils.validateArg(minKmerCount >= 1, "the minimum kmer count must be positive");
+        this.kSize = kSize;
+        this.minKmerCount = minKmerCount;
+        this.minContigLength = minContigLength;
+    }
+
+    /** Assemble the reads into contigs. */
+    public ContigsCollection assemble( final List<FastqRead> reads ) {
+        final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = countKmers(reads);
+        final HopscotchSet<SVKmer> usedKmers = new HopscotchSet<>(kmerCounts.size());
+
+        // pop all the bubbles first (including those with a poorly covered side that the contigs won't follow anyway),
+        // so that we don't start a contig on the losing side of one
+        for ( final KmerAndCount kmerAndCount : kmerCounts ) {
+            if ( kmerAndCount.grabCount() < minKmerCount ) continue;
+            final SVKmerLong kmer = new SVKmerLong(kmerAndCount);
+            popBubbles(kmer, true, kmerCounts, usedKmers);
+            popBubbles(kmer, false, kmerCounts, usedKmers);
+        }
+
+        final List<String> contigs = new ArrayList<>();
+        for ( final KmerAndCount kmerAndCount : kmerCounts ) {
+            if ( kmerAndCount.grabCount() < minKmerCount ) continue;
+            final SVKmerLong seed = new SVKmerLong(kmerAndCount);
+            if ( !usedKmers.add(seed) ) continue;
+            final StringBuilder forward = new StringBuilder();
+            extend(seed, kmerCounts, usedKmers, forward);
+            final StringBuilder backward = new StringBuilder();
+            extend(seed.reverseComplement(kSize), kmerCounts, usedKmers, backward);
+            final int contigLength = backward.length() + kSize + forward.length();
+            if ( contigLength >= minContigLength ) {
+                contigs.add(new String(BaseUtils.simpleReverseComplement(backward.toString().getBytes())) +
+                            seed.toString(kSize) + forward);
+            }
+        }
+
+        contigs.sort(Comparator.comparingInt(String::length).reversed());
+        final List<String> fastaLines = new ArrayList<>(2 * contigs.size());
+        for ( int idx = 0; idx != contigs.size(); ++idx ) {
+            fastaLines.add(">contig-" + idx + " " + contigs.get(idx).length() + " 0");
+            fastaLines.add(contigs.get(idx));
+        }
+        return new ContigsCollection(fastaLines);
+    }
+
+    private HopscotchMap<SVKmer, Integer, KmerAndCount> countKmers( final List<FastqRead> reads ) {
+        final int nKmersGuess = reads.stream().mapToInt(read -> Math.max(0, read.getBases().length - kSize + 1)).sum();
+        final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = new HopscotchMap<>(nKmersGuess);
+        final SVPackedKmerizer kmerizer = new SVPackedKmerizer(kSize, Integer.MAX_VALUE);
+        for ( final FastqRead read : reads ) {
+            kmerizer.kmerizeCanonical(read.getBases(), (valHigh, valLow) -> {
+                final SVKmerLong kmer = new SVKmerLong(valHigh, valLow);
+                final KmerAndCount entry = kmerCounts.find(kmer);
+                if ( entry == null ) kmerCounts.add(new KmerAndCount(kmer));
+                else entry.bumpCount();
+            });
+        }
+        return kmerCounts;
+    }
+
+    /** Append to the contig the bases of the unbranched path that follows the kmer. */
+    private void extend( final SVKmerLong startKmer,
+                         final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                         final HopscotchSet<SVKmer> usedKmers,
+                         final StringBuilder contig ) {
+        SVKmerLong kmer = startKmer;
+        while ( true ) {
+            final SVKmerLong next = uniqueNeighbor(kmer, true, kmerCounts, usedKmers);
+            if ( next == null ) return; // a fork or a dead end
+            // stop at a join, or when we come around to a kmer we've already used
+            final SVKmerLong prev = uniqueNeighbor(next, false, kmerCounts, usedKmers);
+            if ( prev == null || !prev.equals(kmer) || !usedKmers.add(next.canonical(kSize)) ) return;
+            contig.append(BASE_CHARS[next.lastBase().ordinal()]);
+            kmer = next;
+        }
+    }
+
+    /**
+     * The only good successor (or predecessor) of a kmer, or null if there's no good one, or more than one.
+     * Short dead-end branches (tips) don't count, and where two branches soon rejoin (a bubble, as made by a SNP
+     * or a sequencing error) the one with more coverage is taken, and the other is marked as used.
+     */
+    private SVKmerLong uniqueNeighbor( final SVKmerLong kmer, final boolean successor,
+                                      final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                                      final HopscotchSet<SVKmer> usedKmers ) {
+        final List<SVKmerLong> neighbors = goodNeighbors(kmer, successor, kmerCounts);
+        if ( neighbors.size() > 1 ) {
+            neighbors.removeIf(neighbor -> isTip(neighbor, successor, kmerCounts));
+        }
+        if ( neighbors.size() == 1 ) return neighbors.get(0);
+        if ( neighbors.size() == 2 ) return popBubble(neighbors.get(0), neighbors.get(1), successor, kmerCounts, usedKmers);
+        return null;
+    }
+
+    /** Pop any bubble that starts with the best-covered successor (or predecessor) and some other one. */
+    private void popBubbles( final SVKmerLong kmer, final boolean successor,
+                             final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                             final HopscotchSet<SVKmer> usedKmers ) {
+        final List<SVKmerLong> neighbors = neighbors(kmer, successor, 0., kmerCounts);
+        if ( neighbors.size() < 2 ) return;
+        SVKmerLong best = neighbors.get(0);
+        for ( final SVKmerLong neighbor : neighbors ) {
+            if ( getCount(neighbor, kmerCounts) > getCount(best, kmerCounts) ) best = neighbor;
+        }
+        for ( final SVKmerLong neighbor : neighbors ) {
+            if ( neighbor != best ) popBubble(best, neighbor, successor, kmerCounts, usedKmers);
+        }
+    }
+
+    /** The successors (or predecessors) of a kmer that have enough coverage. */
+    private List<SVKmerLong> goodNeighbors( final SVKmerLong kmer, final boolean successor,
+                                            final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        return neighbors(kmer, successor, MIN_BRANCH_FRACTION, kmerCounts);
+    }
+
+    /**
+     * The successors (or predecessors) of a kmer that occur at least minKmerCount times, and at least
+     * minBranchFraction times as often as the best of them.
+     */
+    private List<SVKmerLong> neighbors( final SVKmerLong kmer, final boolean successor, final double minBranchFraction,
+                                        final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        final SVKmer.Base[] bases = SVKmer.Base.values();
+        final SVKmerLong[] neighbors = new SVKmerLong[bases.length];
+        final int[] counts = new int[bases.length];
+        int maxCount = 0;
+        for ( int idx = 0; idx != bases.length; ++idx ) {
+            neighbors[idx] = successor ? kmer.successor(bases[idx], kSize) : kmer.predecessor(bases[idx], kSize);
+            counts[idx] = getCount(neighbors[idx], kmerCounts);
+            maxCount = Math.max(maxCount, counts[idx]);
+        }
+        final int minCount = Math.max(minKmerCount, (int)Math.ceil(minBranchFraction * maxCount));
+        final List<SVKmerLong> result = new ArrayList<>(bases.length);
+        for ( int idx = 0; idx != bases.length; ++idx ) {
+            if ( counts[idx] >= minCount ) result.add(neighbors[idx]);
+        }
+        return result;
+    }
+
+    private int getCount( final SVKmerLong kmer, final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        final KmerAndCount entry = kmerCounts.find(kmer.canonical(kSize));
+        return entry == null ? 0 : entry.grabCount();
+    }
+
+    /** Does the path from this kmer come to a dead end in fewer than K steps? */
+    private boolean isTip( final SVKmerLong kmer, final boolean successor,
+                           final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        SVKmerLong current = kmer;
+        for ( int step = 0; step != kSize; ++step ) {
+            final List<SVKmerLong> neighbors = goodNeighbors(current, successor, kmerCounts);
+            if ( neighbors.isEmpty() ) return true;
+            if ( neighbors.size() > 1 ) return false;
+            current = neighbors.get(0);
+        }
+        return false;
+    }
+
+    /**
+     * If the unbranched paths starting from two kmers meet again within about K steps, return the first kmer of the
+     * path with more coverage, after marking the kmers of the other path as used.  Otherwise return null.
+     */
+    private SVKmerLong popBubble( final SVKmerLong kmer1, final SVKmerLong kmer2, final boolean successor,
+                                  final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                                  final HopscotchSet<SVKmer> usedKmers ) {
+        final int maxSteps = kSize + MAX_BUBBLE_INDEL_LENGTH;
+        final List<SVKmerLong> path1 = walk(kmer1, successor, maxSteps, kmerCounts);
+        final List<SVKmerLong> path2 = walk(kmer2, successor, maxSteps, kmerCounts);
+        for ( int idx2 = 1; idx2 < path2.size(); ++idx2 ) {
+            final int idx1 = path1.indexOf(path2.get(idx2));
+            if ( idx1 > 0 ) {
+                final List<SVKmerLong> branch1 = path1.subList(0, idx1);
+                final List<SVKmerLong> branch2 = path2.subList(0, idx2);
+                final double mean1 = meanCount(branch1, kmerCounts);
+                final double mean2 = meanCount(branch2, kmerCounts);
+                // break ties in a way that doesn't depend on the direction from which we came upon the bubble
+                final boolean take1 = mean1 > mean2 ||
+                        (mean1 == mean2 && minCanonicalKmer(branch1).compareTo(minCanonicalKmer(branch2)) < 0);
+                for ( final SVKmerLong kmer : take1 ? branch2 : branch1 ) {
+                    usedKmers.add(kmer.canonical(kSize));
+                }
+                return take1 ? kmer1 : kmer2;
+            }
+        }
+        return null;
+    }
+
+    /** The unbranched path (including the starting kmer) of no more than maxSteps kmers. */
+    private List<SVKmerLong> walk( final SVKmerLong kmer, final boolean successor, final int maxSteps,
+                                   final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        final List<SVKmerLong> path = new ArrayList<>(maxSteps);
+        SVKmerLong current = kmer;
+        while ( true ) {
+            path.add(current);
+            if ( path.size() == maxSteps ) return path;
+            final List<SVKmerLong> neighbors = goodNeighbors(current, successor, kmerCounts);
+            if ( neighbors.size() != 1 ) return path;
+            current = neighbors.get(0);
+        }
+    }
+
+    private double meanCount( final List<SVKmerLong> kmers,
+                              final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        long total = 0;
+        for ( final SVKmerLong kmer : kmers ) {
+            total += getCount(kmer, kmerCounts);
+        }
+        return (double)total / kmers.size();
+    }
+
+    private SVKmerLong minCanonicalKmer( final List<SVKmerLong> kmers ) {
+        SVKmerLong result = null;
+        for ( final SVKmerLong kmer : kmers ) {
+            final SVKmerLong canonicalKmer = kmer.canonical(kSize);
+            if ( result == null || canonicalKmer.compareTo(result) < 0 ) result = canonicalKmer;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.util.AccumulatorV2;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+import scala.Tuple2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spark accumulator that gathers the {@link StreamingEvidenceClusterer.Stats} of the clusterer run on each partition,
+ * so that the driver can log how fast the evidence was clustered, and how much of it had to be buffered.
+ *
+ * A clusterer reports its cumulative statistics each time it finishes a contig, so the latest report for a partition
+ * replaces the earlier ones.  If Spark computes a partition more than once, only the first task's report is kept.
+ */
+public final class EvidenceClusteringStatsAccumulator
+        extends AccumulatorV2<Tuple2<Integer, StreamingEvidenceClusterer.Stats>, StreamingEvidenceClusterer.Stats> {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<Integer, StreamingEvidenceClusterer.Stats> statsByPartition = new HashMap<>();
+
+    /**
+     * Creates a new accumulator and registers it with the given context.
+     */
+    public static EvidenceClusteringStatsAccumulator register( final JavaSparkContext ctx, final String name ) {
+        Utils.nonNull(ctx);
+        final EvidenceClusteringStatsAccumulator accumulator = new EvidenceClusteringStatsAccumulator();
+        ctx.sc().register(accumulator, name);
+        return accumulator;
+    }
+
+    @Override
+    public boolean isZero() {
+        return statsByPartition.isEmpty();
+    }
+
+    @Override
+    public EvidenceClusteringStatsAccumulator copy() {
+        final EvidenceClusteringStatsAccumulator copy = new EvidenceClusteringStatsAccumulator();
+        copy.statsByPartition.putAll(statsByPartition);
+        return copy;
+    }
+
+    @Override
+    public void reset() {
+        statsByPartition.clear();
+    }
+
+    /**
+     * Adds the cumulative statistics of the clusterer for one partition.
+     */
+    @Override
+    public void add( final Tuple2<Integer, StreamingEvidenceClusterer.Stats> partitionStats ) {
+        statsByPartition.put(partitionStats._1(), partitionStats._2());
+    }
+
+    @Override
+    public void merge( final AccumulatorV2<Tuple2<Integer, StreamingEvidenceClusterer.Stats>, StreamingEvidenceClusterer.Stats> other ) {
+        if ( !(other instanceof EvidenceClusteringStatsAccumulator) ) {
+            throw new GATKException("Cannot merge a " + getClass().getSimpleName() + " with a " + other.getClass().getSimpleName());
+        }
+        ((EvidenceClusteringStatsAccumulator)other).statsByPartition.forEach(statsByPartition::putIfAbsent);
+    }
+
+    /**
+     * @return the statistics summed over all the partitions seen so far (but with the peak buffer size of the worst)
+     */
+    @Override
+    public StreamingEvidenceClusterer.Stats value() {
+        final StreamingEvidenceClusterer.Stats result = new StreamingEvidenceClusterer.Stats();
+        statsByPartition.values().forEach(result::merge);
+        return result;
+    }
+
+    /**
+     * @return the number of partitions that have reported
+     */
+    public int getNPartitions() {
+        return statsByPartition.size();
+    }
+}
@@ -8,9 +8,11 @@ import com.google.cloud.dataflow.sdk.options.PipelineOptions;
 import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import org.apache.spark.HashPartitioner;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
@@ -18,8 +20,10 @@ import org.broadinstitute.hellbender.cmdline.programgroups.StructuralVariationSp
 import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.tools.spark.utils.CountMinSketch;
 import org.broadinstitute.hellbender.tools.spark.utils.HopscotchMap;
 import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import scala.Tuple2;
 
@@ -40,6 +44,11 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
     private static final int REF_RECORD_LEN = 10000;
     // assuming we have ~1Gb/core, we can process ~1M kmers per partition
     private static final int REF_RECORDS_PER_PARTITION = 1024*1024 / REF_RECORD_LEN;
+    @VisibleForTesting static final int SKETCH_DEPTH = 3;
+    // 3 rows of 128M one-byte counters is a 384MB sketch, which is about as big as we'd want to broadcast
+    private static final int MAX_SKETCH_WIDTH = 1 << 27;
+    // the sketch is summed in stripes of this many counters, each by a single reducer
+    private static final int SKETCH_STRIPE_SIZE = 1 << 22;
 
     @Argument(doc = "file for ubiquitous kmer output", shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
             fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME)
@@ -55,6 +64,15 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
             fullName = "highCopyFasta", optional = true)
     private String highCopyFastaFilename;
 
+    @Argument(doc = "find candidate high copy kmers with a count-min sketch before counting them exactly, " +
+            "which shuffles only the candidates", fullName = "twoPhaseCounting", optional = true)
+    private boolean twoPhaseCounting = false;
+
+    @Argument(doc = "number of counters in each row of the sketch used for two-phase counting " +
+            "(by default, the reference length, up to " + MAX_SKETCH_WIDTH + ")",
+            fullName = "sketchWidth", optional = true)
+    private int sketchWidth = 0;
+
     @Override
     public boolean requiresReference() {
         return true;
@@ -68,7 +86,8 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
         if ( hdr != null ) dict = hdr.getSequenceDictionary();
         final PipelineOptions options = getAuthenticatedGCSOptions();
         final ReferenceMultiSource referenceMultiSource = getReference();
-        Collection<SVKmer> killList = findBadGenomicKmers(ctx, kSize, maxDUSTScore, referenceMultiSource, options, dict);
+        Collection<SVKmer> killList = findBadGenomicKmers(ctx, kSize, maxDUSTScore, referenceMultiSource, options, dict,
+                                                          twoPhaseCounting, sketchWidth);
         if ( highCopyFastaFilename != null ) {
             killList = uniquify(killList, processFasta(kSize, maxDUSTScore, highCopyFastaFilename, options));
         }
@@ -84,12 +103,36 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
                                                     final ReferenceMultiSource ref,
                                                     final PipelineOptions options,
                                                     final SAMSequenceDictionary readsDict ) {
+        return findBadGenomicKmers(ctx, kSize, maxDUSTScore, ref, options, readsDict, false, 0);
+    }
+
+    /**
+     * Find high copy number kmers in the reference sequence, optionally by two-phase counting with a sketch of the
+     * given width (or, if the width is 0, a sketch as wide as the reference is long).
+     */
+    @VisibleForTesting
+    static List<SVKmer> findBadGenomicKmers( final JavaSparkContext ctx,
+                                             final int kSize,
+                                             final int maxDUSTScore,
+                                             final ReferenceMultiSource ref,
+                                             final PipelineOptions options,
+                                             final SAMSequenceDictionary readsDict,
+                                             final boolean twoPhaseCounting,
+                                             final int sketchWidth ) {
         // Generate reference sequence RDD.
         final JavaRDD<byte[]> refRDD = SVUtils.getRefRDD(ctx, kSize, ref, options, readsDict,
                                                                 REF_RECORD_LEN, REF_RECORDS_PER_PARTITION);
 
         // Find the high copy number kmers
-        return processRefRDD(kSize, maxDUSTScore, MAX_KMER_FREQ, refRDD);
+        if ( !twoPhaseCounting ) return processRefRDD(kSize, maxDUSTScore, MAX_KMER_FREQ, refRDD);
+
+        int width = sketchWidth;
+        if ( width <= 0 ) {
+            final SAMSequenceDictionary dict = ref.getReferenceSequenceDictionary(readsDict);
+            if ( dict == null ) throw new GATKException("No reference dictionary available");
+            width = (int)Math.min(MAX_SKETCH_WIDTH, Math.max(1L, dict.getReferenceLength()));
+        }
+        return processRefRDDTwoPhase(kSize, maxDUSTScore, MAX_KMER_FREQ, refRDD, width);
     }
 
     /**
@@ -154,23 +197,131 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
                                                           final int maxDUSTScore,
                                                           final int maxKmerFreq,
                                                           final JavaRDD<byte[]> refRDD ) {
+        return countKmers(kSize, maxDUSTScore, maxKmerFreq, refRDD, null);
+    }
+
+    /**
+     * Like processRefRDD, but in two phases so that only a few kmers go through the shuffle.
+     * In the first phase the kmers are counted in a count-min sketch.  Each partition sends only the counters its
+     * kmers touch (a few million, rather than the whole sketch) through the shuffle, a reducer sums each stripe of
+     * the sketch, and the driver assembles the stripes into a single sketch.  The sketch never underestimates a kmer's count, so any kmer with an estimated count of no more than
+     * maxKmerFreq can't be a high frequency kmer.  In the second phase, we count kmers as processRefRDD does, except
+     * that each partition sends only the other, candidate, kmers through the shuffle.  The result is exactly the same as
+     * processRefRDD's:  the sketch's width affects only the number of candidates.
+     */
+    @VisibleForTesting static List<SVKmer> processRefRDDTwoPhase( final int kSize,
+                                                                  final int maxDUSTScore,
+                                                                  final int maxKmerFreq,
+                                                                  final JavaRDD<byte[]> refRDD,
+                                                                  final int sketchWidth ) {
+        Utils.validateArg(maxKmerFreq < CountMinSketch.MAX_COUNT,
+                "the maximum kmer frequency is too large for two-phase counting");
+        final int hashSize = 2*REF_RECORDS_PER_PARTITION;
+        final long nCounters = (long)SKETCH_DEPTH*sketchWidth;
+        final int nStripes = (int)((nCounters + SKETCH_STRIPE_SIZE - 1) / SKETCH_STRIPE_SIZE);
+        final List<Tuple2<Integer, byte[]>> stripes = refRDD
+                .mapPartitionsToPair(seqItr ->
+                        sparseCounterCounts(countPartitionKmers(seqItr, kSize, maxDUSTScore, hashSize), sketchWidth)
+                                .iterator())
+                .combineByKey(counts -> addToStripe(new byte[SKETCH_STRIPE_SIZE], counts),
+                                FindBadGenomicKmersSpark::addToStripe,
+                                FindBadGenomicKmersSpark::mergeStripes,
+                                new HashPartitioner(Math.min(nStripes, refRDD.getNumPartitions())), false, null)
+                .collect();
+        final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, sketchWidth);
+        for ( final Tuple2<Integer, byte[]> stripe : stripes ) {
+            // the last stripe extends past the end of the sketch
+            final int stripeStart = stripe._1()*SKETCH_STRIPE_SIZE;
+            final int stripeLen = (int)Math.min(SKETCH_STRIPE_SIZE, nCounters - stripeStart);
+            sketch.addCounts(stripeStart, Arrays.copyOf(stripe._2(), stripeLen));
+        }
+
+        final JavaSparkContext ctx = JavaSparkContext.fromSparkContext(refRDD.context());
+        final Broadcast<CountMinSketch> broadcastSketch = ctx.broadcast(sketch);
+        final List<SVKmer> highFreqKmers = countKmers(kSize, maxDUSTScore, maxKmerFreq, refRDD, broadcastSketch);
+        broadcastSketch.destroy();
+        return highFreqKmers;
+    }
+
+    /**
+     * The counts of the sketch counters touched by a partition's kmers, as a list of
+     * <stripeId,<offsets of counters within the stripe,counts>> for each stripe that has any.
+     */
+    private static List<Tuple2<Integer, Tuple2<int[], byte[]>>> sparseCounterCounts(
+            final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+            final int sketchWidth ) {
+        final Int2IntOpenHashMap counterCounts = new Int2IntOpenHashMap(SKETCH_DEPTH*kmerCounts.size());
+        for ( final KmerAndCount kmerAndCount : kmerCounts ) {
+            for ( int row = 0; row != SKETCH_DEPTH; ++row ) {
+                counterCounts.addTo(
+                        CountMinSketch.getCounterIndex(sketchWidth, row, kmerAndCount.getValHigh(), kmerAndCount.getValLow()),
+                        kmerAndCount.grabCount());
+            }
+        }
+        final int[] counterIndices = counterCounts.keySet().toIntArray();
+        Arrays.sort(counterIndices);
+        final List<Tuple2<Integer, Tuple2<int[], byte[]>>> stripeCounts = new ArrayList<>();
+        int start = 0;
+        while ( start < counterIndices.length ) {
+            final int stripeId = counterIndices[start] / SKETCH_STRIPE_SIZE;
+            int end = start + 1;
+            while ( end < counterIndices.length && counterIndices[end] / SKETCH_STRIPE_SIZE == stripeId ) end += 1;
+            final int[] offsets = new int[end - start];
+            final byte[] counts = new byte[end - start];
+            for ( int idx = start; idx != end; ++idx ) {
+                offsets[idx - start] = counterIndices[idx] - stripeId*SKETCH_STRIPE_SIZE;
+                counts[idx - start] = (byte)Math.min(CountMinSketch.MAX_COUNT, counterCounts.get(counterIndices[idx]));
+            }
+            stripeCounts.add(new Tuple2<>(stripeId, new Tuple2<>(offsets, counts)));
+            start = end;
+        }
+        return stripeCounts;
+    }
+
+    /** Add sparse counts into a stripe of sketch counters. */
+    private static byte[] addToStripe( final byte[] stripe, final Tuple2<int[], byte[]> counts ) {
+        final int[] offsets = counts._1();
+        final byte[] values = counts._2();
+        for ( int idx = 0; idx != offsets.length; ++idx ) {
+            final int offset = offsets[idx];
+            stripe[offset] = (byte)Math.min(CountMinSketch.MAX_COUNT, (stripe[offset] & 0xff) + (values[idx] & 0xff));
+        }
+        return stripe;
+    }
+
+    /** Sum two copies of the same stripe of sketch counters. */
+    private static byte[] mergeStripes( final byte[] stripe1, final byte[] stripe2 ) {
+        for ( int idx = 0; idx != stripe1.length; ++idx ) {
+            stripe1[idx] = (byte)Math.min(CountMinSketch.MAX_COUNT, (stripe1[idx] & 0xff) + (stripe2[idx] & 0xff));
+        }
+        return stripe1;
+    }
+
+    /**
+     * Count the kmers in each partition, shuffle the counts (or just those of the kmers that the sketch, if there is
+     * one, says might have high frequency), and sum them.  Return the kmers with high frequency.
+     */
+    private static List<SVKmer> countKmers( final int kSize,
+                                            final int maxDUSTScore,
+                                            final int maxKmerFreq,
+                                            final JavaRDD<byte[]> refRDD,
+                                            final Broadcast<CountMinSketch> broadcastSketch ) {
         final int nPartitions = refRDD.getNumPartitions();
         final int hashSize = 2*REF_RECORDS_PER_PARTITION;
         final int arrayCap = REF_RECORDS_PER_PARTITION/100;
         return refRDD
                 .mapPartitions(seqItr -> {
-                    final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = new HopscotchMap<>(hashSize);
-                    while ( seqItr.hasNext() ) {
-                        final byte[] seq = seqItr.next();
-                        SVDUSTFilteredKmerizer.stream(seq, kSize, maxDUSTScore, new SVKmerLong())
-                                .map(kmer -> kmer.canonical(kSize))
-                                .forEach(kmer -> {
-                                    final KmerAndCount entry = kmerCounts.find(kmer);
-                                    if ( entry == null ) kmerCounts.add(new KmerAndCount((SVKmerLong)kmer));
-                                    else entry.bumpCount();
-                                });
+                    final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts =
+                            countPartitionKmers(seqItr, kSize, maxDUSTScore, hashSize);
+                    if ( broadcastSketch == null ) return kmerCounts.iterator();
+                    final CountMinSketch sketch = broadcastSketch.getValue();
+                    final List<KmerAndCount> candidates = new ArrayList<>(arrayCap);
+                    for ( final KmerAndCount kmerAndCount : kmerCounts ) {
+                        if ( sketch.estimate(kmerAndCount.getValHigh(), kmerAndCount.getValLow()) > maxKmerFreq ) {
+                            candidates.add(kmerAndCount);
+                        }
                     }
-                    return kmerCounts.iterator();
+                    return candidates.iterator();
                 })
                 .mapToPair(entry -> new Tuple2<>(entry.getKey(), entry.getValue()))
                 .partitionBy(new HashPartitioner(nPartitions))
@@ -194,6 +345,24 @@ public final class FindBadGenomicKmersSpark extends GATKSparkTool {
                 .collect();
     }
 
+    /** Count the canonical kmers in the sequences of a partition. */
+    private static HopscotchMap<SVKmer, Integer, KmerAndCount> countPartitionKmers( final Iterator<byte[]> seqItr,
+                                                                                    final int kSize,
+                                                                                    final int maxDUSTScore,
+                                                                                    final int hashSize ) {
+        final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = new HopscotchMap<>(hashSize);
+        final SVPackedKmerizer kmerizer = new SVPackedKmerizer(kSize, maxDUSTScore);
+        while ( seqItr.hasNext() ) {
+            kmerizer.kmerizeCanonical(seqItr.next(), (valHigh, valLow) -> {
+                final SVKmerLong kmer = new SVKmerLong(valHigh, valLow);
+                final KmerAndCount entry = kmerCounts.find(kmer);
+                if ( entry == null ) kmerCounts.add(new KmerAndCount(kmer));
+                else entry.bumpCount();
+            });
+        }
+        return kmerCounts;
+    }
+
     @VisibleForTesting static List<SVKmer> processFasta( final int kSize,
                                                          final int maxDUSTScore,
                                                          final String fastaFilename,
@@ -4,6 +4,7 @@ import com.google.cloud.dataflow.sdk.options.PipelineOptions;
 import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.*;
 import org.apache.spark.HashPartitioner;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
@@ -46,6 +47,10 @@ import java.util.stream.IntStream;
 public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
     private static final long serialVersionUID = 1L;
 
+    // the false positive rate of the Bloom filters broadcast in place of the template name and kmer sets:
+    // each false positive costs a trip through the shuffle that joins with the exact set
+    @VisibleForTesting static final double MEMBERSHIP_FILTER_FALSE_POSITIVE_RATE = .001;
+
     //--------- parameters ----------
 
     // no-arg constructor for Params object establishes default values
@@ -74,6 +79,10 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             fullName = "minEvidenceCount")
     private int minEvidenceCount = defaultParams.minEvidenceCount;
 
+    @Argument(doc = "Maximum number of pieces of evidence to buffer in each partition while clustering.  "+
+            "Evidence is downsampled in regions that would need more.", fullName = "maxBufferedEvidence")
+    private int maxBufferedEvidence = defaultParams.maxBufferedEvidence;
+
     @Argument(doc = "Minimum number of localizing kmers in a valid interval.", fullName="minKmersPerInterval")
     private int minKmersPerInterval = defaultParams.minKmersPerInterval;
 
@@ -123,6 +132,11 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
     @Argument(doc = "file for read metadata", fullName = "readMetadata", optional = true)
     private String metadataFile;
 
+    @Argument(doc = "Fraction of the read partitions to sample when estimating the read metadata (fragment size "+
+            "statistics and coverage).  1 reads every partition to get exact statistics.  Inputs with few "+
+            "partitions are always read in full.", fullName = "readMetadataSampleFraction", optional = true)
+    private double readMetadataSampleFraction = 1.0;
+
     @Argument(doc = "directory for evidence output", fullName = "breakpointEvidenceDir", optional = true)
     private String evidenceDir;
 
@@ -187,7 +201,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
                                 kmerFile, qNamesAssemblyFile, exclusionIntervalsFile, alignerIndexImageFile);
         final Params params =
                 new Params(kSize, maxDUSTScore, minEvidenceMapQ, minEvidenceMatchLength, maxIntervalCoverage,
-                            minEvidenceCount, minKmersPerInterval, cleanerMaxIntervals, cleanerMinKmerCount,
+                            minEvidenceCount, maxBufferedEvidence, minKmersPerInterval, cleanerMaxIntervals, cleanerMinKmerCount,
                             cleanerMaxKmerCount, cleanerKmersPerPartitionGuess, maxQNamesPerKmer, assemblyKmerMapSize,
                             assemblyToMappedSizeRatioGuess, maxFASTQSize, exclusionIntervalPadding);
 
@@ -217,7 +231,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final FermiLiteAssemblyHandler fermiLiteAssemblyHandler =
                 new FermiLiteAssemblyHandler(locations.alignerIndexImageFile, maxFASTQSize, fastqDir, gfaDir);
         alignedAssemblyOrExcuseList.addAll(
-                handleAssemblies(ctx, qNamesMultiMap, allPrimaryLines, intervals.size(),
+                handleAssembliesAndLog(ctx, qNamesMultiMap, allPrimaryLines, intervals.size(),
                                 includeMappingLocation, fastqDir != null, fermiLiteAssemblyHandler));
 
         alignedAssemblyOrExcuseList.sort(Comparator.comparingInt(AlignedAssemblyOrExcuse::getAssemblyId));
@@ -257,14 +271,21 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final JavaRDD<GATKRead> mappedReads =
                 unfilteredReads.filter(read ->
                         !read.isDuplicate() && !read.failsVendorQualityCheck() && !read.isUnmapped());
-        final ReadMetadata readMetadata = new ReadMetadata(crossContigsToIgnoreSet, header, mappedReads);
+        final long metadataStartNanos = System.nanoTime();
+        final ReadMetadata readMetadata =
+                new ReadMetadata(crossContigsToIgnoreSet, header, mappedReads, readMetadataSampleFraction);
         if ( locations.metadataFile != null ) {
             ReadMetadata.writeMetadata(readMetadata, locations.metadataFile, pipelineOptions);
         }
-        log("Metadata retrieved.");
+        logStage("Metadata retrieved from " + readMetadata.getNSampledPartitions() + " of " +
+                readMetadata.getNPartitions() + " partitions", metadataStartNanos);
+        if ( readMetadata.isSampled() ) logSampledMetadata(readMetadata);
 
         final Broadcast<ReadMetadata> broadcastMetadata = ctx.broadcast(readMetadata);
-        List<SVInterval> intervals = getIntervals(params, broadcastMetadata, header, mappedReads, locations);
+        final EvidenceClusteringStatsAccumulator clusteringStats =
+                EvidenceClusteringStatsAccumulator.register(ctx, "FindBreakpointEvidenceSpark evidence clustering");
+        List<SVInterval> intervals = getIntervals(params, broadcastMetadata, header, mappedReads, locations, clusteringStats);
+        logClusteringStats(clusteringStats);
 
         final int nIntervals = intervals.size();
         log("Discovered " + nIntervals + " intervals.");
@@ -332,15 +353,21 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final JavaRDD<GATKRead> goodPrimaryLines =
                 allPrimaryLines.filter(read -> !read.isDuplicate() && !read.failsVendorQualityCheck());
 
-        final Tuple2<List<AlignedAssemblyOrExcuse>, HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval>> kmerIntervalsAndDispositions =
+        final Tuple2<List<AlignedAssemblyOrExcuse>, LongPairIntMultiMap> kmerIntervalsAndDispositions =
                 getKmerAndIntervalsSet(params, ctx, kmersToIgnoreFile, qNamesMultiMap, nIntervals,
                                         goodPrimaryLines, locations, pipelineOptions);
+        final LongPairIntMultiMap kmerMultiMap = kmerIntervalsAndDispositions._2();
+        final long startTime = System.nanoTime();
+        final BlockedBloomFilter kmerFilter = makeKmerFilter(kmerMultiMap);
+        logFilter("assembly kmers", kmerFilter, kmerMultiMap.size());
         qNamesMultiMap.addAll(
                 getAssemblyQNames(
                         params,
                         ctx,
-                        kmerIntervalsAndDispositions._2(),
+                        kmerMultiMap,
+                        kmerFilter,
                         goodPrimaryLines));
+        logStage("Found template names for assembly kmers", startTime);
 
         if ( locations.qNamesAssemblyFile != null ) {
             QNameAndInterval.writeQNames(locations.qNamesAssemblyFile, pipelineOptions, qNamesMultiMap);
@@ -358,7 +385,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
      * _1 describes the intervals that have been killed for having too few kmers (as a map from intervalId onto an explanatory string),
      * and _2 describes the good kmers that we want to use in local assemblies (as a multimap from kmer onto intervalId).
      */
-    private Tuple2<List<AlignedAssemblyOrExcuse>, HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval>> getKmerAndIntervalsSet(
+    private Tuple2<List<AlignedAssemblyOrExcuse>, LongPairIntMultiMap> getKmerAndIntervalsSet(
             final Params params,
             final JavaSparkContext ctx,
             final String kmersToIgnoreFile,
@@ -371,10 +398,18 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final Set<SVKmer> kmerKillSet = SVUtils.readKmersFile(params.kSize, kmersToIgnoreFile, pipelineOptions, new SVKmerLong(params.kSize));
         log("Ignoring " + kmerKillSet.size() + " genomically common kmers.");
 
+        final long startTime = System.nanoTime();
+        final BlockedBloomFilter qNamesFilter = makeQNamesFilter(qNamesMultiMap);
+        logFilter("template names", qNamesFilter, qNamesMultiMap.size());
         final Tuple2<List<AlignedAssemblyOrExcuse>, List<KmerAndInterval>> kmerIntervalsAndDispositions =
-                getKmerIntervals(params, ctx, qNamesMultiMap, nIntervals, kmerKillSet, goodPrimaryLines, locations, pipelineOptions);
-        final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap =
-                new HopscotchUniqueMultiMap<>(kmerIntervalsAndDispositions._2());
+                getKmerIntervals(params, ctx, qNamesMultiMap, qNamesFilter, nIntervals, kmerKillSet, goodPrimaryLines,
+                                locations, pipelineOptions);
+        logStage("Kmerized template names", startTime);
+        final List<KmerAndInterval> kmerIntervals = kmerIntervalsAndDispositions._2();
+        final LongPairIntMultiMap kmerMultiMap = new LongPairIntMultiMap(kmerIntervals.size());
+        for ( final KmerAndInterval kmerAndInterval : kmerIntervals ) {
+            kmerMultiMap.add(kmerAndInterval.getValHigh(), kmerAndInterval.getValLow(), kmerAndInterval.getIntervalId());
+        }
         log("Discovered " + kmerMultiMap.size() + " kmers.");
 
         return new Tuple2<>(kmerIntervalsAndDispositions._1(), kmerMultiMap);
@@ -388,38 +423,77 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             extends Serializable, Function<Tuple2<Integer,List<FastqRead>>, AlignedAssemblyOrExcuse> {
     }
 
+    private List<AlignedAssemblyOrExcuse> handleAssembliesAndLog(
+            final JavaSparkContext ctx,
+            final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
+            final JavaRDD<GATKRead> reads,
+            final int nIntervals,
+            final boolean includeMappingLocation,
+            final boolean dumpFASTQs,
+            final LocalAssemblyHandler localAssemblyHandler ) {
+        final long startTime = System.nanoTime();
+        final BlockedBloomFilter qNamesFilter = makeQNamesFilter(qNamesMultiMap);
+        logFilter("template names", qNamesFilter, qNamesMultiMap.size());
+        final List<AlignedAssemblyOrExcuse> intervalDispositions =
+                handleAssemblies(ctx, qNamesMultiMap, qNamesFilter, reads, nIntervals,
+                                includeMappingLocation, dumpFASTQs, localAssemblyHandler);
+        logStage("Assembled and aligned " + intervalDispositions.size() + " intervals", startTime);
+        return intervalDispositions;
+    }
+
     /**
      * Transform all the reads for a supplied set of template names in each interval into FASTQ records
      * for each interval, and do something with the list of FASTQ records for each interval (like write it to a file).
+     * Only a Bloom filter of the template names is broadcast:  the reads that pass it are joined with the exact set.
      */
     @VisibleForTesting static List<AlignedAssemblyOrExcuse> handleAssemblies(
             final JavaSparkContext ctx,
             final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
+            final BlockedBloomFilter qNamesFilter,
             final JavaRDD<GATKRead> reads,
             final int nIntervals,
             final boolean includeMappingLocation,
             final boolean dumpFASTQs,
             final LocalAssemblyHandler localAssemblyHandler ) {
-        final Broadcast<HopscotchUniqueMultiMap<String, Integer, QNameAndInterval>> broadcastQNamesMultiMap =
-                ctx.broadcast(qNamesMultiMap);
+        final JavaPairRDD<String, Integer> qNameIntervals = parallelizeQNames(ctx, qNamesMultiMap, reads.getNumPartitions());
+        final Broadcast<BlockedBloomFilter> broadcastQNamesFilter = ctx.broadcast(qNamesFilter);
         final List<AlignedAssemblyOrExcuse> intervalDispositions =
             reads
-                .mapPartitionsToPair(readItr ->
-                        new ReadsForQNamesFinder(broadcastQNamesMultiMap.value(), nIntervals,
-                                includeMappingLocation, dumpFASTQs).call(readItr).iterator(), false)
-                .combineByKey(x -> x,
-                                FindBreakpointEvidenceSpark::combineLists,
+                .filter(read -> broadcastQNamesFilter.value().mightContain(read.getName()))
+                .mapToPair(read -> {
+                    final String readName =
+                            dumpFASTQs ? SVFastqUtils.readToFastqSeqId(read, includeMappingLocation) : null;
+                    return new Tuple2<>(read.getName(),
+                                        new FastqRead(readName, read.getBases(), read.getBaseQualities()));
+                })
+                .join(qNameIntervals)
+                .mapToPair(qNameAndReadInterval -> qNameAndReadInterval._2().swap())
+                .combineByKey(FindBreakpointEvidenceSpark::newList,
+                                FindBreakpointEvidenceSpark::addToList,
                                 FindBreakpointEvidenceSpark::combineLists,
-                                new HashPartitioner(nIntervals), false, null)
+                                new HashPartitioner(nIntervals))
                 .map(localAssemblyHandler::apply)
                 .collect();
 
-        broadcastQNamesMultiMap.destroy();
+        broadcastQNamesFilter.destroy();
         BwaMemIndexSingleton.closeAllDistributedInstances(ctx);
 
         return intervalDispositions;
     }
 
+    /** Start a list of reads for an interval. */
+    private static List<FastqRead> newList( final FastqRead read ) {
+        final List<FastqRead> result = new ArrayList<>();
+        result.add(read);
+        return result;
+    }
+
+    /** Add a read to the list for an interval. */
+    private static List<FastqRead> addToList( final List<FastqRead> list, final FastqRead read ) {
+        list.add(read);
+        return list;
+    }
+
     /** Concatenate two lists. */
     private static List<FastqRead> combineLists( final List<FastqRead> list1, final List<FastqRead> list2 ) {
         final List<FastqRead> result = new ArrayList<>(list1.size() + list2.size());
@@ -484,14 +558,20 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
 
     /**
      * Grab template names for all reads that contain kmers associated with a given breakpoint.
+     * Only a Bloom filter of the kmers is broadcast:  the kmers that pass it are joined with the exact set.
      */
     @VisibleForTesting static List<QNameAndInterval> getAssemblyQNames(
             final Params params,
             final JavaSparkContext ctx,
-            final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap,
+            final LongPairIntMultiMap kmerMultiMap,
+            final BlockedBloomFilter kmerFilter,
             final JavaRDD<GATKRead> reads ) {
-        final Broadcast<HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval>> broadcastKmerMultiMap =
-                ctx.broadcast(kmerMultiMap);
+        final List<Tuple2<SVKmer, Integer>> kmerIntervalList = new ArrayList<>(kmerMultiMap.size());
+        kmerMultiMap.forEach((keyHigh, keyLow, intervalId) ->
+                kmerIntervalList.add(new Tuple2<>(new SVKmerLong(keyHigh, keyLow), intervalId)));
+        final JavaPairRDD<SVKmer, Integer> kmerIntervals =
+                ctx.parallelizePairs(kmerIntervalList, reads.getNumPartitions());
+        final Broadcast<BlockedBloomFilter> broadcastKmerFilter = ctx.broadcast(kmerFilter);
 
         final int kSize = params.kSize;
         final int maxDUSTScore = params.maxDUSTScore;
@@ -500,33 +580,37 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final List<QNameAndInterval> qNames =
             reads
                 .mapPartitionsToPair(readItr ->
-                        new MapPartitioner<>(readItr,
-                                new QNamesForKmersFinder(kSize, maxDUSTScore, broadcastKmerMultiMap.value())).iterator(), false)
-                .mapPartitions(pairItr ->
-                        new KmerQNameToQNameIntervalMapper(broadcastKmerMultiMap.value(),
-                                                            maxQNamesPerKmer,
-                                                            kmerMapSize).call(pairItr).iterator())
+                        new QNamesForKmersFinder(kSize, maxDUSTScore, broadcastKmerFilter.value(),
+                                                    maxQNamesPerKmer, kmerMapSize).call(readItr).iterator(), false)
+                .join(kmerIntervals)
+                .values()
+                .mapPartitions(qNamesAndIntervalItr ->
+                        new KmerQNameToQNameIntervalMapper(kmerMapSize).call(qNamesAndIntervalItr).iterator())
                 .collect();
 
-        broadcastKmerMultiMap.destroy();
+        broadcastKmerFilter.destroy();
 
         return qNames;
     }
 
-    /** find kmers for each interval */
+    /**
+     * Find kmers for each interval.
+     * Only a Bloom filter of the template names is broadcast:  the reads that pass it are joined with the exact set.
+     */
     @VisibleForTesting static Tuple2<List<AlignedAssemblyOrExcuse>, List<KmerAndInterval>> getKmerIntervals(
             final Params params,
             final JavaSparkContext ctx,
             final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
+            final BlockedBloomFilter qNamesFilter,
             final int nIntervals,
             final Set<SVKmer> kmerKillSet,
             final JavaRDD<GATKRead> reads,
             final Locations locations,
             final PipelineOptions pipelineOptions ) {
 
+        final JavaPairRDD<String, Integer> qNameIntervals = parallelizeQNames(ctx, qNamesMultiMap, reads.getNumPartitions());
+        final Broadcast<BlockedBloomFilter> broadcastQNamesFilter = ctx.broadcast(qNamesFilter);
         final Broadcast<Set<SVKmer>> broadcastKmerKillSet = ctx.broadcast(kmerKillSet);
-        final Broadcast<HopscotchUniqueMultiMap<String, Integer, QNameAndInterval>> broadcastQNameAndIntervalsMultiMap =
-                ctx.broadcast(qNamesMultiMap);
 
         // given a set of template names with interval IDs and a kill set of ubiquitous kmers,
         // produce a set of interesting kmers for each interval ID
@@ -538,16 +622,19 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final int maxDUSTScore = params.maxDUSTScore;
         final List<KmerAndInterval> kmerIntervals =
             reads
-                .mapPartitionsToPair(readItr ->
-                        new MapPartitioner<>(readItr,
-                            new QNameKmerizer(broadcastQNameAndIntervalsMultiMap.value(),
-                                            broadcastKmerKillSet.value(), kSize, maxDUSTScore)).iterator(), false)
+                .filter(read -> broadcastQNamesFilter.value().mightContain(read.getName()))
+                .mapToPair(read -> new Tuple2<>(read.getName(), read.getBases()))
+                .join(qNameIntervals)
+                .values()
+                .mapPartitionsToPair(basesAndIntervalItr ->
+                        new MapPartitioner<>(basesAndIntervalItr,
+                            new QNameKmerizer(broadcastKmerKillSet.value(), kSize, maxDUSTScore)).iterator(), false)
                 .reduceByKey(Integer::sum)
                 .mapPartitions(itr -> new KmerCleaner(itr, kmersPerPartitionGuess, minKmers, maxKmers, maxIntervals).iterator())
                 .collect();
 
-        broadcastQNameAndIntervalsMultiMap.destroy();
         broadcastKmerKillSet.destroy();
+        broadcastQNamesFilter.destroy();
 
         final int[] intervalKmerCounts = new int[nIntervals];
         for ( final KmerAndInterval kmerAndInterval : kmerIntervals ) {
@@ -688,7 +775,8 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             final Broadcast<ReadMetadata> broadcastMetadata,
             final SAMFileHeader header,
             final JavaRDD<GATKRead> reads,
-            final Locations locations ) {
+            final Locations locations,
+            final EvidenceClusteringStatsAccumulator clusteringStats ) {
         // find all breakpoint evidence, then filter for pile-ups
         final int maxFragmentSize = broadcastMetadata.value().getMaxMedianFragmentSize();
         final List<SAMSequenceRecord> contigs = header.getSequenceDictionary().getSequences();
@@ -696,6 +784,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         final int minMapQ = params.minEvidenceMapQ;
         final int minMatchLen = params.minEvidenceMatchLength;
         final int minEvidenceCount = params.minEvidenceCount;
+        final int maxBufferedEvidence = params.maxBufferedEvidence;
         final JavaRDD<BreakpointEvidence> evidenceRDD =
                 reads
                     .filter(read ->
@@ -709,11 +798,11 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
                                     .sum() >= minMatchLen)
                     .mapPartitions(readItr ->
                             new MapPartitioner<>(readItr, new ReadClassifier(broadcastMetadata.value())).iterator(), true)
-                    .mapPartitions(evidenceItr ->
-                            new MapPartitioner<>(evidenceItr, new BreakpointClusterer(minEvidenceCount, 2*maxFragmentSize)).iterator(), true)
-                    .mapPartitions(evidenceItr ->
+                    .mapPartitionsWithIndex((partitionIdx, evidenceItr) ->
                             new MapPartitioner<>(evidenceItr,
-                                    new WindowSorter(3*maxFragmentSize), new BreakpointEvidence(nContigs)).iterator(), true);
+                                    new StreamingEvidenceClusterer(minEvidenceCount, 2*maxFragmentSize, maxBufferedEvidence,
+                                            stats -> clusteringStats.add(new Tuple2<>(partitionIdx, stats))),
+                                    new BreakpointEvidence(nContigs)).iterator(), true);
 
         // record the evidence
         if ( locations.evidenceDir != null ) {
@@ -756,6 +845,69 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         logger.info(message);
     }
 
+    /** A Bloom filter of the template names in the multimap. */
+    @VisibleForTesting static BlockedBloomFilter makeQNamesFilter(
+            final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap ) {
+        final BlockedBloomFilter qNamesFilter =
+                new BlockedBloomFilter(qNamesMultiMap.size(), MEMBERSHIP_FILTER_FALSE_POSITIVE_RATE);
+        for ( final QNameAndInterval qNameAndInterval : qNamesMultiMap ) {
+            qNamesFilter.add(qNameAndInterval.getQName());
+        }
+        return qNamesFilter;
+    }
+
+    /** A Bloom filter of the kmers in the multimap. */
+    @VisibleForTesting static BlockedBloomFilter makeKmerFilter( final LongPairIntMultiMap kmerMultiMap ) {
+        final BlockedBloomFilter kmerFilter =
+                new BlockedBloomFilter(kmerMultiMap.size(), MEMBERSHIP_FILTER_FALSE_POSITIVE_RATE);
+        kmerMultiMap.forEach((keyHigh, keyLow, intervalId) -> kmerFilter.add(keyHigh, keyLow));
+        return kmerFilter;
+    }
+
+    /** The template names in the multimap, with their intervalIds, as a pair RDD that can be joined with the reads. */
+    private static JavaPairRDD<String, Integer> parallelizeQNames(
+            final JavaSparkContext ctx,
+            final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
+            final int nPartitions ) {
+        final List<Tuple2<String, Integer>> qNameIntervalList = new ArrayList<>(qNamesMultiMap.size());
+        for ( final QNameAndInterval qNameAndInterval : qNamesMultiMap ) {
+            qNameIntervalList.add(new Tuple2<>(qNameAndInterval.getQName(), qNameAndInterval.getIntervalId()));
+        }
+        return ctx.parallelizePairs(qNameIntervalList, nPartitions);
+    }
+
+    private void logFilter( final String description, final BlockedBloomFilter filter, final int nEntries ) {
+        logger.info(String.format("Broadcasting a %d-byte Bloom filter of %d %s (false positive rate %.4f).",
+                filter.getSizeInBytes(), nEntries, description, filter.getFalsePositiveRate()));
+    }
+
+    private void logClusteringStats( final EvidenceClusteringStatsAccumulator clusteringStats ) {
+        final StreamingEvidenceClusterer.Stats stats = clusteringStats.value();
+        final double secs = stats.getNanos() / 1e9;
+        logger.info(String.format("Clustered %d pieces of evidence in %d partitions (%.0f per second per task); "+
+                        "%d were in clusters.  Peak buffer size: %d pieces of evidence.",
+                stats.getNEvidence(), clusteringStats.getNPartitions(), secs > 0. ? stats.getNEvidence() / secs : 0.,
+                stats.getNReportedEvidence(), stats.getPeakBufferedEvidence()));
+        if ( stats.getMaxSamplingLevel() > 0 ) {
+            logger.warn(String.format("Evidence was downsampled (to as little as 1 in %d) to stay within the "+
+                            "clustering buffer limit:  %d pieces of evidence were discarded.",
+                    1L << stats.getMaxSamplingLevel(), stats.getNDownsampledEvidence()));
+        }
+    }
+
+    private void logSampledMetadata( final ReadMetadata readMetadata ) {
+        for ( final Map.Entry<String, ReadMetadata.ReadGroupFragmentStatistics> entry :
+                readMetadata.getAllGroupStatistics().entrySet() ) {
+            final int[] interval = readMetadata.getMedianConfidenceInterval(entry.getKey());
+            logger.info(String.format("Estimated median fragment size for read group %s: %d (95%% CI %d-%d).",
+                    entry.getKey(), entry.getValue().getMedianFragmentSize(), interval[0], interval[1]));
+        }
+    }
+
+    private void logStage( final String description, final long startNanos ) {
+        logger.info(String.format("%s in %.2f seconds.", description, (System.nanoTime() - startNanos) / 1e9));
+    }
+
     @VisibleForTesting static class Locations {
         public final String metadataFile;
         public final String evidenceDir;
@@ -787,6 +939,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         public final int minEvidenceMatchLength;
         public final int maxIntervalCoverage;
         public final int minEvidenceCount;
+        public final int maxBufferedEvidence;
         public final int minKmersPerInterval;
         public final int cleanerMaxIntervals;
         public final int cleanerMinKmerCount;
@@ -805,6 +958,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             minEvidenceMatchLength = 45;            // minimum match length
             maxIntervalCoverage = 1000;             // maximum coverage on breakpoint interval
             minEvidenceCount = 15;                  // minimum number of evidentiary reads in called cluster
+            maxBufferedEvidence = 1000000;          // maximum evidence buffered per partition while clustering
             minKmersPerInterval = 20;               // minimum number of good kmers in a valid interval
             cleanerMaxIntervals = 3;                // KmerCleaner maximum number of intervals a localizing kmer can appear in
             cleanerMinKmerCount = 3;                // KmerCleaner min kmer count
@@ -819,7 +973,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
 
         public Params( final int kSize, final int maxDUSTScore, final int minEvidenceMapQ,
                        final int minEvidenceMatchLength, final int maxIntervalCoverage, final int minEvidenceCount,
-                       final int minKmersPerInterval, final int cleanerMaxIntervals, final int cleanerMinKmerCount,
+                       final int maxBufferedEvidence, final int minKmersPerInterval, final int cleanerMaxIntervals, final int cleanerMinKmerCount,
                        final int cleanerMaxKmerCount, final int cleanerKmersPerPartitionGuess,
                        final int maxQNamesPerKmer, final int asemblyKmerMapSize, final int assemblyToMappedSizeRatioGuess,
                        final int maxFASTQSize, final int exclusionIntervalPadding ) {
@@ -829,6 +983,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             this.minEvidenceMatchLength = minEvidenceMatchLength;
             this.maxIntervalCoverage = maxIntervalCoverage;
             this.minEvidenceCount = minEvidenceCount;
+            this.maxBufferedEvidence = maxBufferedEvidence;
             this.minKmersPerInterval = minKmersPerInterval;
             this.cleanerMaxIntervals = cleanerMaxIntervals;
             this.cleanerMinKmerCount = cleanerMinKmerCount;
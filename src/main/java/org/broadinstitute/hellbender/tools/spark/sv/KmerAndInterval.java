@@ -19,6 +19,11 @@ public final class KmerAndInterval extends SVKmerLong implements Map.Entry<SVKme
         this.intervalId = intervalId;
     }
 
+    public KmerAndInterval( final long valHigh, final long valLow, final int intervalId ) {
+        super(valHigh, valLow);
+        this.intervalId = intervalId;
+    }
+
     private KmerAndInterval( final Kryo kryo, final Input input ) {
         super(kryo, input);
         intervalId = input.readInt();
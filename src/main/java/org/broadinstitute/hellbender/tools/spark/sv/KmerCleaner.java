@@ -1,41 +1,49 @@
 package org.broadinstitute.hellbender.tools.spark.sv;
 
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchUniqueMultiMap;
+import org.broadinstitute.hellbender.tools.spark.utils.LongPairIntMultiMap;
 import scala.Tuple2;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Eliminates dups, and removes over-represented kmers.
  */
 public final class KmerCleaner implements Iterable<KmerAndInterval> {
 
-    private final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap;
+    private final LongPairIntMultiMap kmerMultiMap;
 
     public KmerCleaner( final Iterator<Tuple2<KmerAndInterval, Integer>> kmerCountItr,
                         final int kmersPerPartitionGuess,
                         final int minKmerCount,
                         final int maxKmerCount,
                         final int maxIntervalsPerKmer ) {
-        kmerMultiMap = new HopscotchUniqueMultiMap<>(kmersPerPartitionGuess);
+        kmerMultiMap = new LongPairIntMultiMap(kmersPerPartitionGuess);
 
         // remove kmers with extreme counts that won't help in building a local assembly
         while ( kmerCountItr.hasNext() ) {
             final Tuple2<KmerAndInterval, Integer> kmerCount = kmerCountItr.next();
             final int count = kmerCount._2;
-            if ( count >= minKmerCount && count <= maxKmerCount ) kmerMultiMap.add(kmerCount._1);
+            if ( count >= minKmerCount && count <= maxKmerCount ) {
+                final KmerAndInterval kmerAndInterval = kmerCount._1;
+                kmerMultiMap.add(kmerAndInterval.getValHigh(), kmerAndInterval.getValLow(), kmerAndInterval.getIntervalId());
+            }
         }
 
-        final HopscotchSet<SVKmer> uniqueKmers = new HopscotchSet<>(kmerMultiMap.size());
-        kmerMultiMap.stream().map(KmerAndInterval::getKey).forEach(uniqueKmers::add);
-        uniqueKmers.stream()
-                .filter(kmer -> SVUtils.iteratorSize(kmerMultiMap.findEach(kmer)) > maxIntervalsPerKmer)
-                .forEach(kmerMultiMap::removeEach);
+        // find the kmers that occur in too many intervals first, since we can't remove entries while we walk the map
+        final List<SVKmerLong> promiscuousKmers = new ArrayList<>();
+        kmerMultiMap.forEachKey(( valHigh, valLow, nIntervals ) -> {
+            if ( nIntervals > maxIntervalsPerKmer ) {
+                promiscuousKmers.add(new SVKmerLong(valHigh, valLow));
+            }
+        });
+        promiscuousKmers.forEach(kmer -> kmerMultiMap.removeKey(kmer.getValHigh(), kmer.getValLow()));
     }
 
     @Override
     public Iterator<KmerAndInterval> iterator() {
-        return kmerMultiMap.iterator();
+        return kmerMultiMap.iterator(( valHigh, valLow, intervalId ) ->
+                new KmerAndInterval(new SVKmerLong(valHigh, valLow), intervalId));
     }
 }
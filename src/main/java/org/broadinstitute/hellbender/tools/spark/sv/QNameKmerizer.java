@@ -1,7 +1,5 @@
 package org.broadinstitute.hellbender.tools.spark.sv;
 
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchUniqueMultiMap;
-import org.broadinstitute.hellbender.utils.read.GATKRead;
 import scala.Tuple2;
 
 import java.util.ArrayList;
@@ -10,37 +8,29 @@ import java.util.Set;
 import java.util.function.Function;
 
 /**
- * Class that acts as a mapper from a stream of reads to a stream of KmerAndIntervals.
- * The template names of reads to kmerize, along with a set of kmers to ignore are passed in (by broadcast).
+ * Class that acts as a mapper from a stream of <bases,intervalId> pairs (the reads having interesting template names,
+ * joined with the intervals to which those names belong) to a stream of KmerAndIntervals.
+ * A set of kmers to ignore is passed in (by broadcast).
  */
-public final class QNameKmerizer implements Function<GATKRead, Iterator<Tuple2<KmerAndInterval, Integer>>> {
-    private final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNameAndIntervalMultiMap;
+public final class QNameKmerizer implements Function<Tuple2<byte[], Integer>, Iterator<Tuple2<KmerAndInterval, Integer>>> {
     private final Set<SVKmer> kmersToIgnore;
-    private final int kSize;
-    private final int maxDUSTScore;
+    private final SVPackedKmerizer kmerizer;
     private final ArrayList<Tuple2<KmerAndInterval, Integer>> tupleList = new ArrayList<>();
 
-    public QNameKmerizer( final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNameAndIntervalMultiMap,
-                          final Set<SVKmer> kmersToIgnore, final int kSize, final int maxDUSTScore ) {
-        this.qNameAndIntervalMultiMap = qNameAndIntervalMultiMap;
+    public QNameKmerizer( final Set<SVKmer> kmersToIgnore, final int kSize, final int maxDUSTScore ) {
         this.kmersToIgnore = kmersToIgnore;
-        this.kSize = kSize;
-        this.maxDUSTScore = maxDUSTScore;
+        this.kmerizer = new SVPackedKmerizer(kSize, maxDUSTScore);
     }
 
     @Override
-    public Iterator<Tuple2<KmerAndInterval, Integer>> apply( final GATKRead read ) {
-        final String qName = read.getName();
-        final Iterator<QNameAndInterval> names = qNameAndIntervalMultiMap.findEach(qName);
+    public Iterator<Tuple2<KmerAndInterval, Integer>> apply( final Tuple2<byte[], Integer> basesAndInterval ) {
+        final int intervalId = basesAndInterval._2();
         tupleList.clear();
-        while ( names.hasNext() ) {
-            final int intervalId = names.next().getIntervalId();
-            SVDUSTFilteredKmerizer.stream(read.getBases(), kSize, maxDUSTScore, new SVKmerLong())
-                    .map(kmer -> kmer.canonical(kSize))
-                    .filter(kmer -> !kmersToIgnore.contains(kmer))
-                    .map(kmer -> new KmerAndInterval(kmer, intervalId))
-                    .forEach(kmerCountAndInterval -> tupleList.add(new Tuple2<>(kmerCountAndInterval, 1)));
-        }
+        kmerizer.kmerizeCanonical(basesAndInterval._1(), (valHigh, valLow) -> {
+            if ( !kmersToIgnore.contains(new SVKmerLong(valHigh, valLow)) ) {
+                tupleList.add(new Tuple2<>(new KmerAndInterval(valHigh, valLow, intervalId), 1));
+            }
+        });
         return tupleList.iterator();
     }
 }
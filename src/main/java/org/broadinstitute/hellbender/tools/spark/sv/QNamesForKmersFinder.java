@@ -1,39 +1,64 @@
 package org.broadinstitute.hellbender.tools.spark.sv;
 
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchUniqueMultiMap;
+import org.broadinstitute.hellbender.tools.spark.utils.BlockedBloomFilter;
+import org.broadinstitute.hellbender.tools.spark.utils.HopscotchMap;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import scala.Tuple2;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.function.Function;
+import java.util.*;
 
 /**
- * Class that acts as a mapper from a stream of reads to a stream of <kmer,qname> pairs for a set of interesting kmers.
- * A multimap of interesting kmers is given to the constructor (by broadcast).
+ * Class that maps a partition of reads into a stream of <kmer,list<qname>> pairs for a set of interesting kmers.
+ * Only a Bloom filter of the interesting kmers is given to the constructor (by broadcast), so a few of the kmers
+ * returned are false positives that must be weeded out by joining with the exact set of kmers.
+ * Kmers that have too many (defined by constructor param) associated qnames are discarded.
  */
-public final class QNamesForKmersFinder implements Function<GATKRead, Iterator<Tuple2<SVKmer, String>>> {
-    private final int kSize;
-    private final int maxDUSTScore;
-    private final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap;
+public final class QNamesForKmersFinder {
+    private final SVPackedKmerizer kmerizer;
+    private final BlockedBloomFilter kmerFilter;
+    private final int maxQNamesPerKmer;
+    private final int kmerMapSize;
 
-    public QNamesForKmersFinder( final int kSize, final int maxDUSTScore,
-                                 final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap ) {
-        this.kSize = kSize;
-        this.maxDUSTScore = maxDUSTScore;
-        this.kmerMultiMap = kmerMultiMap;
+    public QNamesForKmersFinder( final int kSize, final int maxDUSTScore, final BlockedBloomFilter kmerFilter,
+                                 final int maxQNamesPerKmer, final int kmerMapSize ) {
+        this.kmerizer = new SVPackedKmerizer(kSize, maxDUSTScore);
+        this.kmerFilter = kmerFilter;
+        this.maxQNamesPerKmer = maxQNamesPerKmer;
+        this.kmerMapSize = kmerMapSize;
     }
 
-    @Override
-    public Iterator<Tuple2<SVKmer, String>> apply( final GATKRead read ) {
-        final List<Tuple2<SVKmer, String>> results = new ArrayList<>();
-        SVDUSTFilteredKmerizer.stream(read.getBases(), kSize, maxDUSTScore, new SVKmerLong())
-                .map(kmer -> kmer.canonical(kSize))
-                .forEach(kmer -> {
-                    final Iterator<KmerAndInterval> itr = kmerMultiMap.findEach(kmer);
-                    if ( itr.hasNext() ) results.add(new Tuple2<>(kmer, read.getName()));
-                });
-        return results.iterator();
+    public Iterable<Tuple2<SVKmer, List<String>>> call( final Iterator<GATKRead> readItr ) {
+        final HopscotchMap<SVKmer, List<String>, Map.Entry<SVKmer, List<String>>> kmerQNamesMap =
+                new HopscotchMap<>(kmerMapSize);
+        while ( readItr.hasNext() ) {
+            final GATKRead read = readItr.next();
+            final String qName = read.getName();
+            kmerizer.kmerizeCanonical(read.getBases(), (valHigh, valLow) -> {
+                if ( !kmerFilter.mightContain(valHigh, valLow) ) return;
+                final SVKmer kmer = new SVKmerLong(valHigh, valLow);
+                Map.Entry<SVKmer, List<String>> entry = kmerQNamesMap.find(kmer);
+                if ( entry == null ) {
+                    // new entries are created with an empty list of qnames as their value,
+                    // but if the list becomes too long we destroy it (by setting the value to null).
+                    entry = new AbstractMap.SimpleEntry<>(kmer, new ArrayList<>());
+                    kmerQNamesMap.add(entry);
+                }
+                final List<String> qNames = entry.getValue();
+                // if we're still growing the list
+                if ( qNames != null ) {
+                    // if the list becomes too long, discard it
+                    if ( qNames.size() >= maxQNamesPerKmer ) entry.setValue(null);
+                    else qNames.add(qName);
+                }
+            });
+        }
+
+        final List<Tuple2<SVKmer, List<String>>> results = new ArrayList<>(kmerQNamesMap.size());
+        for ( final Map.Entry<SVKmer, List<String>> entry : kmerQNamesMap ) {
+            final List<String> qNames = entry.getValue();
+            // if the list hasn't been discarded for having grown too big
+            if ( qNames != null ) results.add(new Tuple2<>(entry.getKey(), qNames));
+        }
+        return results;
     }
 }
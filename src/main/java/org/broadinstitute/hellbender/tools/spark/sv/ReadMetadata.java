@@ -11,6 +11,7 @@ import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.spark.api.java.JavaRDD;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
@@ -22,6 +23,10 @@ import java.util.*;
 
 /**
  * A bag of data about reads:  contig name to id mapping, fragment length statistics by read group, mean length.
+ *
+ * The statistics may be estimated from a sample of the partitions rather than from every read.  In that case the
+ * read counts and coverage are scaled up from the sample, and a confidence interval is kept for each read group's
+ * median fragment size.
  */
 @DefaultSerializer(ReadMetadata.Serializer.class)
 public class ReadMetadata {
@@ -31,35 +36,74 @@ public class ReadMetadata {
     private final long maxReadsInPartition;
     private final int nPartitions;
     private final int coverage;
+    private final int nSampledPartitions;
     private final Map<String, ReadGroupFragmentStatistics> readGroupToFragmentStatistics;
+    private final Map<String, int[]> readGroupToMedianConfidenceInterval;
     private final static String NO_GROUP = "NoGroup";
 
+    // we always look at this many partitions (or all of them, if there are fewer), so small inputs get exact stats
+    public final static int MIN_SAMPLED_PARTITIONS = 20;
+    // z-score for a two-sided 95% confidence interval
+    private final static double CONFIDENCE_Z = 1.96;
+
     public ReadMetadata( final Set<Integer> crossContigIgnoreSet,
                          final SAMFileHeader header,
                          final JavaRDD<GATKRead> reads ) {
+        this(crossContigIgnoreSet, header, reads, 1.0);
+    }
+
+    /**
+     * Gathers the statistics from a fraction of the partitions of the reads.  The sampled partitions are spread
+     * evenly across the RDD, and the others are never read.  A fraction of 1 (or an input with no more than
+     * {@link #MIN_SAMPLED_PARTITIONS} partitions) gets exact statistics from every read.
+     */
+    public ReadMetadata( final Set<Integer> crossContigIgnoreSet,
+                         final SAMFileHeader header,
+                         final JavaRDD<GATKRead> reads,
+                         final double sampledPartitionFraction ) {
+        Utils.validateArg(sampledPartitionFraction > 0. && sampledPartitionFraction <= 1.,
+                "the fraction of partitions to sample must be in (0, 1]");
         this.crossContigIgnoreSet = crossContigIgnoreSet;
         contigNameToID = buildContigNameToIDMap(header);
 
         final int nReadGroups = header.getReadGroups().size();
-        final List<PartitionStatistics> perPartitionStatistics =
+        final JavaRDD<PartitionStatistics> statsRDD =
                 reads.mapPartitions(readItr ->
-                        Collections.singletonList(new PartitionStatistics(readItr, nReadGroups)).iterator())
-                     .collect();
-        nPartitions = perPartitionStatistics.size();
-        nReads = perPartitionStatistics.stream().mapToLong(PartitionStatistics::getNReads).sum();
+                        Collections.singletonList(new PartitionStatistics(readItr, nReadGroups)).iterator());
+        nPartitions = reads.getNumPartitions();
+        final int[] sampledPartitions = choosePartitions(nPartitions, sampledPartitionFraction);
+        nSampledPartitions = sampledPartitions.length;
+        final List<PartitionStatistics> perPartitionStatistics;
+        if ( nSampledPartitions == nPartitions ) {
+            perPartitionStatistics = statsRDD.collect();
+        } else {
+            perPartitionStatistics = new ArrayList<>(nSampledPartitions);
+            for ( final List<PartitionStatistics> statsList : statsRDD.collectPartitions(sampledPartitions) ) {
+                perPartitionStatistics.addAll(statsList);
+            }
+        }
+
+        // scale the sums up from the sampled partitions to the whole input
+        final double scale = nSampledPartitions == 0 ? 1. : (double)nPartitions / nSampledPartitions;
+        nReads = Math.round(scale * perPartitionStatistics.stream().mapToLong(PartitionStatistics::getNReads).sum());
         maxReadsInPartition = perPartitionStatistics.stream().mapToLong(PartitionStatistics::getNReads).max().orElse(0L);
-        final long nReadBases = perPartitionStatistics.stream().mapToLong(PartitionStatistics::getNBases).sum();
+        final long nReadBases =
+                Math.round(scale * perPartitionStatistics.stream().mapToLong(PartitionStatistics::getNBases).sum());
         final long nRefBases = header.getSequenceDictionary().getSequences()
                 .stream().mapToLong(SAMSequenceRecord::getSequenceLength).sum();
         coverage = (int) ((nReadBases + nRefBases - 1) / nRefBases);
         readGroupToFragmentStatistics = new HashMap<>(SVUtils.hashMapCapacity(header.getReadGroups().size()));
+        readGroupToMedianConfidenceInterval = new HashMap<>(SVUtils.hashMapCapacity(header.getReadGroups().size()));
         final Map<String, long[]> combinedMaps =
                 perPartitionStatistics.stream()
                         .map(PartitionStatistics::getReadGroupToFragmentSizeCountMap)
                         .reduce(new HashMap<>(SVUtils.hashMapCapacity(nReadGroups)), ReadMetadata::combineMaps);
         for ( final Map.Entry<String, long[]> entry : combinedMaps.entrySet() ) {
-            readGroupToFragmentStatistics.put(entry.getKey(),
-                    new ReadGroupFragmentStatistics(entry.getValue()));
+            final ReadGroupFragmentStatistics stats = new ReadGroupFragmentStatistics(entry.getValue());
+            readGroupToFragmentStatistics.put(entry.getKey(), stats);
+            final int median = stats.getMedianFragmentSize();
+            readGroupToMedianConfidenceInterval.put(entry.getKey(),
+                    isSampled() ? medianConfidenceInterval(entry.getValue()) : new int[]{median, median});
         }
     }
 
@@ -73,10 +117,15 @@ public class ReadMetadata {
         this.nReads = nReads;
         this.maxReadsInPartition = maxReadsInPartition;
         this.coverage = coverage;
+        nSampledPartitions = nPartitions;
         readGroupToFragmentStatistics = new HashMap<>(SVUtils.hashMapCapacity(header.getReadGroups().size() + 1));
+        readGroupToMedianConfidenceInterval = new HashMap<>(SVUtils.hashMapCapacity(header.getReadGroups().size() + 1));
+        final int[] exactInterval = {stats.getMedianFragmentSize(), stats.getMedianFragmentSize()};
         readGroupToFragmentStatistics.put(null, stats);
+        readGroupToMedianConfidenceInterval.put(null, exactInterval);
         for ( final SAMReadGroupRecord readGroupRecord : header.getReadGroups() ) {
             readGroupToFragmentStatistics.put(readGroupRecord.getReadGroupId(), stats);
+            readGroupToMedianConfidenceInterval.put(readGroupRecord.getReadGroupId(), exactInterval);
         }
     }
 
@@ -97,14 +146,19 @@ public class ReadMetadata {
         nReads = input.readLong();
         maxReadsInPartition = input.readLong();
         nPartitions = input.readInt();
+        nSampledPartitions = input.readInt();
         coverage = input.readInt();
 
         int readGroupMapSize = input.readInt();
         readGroupToFragmentStatistics = new HashMap<>(SVUtils.hashMapCapacity(readGroupMapSize));
+        readGroupToMedianConfidenceInterval = new HashMap<>(SVUtils.hashMapCapacity(readGroupMapSize));
         while ( readGroupMapSize-- > 0 ) {
             final String readGroupName = kryo.readObjectOrNull(input, String.class);
             final ReadGroupFragmentStatistics groupStats = kryo.readObject(input, ReadGroupFragmentStatistics.class);
+            final int lowerBound = input.readInt();
+            final int upperBound = input.readInt();
             readGroupToFragmentStatistics.put(readGroupName, groupStats);
+            readGroupToMedianConfidenceInterval.put(readGroupName, new int[]{lowerBound, upperBound});
         }
     }
 
@@ -122,12 +176,16 @@ public class ReadMetadata {
         output.writeLong(nReads);
         output.writeLong(maxReadsInPartition);
         output.writeInt(nPartitions);
+        output.writeInt(nSampledPartitions);
         output.writeInt(coverage);
 
         output.writeInt(readGroupToFragmentStatistics.size());
         for ( final Map.Entry<String, ReadGroupFragmentStatistics> entry : readGroupToFragmentStatistics.entrySet() ) {
             kryo.writeObjectOrNull(output, entry.getKey(), String.class);
             kryo.writeObject(output, entry.getValue());
+            final int[] interval = readGroupToMedianConfidenceInterval.get(entry.getKey());
+            output.writeInt(interval[0]);
+            output.writeInt(interval[1]);
         }
     }
 
@@ -151,6 +209,16 @@ public class ReadMetadata {
         return nPartitions;
     }
 
+    /** The number of partitions from which the statistics were gathered.  Equal to getNPartitions() if exact. */
+    public int getNSampledPartitions() {
+        return nSampledPartitions;
+    }
+
+    public boolean isSampled() {
+        return nSampledPartitions != nPartitions;
+    }
+
+    /** Note that when the statistics are sampled this is the max over the sampled partitions. */
     public long getMaxReadsInPartition() {
         return maxReadsInPartition;
     }
@@ -169,6 +237,16 @@ public class ReadMetadata {
         return stats;
     }
 
+    /**
+     * Returns the lower and upper bounds of a 95% confidence interval for the median fragment size of a read group.
+     * These are both equal to the median when the statistics are exact.
+     */
+    public int[] getMedianConfidenceInterval( final String readGroupName ) {
+        final int[] interval = readGroupToMedianConfidenceInterval.get(readGroupName);
+        if ( interval == null ) throw new GATKException("No such read group name: " + readGroupName);
+        return interval.clone();
+    }
+
     public int getMaxMedianFragmentSize() {
         return readGroupToFragmentStatistics.entrySet().stream()
                 .mapToInt(entry -> entry.getValue().getMedianFragmentSize())
@@ -193,6 +271,48 @@ public class ReadMetadata {
         return 47 * val;
     }
 
+    /**
+     * Chooses which partitions to sample:  the requested fraction of them, but no fewer than MIN_SAMPLED_PARTITIONS,
+     * evenly spaced so that the sample is spread across the genome.
+     */
+    @VisibleForTesting
+    static int[] choosePartitions( final int nPartitions, final double sampledPartitionFraction ) {
+        final int nSampled =
+                Math.min(nPartitions, Math.max(MIN_SAMPLED_PARTITIONS, (int)Math.ceil(sampledPartitionFraction * nPartitions)));
+        final int[] partitions = new int[nSampled];
+        for ( int idx = 0; idx != nSampled; ++idx ) {
+            partitions[idx] = (int)((long)idx * nPartitions / nSampled);
+        }
+        return partitions;
+    }
+
+    /**
+     * Given an array of fragment length counts, returns the bounds of a 95% confidence interval for the median
+     * fragment length, using the normal approximation to the distribution of the rank of the median.
+     * This treats the counted fragments as independent draws, which is optimistic for a sample of partitions
+     * (the fragments in each partition come from a few libraries and a small region of the genome), so the interval
+     * ought to be taken as a lower bound on the uncertainty.
+     */
+    @VisibleForTesting
+    static int[] medianConfidenceInterval( final long[] counts ) {
+        final long total = Arrays.stream(counts).sum();
+        final double halfWidth = CONFIDENCE_Z * Math.sqrt(total) / 2.;
+        final long lowerRank = Math.max(1L, (long)Math.floor(total / 2. - halfWidth));
+        final long upperRank = Math.min(total, (long)Math.ceil(total / 2. + halfWidth));
+        final int[] interval = new int[2];
+        long sum = 0L;
+        int fragmentSize = 0;
+        while ( fragmentSize != counts.length - 1 && sum + counts[fragmentSize] < lowerRank ) {
+            sum += counts[fragmentSize++];
+        }
+        interval[0] = fragmentSize;
+        while ( fragmentSize != counts.length - 1 && sum + counts[fragmentSize] < upperRank ) {
+            sum += counts[fragmentSize++];
+        }
+        interval[1] = fragmentSize;
+        return interval;
+    }
+
     private static Map<String, long[]> combineMaps( final Map<String, long[]> accumulator,
                                                     final Map<String, long[]> element ) {
         for ( final Map.Entry<String, long[]> entry : element.entrySet() ) {
@@ -226,6 +346,7 @@ public class ReadMetadata {
                       new BufferedWriter(new OutputStreamWriter(BucketUtils.createFile(filename, pipelineOptions))) ) {
             writer.write("#reads:\t" + readMetadata.getNReads() + "\n");
             writer.write("#partitions:\t" + readMetadata.getNPartitions() + "\n");
+            writer.write("#sampled partitions:\t" + readMetadata.getNSampledPartitions() + "\n");
             writer.write("max reads/partition:\t" + readMetadata.getMaxReadsInPartition() + "\n");
             writer.write("coverage:\t" + readMetadata.getCoverage() + "\n");
             for ( final Map.Entry<String, ReadMetadata.ReadGroupFragmentStatistics> entry :
@@ -234,7 +355,12 @@ public class ReadMetadata {
                 String name = entry.getKey();
                 if ( name == null ) name = NO_GROUP;
                 writer.write("group " + name + ":\t" + stats.getMedianFragmentSize() +
-                        "-" + stats.getMedianNegativeDeviation() + "+" + stats.getMedianPositiveDeviation() + "\n");
+                        "-" + stats.getMedianNegativeDeviation() + "+" + stats.getMedianPositiveDeviation());
+                if ( readMetadata.isSampled() ) {
+                    final int[] interval = readMetadata.getMedianConfidenceInterval(entry.getKey());
+                    writer.write("\tmedian 95% CI:\t" + interval[0] + "-" + interval[1]);
+                }
+                writer.write("\n");
             }
         } catch ( final IOException ioe ) {
             throw new GATKException("Can't write metadata file.", ioe);
@@ -11,6 +11,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineException;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.programgroups.StructuralVariationSparkProgramGroup;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
@@ -37,10 +38,10 @@ import java.util.stream.Stream;
 public final class RunSGAViaProcessBuilderOnSpark extends GATKSparkTool {
     private static final long serialVersionUID = 1L;
 
-    @Argument(doc       = "Absolute path to SGA installation.",
+    @Argument(doc       = "Absolute path to SGA installation (not needed for in-JVM assembly).",
               shortName = "sgaPath",
               fullName  = "fullPathToSGA",
-              optional  = false)
+              optional  = true)
     public String pathToSGA = null;
 
     @Argument(doc       = "An URI to the directory where all interleaved FASTQ files for putative breakpoints are located.",
@@ -75,6 +76,18 @@ public final class RunSGAViaProcessBuilderOnSpark extends GATKSparkTool {
               optional  = true)
     public boolean enableSTDIOCapture = false;
 
+    @Argument(doc       = "Assemble with the in-JVM de Bruijn assembler rather than SGA, avoiding an external process and " +
+                          "temporary files for each breakpoint.",
+              shortName = "inJVM",
+              fullName  = "inJVMAssembly",
+              optional  = true)
+    public boolean inJVMAssembly = false;
+
+    @Argument(doc       = "Kmer size for in-JVM assembly (must be odd).",
+              fullName  = "inJVMAssemblyKmerSize",
+              optional  = true)
+    public int inJVMAssemblyKmerSize = SVConstants.KMER_SIZE;
+
     // a few hard-coded parameters for use in various SGA modules based on some tuning experiences.
     // subject to future changes as we see more test cases
     @VisibleForTesting static final int MIN_OVERLAP_IN_FILTER_OVERLAP_ASSEMBLE = 55;
@@ -95,10 +108,22 @@ public final class RunSGAViaProcessBuilderOnSpark extends GATKSparkTool {
 
         logger.debug("SGAOnSpark_debug: Start job at " + dateFormat.format(new Date()));
 
+        if ( !inJVMAssembly && pathToSGA == null ) {
+            throw new CommandLineException.MissingArgument("fullPathToSGA", "the path to SGA is required unless inJVMAssembly is set");
+        }
+
         // first load RDD of pair that has path to FASTQ file path as its first and FASTQ file contents as its second
         final JavaPairRDD<String, String> fastqContentsForEachBreakpoint = loadFASTQFiles(ctx, pathToAllInterleavedFASTQFiles);
 
-        final JavaPairRDD<Long, SGAAssemblyResult> assembly = fastqContentsForEachBreakpoint.mapToPair(entry -> performAssembly(entry, subStringToStrip, pathToSGA, runCorrection, enableSTDIOCapture));
+        final JavaPairRDD<Long, SGAAssemblyResult> assembly;
+        if ( inJVMAssembly ) {
+            final DeBruijnLocalAssembler assembler =
+                    new DeBruijnLocalAssembler(inJVMAssemblyKmerSize, DeBruijnLocalAssembler.DEFAULT_MIN_KMER_COUNT,
+                                               DeBruijnLocalAssembler.DEFAULT_MIN_CONTIG_LENGTH);
+            assembly = fastqContentsForEachBreakpoint.mapToPair(entry -> performInJVMAssembly(entry, subStringToStrip, assembler));
+        } else {
+            assembly = fastqContentsForEachBreakpoint.mapToPair(entry -> performAssembly(entry, subStringToStrip, pathToSGA, runCorrection, enableSTDIOCapture));
+        }
 
         validateAndSaveResults(assembly, outDirPrefix);
 
@@ -176,6 +201,24 @@ public final class RunSGAViaProcessBuilderOnSpark extends GATKSparkTool {
         return new Tuple2<>(localFASTQFileForOneBreakpoint._1(), assembledContigsFileAndRuntimeInfo);
     }
 
+    /**
+     * Performs assembly on the FASTQ contents associated with the breakpoint identified by the long ID, in the JVM:
+     * nothing is written to local disk, and no external process is started.
+     * @param fastqOfABreakpoint    the (partial) URI to the FASTQ file and FASTQ file contents as String
+     * @param subStringInFilenameToScrub the part in a file name that must be stripped out to extract breakpoint ID, e.g. "assembly1234" -> 1234
+     * @param assembler             the assembler
+     * @return                      contigs associated with the breakpoint ID (with empty runtime information)
+     */
+    @VisibleForTesting
+    static Tuple2<Long, SGAAssemblyResult> performInJVMAssembly(final Tuple2<String, String> fastqOfABreakpoint,
+                                                                final String subStringInFilenameToScrub,
+                                                                final DeBruijnLocalAssembler assembler) {
+        final Long breakpointID = getBreakpointID(fastqOfABreakpoint._1(), subStringInFilenameToScrub);
+        final List<SVFastqUtils.FastqRead> reads = SVFastqUtils.parseFastqText(fastqOfABreakpoint._2(), fastqOfABreakpoint._1());
+        final ContigsCollection contigs = assembler.assemble(reads);
+        return new Tuple2<>(breakpointID, new SGAAssemblyResult(contigs.toListOfStrings(), new ArrayList<>()));
+    }
+
     /**
      * Utility function that unloads the FASTQ contents for a breakpoint to a local file for later consumption by SGA.
      * @param oneBreakPoint input for one breakpoint, where the first is the path to the FASTQ file and the second is the FASTQ file's content
@@ -193,11 +236,15 @@ public final class RunSGAViaProcessBuilderOnSpark extends GATKSparkTool {
         final File localFASTQFile =  new File(localTempWorkingDir, fastqFilename);
         FileUtils.writeStringToFile(localFASTQFile, oneBreakPoint._2());
 
-        final Long breakpointID = Long.parseLong(FilenameUtils.getBaseName(oneBreakPoint._1()).replace(subStringToStripout, ""));
+        final Long breakpointID = getBreakpointID(oneBreakPoint._1(), subStringToStripout);
 
         return new Tuple2<>(breakpointID, localFASTQFile);
     }
 
+    private static Long getBreakpointID(final String fastqPath, final String subStringToStripout) {
+        return Long.parseLong(FilenameUtils.getBaseName(fastqPath).replace(subStringToStripout, ""));
+    }
+
     /**
      * Linear pipeline for running the SGA local assembly process on a particular FASTQ file for its associated putative breakpoint.
      *
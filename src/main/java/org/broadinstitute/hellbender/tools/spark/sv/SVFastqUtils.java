@@ -68,46 +68,60 @@ public class SVFastqUtils {
     }
 
     public static List<FastqRead> readFastqFile( final String fileName, final PipelineOptions options ) {
-        final int INITIAL_CAPACITY = 10000; // absolute guess, just something not too crazy small
-        final List<FastqRead> reads = new ArrayList<>(INITIAL_CAPACITY);
         try ( final BufferedReader reader = new BufferedReader(new InputStreamReader(BucketUtils.openFile(fileName, options))) ) {
-            String seqIdLine;
-            int lineNo = 0;
-            while ( (seqIdLine = reader.readLine()) != null ) {
-                lineNo += 1;
-                if ( seqIdLine.length() < 1 || seqIdLine.charAt(0) != '@' ) {
-                    throw new GATKException("In FASTQ file "+fileName+" sequence identifier line does not start with @ on line "+lineNo);
-                }
-                final String callLine = reader.readLine();
-                lineNo += 1;
-                if ( callLine == null ) {
-                    throw new GATKException("In FASTQ file "+fileName+" file truncated: missing calls.");
-                }
-                final String sepLine = reader.readLine();
-                lineNo += 1;
-                if ( sepLine == null ) {
-                    throw new GATKException("In FASTQ file "+fileName+" file truncated: missing + line.");
-                }
-                if ( sepLine.length() < 1 || sepLine.charAt(0) != '+' ) {
-                    throw new GATKException("In FASTQ file " + fileName + " separator line does not start with + on line " + lineNo);
-                }
-                final String qualLine = reader.readLine();
-                lineNo += 1;
-                if ( qualLine == null ) {
-                    throw new GATKException("In FASTQ file "+fileName+" file truncated: missing quals.");
-                }
-                if ( callLine.length() != qualLine.length() ) {
-                    throw new GATKException("In FASTQ file "+fileName+" there are "+qualLine.length()+
-                            " quality scores on line "+lineNo+" but there are "+callLine.length()+" base calls.");
-                }
-                final byte[] quals = qualLine.getBytes();
-                SAMUtils.fastqToPhred(quals);
-                reads.add(new FastqRead(seqIdLine.substring(1), callLine.getBytes(), quals));
-            }
+            return readFastq(reader, fileName);
         }
         catch ( final IOException ioe ) {
             throw new GATKException("Can't read "+fileName, ioe);
         }
+    }
+
+    /** Parse the text of a FASTQ file (e.g., as loaded by JavaSparkContext.wholeTextFiles). */
+    public static List<FastqRead> parseFastqText( final String fastqText, final String fileName ) {
+        try ( final BufferedReader reader = new BufferedReader(new StringReader(fastqText)) ) {
+            return readFastq(reader, fileName);
+        }
+        catch ( final IOException ioe ) {
+            throw new GATKException("Can't parse "+fileName, ioe);
+        }
+    }
+
+    private static List<FastqRead> readFastq( final BufferedReader reader, final String fileName ) throws IOException {
+        final int INITIAL_CAPACITY = 10000; // absolute guess, just something not too crazy small
+        final List<FastqRead> reads = new ArrayList<>(INITIAL_CAPACITY);
+        String seqIdLine;
+        int lineNo = 0;
+        while ( (seqIdLine = reader.readLine()) != null ) {
+            lineNo += 1;
+            if ( seqIdLine.length() < 1 || seqIdLine.charAt(0) != '@' ) {
+                throw new GATKException("In FASTQ file "+fileName+" sequence identifier line does not start with @ on line "+lineNo);
+            }
+            final String callLine = reader.readLine();
+            lineNo += 1;
+            if ( callLine == null ) {
+                throw new GATKException("In FASTQ file "+fileName+" file truncated: missing calls.");
+            }
+            final String sepLine = reader.readLine();
+            lineNo += 1;
+            if ( sepLine == null ) {
+                throw new GATKException("In FASTQ file "+fileName+" file truncated: missing + line.");
+            }
+            if ( sepLine.length() < 1 || sepLine.charAt(0) != '+' ) {
+                throw new GATKException("In FASTQ file " + fileName + " separator line does not start with + on line " + lineNo);
+            }
+            final String qualLine = reader.readLine();
+            lineNo += 1;
+            if ( qualLine == null ) {
+                throw new GATKException("In FASTQ file "+fileName+" file truncated: missing quals.");
+            }
+            if ( callLine.length() != qualLine.length() ) {
+                throw new GATKException("In FASTQ file "+fileName+" there are "+qualLine.length()+
+                        " quality scores on line "+lineNo+" but there are "+callLine.length()+" base calls.");
+            }
+            final byte[] quals = qualLine.getBytes();
+            SAMUtils.fastqToPhred(quals);
+            reads.add(new FastqRead(seqIdLine.substring(1), callLine.getBytes(), quals));
+        }
         return reads;
     }
 
@@ -41,7 +41,16 @@ public class SVKmerLong extends SVKmer implements Comparable<SVKmerLong>  {
         this.valLow = thatLong.valLow;
     }
 
-    private SVKmerLong( final long valHigh, final long valLow ) { this.valHigh = valHigh; this.valLow = valLow; }
+    /**
+     *  Makes an SVKmerLong from its packed bits, as returned by getValHigh and getValLow.
+     */
+    public SVKmerLong( final long valHigh, final long valLow ) { this.valHigh = valHigh; this.valLow = valLow; }
+
+    /** The most significant bits of the packed kmer, for use as part of a primitive key. */
+    public final long getValHigh() { return valHigh; }
+
+    /** The least significant bits of the packed kmer, for use as part of a primitive key. */
+    public final long getValLow() { return valLow; }
 
     protected SVKmerLong( final Kryo kryo, final Input input ) {
         valHigh = input.readLong();
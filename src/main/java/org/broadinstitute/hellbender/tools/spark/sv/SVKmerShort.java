@@ -36,6 +36,9 @@ public class SVKmerShort extends SVKmer implements Comparable<SVKmerShort> {
 
     private SVKmerShort( final long valLow ) { this.valLow = valLow; }
 
+    /** The packed kmer, for use as a primitive key. */
+    public final long getValLow() { return valLow; }
+
     private SVKmerShort( final Kryo kryo, final Input input ) {
         valLow = input.readLong();
     }
@@ -0,0 +1,112 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+
+/**
+ * A reusable kmerizer that hands each kmer to a callback as its packed bits (the valHigh and valLow of an
+ * SVKmerLong), rather than allocating an SVKmer for each position of the sequence.
+ *
+ * It produces exactly the kmers of an {@link SVDUSTFilteredKmerizer} with the same kSize and maxDUSTScore, in the
+ * same order:  the DUST-like score is maintained in the same way, by adjusting the trimer counts for the trimer that
+ * leaves the kmer and the one that enters it as each base is added.  (Use a maxDUSTScore of Integer.MAX_VALUE to get
+ * the kmers of an {@link SVKmerizer}.)  The canonical form is tracked by rolling the reverse complement along with
+ * the kmer, rather than by reverse-complementing each kmer from scratch.
+ *
+ * One instance can kmerize any number of sequences, but it isn't thread-safe.
+ */
+public final class SVPackedKmerizer {
+    // the 2-bit value of each ASCII base, or -1 for anything other than A, C, G, or T
+    private static final byte[] BASE_VALUES = new byte[256];
+    static {
+        Arrays.fill(BASE_VALUES, (byte)-1);
+        BASE_VALUES['A'] = BASE_VALUES['a'] = 0;
+        BASE_VALUES['C'] = BASE_VALUES['c'] = 1;
+        BASE_VALUES['G'] = BASE_VALUES['g'] = 2;
+        BASE_VALUES['T'] = BASE_VALUES['t'] = 3;
+    }
+
+    private final int kSize;
+    private final int maxDUSTScore;
+    private final int[] trimerCounts = new int[64]; // there are 64 different trimers
+
+    @FunctionalInterface
+    public interface KmerConsumer {
+        void accept( final long valHigh, final long valLow );
+    }
+
+    public SVPackedKmerizer( final int kSize, final int maxDUSTScore ) {
+        // see SVDUSTFilteredKmerizer for why kmers must have at least 4 bases
+        Utils.validateArg(kSize >= 4 && kSize < 64, "K must be between 4 and 63.");
+        this.kSize = kSize;
+        this.maxDUSTScore = maxDUSTScore;
+    }
+
+    public int getKSize() { return kSize; }
+
+    /** Hand each kmer of the sequence to the consumer. */
+    public void kmerize( final byte[] seq, final KmerConsumer consumer ) {
+        kmerize(new SVKmerizer.ASCIICharSequence(seq), false, consumer);
+    }
+
+    public void kmerize( final CharSequence seq, final KmerConsumer consumer ) {
+        kmerize(seq, false, consumer);
+    }
+
+    /** Hand the canonical form of each kmer of the sequence to the consumer.  K must be odd. */
+    public void kmerizeCanonical( final byte[] seq, final KmerConsumer consumer ) {
+        kmerizeCanonical(new SVKmerizer.ASCIICharSequence(seq), consumer);
+    }
+
+    public void kmerizeCanonical( final CharSequence seq, final KmerConsumer consumer ) {
+        Utils.validateArg((kSize & 1) != 0, "K must be odd to canonicalize.");
+        kmerize(seq, true, consumer);
+    }
+
+    private void kmerize( final CharSequence seq, final boolean canonical, final KmerConsumer consumer ) {
+        // as in SVDUSTFilteredKmerizer, we start with a poly-A kmer, so trimer 0 (AAA) has kSize-2 counts
+        Arrays.fill(trimerCounts, 0);
+        final int polyACount = kSize - 2;
+        trimerCounts[0] = polyACount;
+        int curDUSTScore = polyACount*(polyACount - 1)/2;
+
+        final long mask = (1L << kSize) - 1L;
+        final int topShift = kSize - 2;
+        final int firstTrimerShift = kSize - 6;
+        long valHigh = 0L;
+        long valLow = 0L;
+        long rcHigh = 0L;
+        long rcLow = 0L;
+        int validBaseCount = 0;
+        final int len = seq.length();
+        for ( int idx = 0; idx != len; ++idx ) {
+            final char chr = seq.charAt(idx);
+            long baseValue = chr < 256 ? BASE_VALUES[chr] : -1;
+            if ( baseValue < 0 ) {
+                // as in the other kmerizers, an invalid base is rolled in as an A, and restarts the count of valid bases
+                baseValue = 0L;
+                validBaseCount = -1;
+            }
+
+            // adjust score for the contribution of the lead trimer, which is disappearing
+            curDUSTScore -= --trimerCounts[(int)(valHigh >>> firstTrimerShift)];
+            valHigh = ((valHigh << 2) | (valLow >> topShift)) & mask;
+            valLow = ((valLow << 2) | baseValue) & mask;
+            // adjust score for the new trailing trimer that just got rolled in
+            curDUSTScore += trimerCounts[(int)valLow & 0x3F]++;
+
+            if ( canonical ) {
+                // the reverse complement gets the complement of the new base at its start
+                rcLow = ((rcLow >> 2) | (rcHigh << topShift)) & mask;
+                rcHigh = ((rcHigh >> 2) | ((3L - baseValue) << topShift)) & mask;
+            }
+
+            if ( ++validBaseCount >= kSize && curDUSTScore <= maxDUSTScore ) {
+                // for odd K, the kmer is canonical if its middle base is A or C (see SVKmerLong.canonical)
+                if ( canonical && (valHigh & 1L) != 0 ) consumer.accept(rcHigh, rcLow);
+                else consumer.accept(valHigh, valLow);
+            }
+        }
+    }
+}
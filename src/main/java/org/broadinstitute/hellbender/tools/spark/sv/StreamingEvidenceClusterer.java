@@ -0,0 +1,348 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A filter for a (nearly) coordinate-sorted stream of breakpoint evidence that passes only the evidence that's part
+ * of a putative cluster, in coordinate order.  It does the work of a BreakpointClusterer followed by a WindowSorter,
+ * but it keeps the evidence in primitive arrays rather than in sorted sets of evidence objects, and it never buffers
+ * more than maxBufferedEvidence pieces of evidence.
+ *
+ * Incoming evidence waits in an unsorted buffer until the stream has moved on by windowSize, after which nothing
+ * earlier can arrive.  It's then sorted by start position, and swept:  a min-heap of the ends of the evidence swept so
+ * far tells how much evidence overlaps the start of each new piece, and when that reaches minEvidenceCount, all the
+ * overlapping evidence not yet reported is passed along.
+ *
+ * If the buffers would exceed maxBufferedEvidence (in some deep or messy region), we start to downsample:  every other
+ * buffered piece of evidence is discarded, the survivors count double, and just 1 in 2 pieces of incoming evidence is
+ * kept.  This can happen repeatedly.  The sampling rate is restored as the buffers drain.
+ */
+public final class StreamingEvidenceClusterer implements Function<BreakpointEvidence, Iterator<BreakpointEvidence>> {
+    private static final Logger logger = LogManager.getLogger(StreamingEvidenceClusterer.class);
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int minEvidenceCount;
+    private final int windowSize;
+    private final int maxBufferedEvidence;
+    private final Consumer<Stats> statsConsumer;
+
+    // evidence waiting to be sorted and swept (parallel arrays)
+    private int[] pendingStarts = new int[INITIAL_CAPACITY];
+    private int[] pendingEnds = new int[INITIAL_CAPACITY];
+    private int[] pendingWeights = new int[INITIAL_CAPACITY];
+    private BreakpointEvidence[] pendingEvidence = new BreakpointEvidence[INITIAL_CAPACITY];
+    private long[] sortKeys = new long[INITIAL_CAPACITY];
+    private int nPending;
+
+    // a min-heap of the ends (and weights) of swept evidence that may overlap evidence yet to come
+    private int[] activeEnds = new int[INITIAL_CAPACITY];
+    private int[] activeWeights = new int[INITIAL_CAPACITY];
+    private int nActive;
+    private long activeWeight;
+
+    // swept evidence, in start order, that hasn't been reported yet
+    private int[] candidateEnds = new int[INITIAL_CAPACITY];
+    private BreakpointEvidence[] candidateEvidence = new BreakpointEvidence[INITIAL_CAPACITY];
+    private int nCandidates;
+
+    private final List<BreakpointEvidence> reportableEvidence = new ArrayList<>();
+    private int currentContig = -1;
+    private int latestStart;
+    private int sweptTo;
+    private int samplingLevel; // we keep 1 in 2^samplingLevel pieces of incoming evidence
+    private final Stats stats = new Stats();
+
+    /**
+     * @param minEvidenceCount the amount of overlapping evidence that makes a cluster
+     * @param windowSize how far out of order the incoming evidence may be (and how far apart in the sorted order it may
+     *                   be reported)
+     * @param maxBufferedEvidence the maximum amount of evidence to hold while waiting to decide its fate
+     * @param statsConsumer if non-null, handed the (cumulative) statistics each time a contig is finished
+     */
+    public StreamingEvidenceClusterer( final int minEvidenceCount, final int windowSize, final int maxBufferedEvidence,
+                                       final Consumer<Stats> statsConsumer ) {
+        Utils.validateArg(minEvidenceCount > 0, "minEvidenceCount must be positive");
+        Utils.validateArg(windowSize >= 0, "windowSize must not be negative");
+        Utils.validateArg(maxBufferedEvidence >= 4, "maxBufferedEvidence must be at least 4");
+        this.minEvidenceCount = minEvidenceCount;
+        this.windowSize = windowSize;
+        this.maxBufferedEvidence = maxBufferedEvidence;
+        this.statsConsumer = statsConsumer;
+    }
+
+    @Override
+    public Iterator<BreakpointEvidence> apply( final BreakpointEvidence evidence ) {
+        final long startNanos = System.nanoTime();
+        reportableEvidence.clear();
+        if ( evidence.getContigIndex() != currentContig ) {
+            if ( currentContig != -1 ) {
+                finishContig();
+            }
+            currentContig = evidence.getContigIndex();
+            latestStart = sweptTo = evidence.getEventStartPosition();
+        }
+
+        // evidence that doesn't cover any positions (like the sentinel that flushes the last contig) can't overlap
+        // anything
+        if ( evidence.getEventWidth() <= 0 ) {
+            stats.nanos += System.nanoTime() - startNanos;
+            return reportableEvidence.iterator();
+        }
+
+        stats.nEvidence += 1;
+        if ( (stats.nEvidence & ((1L << samplingLevel) - 1L)) != 0 ) {
+            stats.nDownsampledEvidence += 1;
+        } else {
+            addPending(evidence, 1 << samplingLevel);
+        }
+        latestStart = Math.max(latestStart, evidence.getEventStartPosition());
+        if ( latestStart - windowSize >= sweptTo + windowSize ) {
+            sweep(latestStart - windowSize);
+        }
+
+        final int nBuffered = nPending + nActive + nCandidates;
+        stats.peakBufferedEvidence = Math.max(stats.peakBufferedEvidence, nBuffered);
+        if ( nBuffered > maxBufferedEvidence ) {
+            downsample();
+        } else if ( samplingLevel > 0 && nBuffered < maxBufferedEvidence / 8 ) {
+            samplingLevel -= 1;
+        }
+        stats.nanos += System.nanoTime() - startNanos;
+        return reportableEvidence.iterator();
+    }
+
+    public Stats getStats() { return stats; }
+
+    /** Counts of the evidence that passed through a clusterer, the time spent, and the largest amount buffered. */
+    public static final class Stats implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private long nEvidence;
+        private long nReportedEvidence;
+        private long nDownsampledEvidence;
+        private long nanos;
+        private int peakBufferedEvidence;
+        private int maxSamplingLevel;
+
+        public long getNEvidence() { return nEvidence; }
+        public long getNReportedEvidence() { return nReportedEvidence; }
+        public long getNDownsampledEvidence() { return nDownsampledEvidence; }
+        public long getNanos() { return nanos; }
+        public int getPeakBufferedEvidence() { return peakBufferedEvidence; }
+        public int getMaxSamplingLevel() { return maxSamplingLevel; }
+
+        public Stats copy() {
+            final Stats result = new Stats();
+            result.merge(this);
+            return result;
+        }
+
+        /** Fold in the statistics of another clusterer:  counts and times are summed, but the peak is a maximum. */
+        public void merge( final Stats that ) {
+            nEvidence += that.nEvidence;
+            nReportedEvidence += that.nReportedEvidence;
+            nDownsampledEvidence += that.nDownsampledEvidence;
+            nanos += that.nanos;
+            peakBufferedEvidence = Math.max(peakBufferedEvidence, that.peakBufferedEvidence);
+            maxSamplingLevel = Math.max(maxSamplingLevel, that.maxSamplingLevel);
+        }
+    }
+
+    private void finishContig() {
+        sweep(Integer.MAX_VALUE);
+        Arrays.fill(candidateEvidence, 0, nCandidates, null);
+        nCandidates = 0;
+        nActive = 0;
+        activeWeight = 0;
+        samplingLevel = 0;
+        if ( statsConsumer != null ) {
+            statsConsumer.accept(stats.copy());
+        }
+    }
+
+    private void addPending( final BreakpointEvidence evidence, final int weight ) {
+        if ( nPending == pendingStarts.length ) {
+            final int newCapacity = 2 * nPending;
+            pendingStarts = Arrays.copyOf(pendingStarts, newCapacity);
+            pendingEnds = Arrays.copyOf(pendingEnds, newCapacity);
+            pendingWeights = Arrays.copyOf(pendingWeights, newCapacity);
+            pendingEvidence = Arrays.copyOf(pendingEvidence, newCapacity);
+        }
+        pendingStarts[nPending] = evidence.getEventStartPosition();
+        pendingEnds[nPending] = evidence.getContigEnd();
+        pendingWeights[nPending] = weight;
+        pendingEvidence[nPending] = evidence;
+        nPending += 1;
+    }
+
+    /** Sort and sweep the pending evidence that starts before the limit. */
+    private void sweep( final int limit ) {
+        sweptTo = limit;
+        if ( sortKeys.length < nPending ) sortKeys = new long[pendingStarts.length];
+        int nToSweep = 0;
+        int nKept = 0;
+        for ( int idx = 0; idx != nPending; ++idx ) {
+            if ( pendingStarts[idx] < limit ) {
+                // the index breaks ties, so evidence with the same start stays in arrival order
+                sortKeys[nToSweep++] = ((long)pendingStarts[idx] << 32) | idx;
+            }
+        }
+        Arrays.sort(sortKeys, 0, nToSweep);
+        for ( int keyIdx = 0; keyIdx != nToSweep; ++keyIdx ) {
+            final int idx = (int)sortKeys[keyIdx];
+            sweepOne(pendingStarts[idx], pendingEnds[idx], pendingWeights[idx], pendingEvidence[idx]);
+            pendingEvidence[idx] = null;
+        }
+        // compact the evidence that's still pending
+        for ( int idx = 0; idx != nPending; ++idx ) {
+            if ( pendingEvidence[idx] != null ) {
+                pendingStarts[nKept] = pendingStarts[idx];
+                pendingEnds[nKept] = pendingEnds[idx];
+                pendingWeights[nKept] = pendingWeights[idx];
+                pendingEvidence[nKept] = pendingEvidence[idx];
+                nKept += 1;
+            }
+        }
+        Arrays.fill(pendingEvidence, nKept, nPending, null);
+        nPending = nKept;
+    }
+
+    private void sweepOne( final int start, final int end, final int weight, final BreakpointEvidence evidence ) {
+        // retire the swept evidence that ends before this starts
+        while ( nActive > 0 && activeEnds[0] <= start ) {
+            activeWeight -= activeWeights[0];
+            heapRemoveTop();
+        }
+        heapAdd(end, weight);
+        activeWeight += weight;
+        addCandidate(end, evidence);
+
+        if ( activeWeight >= minEvidenceCount ) {
+            for ( int idx = 0; idx != nCandidates; ++idx ) {
+                if ( candidateEnds[idx] > start ) {
+                    reportableEvidence.add(candidateEvidence[idx]);
+                    stats.nReportedEvidence += 1;
+                }
+            }
+            Arrays.fill(candidateEvidence, 0, nCandidates, null);
+            nCandidates = 0;
+        } else if ( nCandidates > 2 * nActive + 16 ) {
+            // the candidates that end before this starts can't be part of any future cluster
+            int nKept = 0;
+            for ( int idx = 0; idx != nCandidates; ++idx ) {
+                if ( candidateEnds[idx] > start ) {
+                    candidateEnds[nKept] = candidateEnds[idx];
+                    candidateEvidence[nKept] = candidateEvidence[idx];
+                    nKept += 1;
+                }
+            }
+            Arrays.fill(candidateEvidence, nKept, nCandidates, null);
+            nCandidates = nKept;
+        }
+    }
+
+    private void addCandidate( final int end, final BreakpointEvidence evidence ) {
+        if ( nCandidates == candidateEnds.length ) {
+            final int newCapacity = 2 * nCandidates;
+            candidateEnds = Arrays.copyOf(candidateEnds, newCapacity);
+            candidateEvidence = Arrays.copyOf(candidateEvidence, newCapacity);
+        }
+        candidateEnds[nCandidates] = end;
+        candidateEvidence[nCandidates] = evidence;
+        nCandidates += 1;
+    }
+
+    private void heapAdd( final int end, final int weight ) {
+        if ( nActive == activeEnds.length ) {
+            final int newCapacity = 2 * nActive;
+            activeEnds = Arrays.copyOf(activeEnds, newCapacity);
+            activeWeights = Arrays.copyOf(activeWeights, newCapacity);
+        }
+        int idx = nActive++;
+        while ( idx > 0 ) {
+            final int parent = (idx - 1) / 2;
+            if ( activeEnds[parent] <= end ) break;
+            activeEnds[idx] = activeEnds[parent];
+            activeWeights[idx] = activeWeights[parent];
+            idx = parent;
+        }
+        activeEnds[idx] = end;
+        activeWeights[idx] = weight;
+    }
+
+    private void heapRemoveTop() {
+        nActive -= 1;
+        if ( nActive > 0 ) {
+            siftDown(0, activeEnds[nActive], activeWeights[nActive]);
+        }
+    }
+
+    private void siftDown( int idx, final int end, final int weight ) {
+        while ( true ) {
+            int child = 2 * idx + 1;
+            if ( child >= nActive ) break;
+            if ( child + 1 < nActive && activeEnds[child + 1] < activeEnds[child] ) child += 1;
+            if ( activeEnds[child] >= end ) break;
+            activeEnds[idx] = activeEnds[child];
+            activeWeights[idx] = activeWeights[child];
+            idx = child;
+        }
+        activeEnds[idx] = end;
+        activeWeights[idx] = weight;
+    }
+
+    /** Halve the buffered evidence, and the sampling rate for incoming evidence. */
+    private void downsample() {
+        samplingLevel += 1;
+        stats.maxSamplingLevel = Math.max(stats.maxSamplingLevel, samplingLevel);
+        logger.warn("More than " + maxBufferedEvidence + " pieces of evidence buffered on contig " + currentContig +
+                    " near position " + latestStart + ".  Keeping just 1 in " + (1L << samplingLevel) + ".");
+
+        int nKept = 0;
+        for ( int idx = 0; idx < nPending; idx += 2 ) {
+            pendingStarts[nKept] = pendingStarts[idx];
+            pendingEnds[nKept] = pendingEnds[idx];
+            pendingWeights[nKept] = 2 * pendingWeights[idx];
+            pendingEvidence[nKept] = pendingEvidence[idx];
+            nKept += 1;
+        }
+        stats.nDownsampledEvidence += nPending - nKept;
+        Arrays.fill(pendingEvidence, nKept, nPending, null);
+        nPending = nKept;
+
+        // the candidates we drop just won't be reported
+        nKept = 0;
+        for ( int idx = 0; idx < nCandidates; idx += 2 ) {
+            candidateEnds[nKept] = candidateEnds[idx];
+            candidateEvidence[nKept] = candidateEvidence[idx];
+            nKept += 1;
+        }
+        stats.nDownsampledEvidence += nCandidates - nKept;
+        Arrays.fill(candidateEvidence, nKept, nCandidates, null);
+        nCandidates = nKept;
+
+        // the ends of the active evidence are kept in heap order, so dropping every other one and rebuilding the heap
+        // keeps a fair sample
+        nKept = 0;
+        activeWeight = 0;
+        for ( int idx = 0; idx < nActive; idx += 2 ) {
+            activeEnds[nKept] = activeEnds[idx];
+            activeWeights[nKept] = 2 * activeWeights[idx];
+            activeWeight += activeWeights[nKept];
+            nKept += 1;
+        }
+        nActive = nKept;
+        for ( int idx = nActive / 2 - 1; idx >= 0; --idx ) {
+            siftDown(idx, activeEnds[idx], activeWeights[idx]);
+        }
+    }
+}
@@ -4,9 +4,13 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.broadcast.Broadcast;
 import org.broadinstitute.hellbender.engine.ReadContextData;
 import org.broadinstitute.hellbender.engine.ReferenceDataSource;
 import org.broadinstitute.hellbender.engine.ReferenceMemorySource;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.collections.PackedIntervalIndex;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.recalibration.*;
 import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
@@ -16,6 +20,8 @@ import scala.Tuple2;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public final class BaseRecalibratorSparkFn {
 
@@ -35,6 +41,43 @@ public final class BaseRecalibratorSparkFn {
             return Arrays.asList(bqsr.getRecalibrationTables()).iterator();
         });
 
+        return combineTables(unmergedTables, header, recalArgs);
+    }
+
+    /**
+     * Computes the recalibration report for reads that have not been joined with their context data. The reference
+     * bases and known sites for each read are looked up from broadcasts inside the task, so no RDD of read-context
+     * pairs is created; this suits reads that are cached and will be used again, for instance to apply the report.
+     *
+     * @param reads the mapped reads that pass the BQSR read filters
+     * @param referenceBroadcast the reference, whose reference window function gives the bases needed for each read
+     * @param knownSitesBroadcast the known sites
+     */
+    public static RecalibrationReport apply( final JavaRDD<GATKRead> reads, final Broadcast<ReferenceMultiSource> referenceBroadcast,
+                                             final Broadcast<PackedIntervalIndex<GATKVariant>> knownSitesBroadcast,
+                                             final SAMFileHeader header, final SAMSequenceDictionary referenceDictionary,
+                                             final RecalibrationArgumentCollection recalArgs ) {
+        JavaRDD<RecalibrationTables> unmergedTables = reads.mapPartitions(readIterator -> {
+            final BaseRecalibrationEngine bqsr = new BaseRecalibrationEngine(recalArgs, header);
+            bqsr.logCovariatesUsed();
+            final ReferenceMultiSource reference = referenceBroadcast.getValue();
+            final PackedIntervalIndex<GATKVariant> knownSites = knownSitesBroadcast.getValue();
+
+            while ( readIterator.hasNext() ) {
+                final GATKRead read = readIterator.next();
+                final ReferenceBases refBases = reference.getReferenceBases(null, reference.getReferenceWindowFunction().apply(read));
+                // reads that don't form valid intervals (eg. CIGAR 61S90I) overlap no known sites
+                final List<GATKVariant> variants = SimpleInterval.isValid(read.getContig(), read.getStart(), read.getEnd()) ?
+                        knownSites.getOverlapping(read) : Collections.emptyList();
+                bqsr.processRead(read, new ReferenceMemorySource(refBases, referenceDictionary), variants);
+            }
+            return Arrays.asList(bqsr.getRecalibrationTables()).iterator();
+        });
+
+        return combineTables(unmergedTables, header, recalArgs);
+    }
+
+    private static RecalibrationReport combineTables( final JavaRDD<RecalibrationTables> unmergedTables, final SAMFileHeader header, final RecalibrationArgumentCollection recalArgs ) {
         final RecalibrationTables emptyRecalibrationTable = new RecalibrationTables(new StandardCovariateList(recalArgs, header));
         final RecalibrationTables combinedTables = unmergedTables.treeAggregate(emptyRecalibrationTable,
                 RecalibrationTables::inPlaceCombine,
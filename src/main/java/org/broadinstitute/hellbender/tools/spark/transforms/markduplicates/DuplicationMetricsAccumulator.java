@@ -0,0 +1,86 @@
+package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.util.AccumulatorV2;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.markduplicates.DuplicationMetrics;
+import scala.Tuple2;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Spark accumulator that gathers the per-library {@link DuplicationMetrics} counted by the tasks that mark duplicates,
+ * so that the metrics can be assembled on the driver without another pass over the marked reads.
+ *
+ * Partial metrics are keyed by the index of the partition that produced them and only the first result seen for each
+ * partition is kept. Spark may compute a partition more than once (for example, sorting the reads on write samples
+ * the RDD before shuffling it), and this prevents such recomputations from being counted twice.
+ */
+public final class DuplicationMetricsAccumulator extends AccumulatorV2<Tuple2<Integer, Map<String, DuplicationMetrics>>, Map<String, DuplicationMetrics>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<Integer, Map<String, DuplicationMetrics>> metricsByPartition = new HashMap<>();
+
+    /**
+     * Creates a new accumulator and registers it with the given context.
+     */
+    public static DuplicationMetricsAccumulator register(final JavaSparkContext ctx, final String name) {
+        Utils.nonNull(ctx);
+        final DuplicationMetricsAccumulator accumulator = new DuplicationMetricsAccumulator();
+        ctx.sc().register(accumulator, name);
+        return accumulator;
+    }
+
+    @Override
+    public boolean isZero() {
+        return metricsByPartition.isEmpty();
+    }
+
+    @Override
+    public DuplicationMetricsAccumulator copy() {
+        final DuplicationMetricsAccumulator copy = new DuplicationMetricsAccumulator();
+        copy.metricsByPartition.putAll(metricsByPartition);
+        return copy;
+    }
+
+    @Override
+    public void reset() {
+        metricsByPartition.clear();
+    }
+
+    /**
+     * Adds the (unfinalized) metrics by library counted over the whole of one partition.
+     */
+    @Override
+    public void add(final Tuple2<Integer, Map<String, DuplicationMetrics>> partitionMetrics) {
+        metricsByPartition.putIfAbsent(partitionMetrics._1(), partitionMetrics._2());
+    }
+
+    @Override
+    public void merge(final AccumulatorV2<Tuple2<Integer, Map<String, DuplicationMetrics>>, Map<String, DuplicationMetrics>> other) {
+        if ( !(other instanceof DuplicationMetricsAccumulator) ) {
+            throw new GATKException("Cannot merge a " + getClass().getSimpleName() + " with a " + other.getClass().getSimpleName());
+        }
+        ((DuplicationMetricsAccumulator)other).metricsByPartition.forEach(metricsByPartition::putIfAbsent);
+    }
+
+    /**
+     * @return the finalized metrics for each library, summed over all the partitions seen so far
+     */
+    @Override
+    public Map<String, DuplicationMetrics> value() {
+        final Map<String, DuplicationMetrics> metricsByLibrary = new LinkedHashMap<>();
+        for ( final Map<String, DuplicationMetrics> partitionMetrics : metricsByPartition.values() ) {
+            for ( final Map.Entry<String, DuplicationMetrics> entry : partitionMetrics.entrySet() ) {
+                final DuplicationMetrics metricsSum =
+                        metricsByLibrary.computeIfAbsent(entry.getKey(), library -> new DuplicationMetrics());
+                MarkDuplicatesSparkUtils.addMetrics(metricsSum, entry.getValue());
+            }
+        }
+        metricsByLibrary.replaceAll((library, metrics) -> MarkDuplicatesSparkUtils.finalizeMetrics(metrics));
+        return metricsByLibrary;
+    }
+}
@@ -2,7 +2,6 @@ package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.metrics.MetricsFile;
-import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -69,16 +68,21 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
         final OpticalDuplicateFinder finder = opticalDuplicatesArgumentCollection.READ_NAME_REGEX != null ?
                 new OpticalDuplicateFinder(opticalDuplicatesArgumentCollection.READ_NAME_REGEX, opticalDuplicatesArgumentCollection.OPTICAL_DUPLICATE_PIXEL_DISTANCE, null) : null;
 
-        final JavaRDD<GATKRead> finalReadsForMetrics = mark(reads, getHeaderForReads(), duplicatesScoringStrategy, finder, getRecommendedNumReducers());
+        final JavaRDD<GATKRead> markedReadsWithOD = mark(reads, getHeaderForReads(), duplicatesScoringStrategy, finder, getRecommendedNumReducers());
 
         if (metricsFile != null) {
-            final JavaPairRDD<String, DuplicationMetrics> metricsByLibrary = MarkDuplicatesSparkUtils.generateMetrics(getHeaderForReads(), finalReadsForMetrics);
+            // Count the metrics in the same tasks that mark the reads and clear the OD attribute, and pick them
+            // up from the accumulator once the reads are written, instead of running another job over the marked reads.
+            final DuplicationMetricsAccumulator metricsAccumulator = DuplicationMetricsAccumulator.register(ctx, "MarkDuplicatesSpark metrics");
+            final JavaRDD<GATKRead> finalReads = MarkDuplicatesSparkUtils.cleanupTemporaryAttributesAndAccumulateMetrics(getHeaderForReads(), markedReadsWithOD, metricsAccumulator);
+            writeReads(ctx, output, finalReads);
+
             final MetricsFile<DuplicationMetrics, Double> resultMetrics = getMetricsFile();
-            MarkDuplicatesSparkUtils.saveMetricsRDD(resultMetrics, getHeaderForReads(), metricsByLibrary, metricsFile, getAuthHolder());
+            MarkDuplicatesSparkUtils.saveMetrics(resultMetrics, getHeaderForReads(), metricsAccumulator.value(), metricsFile, getAuthHolder());
+        } else {
+            final JavaRDD<GATKRead> finalReads = cleanupTemporaryAttributes(markedReadsWithOD);
+            writeReads(ctx, output, finalReads);
         }
-
-        final JavaRDD<GATKRead> finalReads = cleanupTemporaryAttributes(finalReadsForMetrics);
-        writeReads(ctx, output, finalReads);
     }
 
 
@@ -267,57 +267,120 @@ public class MarkDuplicatesSparkUtils {
                     final String library = LibraryIdGenerator.getLibraryName(header, read.getReadGroup());
                     DuplicationMetrics metrics = new DuplicationMetrics();
                     metrics.LIBRARY = library;
-                    if (read.isUnmapped()) {
-                        ++metrics.UNMAPPED_READS;
-                    } else if (!read.isPaired() || read.mateIsUnmapped()) {
-                        ++metrics.UNPAIRED_READS_EXAMINED;
-                    } else {
-                        ++metrics.READ_PAIRS_EXAMINED;
-                    }
-
-                    if (read.isDuplicate()) {
-                        if (!read.isPaired() || read.mateIsUnmapped()) {
-                            ++metrics.UNPAIRED_READ_DUPLICATES;
-                        } else {
-                            ++metrics.READ_PAIR_DUPLICATES;
-                        }
-                    }
-                    if (read.hasAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME)) {
-                        metrics.READ_PAIR_OPTICAL_DUPLICATES +=
-                                read.getAttributeAsInteger(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME);
-                    }
+                    countRead(read, metrics);
                     return new Tuple2<>(library, metrics);
                 })
-                .foldByKey(new DuplicationMetrics(), (metricsSum, m) -> {
-                    if (metricsSum.LIBRARY == null) {
-                        metricsSum.LIBRARY = m.LIBRARY;
-                    }
-                    // This should never happen, as we grouped by key using library as the key.
-                    if (!metricsSum.LIBRARY.equals(m.LIBRARY)) {
-                        throw new GATKException("Two different libraries encountered while summing metrics: " + metricsSum.LIBRARY
-                                + " and " + m.LIBRARY);
+                .foldByKey(new DuplicationMetrics(), MarkDuplicatesSparkUtils::addMetrics)
+                .mapValues(MarkDuplicatesSparkUtils::finalizeMetrics);
+    }
+
+    /**
+     * Removes the temporary optical duplicate attribute from the marked reads (see
+     * {@link MarkDuplicatesSpark#cleanupTemporaryAttributes}) and, in the same pass, counts the duplication metrics
+     * of each partition into the given accumulator. The metrics are available from the accumulator once an action
+     * has consumed every partition of the returned RDD, so no separate job over the marked reads is needed.
+     */
+    public static JavaRDD<GATKRead> cleanupTemporaryAttributesAndAccumulateMetrics(final SAMFileHeader header,
+                                                                                   final JavaRDD<GATKRead> reads,
+                                                                                   final DuplicationMetricsAccumulator metricsAccumulator) {
+        return reads.mapPartitionsWithIndex((partitionIndex, readIterator) -> {
+            final Map<String, DuplicationMetrics> metricsByLibrary = new HashMap<>();
+            return new Iterator<GATKRead>() {
+                private boolean reported = false;
+
+                @Override
+                public boolean hasNext() {
+                    final boolean hasNext = readIterator.hasNext();
+                    if (!hasNext && !reported) {
+                        // only report metrics for partitions that were read in full
+                        metricsAccumulator.add(new Tuple2<>(partitionIndex, metricsByLibrary));
+                        reported = true;
                     }
-                    metricsSum.UNMAPPED_READS += m.UNMAPPED_READS;
-                    metricsSum.UNPAIRED_READS_EXAMINED += m.UNPAIRED_READS_EXAMINED;
-                    metricsSum.READ_PAIRS_EXAMINED += m.READ_PAIRS_EXAMINED;
-                    metricsSum.UNPAIRED_READ_DUPLICATES += m.UNPAIRED_READ_DUPLICATES;
-                    metricsSum.READ_PAIR_DUPLICATES += m.READ_PAIR_DUPLICATES;
-                    metricsSum.READ_PAIR_OPTICAL_DUPLICATES += m.READ_PAIR_OPTICAL_DUPLICATES;
-                    return metricsSum;
-                })
-                .mapValues(metrics -> {
-                    DuplicationMetrics copy = metrics.copy();
-                    // Divide these by 2 because they are counted for each read
-                    // when they should be counted by pair.
-                    copy.READ_PAIRS_EXAMINED = metrics.READ_PAIRS_EXAMINED / 2;
-                    copy.READ_PAIR_DUPLICATES = metrics.READ_PAIR_DUPLICATES / 2;
-
-                    copy.calculateDerivedMetrics();
-                    if (copy.ESTIMATED_LIBRARY_SIZE == null) {
-                        copy.ESTIMATED_LIBRARY_SIZE = 0L;
+                    return hasNext;
+                }
+
+                @Override
+                public GATKRead next() {
+                    final GATKRead read = readIterator.next();
+                    if (!read.isSecondaryAlignment() && !read.isSupplementaryAlignment()) {
+                        final String library = LibraryIdGenerator.getLibraryName(header, read.getReadGroup());
+                        final DuplicationMetrics metrics = metricsByLibrary.computeIfAbsent(library, lib -> {
+                            final DuplicationMetrics newMetrics = new DuplicationMetrics();
+                            newMetrics.LIBRARY = lib;
+                            return newMetrics;
+                        });
+                        countRead(read, metrics);
                     }
-                    return copy;
-                });
+                    read.clearAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME);
+                    return read;
+                }
+            };
+        }, true);
+    }
+
+    /**
+     * Adds the counts for a single marked read to the (unfinalized) metrics of its library.
+     * Pair counts are incremented once per read and are halved by {@link #finalizeMetrics}.
+     */
+    static void countRead(final GATKRead read, final DuplicationMetrics metrics) {
+        if (read.isUnmapped()) {
+            ++metrics.UNMAPPED_READS;
+        } else if (!read.isPaired() || read.mateIsUnmapped()) {
+            ++metrics.UNPAIRED_READS_EXAMINED;
+        } else {
+            ++metrics.READ_PAIRS_EXAMINED;
+        }
+
+        if (read.isDuplicate()) {
+            if (!read.isPaired() || read.mateIsUnmapped()) {
+                ++metrics.UNPAIRED_READ_DUPLICATES;
+            } else {
+                ++metrics.READ_PAIR_DUPLICATES;
+            }
+        }
+        if (read.hasAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME)) {
+            metrics.READ_PAIR_OPTICAL_DUPLICATES +=
+                    read.getAttributeAsInteger(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME);
+        }
+    }
+
+    /**
+     * Adds the (unfinalized) counts of one library's metrics into another's.
+     * @return metricsSum, after the addition
+     */
+    static DuplicationMetrics addMetrics(final DuplicationMetrics metricsSum, final DuplicationMetrics m) {
+        if (metricsSum.LIBRARY == null) {
+            metricsSum.LIBRARY = m.LIBRARY;
+        }
+        // This should never happen, as we grouped by key using library as the key.
+        if (!metricsSum.LIBRARY.equals(m.LIBRARY)) {
+            throw new GATKException("Two different libraries encountered while summing metrics: " + metricsSum.LIBRARY
+                    + " and " + m.LIBRARY);
+        }
+        metricsSum.UNMAPPED_READS += m.UNMAPPED_READS;
+        metricsSum.UNPAIRED_READS_EXAMINED += m.UNPAIRED_READS_EXAMINED;
+        metricsSum.READ_PAIRS_EXAMINED += m.READ_PAIRS_EXAMINED;
+        metricsSum.UNPAIRED_READ_DUPLICATES += m.UNPAIRED_READ_DUPLICATES;
+        metricsSum.READ_PAIR_DUPLICATES += m.READ_PAIR_DUPLICATES;
+        metricsSum.READ_PAIR_OPTICAL_DUPLICATES += m.READ_PAIR_OPTICAL_DUPLICATES;
+        return metricsSum;
+    }
+
+    /**
+     * Returns a copy of the summed metrics with the pair counts halved and the derived metrics calculated.
+     */
+    static DuplicationMetrics finalizeMetrics(final DuplicationMetrics metrics) {
+        DuplicationMetrics copy = metrics.copy();
+        // Divide these by 2 because they are counted for each read
+        // when they should be counted by pair.
+        copy.READ_PAIRS_EXAMINED = metrics.READ_PAIRS_EXAMINED / 2;
+        copy.READ_PAIR_DUPLICATES = metrics.READ_PAIR_DUPLICATES / 2;
+
+        copy.calculateDerivedMetrics();
+        if (copy.ESTIMATED_LIBRARY_SIZE == null) {
+            copy.ESTIMATED_LIBRARY_SIZE = 0L;
+        }
+        return copy;
     }
 
     /**
@@ -326,9 +389,17 @@ public class MarkDuplicatesSparkUtils {
      * @param result metrics object, potentially pre-initialized with headers,
      */
     public static void saveMetricsRDD(final MetricsFile<DuplicationMetrics, Double> result, final SAMFileHeader header, final JavaPairRDD<String, DuplicationMetrics> metricsRDD, final String metricsOutputPath, AuthHolder authHolder) {
+        saveMetrics(result, header, metricsRDD.collectAsMap(), metricsOutputPath, authHolder);
+    }
+
+    /**
+     * Saves metrics that have already been collected on the driver (for instance by a {@link DuplicationMetricsAccumulator}) to a file.
+     * Note: the SamFileHeader is needed in order to include libraries that didn't have any duplicates.
+     * @param result metrics object, potentially pre-initialized with headers,
+     */
+    public static void saveMetrics(final MetricsFile<DuplicationMetrics, Double> result, final SAMFileHeader header, final Map<String, DuplicationMetrics> nonEmptyMetricsByLibrary, final String metricsOutputPath, AuthHolder authHolder) {
         final LibraryIdGenerator libraryIdGenerator = new LibraryIdGenerator(header);
 
-        final Map<String, DuplicationMetrics> nonEmptyMetricsByLibrary = metricsRDD.collectAsMap();           //Unknown Library
         final Map<String, DuplicationMetrics> emptyMapByLibrary = libraryIdGenerator.getMetricsByLibraryMap();//with null
 
         final List<String> sortedListOfLibraryNames = new ArrayList<>(Sets.union(emptyMapByLibrary.keySet(), nonEmptyMetricsByLibrary.keySet()));
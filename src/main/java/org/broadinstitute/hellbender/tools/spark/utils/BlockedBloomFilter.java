@@ -0,0 +1,161 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A blocked Bloom filter:  a compact, approximate set that answers "definitely absent" or "possibly present".
+ * It's meant to be broadcast ahead of a much larger exact set or map so that most probes, which are for keys that
+ * aren't there, can be turned away cheaply.
+ *
+ * Unlike a classic Bloom filter, all the bits for a key lie in a single 512-bit block (a cache line), chosen by the
+ * high bits of the key's hash, so a probe touches just one cache line.  The price is a slightly higher false-positive
+ * rate for the same number of bits, because the blocks don't fill evenly.
+ *
+ * Keys are one or two longs (e.g., the packed bits of an SVKmerLong) or a CharSequence (e.g., a template name).
+ */
+@DefaultSerializer(BlockedBloomFilter.Serializer.class)
+public final class BlockedBloomFilter {
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int BITS_PER_BLOCK = 64 * LONGS_PER_BLOCK;
+    private static final int BLOCK_SHIFT = 3;
+    private static final int MAX_HASHES = 16;
+
+    private final int nHashes;
+    private final int nBlocks;
+    private final long[] bits;
+    private long nAdds;
+
+    /**
+     * Size the filter so that, holding the expected number of keys, it has about the given false-positive rate.
+     */
+    public BlockedBloomFilter( final long expectedNKeys, final double falsePositiveRate ) {
+        if ( expectedNKeys < 0 ) throw new IllegalArgumentException("expected number of keys must be non-negative");
+        if ( !(falsePositiveRate > 0. && falsePositiveRate < 1.) ) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1");
+        }
+        final double ln2 = Math.log(2.);
+        final double bitsPerKey = -Math.log(falsePositiveRate) / (ln2 * ln2);
+        final long nBits = (long)Math.ceil(Math.max(1L, expectedNKeys) * bitsPerKey);
+        final long nBlocksNeeded = (nBits + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK;
+        if ( nBlocksNeeded > (Integer.MAX_VALUE - 8) / LONGS_PER_BLOCK ) {
+            throw new IllegalArgumentException("filter is too big");
+        }
+        this.nHashes = (int)Math.max(1L, Math.min(MAX_HASHES, Math.round(bitsPerKey * ln2)));
+        this.nBlocks = (int)nBlocksNeeded;
+        this.bits = new long[nBlocks * LONGS_PER_BLOCK];
+    }
+
+    private BlockedBloomFilter( final Input input ) {
+        this.nHashes = input.readInt();
+        this.nBlocks = input.readInt();
+        this.nAdds = input.readLong();
+        this.bits = input.readLongs(nBlocks * LONGS_PER_BLOCK);
+    }
+
+    private void serialize( final Output output ) {
+        output.writeInt(nHashes);
+        output.writeInt(nBlocks);
+        output.writeLong(nAdds);
+        output.writeLongs(bits);
+    }
+
+    public int getNHashes() { return nHashes; }
+
+    /** the number of keys added (counting repeats) */
+    public long getNAdds() { return nAdds; }
+
+    /** the size of the filter's bit array */
+    public long getSizeInBytes() { return 8L * bits.length; }
+
+    public void add( final long keyHigh, final long keyLow ) { addHash(hash(keyHigh, keyLow)); }
+    public void add( final long key ) { addHash(hash(0L, key)); }
+    public void add( final CharSequence key ) { addHash(hash(key)); }
+
+    /** false if the key was certainly never added */
+    public boolean mightContain( final long keyHigh, final long keyLow ) { return mightContainHash(hash(keyHigh, keyLow)); }
+    public boolean mightContain( final long key ) { return mightContainHash(hash(0L, key)); }
+    public boolean mightContain( final CharSequence key ) { return mightContainHash(hash(key)); }
+
+    /**
+     * The chance that a key that was never added will be reported as possibly present, estimated from the fraction
+     * of bits that are set.  (It's a little optimistic, since it ignores the unevenness of the blocks.)
+     */
+    public double getFalsePositiveRate() {
+        long nSet = 0;
+        for ( final long word : bits ) {
+            nSet += Long.bitCount(word);
+        }
+        return Math.pow((double)nSet / (64L * bits.length), nHashes);
+    }
+
+    private void addHash( final long hash ) {
+        final int blockStart = block(hash);
+        int probe = (int)hash;
+        for ( int idx = 0; idx != nHashes; ++idx ) {
+            final int bit = probe & (BITS_PER_BLOCK - 1);
+            bits[blockStart + (bit >>> 6)] |= 1L << bit;
+            probe = nextProbe(probe);
+        }
+        nAdds += 1;
+    }
+
+    private boolean mightContainHash( final long hash ) {
+        final int blockStart = block(hash);
+        int probe = (int)hash;
+        for ( int idx = 0; idx != nHashes; ++idx ) {
+            final int bit = probe & (BITS_PER_BLOCK - 1);
+            if ( (bits[blockStart + (bit >>> 6)] & (1L << bit)) == 0 ) return false;
+            probe = nextProbe(probe);
+        }
+        return true;
+    }
+
+    // the high 32 bits of the hash pick the block, the low 32 bits seed the bit positions within it
+    private int block( final long hash ) {
+        return (int)(((hash >>> 32) * nBlocks) >>> 32) << BLOCK_SHIFT;
+    }
+
+    // a cheap 32-bit mixer to generate successive bit positions
+    private static int nextProbe( final int probe ) {
+        int result = probe * 0x9E3779B9;
+        result ^= result >>> 16;
+        return result;
+    }
+
+    private static long hash( final long keyHigh, final long keyLow ) {
+        return fmix64(keyLow ^ (keyHigh * 0x9E3779B97F4A7C15L));
+    }
+
+    private static long hash( final CharSequence key ) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a, finished with murmur's mixer
+        final int len = key.length();
+        for ( int idx = 0; idx != len; ++idx ) {
+            hash = (hash ^ key.charAt(idx)) * 0x100000001b3L;
+        }
+        return fmix64(hash);
+    }
+
+    private static long fmix64( long hash ) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<BlockedBloomFilter> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final BlockedBloomFilter filter ) {
+            filter.serialize(output);
+        }
+
+        @Override
+        public BlockedBloomFilter read( final Kryo kryo, final Input input, final Class<BlockedBloomFilter> klass ) {
+            return new BlockedBloomFilter(input);
+        }
+    }
+}
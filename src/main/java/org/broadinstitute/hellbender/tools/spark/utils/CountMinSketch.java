@@ -0,0 +1,121 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A count-min sketch of the number of times each key (one or two longs, e.g., the packed bits of an SVKmerLong) has
+ * been added.  Each of several rows of counters is indexed by a different hash of the key, and the estimated count of
+ * a key is the smallest of its counters.  The estimate is never too small, and counters are updated conservatively
+ * (a counter is raised only as far as the new estimate), which keeps the estimates of other keys from growing more
+ * than they must.
+ *
+ * Counters are single bytes that saturate at {@link #MAX_COUNT}, since we only ask whether a key has been seen more
+ * than a few times.  Sketches of the same shape can be merged, e.g., to combine the sketches made for each partition
+ * of an RDD:  the sum of sketches that never undercount never undercounts, conservative updates notwithstanding.
+ * A sketch can also be assembled from counts made elsewhere for the counters given by {@link #getCounterIndex},
+ * so that a partition with few keys needn't allocate a whole sketch.
+ */
+@DefaultSerializer(CountMinSketch.Serializer.class)
+public final class CountMinSketch {
+    public static final int MAX_COUNT = 255;
+
+    private final int depth;
+    private final int width;
+    private final byte[] counters;
+
+    public CountMinSketch( final int depth, final int width ) {
+        if ( depth < 1 ) throw new IllegalArgumentException("depth must be positive");
+        if ( width < 1 ) throw new IllegalArgumentException("width must be positive");
+        if ( (long)depth * width > Integer.MAX_VALUE - 8 ) throw new IllegalArgumentException("sketch is too big");
+        this.depth = depth;
+        this.width = width;
+        this.counters = new byte[depth * width];
+    }
+
+    private CountMinSketch( final Input input ) {
+        this.depth = input.readInt();
+        this.width = input.readInt();
+        this.counters = input.readBytes(depth * width);
+    }
+
+    private void serialize( final Output output ) {
+        output.writeInt(depth);
+        output.writeInt(width);
+        output.writeBytes(counters);
+    }
+
+    public int getDepth() { return depth; }
+    public int getWidth() { return width; }
+
+    /** count the key some number of times */
+    public void add( final long keyHigh, final long keyLow, final int count ) {
+        if ( count < 0 ) throw new IllegalArgumentException("count must be non-negative");
+        final int newEstimate = (int)Math.min(MAX_COUNT, (long)estimate(keyHigh, keyLow) + count);
+        for ( int row = 0; row != depth; ++row ) {
+            final int idx = index(row, keyHigh, keyLow);
+            if ( (counters[idx] & 0xff) < newEstimate ) counters[idx] = (byte)newEstimate;
+        }
+    }
+
+    /** an upper bound on the number of times the key has been added (or MAX_COUNT, if it's been added that often) */
+    public int estimate( final long keyHigh, final long keyLow ) {
+        int result = MAX_COUNT;
+        for ( int row = 0; row != depth; ++row ) {
+            result = Math.min(result, counters[index(row, keyHigh, keyLow)] & 0xff);
+        }
+        return result;
+    }
+
+    /** add counts to a run of consecutive counters, the first of which has the given index */
+    public void addCounts( final int firstIndex, final byte[] counts ) {
+        if ( firstIndex < 0 || firstIndex > counters.length - counts.length ) {
+            throw new IllegalArgumentException("counts don't fit in the sketch");
+        }
+        for ( int idx = 0; idx != counts.length; ++idx ) {
+            final int counterIdx = firstIndex + idx;
+            counters[counterIdx] = (byte)Math.min(MAX_COUNT, (counters[counterIdx] & 0xff) + (counts[idx] & 0xff));
+        }
+    }
+
+    /** add the counts of another sketch of the same shape into this one, and return this one */
+    public CountMinSketch merge( final CountMinSketch that ) {
+        if ( this.depth != that.depth || this.width != that.width ) {
+            throw new IllegalArgumentException("can't merge sketches with different shapes");
+        }
+        for ( int idx = 0; idx != counters.length; ++idx ) {
+            counters[idx] = (byte)Math.min(MAX_COUNT, (counters[idx] & 0xff) + (that.counters[idx] & 0xff));
+        }
+        return this;
+    }
+
+    private int index( final int row, final long keyHigh, final long keyLow ) {
+        return getCounterIndex(width, row, keyHigh, keyLow);
+    }
+
+    /** the index, among all the counters of a sketch of the given width, of the key's counter in the given row */
+    public static int getCounterIndex( final int width, final int row, final long keyHigh, final long keyLow ) {
+        // murmur3's 64-bit finalizer applied to the key, salted by the row number
+        long hash = keyLow ^ (keyHigh * 0x9E3779B97F4A7C15L) ^ ((row + 1) * 0xC2B2AE3D27D4EB4FL);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return row * width + (int)(((hash >>> 32) * width) >>> 32);
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<CountMinSketch> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final CountMinSketch sketch ) {
+            sketch.serialize(output);
+        }
+
+        @Override
+        public CountMinSketch read( final Kryo kryo, final Input input, final Class<CountMinSketch> klass ) {
+            return new CountMinSketch(input);
+        }
+    }
+}
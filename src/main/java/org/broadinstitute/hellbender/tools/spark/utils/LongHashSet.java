@@ -0,0 +1,108 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of longs (e.g., the packed bits of SVKmerShorts) that stores its elements in a primitive array.
+ * It uses about 11 bytes per element, where a HopscotchSet of SVKmerShorts uses about 30.
+ */
+@DefaultSerializer(LongHashSet.Serializer.class)
+public final class LongHashSet extends LongKeyedHashTable {
+    private static final long serialVersionUID = 1L;
+
+    public LongHashSet() { this(12000); }
+    public LongHashSet( final int expectedSize ) { super(1, false, expectedSize); }
+    private LongHashSet( final Input input ) { super(1, false, input); }
+
+    /** returns false if the set already contained the element */
+    public boolean add( final long element ) {
+        if ( findSlot(0L, element) != -1 ) return false;
+        insert(0L, element, 0);
+        return true;
+    }
+
+    public boolean contains( final long element ) { return findSlot(0L, element) != -1; }
+
+    /** returns false if the set didn't contain the element */
+    public boolean remove( final long element ) {
+        final int slot = findSlot(0L, element);
+        if ( slot == -1 ) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int slot = nextOccupiedSlot(-1);
+
+            @Override
+            public boolean hasNext() { return slot < capacity(); }
+
+            @Override
+            public long nextLong() {
+                if ( !hasNext() ) throw new NoSuchElementException("Iterator exhausted.");
+                final long result = keyLow(slot);
+                slot = nextOccupiedSlot(slot);
+                return result;
+            }
+        };
+    }
+
+    public void forEach( final LongConsumer action ) {
+        for ( int slot = 0; slot != capacity(); ++slot ) {
+            if ( isOccupied(slot) ) action.accept(keyLow(slot));
+        }
+    }
+
+    /** the elements, in no particular order */
+    public long[] toArray() {
+        final long[] result = new long[size()];
+        int idx = 0;
+        for ( int slot = 0; slot != capacity(); ++slot ) {
+            if ( isOccupied(slot) ) result[idx++] = keyLow(slot);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals( final Object obj ) {
+        if ( this == obj ) return true;
+        if ( !(obj instanceof LongHashSet) ) return false;
+        final LongHashSet that = (LongHashSet)obj;
+        if ( this.size() != that.size() ) return false;
+        final PrimitiveIterator.OfLong itr = that.iterator();
+        while ( itr.hasNext() ) {
+            if ( !contains(itr.nextLong()) ) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        final PrimitiveIterator.OfLong itr = iterator();
+        while ( itr.hasNext() ) {
+            result += Long.hashCode(itr.nextLong());
+        }
+        return result;
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<LongHashSet> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final LongHashSet longHashSet ) {
+            longHashSet.serialize(output);
+        }
+
+        @Override
+        public LongHashSet read( final Kryo kryo, final Input input, final Class<LongHashSet> klass ) {
+            return new LongHashSet(input);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Base class for hash tables whose keys are one or two longs (e.g., the packed bits of an SVKmerShort or an SVKmerLong),
+ * and whose values, if there are any, are ints.
+ * The keys and values are stored in primitive arrays, so an entry costs just its 8 or 16 bytes of key and its 4 bytes
+ * of value (divided by the load factor), rather than an object header and a reference for each entry as in the
+ * Hopscotch collections, and probing never dereferences anything or calls hashCode or equals.
+ *
+ * Collisions are resolved by linear probing, and entries are deleted by shifting later entries in the probe sequence
+ * back into the hole, so every entry lies in the run of occupied slots that begins at its home slot.  Tables of any
+ * capacity are allowed:  the home slot is found by scaling a well-mixed 64-bit hash into the table rather than taking
+ * a remainder, so we can grow by less than a factor of 2 and keep the load factor (and memory use) fairly high.
+ *
+ * Tables are Serializable, so they can be held by the read filters and functions that Spark serializes, as well as
+ * having Kryo serializers that write them compactly.
+ */
+public abstract class LongKeyedHashTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final double MAX_LOAD_FACTOR = .75;
+    private static final double GROWTH_FACTOR = 1.5;
+    private static final int MIN_CAPACITY = 16;
+    // the largest array we can ask for.  two-word keys take 2 longs per slot, so those tables hold half as many slots.
+    @VisibleForTesting static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int keyWords;
+    private final boolean hasValues;
+    private int capacity;
+    private int maxSize;
+    private int size;
+    // keyWords longs per slot: the high word (if there is one) and then the low word
+    private long[] keys;
+    // one value per slot, or null if the table has no values
+    private int[] values;
+    // a bit for each slot that is set if the slot is occupied
+    private long[] occupied;
+
+    protected LongKeyedHashTable( final int keyWords, final boolean hasValues, final int expectedSize ) {
+        if ( keyWords != 1 && keyWords != 2 ) throw new IllegalArgumentException("keys must be 1 or 2 longs");
+        if ( expectedSize < 0 ) throw new IllegalArgumentException("expected size must be non-negative");
+        this.keyWords = keyWords;
+        this.hasValues = hasValues;
+        allocate(computeCapacity(expectedSize, keyWords));
+    }
+
+    protected LongKeyedHashTable( final int keyWords, final boolean hasValues, final Input input ) {
+        this(keyWords, hasValues, input, input.readInt());
+    }
+
+    private LongKeyedHashTable( final int keyWords, final boolean hasValues, final Input input, int nEntries ) {
+        this(keyWords, hasValues, nEntries);
+        while ( nEntries-- > 0 ) {
+            final long keyHigh = keyWords == 2 ? input.readLong() : 0L;
+            final long keyLow = input.readLong();
+            final int value = hasValues ? input.readInt() : 0;
+            fillSlot(emptySlot(keyHigh, keyLow), keyHigh, keyLow, value);
+        }
+    }
+
+    /** writes the entries compactly:  the reader rebuilds the table, so no space is spent on empty slots */
+    protected void serialize( final Output output ) {
+        output.writeInt(size);
+        for ( int slot = 0; slot != capacity; ++slot ) {
+            if ( isOccupied(slot) ) {
+                if ( keyWords == 2 ) output.writeLong(keys[2 * slot]);
+                output.writeLong(keys[keyWords * slot + keyWords - 1]);
+                if ( hasValues ) output.writeInt(values[slot]);
+            }
+        }
+    }
+
+    public final int size() { return size; }
+
+    public final boolean isEmpty() { return size == 0; }
+
+    /** number of slots in the table.  it will be resized when more than 3/4 of them are occupied. */
+    public final int capacity() { return capacity; }
+
+    public final void clear() {
+        Arrays.fill(occupied, 0L);
+        size = 0;
+    }
+
+    /** approximate number of bytes used by the table's arrays */
+    public final long memoryUsage() {
+        return 8L * keys.length + 8L * occupied.length + (hasValues ? 4L * values.length : 0L);
+    }
+
+    // -------- methods for subclasses, which work on slot indexes ----------
+
+    /** index of the first slot in the probe sequence for a key */
+    protected final int homeSlot( final long keyHigh, final long keyLow ) {
+        return (int)(((hash(keyHigh, keyLow) >>> 32) * capacity) >>> 32);
+    }
+
+    protected final int nextSlot( final int slot ) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    protected final boolean isOccupied( final int slot ) {
+        return (occupied[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    protected final boolean keyMatches( final int slot, final long keyHigh, final long keyLow ) {
+        return keyWords == 1 ? keys[slot] == keyLow : keys[2 * slot + 1] == keyLow && keys[2 * slot] == keyHigh;
+    }
+
+    protected final long keyHigh( final int slot ) { return keyWords == 1 ? 0L : keys[2 * slot]; }
+
+    protected final long keyLow( final int slot ) { return keys[keyWords * slot + keyWords - 1]; }
+
+    protected final int value( final int slot ) { return values[slot]; }
+
+    protected final void setValue( final int slot, final int value ) { values[slot] = value; }
+
+    /** index of the first slot holding the key, or -1 if there isn't one */
+    protected final int findSlot( final long keyHigh, final long keyLow ) {
+        int slot = homeSlot(keyHigh, keyLow);
+        while ( isOccupied(slot) ) {
+            if ( keyMatches(slot, keyHigh, keyLow) ) return slot;
+            slot = nextSlot(slot);
+        }
+        return -1;
+    }
+
+    /**
+     * Add an entry without checking whether there's already one like it (the subclass must do that), and return the
+     * slot it went into.  This may resize the table, so slot indexes found before calling it are no longer valid.
+     */
+    protected final int insert( final long keyHigh, final long keyLow, final int value ) {
+        if ( size >= maxSize ) resize();
+        final int slot = emptySlot(keyHigh, keyLow);
+        fillSlot(slot, keyHigh, keyLow, value);
+        return slot;
+    }
+
+    /**
+     * Remove the entry in a slot.  Entries later in its run may be moved back to fill the hole, so a caller that is
+     * walking the run should look at the same slot again.
+     */
+    protected final void removeSlot( final int slot ) {
+        int hole = slot;
+        int next = nextSlot(hole);
+        while ( isOccupied(next) ) {
+            // the entry can fill the hole if the hole lies between its home slot and where it is now
+            final int home = homeSlot(keyHigh(next), keyLow(next));
+            if ( distance(home, next) >= distance(hole, next) ) {
+                copySlot(next, hole);
+                hole = next;
+            }
+            next = nextSlot(next);
+        }
+        occupied[hole >>> 6] &= ~(1L << hole);
+        size -= 1;
+    }
+
+    /** index of the first occupied slot after the given one, or the capacity if there isn't one */
+    protected final int nextOccupiedSlot( int slot ) {
+        do {
+            slot += 1;
+        } while ( slot < capacity && !isOccupied(slot) );
+        return slot;
+    }
+
+    // -------- internal methods ----------
+
+    /**
+     * Murmur3's 64-bit finalizer, applied to the key.  Kmers have very regular bits, so they need good mixing.
+     */
+    private static long hash( final long keyHigh, final long keyLow ) {
+        long result = keyLow ^ (keyHigh * 0x9E3779B97F4A7C15L);
+        result ^= result >>> 33;
+        result *= 0xff51afd7ed558ccdL;
+        result ^= result >>> 33;
+        result *= 0xc4ceb9fe1a85ec53L;
+        result ^= result >>> 33;
+        return result;
+    }
+
+    private int emptySlot( final long keyHigh, final long keyLow ) {
+        int slot = homeSlot(keyHigh, keyLow);
+        while ( isOccupied(slot) ) {
+            slot = nextSlot(slot);
+        }
+        return slot;
+    }
+
+    private void fillSlot( final int slot, final long keyHigh, final long keyLow, final int value ) {
+        if ( keyWords == 1 ) {
+            keys[slot] = keyLow;
+        } else {
+            keys[2 * slot] = keyHigh;
+            keys[2 * slot + 1] = keyLow;
+        }
+        if ( hasValues ) values[slot] = value;
+        occupied[slot >>> 6] |= 1L << slot;
+        size += 1;
+    }
+
+    private void copySlot( final int fromSlot, final int toSlot ) {
+        System.arraycopy(keys, keyWords * fromSlot, keys, keyWords * toSlot, keyWords);
+        if ( hasValues ) values[toSlot] = values[fromSlot];
+    }
+
+    // slot2 is assumed to be downstream of slot1 (even if slot2's index has wrapped)
+    private int distance( final int slot1, final int slot2 ) {
+        return slot2 >= slot1 ? slot2 - slot1 : slot2 - slot1 + capacity;
+    }
+
+    private void allocate( final int newCapacity ) {
+        capacity = newCapacity;
+        maxSize = (int)(newCapacity * MAX_LOAD_FACTOR);
+        size = 0;
+        keys = new long[keyWords * newCapacity];
+        values = hasValues ? new int[newCapacity] : null;
+        occupied = new long[(newCapacity + 63) >>> 6];
+    }
+
+    private void resize() {
+        final int maxCapacity = maxCapacity(keyWords);
+        if ( capacity >= maxCapacity ) throw new IllegalStateException("Unable to increase capacity.");
+        final int oldCapacity = capacity;
+        final int oldSize = size;
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        final long[] oldOccupied = occupied;
+        allocate((int)Math.min(maxCapacity, (long)(oldCapacity * GROWTH_FACTOR)));
+        for ( int slot = 0; slot != oldCapacity; ++slot ) {
+            if ( (oldOccupied[slot >>> 6] & (1L << slot)) != 0 ) {
+                final long keyHigh = keyWords == 1 ? 0L : oldKeys[2 * slot];
+                final long keyLow = oldKeys[keyWords * slot + keyWords - 1];
+                fillSlot(emptySlot(keyHigh, keyLow), keyHigh, keyLow, hasValues ? oldValues[slot] : 0);
+            }
+        }
+        if ( size != oldSize ) {
+            // this should never happen, period.
+            throw new IllegalStateException("Lost some elements during resizing.");
+        }
+    }
+
+    /** the capacity for the expected number of entries, no more than the most slots that keys of this size allow */
+    @VisibleForTesting static int computeCapacity( final int expectedSize, final int keyWords ) {
+        return (int)Math.min(maxCapacity(keyWords),
+                             Math.max(MIN_CAPACITY, (long)Math.ceil(expectedSize / MAX_LOAD_FACTOR) + 1));
+    }
+
+    /** the most slots a table can have, so that the keys array (keyWords longs per slot) can be allocated */
+    @VisibleForTesting static int maxCapacity( final int keyWords ) {
+        return MAX_ARRAY_LENGTH / keyWords;
+    }
+}
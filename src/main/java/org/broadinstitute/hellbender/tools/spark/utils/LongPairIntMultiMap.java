@@ -0,0 +1,142 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * A multimap from a pair of longs (e.g., the packed bits of an SVKmerLong) onto ints that can contain multiple values
+ * for a given key, but distinct entries -- like a HopscotchUniqueMultiMap, but with the keys and values stored in
+ * primitive arrays.  It uses about 27 bytes per entry, where a HopscotchUniqueMultiMap of KmerAndIntervals uses
+ * about 46.
+ */
+@DefaultSerializer(LongPairIntMultiMap.Serializer.class)
+public final class LongPairIntMultiMap extends LongKeyedHashTable {
+    private static final long serialVersionUID = 1L;
+
+    public LongPairIntMultiMap() { this(12000); }
+    public LongPairIntMultiMap( final int expectedSize ) { super(2, true, expectedSize); }
+    private LongPairIntMultiMap( final Input input ) { super(2, true, input); }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept( final long keyHigh, final long keyLow, final int value );
+    }
+
+    @FunctionalInterface
+    public interface KeyConsumer {
+        void accept( final long keyHigh, final long keyLow, final int nValues );
+    }
+
+    @FunctionalInterface
+    public interface EntryFunction<T> {
+        T apply( final long keyHigh, final long keyLow, final int value );
+    }
+
+    /** returns false if the map already contained the entry */
+    public boolean add( final long keyHigh, final long keyLow, final int value ) {
+        for ( int slot = homeSlot(keyHigh, keyLow); isOccupied(slot); slot = nextSlot(slot) ) {
+            if ( keyMatches(slot, keyHigh, keyLow) && value(slot) == value ) return false;
+        }
+        insert(keyHigh, keyLow, value);
+        return true;
+    }
+
+    public boolean containsKey( final long keyHigh, final long keyLow ) { return findSlot(keyHigh, keyLow) != -1; }
+
+    /** the number of values for the key */
+    public int countValues( final long keyHigh, final long keyLow ) {
+        int count = 0;
+        for ( int slot = homeSlot(keyHigh, keyLow); isOccupied(slot); slot = nextSlot(slot) ) {
+            if ( keyMatches(slot, keyHigh, keyLow) ) count += 1;
+        }
+        return count;
+    }
+
+    /** apply an action to each value for the key */
+    public void forEachValue( final long keyHigh, final long keyLow, final IntConsumer action ) {
+        for ( int slot = homeSlot(keyHigh, keyLow); isOccupied(slot); slot = nextSlot(slot) ) {
+            if ( keyMatches(slot, keyHigh, keyLow) ) action.accept(value(slot));
+        }
+    }
+
+    /** remove each of the entries for the key, and return how many there were */
+    public int removeKey( final long keyHigh, final long keyLow ) {
+        int count = 0;
+        int slot = homeSlot(keyHigh, keyLow);
+        while ( isOccupied(slot) ) {
+            if ( keyMatches(slot, keyHigh, keyLow) ) {
+                // a later entry may have been moved into this slot, so look at it again
+                removeSlot(slot);
+                count += 1;
+            } else {
+                slot = nextSlot(slot);
+            }
+        }
+        return count;
+    }
+
+    /** apply an action to each entry */
+    public void forEach( final EntryConsumer action ) {
+        for ( int slot = 0; slot != capacity(); ++slot ) {
+            if ( isOccupied(slot) ) action.accept(keyHigh(slot), keyLow(slot), value(slot));
+        }
+    }
+
+    /**
+     * apply an action to each distinct key, with the number of values for it.
+     * each key's entries are counted in a single walk of its run, rather than once for each of its entries.
+     */
+    public void forEachKey( final KeyConsumer action ) {
+        final long[] counted = new long[(capacity() + 63) >>> 6];
+        for ( int slot = 0; slot != capacity(); ++slot ) {
+            if ( !isOccupied(slot) || (counted[slot >>> 6] & (1L << slot)) != 0 ) continue;
+            final long keyHigh = keyHigh(slot);
+            final long keyLow = keyLow(slot);
+            // every entry for the key lies in the run that includes this slot, after the key's home slot
+            int nValues = 0;
+            for ( int idx = homeSlot(keyHigh, keyLow); isOccupied(idx); idx = nextSlot(idx) ) {
+                if ( keyMatches(idx, keyHigh, keyLow) ) {
+                    counted[idx >>> 6] |= 1L << idx;
+                    nValues += 1;
+                }
+            }
+            action.accept(keyHigh, keyLow, nValues);
+        }
+    }
+
+    /** an iterator over the entries, each made into an object by the given function */
+    public <T> Iterator<T> iterator( final EntryFunction<T> toEntry ) {
+        return new Iterator<T>() {
+            private int slot = nextOccupiedSlot(-1);
+
+            @Override
+            public boolean hasNext() { return slot < capacity(); }
+
+            @Override
+            public T next() {
+                if ( !hasNext() ) throw new NoSuchElementException("Iterator exhausted.");
+                final T result = toEntry.apply(keyHigh(slot), keyLow(slot), value(slot));
+                slot = nextOccupiedSlot(slot);
+                return result;
+            }
+        };
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<LongPairIntMultiMap> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final LongPairIntMultiMap multiMap ) {
+            multiMap.serialize(output);
+        }
+
+        @Override
+        public LongPairIntMultiMap read( final Kryo kryo, final Input input, final Class<LongPairIntMultiMap> klass ) {
+            return new LongPairIntMultiMap(input);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.broadinstitute.hellbender.utils.collections;
+
+import htsjdk.samtools.util.Locatable;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds many intervals in memory, with an efficient operation to get
+ * intervals that overlap a given query interval.
+ *
+ * Unlike {@link IntervalsSkipList}, the intervals are packed into a few flat arrays rather than held in
+ * a list per contig: the starts and ends of the intervals, sorted by contig then start, and the intervals themselves
+ * in the same order, with the range of each contig given by an array of offsets. This makes the index small and
+ * cheap to serialize, and an overlap query is two binary searches followed by a scan over the candidates.
+ */
+public final class PackedIntervalIndex<T extends Locatable> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // contig -> its index in contigOffsets
+    private final Map<String, Integer> contigIndices;
+    // the intervals on contig i are at positions contigOffsets[i] (inclusive) to contigOffsets[i+1] (exclusive)
+    private final int[] contigOffsets;
+    private final int[] starts;
+    private final int[] ends;
+    // maxEnds[i] is the maximum end of the intervals on the same contig up to and including position i
+    private final int[] maxEnds;
+    private final Object[] items;
+
+    /**
+     * Creates a PackedIntervalIndex that holds the given intervals, sorted and indexed.
+     *
+     * @param loc Locatables, not necessarily sorted. Will be iterated over exactly once.
+     */
+    public PackedIntervalIndex(final Iterable<T> loc) {
+        Utils.nonNull(loc);
+        final Map<String, List<T>> intervalsPerContig = new LinkedHashMap<>();
+        int size = 0;
+        for (final T v : loc) {
+            intervalsPerContig.computeIfAbsent(v.getContig(), k -> new ArrayList<>()).add(v);
+            size++;
+        }
+
+        contigIndices = new LinkedHashMap<>();
+        contigOffsets = new int[intervalsPerContig.size() + 1];
+        starts = new int[size];
+        ends = new int[size];
+        maxEnds = new int[size];
+        items = new Object[size];
+        int i = 0;
+        for (final Map.Entry<String, List<T>> entry : intervalsPerContig.entrySet()) {
+            contigOffsets[contigIndices.size()] = i;
+            contigIndices.put(entry.getKey(), contigIndices.size());
+            final List<T> intervals = entry.getValue();
+            intervals.sort(Comparator.comparingInt(Locatable::getStart).thenComparingInt(Locatable::getEnd));
+            int maxEnd = Integer.MIN_VALUE;
+            for (final T v : intervals) {
+                starts[i] = v.getStart();
+                ends[i] = v.getEnd();
+                maxEnd = Math.max(maxEnd, v.getEnd());
+                maxEnds[i] = maxEnd;
+                items[i] = v;
+                i++;
+            }
+        }
+        contigOffsets[contigIndices.size()] = i;
+    }
+
+    /**
+     * Returns all the intervals that overlap with the query, sorted by start.
+     * The query doesn't *have* to be in the same contig as any interval we
+     * hold, but of course if it isn't you'll get an empty result.
+     * You may modify the returned list.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getOverlapping(final Locatable query) {
+        Utils.nonNull(query);
+        final Integer contigIndex = contigIndices.get(query.getContig());
+        if (contigIndex == null) {
+            return new ArrayList<>();
+        }
+        final int contigStart = contigOffsets[contigIndex];
+        final int contigEnd = contigOffsets[contigIndex + 1];
+        // no interval before from reaches the query, and no interval from to onwards starts before the end of it
+        final int from = firstReaching(contigStart, contigEnd, query.getStart());
+        final int to = firstStartingAfter(from, contigEnd, query.getEnd());
+        final List<T> ret = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (ends[i] >= query.getStart()) {
+                ret.add((T) items[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of intervals held
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * @return the approximate size in bytes of the index, not counting the intervals themselves
+     */
+    public long getIndexSizeInBytes() {
+        // an int per contig, and per interval three ints plus a reference, counted as 8 bytes (an uncompressed pointer)
+        return (long) contigOffsets.length * Integer.BYTES + (long) items.length * (3 * Integer.BYTES + Long.BYTES);
+    }
+
+    // returns the first position in [from, to) whose interval, or any before it on the contig, ends at or after position
+    private int firstReaching(int from, int to, final int position) {
+        while (from < to) {
+            final int mid = (from + to) >>> 1;
+            if (maxEnds[mid] < position) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    // returns the first position in [from, to) whose interval starts after position
+    private int firstStartingAfter(int from, int to, final int position) {
+        while (from < to) {
+            final int mid = (from + to) >>> 1;
+            if (starts[mid] <= position) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+}
@@ -0,0 +1,170 @@
+package org.broadinstitute.hellbender.utils.io;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A whole file, memory-mapped read-only. Files larger than the 2GB limit of a single mapping are mapped in pieces.
+ * A file that isn't on local disk (on HDFS or GCS) is first copied to a local temporary file.
+ *
+ * Use a {@link Singleton} to hold an object that reads a mapped file, so that the file is mapped once per JVM
+ * and shared by all the tasks running there.
+ */
+public final class MappedFile {
+    private static final Logger logger = LogManager.getLogger(MappedFile.class);
+
+    // the file is mapped in pieces of this size, since a single mapping is limited to 2GB
+    private static final int MAPPING_SHIFT = 30;
+    private static final long MAPPING_MASK = (1L << MAPPING_SHIFT) - 1;
+
+    private final MappedByteBuffer[] mappings;
+    private final long length;
+
+    /**
+     * @param url the path of the file
+     * @param popts the pipeline options, needed to read the file from GCS (may be null otherwise)
+     * @param tempSuffix the suffix of the local copy of a remote file
+     */
+    public static MappedFile map( final String url, final PipelineOptions popts, final String tempSuffix )
+            throws IOException {
+        return new MappedFile(getLocalFile(url, popts, tempSuffix));
+    }
+
+    public MappedFile( final File file ) throws IOException {
+        try ( final RandomAccessFile raf = new RandomAccessFile(file, "r");
+              final FileChannel channel = raf.getChannel() ) {
+            length = channel.size();
+            final int numMappings = (int)((length + MAPPING_MASK) >>> MAPPING_SHIFT);
+            mappings = new MappedByteBuffer[numMappings];
+            for ( int idx = 0; idx != numMappings; ++idx ) {
+                final long start = (long)idx << MAPPING_SHIFT;
+                mappings[idx] =
+                        channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << MAPPING_SHIFT, length - start));
+            }
+        }
+    }
+
+    private static File getLocalFile( final String url, final PipelineOptions popts, final String tempSuffix )
+            throws IOException {
+        if ( BucketUtils.isFileUrl(url) ) {
+            return new File(URI.create(url));
+        }
+        if ( !BucketUtils.isRemoteStorageUrl(url) ) {
+            return new File(url);
+        }
+        final File localCopy = File.createTempFile("mapped", tempSuffix);
+        localCopy.deleteOnExit();
+        try ( final InputStream in = BucketUtils.openFile(url, popts) ) {
+            Files.copy(in, localCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Copied " + url + " to " + localCopy + " to map it");
+        return localCopy;
+    }
+
+    public long length() { return length; }
+
+    public byte getByte( final long position ) {
+        return mappings[(int)(position >>> MAPPING_SHIFT)].get((int)(position & MAPPING_MASK));
+    }
+
+    /** the big-endian int at the position */
+    public int getInt( final long position ) {
+        final MappedByteBuffer mapping = mappings[(int)(position >>> MAPPING_SHIFT)];
+        final int offset = (int)(position & MAPPING_MASK);
+        if ( offset <= mapping.limit() - Integer.BYTES ) {
+            return mapping.getInt(offset);
+        }
+        // the int spans two mappings
+        int result = 0;
+        for ( int idx = 0; idx != Integer.BYTES; ++idx ) {
+            result = (result << 8) | (getByte(position + idx) & 0xFF);
+        }
+        return result;
+    }
+
+    /** the big-endian long at the position */
+    public long getLong( final long position ) {
+        final MappedByteBuffer mapping = mappings[(int)(position >>> MAPPING_SHIFT)];
+        final int offset = (int)(position & MAPPING_MASK);
+        if ( offset <= mapping.limit() - Long.BYTES ) {
+            return mapping.getLong(offset);
+        }
+        // the long spans two mappings
+        return ((long)getInt(position) << 32) | (getInt(position + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Builds an object that reads a mapped file.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load( final MappedFile file ) throws IOException;
+    }
+
+    /**
+     * Holds the object built on the last file that was asked for, so that a file is only mapped (and, if it's remote,
+     * copied) the first time it is asked for in a JVM.
+     */
+    public static final class Singleton<T> {
+        private final String tempSuffix;
+        private String url;
+        private T instance;
+
+        /** @param tempSuffix the suffix of the local copy of a remote file */
+        public Singleton( final String tempSuffix ) {
+            this.tempSuffix = tempSuffix;
+        }
+
+        /**
+         * @return the object built on the given file, mapping the file and building the object if it is not the
+         *          file that is already mapped
+         * @param url the path of the file
+         * @param popts the pipeline options, needed to read the file from GCS (may be null otherwise)
+         * @param loader builds the object from the mapped file
+         */
+        public synchronized T get( final String url, final PipelineOptions popts, final Loader<T> loader ) {
+            Utils.nonNull(url);
+            if ( instance == null || !this.url.equals(url) ) {
+                instance = null;
+                final Runtime runtime = Runtime.getRuntime();
+                final long usedMemoryBefore = runtime.totalMemory() - runtime.freeMemory();
+                final long startTime = System.nanoTime();
+                final MappedFile file;
+                try {
+                    file = map(url, popts, tempSuffix);
+                    instance = loader.load(file);
+                } catch ( final IOException e ) {
+                    throw new UserException.CouldNotReadInputFile("failed to map " + url, e);
+                }
+                this.url = url;
+                final long usedMemoryAfter = runtime.totalMemory() - runtime.freeMemory();
+                logger.info(String.format("Mapped %s (%d bytes) in %.2f seconds; heap growth approx %d MB",
+                        url, file.length(), (System.nanoTime() - startTime) / 1e9,
+                        Math.max(usedMemoryAfter - usedMemoryBefore, 0) / (1024 * 1024)));
+            }
+            return instance;
+        }
+
+        /**
+         * Drops the object, if there is one. The mapping itself is released when the object is garbage collected.
+         */
+        public synchronized void close() {
+            url = null;
+            instance = null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import htsjdk.samtools.SAMRecord;
+import org.apache.spark.SparkConf;
+import org.apache.spark.serializer.KryoRegistrator;
+import org.apache.spark.serializer.KryoSerializer;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import scala.reflect.ClassTag$;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompactSAMRecordToGATKReadAdapterSerializerUnitTest {
+
+    public static class TestGATKRegistrator implements KryoRegistrator {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void registerClasses(Kryo kryo) {
+            kryo.register(SAMRecordToGATKReadAdapter.class, new CompactSAMRecordToGATKReadAdapterSerializer());
+            kryo.register(SAMRecord.class, new CompactSAMRecordSerializer());
+        }
+    }
+
+    private static final SparkConf COMPACT_CONF = new SparkConf().set("spark.kryo.registrator",
+            "org.broadinstitute.hellbender.engine.spark.CompactSAMRecordToGATKReadAdapterSerializerUnitTest$TestGATKRegistrator");
+
+    private static final SparkConf STANDARD_CONF = new SparkConf().set("spark.kryo.registrator",
+            "org.broadinstitute.hellbender.engine.spark.SAMRecordToGATKReadAdapterSerializerUnitTest$TestGATKRegistrator");
+
+    @DataProvider(name = "reads")
+    public Object[][] reads() {
+        final Random random = new Random(17);
+
+        final GATKRead mapped = ArtificialReadUtils.createHeaderlessSamBackedRead("read1", "1", 100, 50);
+
+        final GATKRead withNs = ArtificialReadUtils.createHeaderlessSamBackedRead("read2", "1", 100, 10);
+        withNs.setBases("NACGTNNTGN".getBytes());
+
+        final GATKRead iupac = ArtificialReadUtils.createHeaderlessSamBackedRead("read3", "1", 100, 6);
+        iupac.setBases("ACRTac".getBytes());
+
+        final GATKRead noBasesOrQuals = ArtificialReadUtils.createHeaderlessSamBackedRead("read4", "1", 100, 10);
+        noBasesOrQuals.setBases(SAMRecord.NULL_SEQUENCE);
+        noBasesOrQuals.setBaseQualities(SAMRecord.NULL_QUALS);
+
+        final GATKRead noQuals = ArtificialReadUtils.createHeaderlessSamBackedRead("read5", "1", 100, 10);
+        noQuals.setBaseQualities(SAMRecord.NULL_QUALS);
+
+        final GATKRead binnedQuals = ArtificialReadUtils.createHeaderlessSamBackedRead("read6", "1", 100, 151);
+        binnedQuals.setBases(randomBases(random, 151));
+        binnedQuals.setBaseQualities(randomQuals(random, 151, new byte[]{2, 12, 23, 37}));
+
+        final GATKRead fullQuals = ArtificialReadUtils.createHeaderlessSamBackedRead("read7", "1", 100, 151);
+        fullQuals.setBases(randomBases(random, 151));
+        fullQuals.setBaseQualities(randomQuals(random, 151, new byte[]{2, 5, 8, 11, 14, 17, 20, 23, 25, 27, 29, 31, 33, 35, 37, 39, 40, 41}));
+
+        final GATKRead withAttributes = ArtificialReadUtils.createHeaderlessSamBackedRead("read8", "1", 100, 10);
+        withAttributes.setCigar("3M2I5M");
+        withAttributes.setReadGroup("rg1");
+        withAttributes.setAttribute("NM", 2);
+        withAttributes.setAttribute("XS", "some string");
+        ((SAMRecordToGATKReadAdapter) withAttributes).getEncapsulatedSamRecord().setAttribute("ZA", new int[]{1, -2, 300000});
+
+        final GATKRead mateOnOtherContig = ArtificialReadUtils.createHeaderlessSamBackedRead("read9", "1", 100, 10);
+        mateOnOtherContig.setIsPaired(true);
+        mateOnOtherContig.setMatePosition("2", 5000);
+        mateOnOtherContig.setFragmentLength(-250);
+
+        final GATKRead unmapped = ArtificialReadUtils.createHeaderlessSamBackedRead("read10", "1", 100, 10);
+        unmapped.setIsUnmapped();
+
+        return new Object[][]{
+                {mapped}, {withNs}, {iupac}, {noBasesOrQuals}, {noQuals}, {binnedQuals}, {fullQuals},
+                {withAttributes}, {mateOnOtherContig}, {unmapped}
+        };
+    }
+
+    @Test(dataProvider = "reads")
+    public void testSerializerRoundTripHeaderlessRead(final GATKRead read) {
+        final GATKRead roundTrippedRead = SparkTestUtils.roundTripInKryo(read, GATKRead.class, COMPACT_CONF);
+        Assert.assertEquals(roundTrippedRead, read);
+
+        final SAMRecord record = ((SAMRecordToGATKReadAdapter) read).getEncapsulatedSamRecord();
+        final SAMRecord roundTrippedRecord = SparkTestUtils.roundTripInKryo(record, SAMRecord.class, COMPACT_CONF);
+        Assert.assertEquals(roundTrippedRecord, record, "\nActual read: " + roundTrippedRecord.getSAMString() + "\nExpected read: " + record.getSAMString());
+    }
+
+    @Test
+    public void testCompactEncodingIsSmaller() {
+        final Random random = new Random(31);
+        final GATKRead read = ArtificialReadUtils.createHeaderlessSamBackedRead("HWI-ST1213:151:C1DTBACXX:2:1101:10000:10000", "20", 1000000, 151);
+        read.setBases(randomBases(random, 151));
+        read.setBaseQualities(randomQuals(random, 151, new byte[]{2, 12, 23, 37}));
+        read.setIsPaired(true);
+        read.setMatePosition("20", 1000300);
+        read.setReadGroup("20FUK.1");
+
+        final int compactSize = serializedSize(read, COMPACT_CONF);
+        final int standardSize = serializedSize(read, STANDARD_CONF);
+        Assert.assertTrue(compactSize < standardSize * 0.6, "compact size " + compactSize + ", standard size " + standardSize);
+    }
+
+    private static int serializedSize(final GATKRead read, final SparkConf conf) {
+        return new KryoSerializer(conf).newInstance().serialize(read, ClassTag$.MODULE$.apply(GATKRead.class)).remaining();
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = "ACGT".getBytes()[random.nextInt(4)];
+        }
+        return bases;
+    }
+
+    private static byte[] randomQuals(final Random random, final int length, final byte[] values) {
+        final byte[] quals = new byte[length];
+        // mostly the highest value, as for real binned qualities
+        Arrays.fill(quals, values[values.length - 1]);
+        for (int i = 0; i < length / 5; i++) {
+            quals[random.nextInt(length)] = values[random.nextInt(values.length)];
+        }
+        return quals;
+    }
+}
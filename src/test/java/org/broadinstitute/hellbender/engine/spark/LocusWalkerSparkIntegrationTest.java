@@ -0,0 +1,105 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.TestProgramGroup;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class LocusWalkerSparkIntegrationTest extends CommandLineProgramTest {
+
+    @CommandLineProgramProperties(
+            summary = "Writes the pileup at each locus, through either getAlignments or mapAlignments.",
+            oneLineSummary = "LocusWalkerSpark test tool",
+            programGroup = TestProgramGroup.class
+    )
+    public static final class TestLocusWalkerSpark extends LocusWalkerSpark {
+        private static final long serialVersionUID = 1L;
+
+        @Argument(shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, doc = "The output directory")
+        public String outputFile;
+
+        @Argument(fullName = "useMapAlignments", shortName = "useMapAlignments", doc = "Use mapAlignments rather than getAlignments", optional = true)
+        public boolean useMapAlignments = false;
+
+        @Override
+        protected void runTool(JavaSparkContext ctx) {
+            if (useMapAlignments) {
+                mapAlignments(ctx, pileupFunction()).saveAsTextFile(outputFile);
+            } else {
+                super.runTool(ctx);
+            }
+        }
+
+        @Override
+        protected void processAlignments(JavaRDD<LocusWalkerContext> rdd, JavaSparkContext ctx) {
+            final LocusFunction<String> pileupFunction = pileupFunction();
+            rdd.map(context -> pileupFunction.apply(context.getAlignmentContext(), context.getReferenceContext(), context.getFeatureContext()))
+                    .saveAsTextFile(outputFile);
+        }
+
+        private static LocusFunction<String> pileupFunction() {
+            return (alignmentContext, referenceContext, featureContext) ->
+                    alignmentContext.getBasePileup().getPileupString(referenceContext.hasBackingDataSource() ? (char) referenceContext.getBase() : 'N');
+        }
+    }
+
+    @Override
+    public String getTestedClassName() {
+        return TestLocusWalkerSpark.class.getSimpleName();
+    }
+
+    @DataProvider(name = "shuffle")
+    public Object[][] shuffleParameters() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "shuffle", groups = "spark")
+    public void testMapAlignmentsMatchesGetAlignments(final boolean useShuffle) throws IOException {
+        final List<String> viaGetAlignments = runTestTool(false, useShuffle);
+        final List<String> viaMapAlignments = runTestTool(true, useShuffle);
+        Assert.assertFalse(viaGetAlignments.isEmpty());
+        Assert.assertEquals(viaMapAlignments, viaGetAlignments);
+    }
+
+    private List<String> runTestTool(final boolean useMapAlignments, final boolean useShuffle) throws IOException {
+        final File out = createTempDir("locusWalkerSpark");
+        final File outputDir = new File(out, "pileup");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.add("--input");
+        args.add(publicTestDir + "org/broadinstitute/hellbender/engine/reads_data_source_test1.bam");
+        args.add("--output");
+        args.add(outputDir.getAbsolutePath());
+        args.add("--readShardSize");
+        args.add("100");
+        if (useMapAlignments) {
+            args.add("--useMapAlignments");
+        }
+        if (useShuffle) {
+            args.add("--shuffle");
+        }
+        runCommandLine(args.getArgsArray());
+
+        final File[] parts = outputDir.listFiles((dir, name) -> name.startsWith("part-"));
+        Assert.assertNotNull(parts);
+        Arrays.sort(parts);
+        final List<String> lines = new ArrayList<>();
+        for (final File part : parts) {
+            lines.addAll(Files.readAllLines(part.toPath()));
+        }
+        return lines;
+    }
+}
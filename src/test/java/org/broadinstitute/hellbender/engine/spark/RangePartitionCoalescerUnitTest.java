@@ -53,4 +53,19 @@ public class RangePartitionCoalescerUnitTest extends BaseTest {
         assertEquals(groups[1].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[1], partitions[2])));
         assertEquals(groups[2].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[2])));
     }
+
+    @Test
+    public void testPackedRanges() {
+        // the first group starts at partition 0 and reads up to partition 1, the second is just partition 2
+        RangePartitionCoalescer coalescer = new RangePartitionCoalescer(ImmutableList.of(0, 2), ImmutableList.of(1, 2));
+        PartitionGroup[] groups = coalescer.coalesce(2, rdd.rdd());
+        assertEquals(groups.length, 2);
+        assertEquals(groups[0].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[0], partitions[1])));
+        assertEquals(groups[1].partitions(), JavaConversions.asScalaBuffer(ImmutableList.of(partitions[2])));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testThrowsExceptionIfStartsAndEndsDifferInLength() {
+        new RangePartitionCoalescer(ImmutableList.of(0, 2), ImmutableList.of(2));
+    }
 }
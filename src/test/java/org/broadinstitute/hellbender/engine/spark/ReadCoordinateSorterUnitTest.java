@@ -0,0 +1,163 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class ReadCoordinateSorterUnitTest extends BaseTest {
+
+    private static final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(3, 1, 100000);
+
+    private static List<GATKRead> makeReads(final int numReads, final int maxStart) {
+        final Random random = new Random(13);
+        final List<GATKRead> reads = new ArrayList<>();
+        for (int i = 0; i < numReads; i++) {
+            final GATKRead read;
+            switch (random.nextInt(10)) {
+                case 0:
+                    read = ArtificialReadUtils.createArtificialUnmappedRead(header, new byte[]{'A'}, new byte[]{30});
+                    break;
+                case 1:
+                    read = ArtificialReadUtils.createArtificialUnmappedReadWithAssignedPosition(header,
+                            header.getSequence(random.nextInt(3)).getSequenceName(), 1 + random.nextInt(maxStart), new byte[]{'A'}, new byte[]{30});
+                    break;
+                default:
+                    read = ArtificialReadUtils.createArtificialRead(header, "read" + i, random.nextInt(3), 1 + random.nextInt(maxStart), 10);
+                    read.setIsReverseStrand(random.nextBoolean());
+            }
+            read.setName("read" + random.nextInt(numReads));
+            reads.add(read);
+        }
+        return reads;
+    }
+
+    @Test
+    public void testCoordinateKeyOrder() {
+        final ReadCoordinateComparator comparator = new ReadCoordinateComparator(header);
+        final List<GATKRead> reads = makeReads(200, 1000);
+        for (final GATKRead a : reads) {
+            for (final GATKRead b : reads) {
+                final int keyOrder = Long.signum(Long.compare(ReadCoordinateSorter.getCoordinateKey(a, header), ReadCoordinateSorter.getCoordinateKey(b, header)));
+                final int coordinateOrder = Integer.signum(ReadCoordinateComparator.compareCoordinates(a, b, header));
+                if (coordinateOrder != 0 || !isUnplaced(a)) {
+                    Assert.assertEquals(keyOrder, coordinateOrder);
+                } else if (a.getName().equals(b.getName())) {
+                    // unplaced reads are ordered by name hash, so only reads with the same name must have the same key
+                    Assert.assertEquals(keyOrder, 0);
+                }
+            }
+        }
+    }
+
+    private static boolean isUnplaced(final GATKRead read) {
+        return ReadUtils.getAssignedReferenceIndex(read, header) == -1;
+    }
+
+    // the order of the sort: by coordinate, except that unplaced reads are ordered by key (a hash of their names)
+    // before the comparator breaks ties
+    private static List<GATKRead> sortByKeyThenComparator(final List<GATKRead> reads) {
+        final ReadCoordinateComparator comparator = new ReadCoordinateComparator(header);
+        final List<GATKRead> sorted = new ArrayList<>(reads);
+        sorted.sort(Comparator.comparingLong((GATKRead read) -> ReadCoordinateSorter.getCoordinateKey(read, header)).thenComparing(comparator));
+        return sorted;
+    }
+
+    @DataProvider(name = "sortData")
+    public Object[][] sortData() {
+        return new Object[][]{
+                // many reads at each position
+                {1000, 50, 4, 3},
+                {1000, 50, 1, 1},
+                {2000, 100000, 7, 10},
+                {10, 100000, 3, 20},
+                {0, 1000, 2, 4},
+        };
+    }
+
+    @Test(dataProvider = "sortData")
+    public void testSort(final int numReads, final int maxStart, final int numInputPartitions, final int numPartitions) {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final List<GATKRead> reads = makeReads(numReads, maxStart);
+        final JavaRDD<GATKRead> sorted = ReadCoordinateSorter.sort(ctx.parallelize(reads, numInputPartitions), header, numPartitions);
+
+        final List<GATKRead> actual = sorted.collect();
+        Assert.assertEquals(actual, sortByKeyThenComparator(reads));
+        Assert.assertTrue(sorted.getNumPartitions() <= numPartitions);
+
+        // the placed reads are in exactly the comparator's order
+        final List<GATKRead> expectedPlaced = new ArrayList<>(reads);
+        expectedPlaced.removeIf(ReadCoordinateSorterUnitTest::isUnplaced);
+        expectedPlaced.sort(new ReadCoordinateComparator(header));
+        Assert.assertEquals(actual.subList(0, expectedPlaced.size()), expectedPlaced);
+    }
+
+    @Test
+    public void testUnplacedReadsAreSpreadOverPartitions() {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final List<GATKRead> reads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            reads.add(ArtificialReadUtils.createArtificialRead(header, "mapped" + i, 0, 1 + i, 10));
+        }
+        final int numUnplaced = 2000;
+        for (int i = 0; i < numUnplaced; i++) {
+            final GATKRead read = ArtificialReadUtils.createArtificialUnmappedRead(header, new byte[]{'A'}, new byte[]{30});
+            read.setName("unplaced" + i);
+            reads.add(read);
+        }
+        final int numPartitions = 4;
+        final JavaRDD<GATKRead> sorted = ReadCoordinateSorter.sort(ctx.parallelize(reads, 3), header, numPartitions);
+
+        // far more unplaced reads than one partition's share, so they should be divided among several partitions
+        final List<Integer> unplacedPerPartition = sorted.glom()
+                .map(partition -> (int) partition.stream().filter(ReadCoordinateSorterUnitTest::isUnplaced).count())
+                .collect();
+        Assert.assertTrue(unplacedPerPartition.stream().filter(count -> count > 0).count() >= numPartitions - 1, unplacedPerPartition.toString());
+        Assert.assertTrue(unplacedPerPartition.stream().allMatch(count -> count < numUnplaced * 2 / numPartitions), unplacedPerPartition.toString());
+        Assert.assertEquals(sorted.collect(), sortByKeyThenComparator(reads));
+    }
+
+    @Test
+    public void testComputeRangeBounds() {
+        // two input partitions of 100 reads, one sampled at half the rate of the other
+        final List<Tuple2<Long, long[]>> samples = Arrays.asList(
+                new Tuple2<>(100L, new long[]{10, 20, 30, 40, 50, 60, 70, 80, 90, 100}),
+                new Tuple2<>(100L, new long[]{110, 120, 130, 140, 150}),
+                new Tuple2<>(0L, new long[0]));
+        Assert.assertEquals(ReadCoordinateSorter.computeRangeBounds(samples, 2), new long[]{100});
+        Assert.assertEquals(ReadCoordinateSorter.computeRangeBounds(samples, 4), new long[]{50, 100, 130});
+        Assert.assertEquals(ReadCoordinateSorter.computeRangeBounds(samples, 1), new long[0]);
+        Assert.assertEquals(ReadCoordinateSorter.computeRangeBounds(Collections.emptyList(), 3), new long[0]);
+
+        // a single key makes a single range
+        final List<Tuple2<Long, long[]>> oneKey = Collections.singletonList(new Tuple2<>(5L, new long[]{7, 7, 7, 7, 7}));
+        Assert.assertEquals(ReadCoordinateSorter.computeRangeBounds(oneKey, 3), new long[]{7});
+    }
+
+    @Test
+    public void testPartitioner() {
+        final ReadCoordinateSorter.CoordinateKeyRangePartitioner partitioner =
+                new ReadCoordinateSorter.CoordinateKeyRangePartitioner(new long[]{10, 20});
+        Assert.assertEquals(partitioner.numPartitions(), 3);
+        Assert.assertEquals(partitioner.getPartition(5L), 0);
+        Assert.assertEquals(partitioner.getPartition(10L), 0);
+        Assert.assertEquals(partitioner.getPartition(11L), 1);
+        Assert.assertEquals(partitioner.getPartition(20L), 1);
+        Assert.assertEquals(partitioner.getPartition(21L), 2);
+    }
+}
@@ -11,12 +11,15 @@ import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
 import org.broadinstitute.hellbender.engine.Shard;
 import org.broadinstitute.hellbender.engine.ShardBoundary;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.annotations.Test;
 import scala.Tuple2;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
@@ -350,6 +353,63 @@ public class SparkSharderUnitTest extends BaseTest implements Serializable {
                 ));
     }
 
+    @Test
+    public void testLocatableDensity() {
+        // Partitions start at 1:1, 1:11, 1:11, 1:21 and 2:1. The second partition starts at the same position as the
+        // third, so it is counted at that position; the last partition extends to the end of its contig.
+        List<TestRead> splitPoints = ImmutableList.of(
+                new TestRead("1", 1, 3), new TestRead("1", 11, 13), new TestRead("1", 11, 13),
+                new TestRead("1", 21, 23), new TestRead("2", 1, 3));
+        SparkSharder.LocatableDensity density = new SparkSharder.LocatableDensity(sequenceDictionary, splitPoints);
+
+        assertEquals(density.count("1", 1, 10), 1.0);
+        assertEquals(density.count("1", 11, 11), 1.1, 1e-9);
+        assertEquals(density.count("1", 11, 20), 2.0);
+        assertEquals(density.count("1", 1, 100), 4.0);
+        assertEquals(density.count("1", 21, 60), 0.5);
+        assertEquals(density.count("2", 1, 50), 1.0);
+        assertEquals(density.count("2", 26, 50), 0.5);
+    }
+
+    @Test
+    public void testDivideIntervalsByLocatableDensity() {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        SAMSequenceDictionary sequenceDictionary1000 = new SAMSequenceDictionary(ImmutableList.of(new SAMSequenceRecord("1", 1000)));
+
+        // 50 reads spread over 1:1-500, then 50 reads piled up in 1:501-550, in 10 partitions of 10 reads each
+        List<TestRead> readList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            readList.add(new TestRead(1 + 10 * i, 3 + 10 * i));
+        }
+        for (int i = 0; i < 50; i++) {
+            readList.add(new TestRead(501 + i, 503 + i));
+        }
+        JavaRDD<TestRead> reads = ctx.parallelize(readList, 10);
+        List<SimpleInterval> intervals = ImmutableList.of(new SimpleInterval("1", 1, 1000));
+
+        // shards over the sparse region are 100 bases long, but are 10 bases long over the pileup
+        List<ShardBoundary> shards = SparkSharder.divideIntervalsByLocatableDensity(reads, sequenceDictionary1000, intervals, 100, 5, 500, 10);
+        assertEquals(shards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 100), new SimpleInterval("1", 101, 200), new SimpleInterval("1", 201, 300),
+                new SimpleInterval("1", 301, 400), new SimpleInterval("1", 401, 500), new SimpleInterval("1", 501, 510),
+                new SimpleInterval("1", 511, 520), new SimpleInterval("1", 521, 530), new SimpleInterval("1", 531, 540),
+                new SimpleInterval("1", 541, 1000)));
+        assertEquals(shards.get(0).getPaddedInterval(), new SimpleInterval("1", 1, 110));
+        assertEquals(shards.get(5).getPaddedInterval(), new SimpleInterval("1", 491, 520));
+
+        // the minimum and maximum shard sizes are respected
+        shards = SparkSharder.divideIntervalsByLocatableDensity(reads, sequenceDictionary1000, intervals, 100, 20, 300, 0);
+        assertEquals(shards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 100), new SimpleInterval("1", 101, 200), new SimpleInterval("1", 201, 300),
+                new SimpleInterval("1", 301, 400), new SimpleInterval("1", 401, 500), new SimpleInterval("1", 501, 520),
+                new SimpleInterval("1", 521, 540), new SimpleInterval("1", 541, 840), new SimpleInterval("1", 841, 1000)));
+
+        // with no reads, fall back to shards of a fixed size
+        shards = SparkSharder.divideIntervalsByLocatableDensity(ctx.parallelize(new ArrayList<TestRead>(), 2), sequenceDictionary1000, intervals, 400, 20, 500, 0);
+        assertEquals(shards.stream().map(ShardBoundary::getInterval).collect(Collectors.toList()), ImmutableList.of(
+                new SimpleInterval("1", 1, 400), new SimpleInterval("1", 401, 800), new SimpleInterval("1", 801, 1000)));
+    }
+
     private static class TestRead implements Locatable {
         private static final long serialVersionUID = 1L;
         private final String contig;
@@ -391,6 +451,119 @@ public class SparkSharderUnitTest extends BaseTest implements Serializable {
         }
     }
 
+    @Test
+    public void testPackPartitions() {
+        assertEquals(SparkSharder.packPartitions(new long[]{10, 10, 10, 10}, 20), ImmutableList.of(0, 2));
+        assertEquals(SparkSharder.packPartitions(new long[]{10, 10, 10, 10}, 25), ImmutableList.of(0, 2));
+        assertEquals(SparkSharder.packPartitions(new long[]{10, 10, 10, 10}, 5), ImmutableList.of(0, 1, 2, 3));
+        assertEquals(SparkSharder.packPartitions(new long[]{10, 10, 10, 10}, 100), ImmutableList.of(0));
+        // a partition that is larger than the target is in a task of its own
+        assertEquals(SparkSharder.packPartitions(new long[]{5, 50, 5, 5, 50}, 20), ImmutableList.of(0, 1, 2, 4));
+        assertEquals(SparkSharder.packPartitions(new long[]{}, 20), ImmutableList.of());
+    }
+
+    @Test
+    public void testPackSkewedPartitions() {
+        // splits whose sizes vary over three orders of magnitude, as from BAMs of very different sizes or split
+        // boundaries: packing should give far fewer tasks, and much more even ones
+        Random random = new Random(13);
+        long[] sizes = new long[1000];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = random.nextInt(10) == 0 ? 64_000_000 + random.nextInt(1_000_000) : 64_000 + random.nextInt(1_000_000);
+        }
+        long target = 64_000_000;
+        List<Integer> starts = SparkSharder.packPartitions(sizes, target);
+        long[] taskSizes = new long[starts.size()];
+        for (int task = 0; task < starts.size(); task++) {
+            int end = task < starts.size() - 1 ? starts.get(task + 1) : sizes.length;
+            for (int i = starts.get(task); i < end; i++) {
+                taskSizes[task] += sizes[i];
+            }
+            assertTrue(taskSizes[task] <= target || end - starts.get(task) == 1);
+        }
+        assertTrue(starts.size() < sizes.length / 4, "too many tasks: " + starts.size());
+        assertTrue(maxOverMedian(taskSizes) < maxOverMedian(sizes) / 10,
+                "task skew " + maxOverMedian(taskSizes) + " vs partition skew " + maxOverMedian(sizes));
+    }
+
+    private static double maxOverMedian(long[] sizes) {
+        long[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        return (double) sorted[sorted.length - 1] / sorted[sorted.length / 2];
+    }
+
+    @Test
+    public void testLocatablesPerShardWithPackedPartitions() throws IOException {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        // the reads and intervals of testLocatablesPerShard, with the partitions packed in different ways
+        JavaRDD<TestRead> reads = ctx.parallelize(ImmutableList.of(
+                new TestRead(1, 3), new TestRead(5, 7), new TestRead(7, 9),
+                new TestRead(7, 9), new TestRead(7, 9), new TestRead(7, 9),
+                new TestRead(7, 9), new TestRead(11, 13), new TestRead(12, 14),
+                new TestRead(17, 19), new TestRead(21, 23), new TestRead(25, 27)
+        ), 4);
+
+        List<SimpleInterval> intervals = ImmutableList.of(
+                new SimpleInterval("1", 2, 4),
+                new SimpleInterval("1", 8, 12),
+                new SimpleInterval("1", 11, 22),
+                new SimpleInterval("1", 24, 25));
+
+        List<Tuple2<SimpleInterval, Integer>> expectedReadsPerInterval = ImmutableList.of(
+                new Tuple2<>(intervals.get(0), 1), new Tuple2<>(intervals.get(1), 7),
+                new Tuple2<>(intervals.get(2), 4), new Tuple2<>(intervals.get(3), 1));
+
+        long[] partitionSizes = {10, 5, 5, 30};
+        for (long target : new long[]{0, 1, 10, 20, 40, 100}) {
+            List<Tuple2<SimpleInterval, Integer>> readsPerInterval = SparkSharder.joinOverlapping(ctx, reads, TestRead.class,
+                    sequenceDictionary, intervals, STANDARD_READ_LENGTH, partitionSizes, target,
+                    intervalAndReads -> new Tuple2<>(intervalAndReads._1(), Iterables.size(Iterables.filter(intervalAndReads._2(),
+                            read -> new SimpleInterval(read).overlaps(intervalAndReads._1()))))).collect();
+            // the intervals are processed in order, whatever the packing
+            assertEquals(readsPerInterval, expectedReadsPerInterval, "target " + target);
+        }
+    }
+
+    @Test
+    public void testEstimatePartitionSizes() throws IOException {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        File bam = new File(publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.noMD.noBQSR.bam");
+        ReadsSparkSource readsSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> reads = readsSource.getParallelReads(bam.getPath(), null, 10 * 1024);
+        ctx.hadoopConfiguration().unset("mapreduce.input.fileinputformat.split.maxsize");
+        assertTrue(reads.getNumPartitions() > 1);
+
+        // the sizes are found through transformations that keep the partitions
+        long[] sizes = SparkSharder.estimatePartitionSizes(reads.filter(read -> !read.isUnmapped()).map(read -> read).rdd());
+        assertEquals(sizes.length, reads.getNumPartitions());
+        long total = 0;
+        for (long size : sizes) {
+            assertTrue(size > 0);
+            total += size;
+        }
+        assertTrue(total <= bam.length() && total > bam.length() / 2, "estimated " + total + " of " + bam.length() + " bytes");
+
+        // but not through a shuffle, or for data that wasn't read from a file
+        assertEquals(SparkSharder.estimatePartitionSizes(reads.repartition(reads.getNumPartitions()).rdd()), null);
+        assertEquals(SparkSharder.estimatePartitionSizes(ctx.parallelize(ImmutableList.of(1, 2, 3), 2).rdd()), null);
+
+        // packing the partitions of reads doesn't change the reads in each shard
+        SAMSequenceDictionary readsDictionary = readsSource.getHeader(bam.getPath(), null).getSequenceDictionary();
+        List<ShardBoundary> shardBoundaries = ImmutableList.of(
+                new SimpleInterval("20", 1, 1_000_000), new SimpleInterval("20", 1_000_001, 1_000_500),
+                new SimpleInterval("20", 1_000_501, 1_001_000), new SimpleInterval("20", 1_001_001, 2_000_000))
+                .stream().map(si -> new ShardBoundary(si, si)).collect(Collectors.toList());
+        JavaRDD<GATKRead> mappedReads = reads.filter(read -> !read.isUnmapped());
+        List<Integer> readsPerShard = SparkSharder.shard(ctx, mappedReads, GATKRead.class, readsDictionary, shardBoundaries, 1000, false)
+                .map(Iterables::size).collect();
+        JavaRDD<Shard<GATKRead>> packedShards = SparkSharder.shard(ctx, mappedReads, GATKRead.class, readsDictionary, shardBoundaries, 1000, false, 256 * 1024);
+        assertTrue(packedShards.getNumPartitions() < mappedReads.getNumPartitions());
+        List<Integer> packedReadsPerShard = packedShards.map(Iterables::size).collect();
+        assertEquals(packedReadsPerShard, readsPerShard);
+        assertTrue(readsPerShard.stream().allMatch(count -> count > 0));
+    }
+
     private static class CountOverlappingReadsFunction implements PairFlatMapFunction<Shard<TestRead>, Locatable, Integer> {
         private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,141 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.util.LongAccumulator;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.TestProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import scala.Tuple2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SparkStageMetricsListenerUnitTest extends BaseTest {
+
+    @Test
+    public void testPercentiles() {
+        final long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 100};
+        Assert.assertEquals(SparkStageMetricsListener.percentile(values, 0.0), 1);
+        Assert.assertEquals(SparkStageMetricsListener.percentile(values, 0.5), 5);
+        Assert.assertEquals(SparkStageMetricsListener.percentile(values, 0.9), 9);
+        Assert.assertEquals(SparkStageMetricsListener.percentile(values, 0.99), 100);
+        Assert.assertEquals(SparkStageMetricsListener.percentile(values, 1.0), 100);
+        Assert.assertEquals(SparkStageMetricsListener.percentile(new long[0], 0.5), 0);
+
+        Assert.assertEquals(SparkStageMetricsListener.skew(values), 20.0);
+        Assert.assertEquals(SparkStageMetricsListener.skew(new long[]{3, 3, 3}), 1.0);
+        Assert.assertEquals(SparkStageMetricsListener.skew(new long[]{0, 0}), 1.0);
+        Assert.assertEquals(SparkStageMetricsListener.skew(new long[0]), 0.0);
+    }
+
+    @Test(groups = "spark")
+    public void testReport() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final SparkStageMetricsListener listener = SparkStageMetricsListener.register(ctx);
+
+        final List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(i);
+        }
+        final LongAccumulator evens = ctx.sc().longAccumulator("evens");
+        final String previousStage = SparkStageMetricsListener.setStage(ctx, "count");
+        final long numKeys;
+        try {
+            numKeys = ctx.parallelize(values, 4)
+                    .mapToPair(i -> {
+                        if (i % 2 == 0) {
+                            evens.add(1);
+                        }
+                        return new Tuple2<>(i % 10, 1);
+                    })
+                    .reduceByKey((a, b) -> a + b, 3)
+                    .count();
+        } finally {
+            SparkStageMetricsListener.setStage(ctx, previousStage);
+        }
+        Assert.assertEquals(numKeys, 10);
+
+        final File report = createTempFile("metrics", ".json");
+        listener.writeReport(ctx, report.getAbsolutePath(), null);
+        final String json = FileUtils.readFileToString(report);
+
+        // a shuffle map stage and a result stage, both in the "count" stage
+        Assert.assertEquals(count(json, "\"gatkStage\": \"count\""), 3);
+        Assert.assertTrue(json.contains("\"numSparkStages\": 2"), json);
+        Assert.assertTrue(json.contains("\"numTasks\": 4"), json);
+        Assert.assertTrue(json.contains("\"numTasks\": 3"), json);
+        Assert.assertTrue(json.contains("\"numCompletedTasks\": 7"), json);
+        // the map stage writes up to 10 records per task (one per key), and the result stage reads them all
+        final Matcher shuffleBytes = Pattern.compile("\"shuffleWriteBytes\": (\\d+)").matcher(json);
+        Assert.assertTrue(shuffleBytes.find());
+        Assert.assertTrue(Long.parseLong(shuffleBytes.group(1)) > 0, json);
+        Assert.assertTrue(json.contains("\"accumulators\": {\"evens\": \"500\"}"), json);
+
+        // once the report is written, later jobs are not recorded
+        ctx.parallelize(values, 2).count();
+        Assert.assertEquals(count(listener.toJson(), "\"gatkStage\": \"count\""), 3);
+        Assert.assertFalse(listener.toJson().contains("\"gatkStage\": \"other\""));
+    }
+
+    @CommandLineProgramProperties(
+            summary = "Runs a Spark job and then fails.",
+            oneLineSummary = "Failing Spark program",
+            programGroup = TestProgramGroup.class
+    )
+    public static final class FailingSparkProgram extends SparkCommandLineProgram {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void runPipeline(final JavaSparkContext ctx) {
+            ctx.parallelize(Arrays.asList(1, 2, 3), 2).count();
+            throw new GATKException("pipeline failed");
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testReportWhenPipelineFails() throws IOException {
+        final File report = createTempFile("metrics", ".json");
+        try {
+            new FailingSparkProgram().instanceMain(new String[]{"--sparkMetricsReport", report.getAbsolutePath()});
+            Assert.fail("the pipeline should have failed");
+        } catch (final GATKException e) {
+            Assert.assertEquals(e.getMessage(), "pipeline failed");
+        }
+        final String json = FileUtils.readFileToString(report);
+        Assert.assertTrue(json.contains("\"numSparkStages\": 1"), json);
+        Assert.assertTrue(json.contains("\"numCompletedTasks\": 2"), json);
+    }
+
+    @Test(groups = "spark")
+    public void testReportFailureDoesNotMaskPipelineFailure() throws IOException {
+        // the report can't be written, since its parent is a file rather than a directory
+        final File report = new File(createTempFile("metrics", ".json"), "report.json");
+        try {
+            new FailingSparkProgram().instanceMain(new String[]{"--sparkMetricsReport", report.getAbsolutePath()});
+            Assert.fail("the pipeline should have failed");
+        } catch (final GATKException e) {
+            Assert.assertEquals(e.getMessage(), "pipeline failed");
+            Assert.assertEquals(e.getSuppressed().length, 1);
+            Assert.assertTrue(e.getSuppressed()[0] instanceof UserException.CouldNotCreateOutputFile);
+        }
+        Assert.assertFalse(report.exists());
+    }
+
+    private static int count(final String s, final String substring) {
+        int count = 0;
+        for (int i = s.indexOf(substring); i != -1; i = s.indexOf(substring, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,239 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.seqdoop.hadoop_bam.FileVirtualSplit;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class IndexedBAMInputFormatUnitTest extends BaseTest {
+    private static final String dirBQSR = "src/test/resources/org/broadinstitute/hellbender/tools/BQSR/";
+
+    private File generatedBam;
+
+    /**
+     * Writes a coordinate-sorted BAM, with its BAI, that has many BGZF blocks and so many record starts in its BAI,
+     * followed by unplaced unmapped reads that the BAI doesn't cover.
+     */
+    @BeforeClass
+    public void createIndexedBam() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(2, 1, 1000000);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        generatedBam = createTempFile("indexed", ".bam");
+        final Random random = new Random(7);
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, generatedBam)) {
+            for (int contig = 0; contig < 2; contig++) {
+                for (int i = 0; i < 5000; i++) {
+                    writer.addAlignment(ArtificialReadUtils.createArtificialRead(header, "read" + contig + "_" + i, contig,
+                            1 + i * 150, randomBases(random, 100), Utils.dupBytes((byte) 30, 100)).convertToSAMRecord(header));
+                }
+            }
+            for (int i = 0; i < 2000; i++) {
+                final GATKRead read = ArtificialReadUtils.createArtificialUnmappedRead(header, randomBases(random, 100),
+                        Utils.dupBytes((byte) 30, 100));
+                read.setName("unmapped" + i);
+                writer.addAlignment(read.convertToSAMRecord(header));
+            }
+        }
+        final File bai = new File(generatedBam.getPath().replaceAll("\\.bam$", BAMIndex.BAMIndexSuffix));
+        bai.deleteOnExit();
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = "ACGT".getBytes()[random.nextInt(4)];
+        }
+        return bases;
+    }
+
+    @DataProvider(name = "indexedBams")
+    public Object[][] indexedBams() {
+        return new Object[][]{
+                {dirBQSR + "HiSeq.1mb.1RG.2k_lines.alternate.bam"},
+                {dirBQSR + "CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.noMD.noBQSR.bam"},
+                {generatedBam.getPath()},
+        };
+    }
+
+    @Test(dataProvider = "indexedBams")
+    public void testRecordStartsFromBAI(final String bam) throws IOException {
+        final long[] recordStarts;
+        final File bai = new File(bam + BAMIndex.BAMIndexSuffix).exists() ? new File(bam + BAMIndex.BAMIndexSuffix) :
+                new File(bam.replaceAll("\\.bam$", BAMIndex.BAMIndexSuffix));
+        try (final InputStream in = new FileInputStream(bai)) {
+            recordStarts = IndexedBAMInputFormat.readRecordStarts(in);
+        }
+        Assert.assertTrue(recordStarts.length > 0);
+
+        final Set<Long> actualRecordStarts = new HashSet<>();
+        long firstRecordStart = -1;
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(new File(bam))) {
+            for (final SAMRecord record : reader) {
+                final long start = ((BAMFileSpan) record.getFileSource().getFilePointer()).getFirstOffset();
+                if (firstRecordStart == -1) {
+                    firstRecordStart = start;
+                }
+                actualRecordStarts.add(start);
+            }
+        }
+        Assert.assertEquals(recordStarts[0], firstRecordStart);
+        for (int i = 0; i < recordStarts.length; i++) {
+            Assert.assertTrue(actualRecordStarts.contains(recordStarts[i]), "not a record start: " + recordStarts[i]);
+            if (i > 0) {
+                Assert.assertTrue(recordStarts[i] > recordStarts[i - 1]);
+            }
+        }
+    }
+
+    @Test(dataProvider = "indexedBams", groups = "spark")
+    public void testReadsWithSplitsFromBAI(final String bam) throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final List<String> expectedNames = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(bam))) {
+            for (final SAMRecord record : reader) {
+                expectedNames.add(record.getReadName() + record.getFlags());
+            }
+        }
+        for (final int splitSize : new int[]{10 * 1024, 30 * 1024, 100 * 1024}) {
+            final List<String> names = new ReadsSparkSource(ctx, ValidationStringency.SILENT).getParallelReads(bam, null, splitSize).collect()
+                    .stream().map(read -> read.getName() + read.convertToSAMRecord(null).getFlags()).collect(Collectors.toList());
+            Assert.assertEquals(names, expectedNames, "split size " + splitSize);
+        }
+        ctx.hadoopConfiguration().unset("mapreduce.input.fileinputformat.split.maxsize");
+    }
+
+    @Test(groups = "spark")
+    public void testSplitsFromBAI() throws IOException {
+        // the BAI of the generated BAM gives record starts in most byte ranges, and the splits that start at them are
+        // contiguous; only the unplaced unmapped reads at the end are left to guessing
+        final long[] recordStarts;
+        try (final InputStream in = new FileInputStream(generatedBam.getPath().replaceAll("\\.bam$", BAMIndex.BAMIndexSuffix))) {
+            recordStarts = IndexedBAMInputFormat.readRecordStarts(in);
+        }
+        final List<FileVirtualSplit> splits = getSplits(generatedBam.getAbsolutePath(), 20 * 1024);
+        int numIndexedSplits = 0;
+        while (numIndexedSplits < splits.size() &&
+                Arrays.binarySearch(recordStarts, splits.get(numIndexedSplits).getStartVirtualOffset()) >= 0) {
+            numIndexedSplits++;
+        }
+        Assert.assertTrue(numIndexedSplits > 10);
+        Assert.assertEquals(splits.get(0).getStartVirtualOffset(), recordStarts[0]);
+        for (int i = 1; i < numIndexedSplits; i++) {
+            Assert.assertEquals(splits.get(i).getStartVirtualOffset(), splits.get(i - 1).getEndVirtualOffset());
+        }
+    }
+
+    private static List<FileVirtualSplit> getSplits(final String bam, final long splitSize) throws IOException {
+        final Job job = Job.getInstance(new Configuration());
+        FileInputFormat.setInputPaths(job, new Path(bam));
+        FileInputFormat.setMaxInputSplitSize(job, splitSize);
+        return toFileVirtualSplits(new IndexedBAMInputFormat().getSplits(job));
+    }
+
+    @Test(groups = "spark")
+    public void testSplitsAreCached() throws IOException {
+        final String bam = new File(dirBQSR + "CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.noMD.noBQSR.bam").getAbsolutePath();
+        IndexedBAMInputFormat.clearCachedSplits();
+        final List<FileVirtualSplit> first = getSplits(bam, 20 * 1024);
+        final List<FileVirtualSplit> second = getSplits(bam, 20 * 1024);
+        Assert.assertTrue(first.size() > 1);
+        Assert.assertEquals(second.size(), first.size());
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertNotSame(second.get(i), first.get(i));
+            Assert.assertEquals(second.get(i).getStartVirtualOffset(), first.get(i).getStartVirtualOffset());
+            Assert.assertEquals(second.get(i).getEndVirtualOffset(), first.get(i).getEndVirtualOffset());
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testCachedSplitsAreBounded() throws IOException {
+        final String bam = new File(dirBQSR + "CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.noMD.noBQSR.bam").getAbsolutePath();
+        IndexedBAMInputFormat.clearCachedSplits();
+        // each split size is a different plan
+        for (int i = 0; i <= IndexedBAMInputFormat.MAX_CACHED_SPLIT_PLANS; i++) {
+            getSplits(bam, (20 + i) * 1024);
+        }
+        Assert.assertEquals(IndexedBAMInputFormat.getNumCachedSplitPlans(), IndexedBAMInputFormat.MAX_CACHED_SPLIT_PLANS);
+        IndexedBAMInputFormat.clearCachedSplits();
+        Assert.assertEquals(IndexedBAMInputFormat.getNumCachedSplitPlans(), 0);
+    }
+
+    @Test
+    public void testComputeSplits() throws IOException {
+        final Path path = new Path("file:///test.bam");
+        final List<FileSplit> fileSplits = Arrays.asList(
+                new FileSplit(path, 0, 100, null), new FileSplit(path, 100, 100, null),
+                new FileSplit(path, 200, 100, null), new FileSplit(path, 300, 100, null));
+        final long[] recordStarts = {50L << 16, 60L << 16, (250L << 16) | 5};
+
+        // the last byte range is after the last record start, so it is guessed; if no record is found in it, guessing
+        // starts from the range before it
+        final List<FileVirtualSplit> splits = IndexedBAMInputFormat.computeSplits(fileSplits, recordStarts, 400,
+                tail -> {
+                    if (tail.size() == 1) {
+                        Assert.assertEquals(tail, fileSplits.subList(3, 4));
+                        throw new IOException("no reads in first split");
+                    }
+                    Assert.assertEquals(tail, fileSplits.subList(2, 4));
+                    return Arrays.asList(new FileVirtualSplit(path, (210L << 16) | 3, (300L << 16) | 0xffff, null),
+                            new FileVirtualSplit(path, (330L << 16) | 2, (400L << 16) | 0xffff, null));
+                });
+        Assert.assertEquals(getOffsets(splits), Arrays.asList(
+                50L << 16, (210L << 16) | 3,
+                (210L << 16) | 3, (300L << 16) | 0xffff,
+                (330L << 16) | 2, (400L << 16) | 0xffff));
+
+        // if no split is guessed, the last split runs to the end of the file
+        final List<FileVirtualSplit> noTail = IndexedBAMInputFormat.computeSplits(fileSplits, recordStarts, 400, tail -> Collections.emptyList());
+        Assert.assertEquals(getOffsets(noTail), Arrays.asList(
+                50L << 16, (250L << 16) | 5,
+                (250L << 16) | 5, (400L << 16) | 0xffff));
+    }
+
+    private static List<Long> getOffsets(final List<FileVirtualSplit> splits) {
+        final List<Long> offsets = new ArrayList<>();
+        for (final FileVirtualSplit split : splits) {
+            offsets.add(split.getStartVirtualOffset());
+            offsets.add(split.getEndVirtualOffset());
+        }
+        return offsets;
+    }
+
+    private static List<FileVirtualSplit> toFileVirtualSplits(final List<? extends org.apache.hadoop.mapreduce.InputSplit> splits) {
+        return splits.stream().map(split -> (FileVirtualSplit) split).collect(Collectors.toList());
+    }
+}
@@ -1,9 +1,18 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
 
+import htsjdk.samtools.AbstractBAMFileIndex;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexer;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -15,6 +24,7 @@ import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
 import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
@@ -34,6 +44,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ReadsSparkSinkUnitTest extends BaseTest {
     private MiniDFSCluster cluster;
@@ -137,6 +148,113 @@ public class ReadsSparkSinkUnitTest extends BaseTest {
         Assert.assertEquals(rddParallelReads.count(), rddParallelReads2.count());
     }
 
+    @DataProvider(name = "loadReadsIndexed")
+    public Object[][] loadReadsIndexed() {
+        return new Object[][]{
+                {testDataDir + "tools/BQSR/HiSeq.1mb.1RG.2k_lines.bam", "ReadsSparkSinkUnitTest1_indexed"},
+                {testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam", "ReadsSparkSinkUnitTest3_indexed"},
+        };
+    }
+
+    @Test(dataProvider = "loadReadsIndexed", groups = "spark")
+    public void testIndexMergedFromParts(String inputBam, String outputFileName) throws IOException {
+        final File outputFile = createTempFile(outputFileName, ".bam");
+        final File outputIndex = new File(outputFile.getAbsolutePath() + BAMIndex.BAMIndexSuffix);
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null);
+
+        // write several parts, so that the index has to be merged
+        ReadsSparkSink.writeReads(ctx, outputFile.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.SINGLE, 3);
+        Assert.assertTrue(outputIndex.exists());
+
+        // compare queries against the merged index with the same queries against an index of the whole file
+        final File expectedIndex = createTempFile(outputFileName + "_expected", BAMIndex.BAMIndexSuffix);
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        try (final SamReader reader = factory.enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(outputFile)) {
+            BAMIndexer.createIndex(reader, expectedIndex);
+        }
+        try (final SamReader actualReader = factory.open(SamInputResource.of(outputFile).index(outputIndex));
+             final SamReader expectedReader = factory.open(SamInputResource.of(outputFile).index(expectedIndex))) {
+            Assert.assertTrue(actualReader.hasIndex());
+            final AbstractBAMFileIndex actual = (AbstractBAMFileIndex) actualReader.indexing().getIndex();
+            final AbstractBAMFileIndex expected = (AbstractBAMFileIndex) expectedReader.indexing().getIndex();
+            for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+                final int index = sequence.getSequenceIndex();
+                Assert.assertEquals(actual.getMetaData(index).getAlignedRecordCount(), expected.getMetaData(index).getAlignedRecordCount());
+                Assert.assertEquals(actual.getMetaData(index).getUnalignedRecordCount(), expected.getMetaData(index).getUnalignedRecordCount());
+            }
+            Assert.assertEquals(actual.getNoCoordinateCount(), expected.getNoCoordinateCount());
+
+            final List<SAMRecord> reads = new ArrayList<>();
+            try (final SAMRecordIterator iterator = expectedReader.iterator()) {
+                iterator.forEachRemaining(reads::add);
+            }
+            Assert.assertEquals(reads.size(), rddParallelReads.count());
+            for (final SAMRecord read : reads.subList(0, Math.min(reads.size(), 500))) {
+                if (read.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    final int start = read.getAlignmentStart();
+                    for (final int end : new int[]{start, start + 100, start + 20000}) {
+                        Assert.assertEquals(queryReads(actualReader, read.getReferenceName(), start, end),
+                                queryReads(expectedReader, read.getReferenceName(), start, end));
+                    }
+                }
+            }
+            Assert.assertEquals(queryUnmappedReads(actualReader), queryUnmappedReads(expectedReader));
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testFirstReadOfEachPartFoundWithMergedIndex() throws IOException {
+        final File outputFile = createTempFile("ReadsSparkSinkUnitTest_firstReads", ".bam");
+        final File outputIndex = new File(outputFile.getAbsolutePath() + BAMIndex.BAMIndexSuffix);
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        // Two reads in each 16kb linear index window: a short one, in the window's own bin, followed by one that
+        // crosses into the next window, and so is in a bigger bin. The short read's chunk ends where the long one
+        // starts, so if the linear index for the window skipped to the long read the short one couldn't be found.
+        // With many parts, plenty of the parts start with a short read, in a window that no earlier part covers.
+        final int windowSize = 1 << 14;
+        final int nWindows = 500;
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(1, 1, (nWindows + 1) * windowSize);
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final List<GATKRead> reads = new ArrayList<>(2 * nWindows);
+        for (int window = 0; window != nWindows; ++window) {
+            reads.add(ArtificialReadUtils.createArtificialRead(header, "short" + window, 0, window * windowSize + 100, 100));
+            reads.add(ArtificialReadUtils.createArtificialRead(header, "long" + window, 0, (window + 1) * windowSize - 50, 100));
+        }
+        ReadsSparkSink.writeReads(ctx, outputFile.getAbsolutePath(), null, ctx.parallelize(reads, 4), header, ReadsWriteFormat.SINGLE, 20);
+
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        try (final SamReader reader = factory.open(SamInputResource.of(outputFile).index(outputIndex))) {
+            for (final GATKRead read : reads) {
+                final List<String> found = queryReads(reader, read.getContig(), read.getStart(), read.getStart()).stream()
+                        .map(samString -> samString.substring(0, samString.indexOf('\t')))
+                        .collect(Collectors.toList());
+                Assert.assertTrue(found.contains(read.getName()),
+                        "read " + read.getName() + " at " + read.getContig() + ":" + read.getStart() + " not found with the merged index");
+            }
+        }
+    }
+
+    private static List<String> queryReads(final SamReader reader, final String contig, final int start, final int end) {
+        try (final SAMRecordIterator iterator = reader.queryOverlapping(contig, start, end)) {
+            final List<String> reads = new ArrayList<>();
+            iterator.forEachRemaining(read -> reads.add(read.getSAMString()));
+            return reads;
+        }
+    }
+
+    private static List<String> queryUnmappedReads(final SamReader reader) {
+        try (final SAMRecordIterator iterator = reader.queryUnmapped()) {
+            final List<String> reads = new ArrayList<>();
+            iterator.forEachRemaining(read -> reads.add(read.getSAMString()));
+            return reads;
+        }
+    }
+
     private static void assertReadsAreSorted(SAMFileHeader header, List<GATKRead> writtenReads) {
         final SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
         // Assert that the reads are sorted.
@@ -0,0 +1,101 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceFileSource;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceWindowFunctions;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ReferenceMappedTwoBitSourceUnitTest extends BaseTest {
+    private static final String fastaRefURL = publicTestDir + "human_g1k_v37.chr17_1Mb.fasta";
+    private static final String twoBitRefURL = publicTestDir + "human_g1k_v37.chr17_1Mb.2bit";
+    private static final int contigLength = 1000000;
+
+    @DataProvider(name = "intervals")
+    public Object[][] intervals() {
+        return new Object[][]{
+                {new SimpleInterval("17", 1, 1)},
+                {new SimpleInterval("17", 1, 100)},
+                // the contig starts with a run of Ns
+                {new SimpleInterval("17", 1, 100000)},
+                {new SimpleInterval("17", 2, 9)},
+                {new SimpleInterval("17", 3, 3)},
+                {new SimpleInterval("17", 69000, 70000)},
+                {new SimpleInterval("17", 600001, 600005)},
+                {new SimpleInterval("17", contigLength - 10, contigLength)},
+                {new SimpleInterval("17", 1, contigLength)},
+        };
+    }
+
+    @Test(dataProvider = "intervals")
+    public void testBasesMatchFasta(final SimpleInterval interval) throws IOException {
+        final ReferenceBases expected = new ReferenceFileSource(fastaRefURL).getReferenceBases(null, interval);
+        Assert.assertEquals(new ReferenceMappedTwoBitSource(null, twoBitRefURL).getReferenceBases(null, interval), expected);
+        Assert.assertEquals(new ReferenceTwoBitSource(null, twoBitRefURL).getReferenceBases(null, interval), expected);
+    }
+
+    @Test
+    public void testRandomIntervalsMatchTwoBitSource() throws IOException {
+        final ReferenceMappedTwoBitSource mapped = new ReferenceMappedTwoBitSource(null, twoBitRefURL);
+        final ReferenceTwoBitSource twoBit = new ReferenceTwoBitSource(null, twoBitRefURL);
+        final Random random = new Random(17);
+        for (int i = 0; i < 1000; i++) {
+            final int start = 1 + random.nextInt(contigLength);
+            final SimpleInterval interval = new SimpleInterval("17", start, start + random.nextInt(500));
+            Assert.assertEquals(mapped.getReferenceBases(null, interval), twoBit.getReferenceBases(null, interval), interval.toString());
+        }
+    }
+
+    @Test
+    public void testQueryPastContigEnd() throws IOException {
+        final ReferenceBases bases = new ReferenceMappedTwoBitSource(null, twoBitRefURL)
+                .getReferenceBases(null, new SimpleInterval("17", contigLength - 99, contigLength + 100));
+        Assert.assertEquals(bases.getInterval(), new SimpleInterval("17", contigLength - 99, contigLength));
+        Assert.assertEquals(bases.getBases().length, 100);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownContig() throws IOException {
+        new ReferenceMappedTwoBitSource(null, twoBitRefURL).getReferenceBases(null, new SimpleInterval("20", 1, 10));
+    }
+
+    @Test
+    public void testSequenceDictionary() throws IOException {
+        Assert.assertEquals(new ReferenceMappedTwoBitSource(null, twoBitRefURL).getReferenceSequenceDictionary(null),
+                new ReferenceTwoBitSource(null, twoBitRefURL).getReferenceSequenceDictionary(null));
+    }
+
+    @Test(groups = "spark")
+    public void testBroadcast() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final ReferenceMultiSource reference = new ReferenceMultiSource((PipelineOptions) null,
+                twoBitRefURL, ReferenceWindowFunctions.IDENTITY_FUNCTION, true);
+        Assert.assertTrue(reference.isCompatibleWithSparkBroadcast());
+        final Broadcast<ReferenceMultiSource> bReference = ctx.broadcast(reference);
+
+        final List<SimpleInterval> intervals = new ArrayList<>();
+        for (int start = 1; start < contigLength; start += 9973) {
+            intervals.add(new SimpleInterval("17", start, start + 150));
+        }
+        final List<ReferenceBases> actual = ctx.parallelize(intervals, 4)
+                .map(interval -> bReference.getValue().getReferenceBases(null, interval)).collect();
+        final ReferenceTwoBitSource twoBit = new ReferenceTwoBitSource(null, twoBitRefURL);
+        for (int i = 0; i < intervals.size(); i++) {
+            Assert.assertEquals(actual.get(i), twoBit.getReferenceBases(null, intervals.get(i)));
+        }
+        bReference.destroy();
+    }
+}
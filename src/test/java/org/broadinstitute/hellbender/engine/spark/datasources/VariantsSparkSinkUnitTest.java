@@ -1,9 +1,19 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.seekablestream.SeekablePathStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFHeader;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -13,6 +23,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
@@ -27,7 +38,11 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.testng.Assert.assertEquals;
 
@@ -51,6 +66,7 @@ public final class VariantsSparkSinkUnitTest extends BaseTest {
         return new Object[][]{
                 {hg19_chr1_1M_dbSNP, ".vcf"},
                 {hg19_chr1_1M_dbSNP, ".vcf.bgz"},
+                {hg19_chr1_1M_dbSNP, ".vcf.gz"},
                 {hg19_chr1_1M_dbSNP_modified, ".vcf"},
         };
     }
@@ -83,6 +99,93 @@ public final class VariantsSparkSinkUnitTest extends BaseTest {
         assertSingleShardedWritingWorks(vcf, outputUrl);
     }
 
+    @Test(groups = "spark")
+    public void testIndexMergedFromParts() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final File outputFile = createTempFile(outputFileName, VariantsSparkSink.BLOCK_COMPRESSED_VCF_EXTENSION);
+        final File outputIndex = new File(outputFile.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+        outputIndex.deleteOnExit();
+
+        final JavaRDD<VariantContext> variants = new VariantsSparkSource(ctx).getParallelVariantContexts(hg19_chr1_1M_dbSNP, null);
+        VariantsSparkSink.writeVariants(ctx, outputFile.getAbsolutePath(), variants, getHeader(hg19_chr1_1M_dbSNP), 3);
+        Assert.assertTrue(outputIndex.exists());
+
+        // query the output using the merged index, and check that every variant overlapping each interval is found
+        final List<VariantContext> expectedVariants = readVariants(hg19_chr1_1M_dbSNP);
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                outputFile.getAbsolutePath(), outputIndex.getAbsolutePath(), new VCFCodec(), true)) {
+            for (int i = 0; i < expectedVariants.size(); i += 100) {
+                final VariantContext variant = expectedVariants.get(i);
+                final SimpleInterval interval = new SimpleInterval(variant.getContig(), variant.getStart(), variant.getStart() + 5000);
+                final List<VariantContext> expected = expectedVariants.stream().filter(interval::overlaps).collect(Collectors.toList());
+                try (final CloseableTribbleIterator<VariantContext> it = reader.query(interval.getContig(), interval.getStart(), interval.getEnd())) {
+                    VariantContextTestUtils.assertEqualVariants(Lists.newArrayList(it.iterator()), expected);
+                }
+            }
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testFirstVariantOfEachPartFoundWithMergedIndex() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final File outputFile = createTempFile(outputFileName + "_firstVariants", VariantsSparkSink.BLOCK_COMPRESSED_VCF_EXTENSION);
+        final File outputIndex = new File(outputFile.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+        outputIndex.deleteOnExit();
+
+        // Two variants in each 16kb linear index window: a SNP, in the window's own bin, followed by a deletion that
+        // crosses into the next window, and so is in a bigger bin. The SNP's chunk ends where the deletion starts, so
+        // if the linear index for the window skipped to the deletion the SNP couldn't be found. With many parts,
+        // plenty of the parts start with a SNP, in a window that no earlier part covers.
+        final int windowSize = 1 << 14;
+        final int nWindows = 500;
+        final VCFHeader header = new VCFHeader();
+        header.setSequenceDictionary(new SAMSequenceDictionary(
+                Collections.singletonList(new SAMSequenceRecord("1", (nWindows + 1) * windowSize))));
+        final String deletedBases = String.join("", Collections.nCopies(100, "A"));
+        final List<VariantContext> variants = new ArrayList<>(2 * nWindows);
+        for (int window = 0; window != nWindows; ++window) {
+            final int snpStart = window * windowSize + 100;
+            variants.add(new VariantContextBuilder("test", "1", snpStart, snpStart,
+                    Arrays.asList(Allele.create("A", true), Allele.create("C"))).id("snp" + window).make());
+            final int deletionStart = (window + 1) * windowSize - 50;
+            variants.add(new VariantContextBuilder("test", "1", deletionStart, deletionStart + deletedBases.length() - 1,
+                    Arrays.asList(Allele.create(deletedBases, true), Allele.create("A"))).id("del" + window).make());
+        }
+        VariantsSparkSink.writeVariants(ctx, outputFile.getAbsolutePath(), ctx.parallelize(variants, 4), header, 20);
+
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                outputFile.getAbsolutePath(), outputIndex.getAbsolutePath(), new VCFCodec(), true)) {
+            for (final VariantContext variant : variants) {
+                try (final CloseableTribbleIterator<VariantContext> it = reader.query(variant.getContig(), variant.getStart(), variant.getStart())) {
+                    Assert.assertTrue(Lists.newArrayList(it.iterator()).stream().anyMatch(vc -> vc.getID().equals(variant.getID())),
+                            "variant " + variant.getID() + " at " + variant.getContig() + ":" + variant.getStart() + " not found with the merged index");
+                }
+            }
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testEmptyIndexedVCF() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final File outputFile = createTempFile(outputFileName + "_empty", VariantsSparkSink.BLOCK_COMPRESSED_VCF_EXTENSION);
+        final File outputIndex = new File(outputFile.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
+        outputIndex.deleteOnExit();
+
+        VariantsSparkSink.writeVariants(ctx, outputFile.getAbsolutePath(), ctx.emptyRDD(), getHeader(hg19_chr1_1M_dbSNP), 3);
+        Assert.assertTrue(outputIndex.exists());
+
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                outputFile.getAbsolutePath(), outputIndex.getAbsolutePath(), new VCFCodec(), true)) {
+            Assert.assertTrue(reader.getSequenceNames().isEmpty());
+            try (final CloseableTribbleIterator<VariantContext> it = reader.iterator()) {
+                Assert.assertFalse(it.hasNext());
+            }
+            try (final CloseableTribbleIterator<VariantContext> it = reader.query("1", 1, 1000000)) {
+                Assert.assertFalse(it.hasNext());
+            }
+        }
+    }
+
     private void assertSingleShardedWritingWorks(String vcf, String outputPath) throws IOException {
         JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
 
@@ -0,0 +1,98 @@
+package org.broadinstitute.hellbender.tools.picard.sam.markduplicates;
+
+import org.broadinstitute.hellbender.tools.picard.sam.markduplicates.EstimateLibraryComplexity.PairedReadSequence;
+import org.broadinstitute.hellbender.tools.picard.sam.markduplicates.EstimateLibraryComplexity.PigeonholeIndex;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class EstimateLibraryComplexityUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "groups")
+    public Object[][] groups() {
+        return new Object[][]{
+                {101, 101, 0.03},
+                {76, 151, 0.03},
+                {101, 101, 0.08},
+                {101, 101, 0.2}, // segments too short to index
+        };
+    }
+
+    @Test(dataProvider = "groups")
+    public void testPigeonholeIndexKeepsAllMatches(final int read1Length, final int read2Length, final double maxDiffRate) {
+        final EstimateLibraryComplexity elc = new EstimateLibraryComplexity();
+        final List<PairedReadSequence> group = makeGroup(new Random(13), 300, read1Length, read2Length, elc.MIN_IDENTICAL_BASES);
+
+        final PigeonholeIndex index = PigeonholeIndex.create(group, elc.MIN_IDENTICAL_BASES, maxDiffRate);
+        if (index == null) {
+            Assert.assertTrue((read1Length + read2Length - 2 * elc.MIN_IDENTICAL_BASES) /
+                    ((int) Math.floor((read1Length + read2Length) * maxDiffRate) + 1) < EstimateLibraryComplexity.MIN_INDEX_SEGMENT_LENGTH);
+            return;
+        }
+
+        int numMatches = 0;
+        for (int i = 0; i < group.size(); ++i) {
+            final int[] candidates = index.candidatesAfter(i);
+            final int[] sorted = candidates.clone();
+            Arrays.sort(sorted);
+            Assert.assertEquals(candidates, sorted);
+            for (int j = i + 1; j < group.size(); ++j) {
+                if (elc.matches(group.get(i), group.get(j), maxDiffRate)) {
+                    ++numMatches;
+                    Assert.assertTrue(Arrays.binarySearch(candidates, j) >= 0, "matching pair " + i + ", " + j + " was filtered out");
+                }
+            }
+        }
+        Assert.assertTrue(numMatches > 0);
+    }
+
+    /**
+     * A group of read pairs sharing a prefix, made of a few founders, each copied several times with a random
+     * number of substitutions so that both matching and non-matching copies are present.
+     */
+    private static List<PairedReadSequence> makeGroup(final Random random, final int size, final int read1Length,
+                                                      final int read2Length, final int prefixLength) {
+        final byte[] prefix = randomBases(random, prefixLength);
+        final List<PairedReadSequence> group = new ArrayList<>();
+        PairedReadSequence founder = null;
+        for (int i = 0; i < size; ++i) {
+            final PairedReadSequence prs = new PairedReadSequence();
+            if (founder == null || random.nextInt(5) == 0) {
+                prs.read1 = randomBases(random, read1Length);
+                prs.read2 = randomBases(random, read2Length);
+                System.arraycopy(prefix, 0, prs.read1, 0, prefixLength);
+                System.arraycopy(prefix, 0, prs.read2, 0, prefixLength);
+                founder = prs;
+            } else {
+                prs.read1 = mutate(random, founder.read1, prefixLength);
+                prs.read2 = mutate(random, founder.read2, prefixLength);
+            }
+            group.add(prs);
+        }
+        return group;
+    }
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        }
+        return bases;
+    }
+
+    private static byte[] mutate(final Random random, final byte[] bases, final int prefixLength) {
+        final byte[] mutated = bases.clone();
+        final int numMutations = random.nextInt(Math.max(1, bases.length / 15));
+        for (int i = 0; i < numMutations; ++i) {
+            mutated[prefixLength + random.nextInt(bases.length - prefixLength)] = BASES[random.nextInt(BASES.length)];
+        }
+        return mutated;
+    }
+}
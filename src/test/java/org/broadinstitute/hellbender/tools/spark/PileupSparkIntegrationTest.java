@@ -93,6 +93,27 @@ public final class PileupSparkIntegrationTest extends CommandLineProgramTest {
         IntegrationTestSpec.assertEqualTextFiles(new File(out, "part-00000"), expected);
     }
 
+    @Test(dataProvider = "shuffle")
+    public void testFeaturesPileupWithFeaturesInMemory(boolean useShuffle) throws Exception {
+        final File out = createTempFile();
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.add("--input");
+        args.add(NA12878_20_21_WGS_bam);
+        args.add("--output");
+        args.add(out.getAbsolutePath());
+        args.add("--reference");
+        args.add(b37_reference_20_21);
+        args.add("-L 20:10000092-10000112");
+        args.add("-metadata " + dbsnp_138_b37_20_21_vcf);
+        args.add("--loadFeaturesIntoMemory");
+        if (useShuffle) {
+            args.add("--shuffle");
+        }
+        this.runCommandLine(args.getArgsArray());
+        File expected = new File(TEST_DATA_DIR, "expectedFeaturesPileup.txt");
+        IntegrationTestSpec.assertEqualTextFiles(new File(out, "part-00000"), expected);
+    }
+
     @Test(dataProvider = "shuffle")
     public void testInsertLengthPileup(boolean useShuffle) throws Exception {
         final File out = createTempFile();
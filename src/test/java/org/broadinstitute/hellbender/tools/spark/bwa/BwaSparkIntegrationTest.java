@@ -4,6 +4,7 @@ import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.broadinstitute.hellbender.utils.test.SamAssertionUtils;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
@@ -15,8 +16,16 @@ public final class BwaSparkIntegrationTest extends CommandLineProgramTest {
         return BwaSpark.class.getSimpleName();
     }
 
-    @Test
-    public void test() throws Exception {
+    @DataProvider(name = "readsPerBatch")
+    public Object[][] readsPerBatch() {
+        return new Object[][]{
+                {BwaSparkEngine.DEFAULT_READS_PER_BATCH},
+                {1000} // several batches in the partition
+        };
+    }
+
+    @Test(dataProvider = "readsPerBatch")
+    public void test(final int readsPerBatch) throws Exception {
         final File expectedSam = getTestFile("bwa.sam");
 
         final File ref = getTestFile("ref.fa");
@@ -34,6 +43,7 @@ public final class BwaSparkIntegrationTest extends CommandLineProgramTest {
         args.add("numReducers=1");
         args.addOutput(output);
         args.addFileArgument("bwamemIndexImage", getTestFile("ref.fa.img"));
+        args.addArgument("readsPerAlignmentBatch", String.valueOf(readsPerBatch));
         this.runCommandLine(args.getArgsArray());
 
         SamAssertionUtils.assertSamsEqual(new File(output, "part-r-00000.bam"), expectedSam);
@@ -1,13 +1,13 @@
 package org.broadinstitute.hellbender.tools.spark.pathseq;
 
 import htsjdk.samtools.SAMUtils;
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.tools.spark.sv.ContainsKmerReadFilterSpark;
-import org.broadinstitute.hellbender.tools.spark.sv.SVKmer;
 import org.broadinstitute.hellbender.tools.spark.sv.SVKmerShort;
 import org.broadinstitute.hellbender.tools.spark.sv.SVKmerizer;
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
 import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
@@ -16,23 +16,24 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import java.util.ArrayList;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Arrays;
 
 public class ContainsKmerReadFilterTest extends BaseTest {
 
     private final int kSize = 11;
-    private HopscotchSet<SVKmer> kmerSet;
+    private LongHashSet kmerSet;
 
     @BeforeMethod
     public void before() {
         final String kmerRef = "ATCGAGCGCTAGCGATGGCGCGCGATCGCGCTAGCGCGCTAGC";
         final SVKmerizer kmerizer = new SVKmerizer(kmerRef.getBytes(),kSize,new SVKmerShort(kSize));
-        final ArrayList<SVKmer> kmerList = new ArrayList<>();
+        kmerSet = new LongHashSet();
         while (kmerizer.hasNext()) {
-            kmerList.add(kmerizer.next());
+            kmerSet.add(((SVKmerShort)kmerizer.next()).getValLow());
         }
-        kmerSet = new HopscotchSet<>(kmerList);
     }
 
     @DataProvider(name = "sequenceStrings")
@@ -58,4 +59,66 @@ public class ContainsKmerReadFilterTest extends BaseTest {
         Assert.assertEquals(test_out,test_i);
     }
 
+    @Test(dataProvider = "sequenceStrings")
+    public void testMappedLibrary(final String bases_in, final Boolean test_out) throws Exception {
+        final File libraryFile = writeLibrary();
+        try {
+            final ContainsKmerReadFilterSpark filter =
+                    new ContainsKmerReadFilterSpark(libraryFile.getAbsolutePath(), null, kSize);
+            final byte[] quals = bases_in.getBytes().clone();
+            Arrays.fill(quals,(byte)'I');
+            SAMUtils.fastqToPhred(quals);
+            GATKRead read_in = ArtificialReadUtils.createArtificialRead(bases_in.getBytes(), quals, "*");
+            Assert.assertEquals(filter.call(read_in), test_out);
+        } finally {
+            MappedKmerLibrary.closeInstance();
+        }
+    }
+
+    @Test(dataProvider = "sequenceStrings")
+    public void testSerializedKmerSetFilter(final String bases_in, final Boolean test_out) {
+        final byte[] quals = bases_in.getBytes().clone();
+        Arrays.fill(quals,(byte)'I');
+        SAMUtils.fastqToPhred(quals);
+        GATKRead read_in = ArtificialReadUtils.createArtificialRead(bases_in.getBytes(), quals, "*");
+        final ContainsKmerReadFilter filter = SerializationUtils.clone(new ContainsKmerReadFilter(kmerSet, kSize));
+        Assert.assertEquals(filter.test(read_in), test_out.booleanValue());
+    }
+
+    @Test(dataProvider = "sequenceStrings")
+    public void testSerializedMappedLibraryFilter(final String bases_in, final Boolean test_out) throws Exception {
+        final File libraryFile = writeLibrary();
+        try {
+            final byte[] quals = bases_in.getBytes().clone();
+            Arrays.fill(quals,(byte)'I');
+            SAMUtils.fastqToPhred(quals);
+            GATKRead read_in = ArtificialReadUtils.createArtificialRead(bases_in.getBytes(), quals, "*");
+            final ContainsKmerReadFilter filter = new ContainsKmerReadFilter(libraryFile.getAbsolutePath(), null, kSize);
+            Assert.assertEquals(filter.test(read_in), test_out.booleanValue());
+            // the mapped library isn't serialized, but is found again by the copy
+            MappedKmerLibrary.closeInstance();
+            final ContainsKmerReadFilter copy = SerializationUtils.clone(filter);
+            Assert.assertEquals(copy.test(read_in), test_out.booleanValue());
+        } finally {
+            MappedKmerLibrary.closeInstance();
+        }
+    }
+
+    private File writeLibrary() throws Exception {
+        final long[] kmers = kmerSet.toArray();
+        final int nKmers = SortedKmerLibrary.sortAndRemoveDuplicates(kmers, kmers.length);
+        final int prefixBits = 3;
+        final long[] bucketCounts = new long[SortedKmerLibrary.getNBuckets(prefixBits)];
+        for (int idx = 0; idx != nKmers; ++idx) {
+            bucketCounts[SortedKmerLibrary.getBucket(kmers[idx], kSize, prefixBits)] += 1;
+        }
+        final File libraryFile = createTempFile("kmerLib", ".bin");
+        try (final DataOutputStream output = new DataOutputStream(new FileOutputStream(libraryFile))) {
+            SortedKmerLibrary.writeHeader(output, kSize, prefixBits, nKmers);
+            SortedKmerLibrary.writeKmers(output, kmers, nKmers);
+            SortedKmerLibrary.writeIndex(output, bucketCounts);
+        }
+        return libraryFile;
+    }
+
 }
\ No newline at end of file
@@ -1,16 +1,11 @@
 package org.broadinstitute.hellbender.tools.spark.pathseq;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
-import org.broadinstitute.hellbender.tools.spark.sv.SVKmer;
-import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.testng.annotations.Test;
-import org.apache.commons.io.FileUtils;
 import org.testng.Assert;
 import java.io.File;
-import java.util.Set;
 
 public class PathSeqKmerSparkIntegrationTest extends CommandLineProgramTest {
 
@@ -19,7 +14,6 @@ public class PathSeqKmerSparkIntegrationTest extends CommandLineProgramTest {
         return PathSeqKmerSpark.class.getSimpleName();
     }
 
-    @SuppressWarnings("unchecked")
     @Test(groups = "spark")
     public void test() throws Exception {
         final File expectedFile = getTestFile("kmer.hss");
@@ -33,14 +27,9 @@ public class PathSeqKmerSparkIntegrationTest extends CommandLineProgramTest {
         args.addOutput(output);
         this.runCommandLine(args.getArgsArray());
 
-        Input input_expected = new Input(FileUtils.openInputStream(expectedFile));
-        Input input_test = new Input(FileUtils.openInputStream(output));
-
-        Kryo kryo=new Kryo();
-        kryo.setReferences(false);
-
-        Set<SVKmer> expectedKmerLib = (HopscotchSet<SVKmer>)kryo.readClassAndObject(input_expected);
-        Set<SVKmer> testKmerLib = (HopscotchSet<SVKmer>)kryo.readClassAndObject(input_test);
+        // the expected library was written as a HopscotchSet of SVKmerShorts, and is converted as it's read
+        final LongHashSet expectedKmerLib = PathSeqFilterSpark.readKmerLibrary(expectedFile.getAbsolutePath(), 31, null);
+        final LongHashSet testKmerLib = PathSeqFilterSpark.readKmerLibrary(output.getAbsolutePath(), 31, null);
 
         Assert.assertEquals(expectedKmerLib,testKmerLib);
     }
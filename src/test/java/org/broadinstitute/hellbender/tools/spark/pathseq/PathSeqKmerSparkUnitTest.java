@@ -0,0 +1,144 @@
+package org.broadinstitute.hellbender.tools.spark.pathseq;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmerShort;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmerizer;
+import org.broadinstitute.hellbender.tools.spark.utils.LongHashSet;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class PathSeqKmerSparkUnitTest extends BaseTest {
+    private static final int KMER_SIZE = 31;
+
+    @Test
+    public void testSortAndRemoveDuplicates() {
+        final long[] kmers = {5L, 3L, 5L, 1L, 3L, 3L, 9L, 42L};
+        Assert.assertEquals(SortedKmerLibrary.sortAndRemoveDuplicates(kmers, 7), 4);
+        Assert.assertEquals(kmers[0], 1L);
+        Assert.assertEquals(kmers[1], 3L);
+        Assert.assertEquals(kmers[2], 5L);
+        Assert.assertEquals(kmers[3], 9L);
+        Assert.assertEquals(SortedKmerLibrary.sortAndRemoveDuplicates(kmers, 0), 0);
+    }
+
+    @Test(groups = "spark")
+    public void testDistributedLibraryBuild() throws IOException {
+        // random sequences, plus some repeats, so that the same kmers turn up in many partitions
+        final Random rng = new Random(0xdeadbeef);
+        final byte[] bases = {'A', 'C', 'G', 'T'};
+        final List<byte[]> seqs = new ArrayList<>();
+        for ( int seqIdx = 0; seqIdx != 200; ++seqIdx ) {
+            final byte[] seq = new byte[500];
+            for ( int idx = 0; idx != seq.length; ++idx ) {
+                seq[idx] = bases[rng.nextInt(bases.length)];
+            }
+            seqs.add(seq);
+        }
+        for ( int seqIdx = 0; seqIdx != 100; ++seqIdx ) {
+            seqs.add(seqs.get(rng.nextInt(seqs.size())).clone());
+        }
+        final LongHashSet expectedKmers = new LongHashSet();
+        for ( final byte[] seq : seqs ) {
+            SVKmerizer.stream(seq, KMER_SIZE, new SVKmerShort(KMER_SIZE))
+                    .forEach(kmer -> expectedKmers.add(((SVKmerShort)kmer.canonical(KMER_SIZE)).getValLow()));
+        }
+
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final JavaRDD<byte[]> refRDD = ctx.parallelize(seqs, 7);
+        final File output = createTempFile("kmerLib", ".bin");
+        PathSeqKmerSpark.writeLibrary(refRDD, KMER_SIZE, output.getAbsolutePath(), null);
+        Assert.assertFalse(new File(output.getAbsolutePath() + ".parts").exists());
+
+        try ( final DataInputStream input = new DataInputStream(new FileInputStream(output)) ) {
+            Assert.assertEquals(input.readInt(), SortedKmerLibrary.MAGIC);
+            final long[] kmers = SortedKmerLibrary.read(input, output.getPath(), KMER_SIZE).getKmers();
+            Assert.assertEquals(kmers.length, expectedKmers.size());
+            for ( int idx = 1; idx < kmers.length; ++idx ) {
+                Assert.assertTrue(kmers[idx - 1] < kmers[idx]);
+            }
+        }
+        Assert.assertTrue(PathSeqFilterSpark.isSortedKmerLibrary(output.getAbsolutePath(), KMER_SIZE, null));
+        Assert.assertEquals(PathSeqFilterSpark.readKmerLibrary(output.getAbsolutePath(), KMER_SIZE, null), expectedKmers);
+
+        // the mapped library must agree with the set for kmers that are present, and for random kmers that aren't
+        final MappedKmerLibrary mappedLibrary = MappedKmerLibrary.getInstance(output.getAbsolutePath(), KMER_SIZE, null);
+        try {
+            Assert.assertEquals(mappedLibrary.size(), expectedKmers.size());
+            expectedKmers.forEach(kmer -> Assert.assertTrue(mappedLibrary.contains(kmer)));
+            final long kmerMask = (1L << (2 * KMER_SIZE)) - 1;
+            for ( int idx = 0; idx != 100000; ++idx ) {
+                final long kmer = rng.nextLong() & kmerMask;
+                Assert.assertEquals(mappedLibrary.contains(kmer), expectedKmers.contains(kmer));
+            }
+        } finally {
+            MappedKmerLibrary.closeInstance();
+        }
+    }
+
+    @Test(groups = "spark")
+    public void testEmptyReference() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final File output = createTempFile("kmerLib", ".bin");
+        PathSeqKmerSpark.writeLibrary(ctx.emptyRDD(), KMER_SIZE, output.getAbsolutePath(), null);
+        Assert.assertTrue(PathSeqFilterSpark.isSortedKmerLibrary(output.getAbsolutePath(), KMER_SIZE, null));
+        Assert.assertEquals(PathSeqFilterSpark.readKmerLibrary(output.getAbsolutePath(), KMER_SIZE, null).size(), 0);
+        final MappedKmerLibrary mappedLibrary = MappedKmerLibrary.getInstance(output.getAbsolutePath(), KMER_SIZE, null);
+        try {
+            Assert.assertEquals(mappedLibrary.size(), 0);
+            Assert.assertFalse(mappedLibrary.contains(0L));
+        } finally {
+            MappedKmerLibrary.closeInstance();
+        }
+    }
+
+    @Test
+    public void testChoosePrefixBits() {
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(0, KMER_SIZE), 0);
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(64, KMER_SIZE), 0);
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(65, KMER_SIZE), 1);
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(64L << 10, KMER_SIZE), 10);
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(3000000000L, KMER_SIZE), 24);
+        Assert.assertEquals(SortedKmerLibrary.choosePrefixBits(3000000000L, 5), 10);
+        Assert.assertEquals(SortedKmerLibrary.getBucket(0L, KMER_SIZE, 10), 0);
+        Assert.assertEquals(SortedKmerLibrary.getBucket((1L << (2 * KMER_SIZE)) - 1, KMER_SIZE, 10), 1023);
+        Assert.assertEquals(SortedKmerLibrary.getBucket(12345L, KMER_SIZE, 0), 0);
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testMapTruncatedLibrary() throws IOException {
+        final File output = createTempFile("kmerLib", ".bin");
+        try ( final DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(output)) ) {
+            SortedKmerLibrary.writeHeader(outputStream, KMER_SIZE, 2, 10);
+            SortedKmerLibrary.writeKmers(outputStream, new long[]{1L, 2L, 3L}, 3);
+        }
+        try {
+            MappedKmerLibrary.getInstance(output.getAbsolutePath(), KMER_SIZE, null);
+        } finally {
+            MappedKmerLibrary.closeInstance();
+        }
+    }
+
+    @Test(groups = "spark", expectedExceptions = UserException.BadInput.class)
+    public void testWrongKmerSize() {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final List<byte[]> seqs = new ArrayList<>();
+        seqs.add("ACGTACGTACGTACGTACGTACGTACGTACGTACGTTTGACCA".getBytes());
+        final File output = createTempFile("kmerLib", ".bin");
+        PathSeqKmerSpark.writeLibrary(ctx.parallelize(seqs, 1), KMER_SIZE, output.getAbsolutePath(), null);
+        PathSeqFilterSpark.readKmerLibrary(output.getAbsolutePath(), KMER_SIZE - 2, null);
+    }
+}
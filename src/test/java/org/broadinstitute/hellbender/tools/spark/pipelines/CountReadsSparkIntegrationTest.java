@@ -60,6 +60,22 @@ public final class CountReadsSparkIntegrationTest extends CommandLineProgramTest
         Assert.assertEquals((int)Integer.valueOf(readIn), 8);
     }
 
+    @Test(groups = "spark")
+    public void testSparkMetricsReport() throws Exception {
+        final File outputTxt = createTempFile("count_reads", ".txt");
+        final File report = createTempFile("count_reads", ".metrics.json");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addInput(new File(getTestDataDir(), "count_reads.bam"));
+        args.addOutput(outputTxt);
+        args.add("--sparkMetricsReport");
+        args.add(report.getAbsolutePath());
+        this.runCommandLine(args.getArgsArray());
+
+        final String json = FileUtils.readFileToString(report);
+        Assert.assertTrue(json.contains("\"gatkStage\": \"apply\""), json);
+        Assert.assertTrue(json.contains("\"recordsIn\": 8"), json);
+    }
+
     @DataProvider(name="intervals")
     public Object[][] intervals(){
         return new Object[][]{
@@ -80,6 +80,11 @@ public class ReadsPipelineSparkIntegrationTest extends CommandLineProgramTest {
                 {new PipelineTest(GRCh37Ref_2021, hiSeqBam_chr20, ".bam", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--joinStrategy SHUFFLE --knownSites " + more20Sites, getResourceDir() + expectedMultipleKnownSites)},
                 {new PipelineTest(GRCh37Ref_2021, hiSeqCram_chr20, ".cram", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--joinStrategy SHUFFLE --knownSites " + more20Sites, getResourceDir() + expectedMultipleKnownSitesCram)},
                 {new PipelineTest(GRCh37Ref2bit_chr2021, hiSeqBam_chr20, ".bam", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--joinStrategy BROADCAST --knownSites " + more20Sites, getResourceDir() + expectedMultipleKnownSites)},
+
+                // the fused pipeline must give the same results as the standard one
+                {new PipelineTest(GRCh37Ref2bit_chr2021, hiSeqBam_chr20, ".bam", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--fusedPipeline", getResourceDir() + expectedSingleKnownSites)},
+                {new PipelineTest(GRCh37Ref2bit_chr2021, hiSeqBam_chr20_queryNameSorted, ".bam", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--fusedPipeline", getResourceDir() + expectedMultipleKnownSites)},
+                {new PipelineTest(GRCh37Ref2bit_chr2021, hiSeqBam_chr20, ".bam", dbSNPb37_20, "-indelBQSR -enableBAQ " +"--fusedPipeline --knownSites " + more20Sites, getResourceDir() + expectedMultipleKnownSites)},
         };
     }
 
@@ -7,9 +7,12 @@ import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import scala.Tuple2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ContigAlignerTest extends BaseTest {
 
@@ -144,6 +147,35 @@ public class ContigAlignerTest extends BaseTest {
         Assert.assertEquals(breakpoint1Region2.endInAssembledContig, 200);
     }
 
+    @Test
+    public void testAlignContigsBatch() throws Exception {
+        final String snippet1 = "GTGGGAGAGAACTGGAACAAGAACCCAGTGCTCTTTCTGCTCTACCCACTGACCCATCCTCTCACGCATCATACACCCATACTCCCATCCACCCACCTTC";
+        final String snippet2 = "GTGATCCAGCTACAGACTGTTCCAAAGACTTTGCAACTGTTATTTTTGCTTAATCCTCACAACAACCTATGAGGTAGGCACATTTATTGCCCCCATGTGA";
+        final ContigsCollection chimericContig =
+                new ContigsCollection(Arrays.asList(">contig-0 200 0", snippet1 + snippet2));
+        final ContigsCollection twoContigs =
+                new ContigsCollection(Arrays.asList(">contig-0 100 0", snippet1, ">contig-1 100 0", snippet2));
+        final ContigsCollection noContigs = new ContigsCollection(new ArrayList<>());
+        final List<Tuple2<String, ContigsCollection>> assemblies =
+                Arrays.asList(new Tuple2<>("1", chimericContig), new Tuple2<>("2", noContigs), new Tuple2<>("3", twoContigs));
+
+        // the alignments for each assembly are the same whether it's aligned by itself or as part of a batch
+        final List<List<AlignmentRegion>> batchAlignments = new ContigAligner(b37_reference_20_21+".img", 2).alignContigs(assemblies);
+        Assert.assertEquals(batchAlignments.size(), assemblies.size());
+        for ( int idx = 0; idx != assemblies.size(); ++idx ) {
+            final Tuple2<String, ContigsCollection> assembly = assemblies.get(idx);
+            final List<String> expected = contigAligner.alignContigs(assembly._1(), assembly._2()).stream()
+                    .map(AlignmentRegion::toPackedString).collect(Collectors.toList());
+            final List<String> actual = batchAlignments.get(idx).stream()
+                    .map(AlignmentRegion::toPackedString).collect(Collectors.toList());
+            Assert.assertEquals(actual, expected);
+        }
+        Assert.assertEquals(batchAlignments.get(0).size(), 2);
+        Assert.assertTrue(batchAlignments.get(1).isEmpty());
+        Assert.assertEquals(batchAlignments.get(2).size(), 2);
+        Assert.assertEquals(batchAlignments.get(2).get(1).contigId, "contig-1");
+    }
+
     @AfterClass
     public void tearDown() throws Exception {
         BwaMemIndexSingleton.closeInstance();
@@ -0,0 +1,114 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.tools.spark.sv.SVFastqUtils.FastqRead;
+import org.broadinstitute.hellbender.utils.BaseUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import scala.Tuple2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class DeBruijnLocalAssemblerUnitTest extends BaseTest {
+    private static final int SEQ_LEN = 2001; // so that the reads tile it exactly
+    private static final int READ_LEN = 151;
+    private static final int READ_STEP = 5;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomSequence( final Random rng, final int len ) {
+        final byte[] seq = new byte[len];
+        for ( int idx = 0; idx != len; ++idx ) {
+            seq[idx] = BASES[rng.nextInt(BASES.length)];
+        }
+        return seq;
+    }
+
+    // tiled reads from both strands of the sequence, every 10th one with a sequencing error
+    private static List<FastqRead> tileReads( final Random rng, final byte[] seq ) {
+        final List<FastqRead> reads = new ArrayList<>();
+        final byte[] quals = new byte[READ_LEN];
+        Arrays.fill(quals, (byte)30);
+        for ( int start = 0; start + READ_LEN <= seq.length; start += READ_STEP ) {
+            byte[] bases = Arrays.copyOfRange(seq, start, start + READ_LEN);
+            if ( reads.size() % 10 == 9 ) {
+                final int errPos = rng.nextInt(READ_LEN);
+                bases[errPos] = bases[errPos] == 'A' ? (byte)'C' : (byte)'A';
+            }
+            if ( (start & 1) != 0 ) bases = BaseUtils.simpleReverseComplement(bases);
+            reads.add(new FastqRead("read" + reads.size(), bases, quals));
+        }
+        return reads;
+    }
+
+    // the kmers at the very ends of the sequence are seen just once, so the contig may come up a few bases short
+    private static boolean sameSequence( final String contig, final byte[] seq ) {
+        return contig.length() >= seq.length - 3 * READ_STEP &&
+                (new String(seq).contains(contig) || new String(BaseUtils.simpleReverseComplement(seq)).contains(contig));
+    }
+
+    @Test(groups = "sv")
+    public void testAssembleSingleSequence() {
+        final Random rng = new Random(0xdeadf00);
+        final byte[] seq = randomSequence(rng, SEQ_LEN);
+        final ContigsCollection contigs = new DeBruijnLocalAssembler().assemble(tileReads(rng, seq));
+        final List<Tuple2<ContigsCollection.ContigID, ContigsCollection.ContigSequence>> contents = contigs.getContents();
+        Assert.assertEquals(contents.size(), 1);
+        Assert.assertEquals(contents.get(0)._1().toString(), "contig-0");
+        Assert.assertTrue(sameSequence(contents.get(0)._2().toString(), seq));
+    }
+
+    @Test(groups = "sv")
+    public void testAssembleHeterozygousSNP() {
+        // two haplotypes that differ at a single base make a bubble, which ought to be popped
+        final Random rng = new Random(0xbadbeef);
+        final byte[] seq1 = randomSequence(rng, SEQ_LEN);
+        final byte[] seq2 = seq1.clone();
+        final int snpPos = SEQ_LEN / 2;
+        seq2[snpPos] = seq1[snpPos] == 'G' ? (byte)'T' : (byte)'G';
+        final List<FastqRead> reads = tileReads(rng, seq1);
+        reads.addAll(tileReads(rng, seq2));
+        final List<Tuple2<ContigsCollection.ContigID, ContigsCollection.ContigSequence>> contents =
+                new DeBruijnLocalAssembler().assemble(reads).getContents();
+        Assert.assertEquals(contents.size(), 1);
+        final String contig = contents.get(0)._2().toString();
+        Assert.assertTrue(sameSequence(contig, seq1) || sameSequence(contig, seq2));
+    }
+
+    @Test(groups = "sv")
+    public void testShortContigsDiscarded() {
+        final Random rng = new Random(0xf00d);
+        final byte[] seq = randomSequence(rng, SEQ_LEN);
+        final DeBruijnLocalAssembler assembler =
+                new DeBruijnLocalAssembler(SVConstants.KMER_SIZE, DeBruijnLocalAssembler.DEFAULT_MIN_KMER_COUNT, 2 * SEQ_LEN);
+        Assert.assertTrue(assembler.assemble(tileReads(rng, seq)).getContents().isEmpty());
+        Assert.assertTrue(new DeBruijnLocalAssembler().assemble(new ArrayList<>()).getContents().isEmpty());
+    }
+
+    @Test(groups = "sv")
+    public void testInJVMAssemblyOfBreakpointFASTQ() throws IOException {
+        final File fastqFile = new File(CommandLineProgramTest.getTestDataDir(), "spark/sv/RunSGAViaProcessBuilderOnSpark/4.raw.fastq");
+        final String fastqText = FileUtils.readFileToString(fastqFile, StandardCharsets.UTF_8);
+        final Tuple2<Long, RunSGAViaProcessBuilderOnSpark.SGAAssemblyResult> result = RunSGAViaProcessBuilderOnSpark.performInJVMAssembly(
+                new Tuple2<>("hdfs://somewhere/assembly4.fastq", fastqText), "assembly", new DeBruijnLocalAssembler());
+        Assert.assertEquals(result._1().longValue(), 4L);
+        Assert.assertNotNull(result._2().assembledContigs);
+        final List<Tuple2<ContigsCollection.ContigID, ContigsCollection.ContigSequence>> contents =
+                result._2().assembledContigs.getContents();
+        Assert.assertFalse(contents.isEmpty());
+        Assert.assertTrue(contents.get(0)._2().toString().length() > 1000);
+    }
+
+    @Test(groups = "sv", expectedExceptions = IllegalArgumentException.class)
+    public void testEvenK() {
+        new DeBruijnLocalAssembler(50, DeBruijnLocalAssembler.DEFAULT_MIN_KMER_COUNT,
+                                   DeBruijnLocalAssembler.DEFAULT_MIN_CONTIG_LENGTH);
+    }
+}
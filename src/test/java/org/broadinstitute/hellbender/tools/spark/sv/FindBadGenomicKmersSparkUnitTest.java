@@ -12,6 +12,7 @@ import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.*;
@@ -51,6 +52,54 @@ public class FindBadGenomicKmersSparkUnitTest extends BaseTest {
         Assert.assertEquals(badKmers.get(0), SVKmerizer.toKmer(polyA,new SVKmerLong()));
     }
 
+    @Test(groups = "spark")
+    public void badKmersTwoPhaseTest() throws IOException {
+        final byte[] polyA = new byte[KMER_SIZE]; Arrays.fill(polyA, (byte)'A');
+        final byte[] polyC = new byte[KMER_SIZE]; Arrays.fill(polyC, (byte)'C');
+        final byte[] polyT = new byte[KMER_SIZE]; Arrays.fill(polyT, (byte)'T');
+
+        int nTimes = FindBadGenomicKmersSpark.MAX_KMER_FREQ;
+        final List<byte[]> sequenceChunks = new ArrayList<>(nTimes*2+1);
+        while ( nTimes-- > 0L ) {
+            sequenceChunks.add(polyA);
+            sequenceChunks.add(polyC);
+        }
+        sequenceChunks.add(polyT);
+
+        // with just two kmers in a wide sketch, polyC won't be a candidate, and polyA must be
+        final JavaRDD<byte[]> refRDD = SparkContextFactory.getTestSparkContext().parallelize(sequenceChunks, 3);
+        final List<SVKmer> badKmers = FindBadGenomicKmersSpark.processRefRDDTwoPhase(KMER_SIZE,
+                                                                                     Integer.MAX_VALUE,
+                                                                                     FindBadGenomicKmersSpark.MAX_KMER_FREQ,
+                                                                                     refRDD,
+                                                                                     1000);
+        Assert.assertEquals(badKmers.size(), 1);
+        Assert.assertEquals(badKmers.get(0), SVKmerizer.toKmer(polyA,new SVKmerLong()));
+    }
+
+    @DataProvider(name = "sketchWidths")
+    public Object[][] sketchWidths() {
+        // a sketch too narrow to rule out much of anything, a medium one, and the default
+        return new Object[][]{ {100}, {100000}, {0} };
+    }
+
+    @Test(groups = "spark", dataProvider = "sketchWidths")
+    public void miniRefTwoPhaseTest( final int sketchWidth ) throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final ReferenceMultiSource ref = new ReferenceMultiSource((PipelineOptions)null,
+                REFERENCE_FILE_NAME,
+                ReferenceWindowFunctions.IDENTITY_FUNCTION);
+
+        final List<SVKmer> expectedBadKmers =
+                FindBadGenomicKmersSpark.findBadGenomicKmers(ctx, KMER_SIZE, Integer.MAX_VALUE, ref, null, null);
+        final List<SVKmer> badKmers =
+                FindBadGenomicKmersSpark.findBadGenomicKmers(ctx, KMER_SIZE, Integer.MAX_VALUE, ref, null, null,
+                                                             true, sketchWidth);
+        Assert.assertFalse(expectedBadKmers.isEmpty());
+        Assert.assertEquals(badKmers.size(), expectedBadKmers.size());
+        Assert.assertEquals(new HashSet<>(badKmers), new HashSet<>(expectedBadKmers));
+    }
+
     @Test(groups = "spark")
     public void miniRefTest() throws IOException {
         final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
@@ -9,6 +9,7 @@ import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.tools.spark.utils.HopscotchUniqueMultiMap;
 import org.broadinstitute.hellbender.tools.spark.utils.HopscotchSet;
+import org.broadinstitute.hellbender.tools.spark.utils.LongPairIntMultiMap;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.Assert;
@@ -46,7 +47,8 @@ public final class FindBreakpointEvidenceSparkUnitTest extends BaseTest {
     @Test(groups = "spark")
     public void getIntervalsTest() {
         final List<SVInterval> actualIntervals =
-                FindBreakpointEvidenceSpark.getIntervals(params, broadcastMetadata, header, mappedReads, locations);
+                FindBreakpointEvidenceSpark.getIntervals(params, broadcastMetadata, header, mappedReads, locations,
+                        EvidenceClusteringStatsAccumulator.register(ctx, "getIntervalsTest"));
         Assert.assertEquals(actualIntervals, expectedIntervalList);
     }
 
@@ -75,7 +77,9 @@ public final class FindBreakpointEvidenceSparkUnitTest extends BaseTest {
 
         // an empty qname map should produce a "too few kmers" disposition for the interval
         final List<AlignedAssemblyOrExcuse> alignedAssemblyOrExcuseList =
-                FindBreakpointEvidenceSpark.getKmerIntervals(params, ctx, qNameMultiMap, 1, Collections.emptySet(), reads, locations, null)._1();
+                FindBreakpointEvidenceSpark.getKmerIntervals(params, ctx, qNameMultiMap,
+                        FindBreakpointEvidenceSpark.makeQNamesFilter(qNameMultiMap), 1, Collections.emptySet(),
+                        reads, locations, null)._1();
         Assert.assertEquals(alignedAssemblyOrExcuseList.size(), 1);
         Assert.assertTrue(alignedAssemblyOrExcuseList.get(0).getErrorMessage().contains("too few"));
 
@@ -84,7 +88,8 @@ public final class FindBreakpointEvidenceSparkUnitTest extends BaseTest {
                 .forEach(qNameMultiMap::add);
         final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> actualKmerAndIntervalSet =
                 new HopscotchUniqueMultiMap<>(
-                        FindBreakpointEvidenceSpark.getKmerIntervals(params, ctx, qNameMultiMap, 1, new HopscotchSet<>(0),
+                        FindBreakpointEvidenceSpark.getKmerIntervals(params, ctx, qNameMultiMap,
+                                FindBreakpointEvidenceSpark.makeQNamesFilter(qNameMultiMap), 1, new HopscotchSet<>(0),
                                 reads, locations, null)._2());
         final Set<SVKmer> expectedKmers = SVUtils.readKmersFile(params.kSize, kmersFile, null, kmer);
         Assert.assertEquals(actualKmerAndIntervalSet.size(), expectedKmers.size());
@@ -96,13 +101,13 @@ public final class FindBreakpointEvidenceSparkUnitTest extends BaseTest {
     @Test(groups = "spark")
     public void getAssemblyQNamesTest() throws FileNotFoundException {
         final Set<SVKmer> expectedKmers = SVUtils.readKmersFile(params.kSize, kmersFile, null, new SVKmerLong(params.kSize));
-        final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerAndIntervalSet =
-                new HopscotchUniqueMultiMap<>(expectedKmers.size());
-        expectedKmers.stream().
-                map(kmer -> new KmerAndInterval(kmer, 0))
-                .forEach(kmerAndIntervalSet::add);
+        final LongPairIntMultiMap kmerAndIntervalSet = new LongPairIntMultiMap(expectedKmers.size());
+        expectedKmers.stream()
+                .map(kmer -> (SVKmerLong)kmer)
+                .forEach(kmer -> kmerAndIntervalSet.add(kmer.getValHigh(), kmer.getValLow(), 0));
         final Set<String> actualAssemblyQNames = new HashSet<>();
-        FindBreakpointEvidenceSpark.getAssemblyQNames(params, ctx, kmerAndIntervalSet, reads)
+        FindBreakpointEvidenceSpark.getAssemblyQNames(params, ctx, kmerAndIntervalSet,
+                        FindBreakpointEvidenceSpark.makeKmerFilter(kmerAndIntervalSet), reads)
                 .stream()
                 .map(QNameAndInterval::getKey)
                 .forEach(actualAssemblyQNames::add);
@@ -116,7 +121,8 @@ public final class FindBreakpointEvidenceSparkUnitTest extends BaseTest {
         expectedAssemblyQNames.stream()
                 .map(qName -> new QNameAndInterval(qName, 0))
                 .forEach(qNameMultiMap::add);
-        FindBreakpointEvidenceSpark.handleAssemblies(ctx,qNameMultiMap,reads,2,true,true,new LocalAssemblyComparator(fastqFile));
+        FindBreakpointEvidenceSpark.handleAssemblies(ctx,qNameMultiMap,FindBreakpointEvidenceSpark.makeQNamesFilter(qNameMultiMap),
+                                                    reads,2,true,true,new LocalAssemblyComparator(fastqFile));
     }
 
     /** This LocalAssemblyHandler compares an assembly with expected results. */
@@ -4,15 +4,17 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import htsjdk.samtools.SAMFileHeader;
+import org.apache.spark.api.java.JavaRDD;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 public class ReadMetadataTest extends BaseTest {
     @Test(groups = "spark")
@@ -53,4 +55,78 @@ public class ReadMetadataTest extends BaseTest {
         final ReadMetadata readMetadata2 = (ReadMetadata)kryo.readClassAndObject(in);
         Assert.assertEquals(readMetadata, readMetadata2);
     }
+
+    // read pairs with normally distributed fragment sizes, in coordinate order
+    private static List<GATKRead> makeReadPairs( final SAMFileHeader header, final int nPairs ) {
+        final Random rng = new Random(0xdeadf00);
+        final List<GATKRead> reads = new ArrayList<>(2 * nPairs);
+        for ( int idx = 0; idx != nPairs; ++idx ) {
+            final int leftStart = 1000 + 100 * idx;
+            final int fragmentSize = (int)Math.round(400 + 50 * rng.nextGaussian());
+            reads.addAll(ArtificialReadUtils.createPair(header, "pair" + idx, 100, leftStart,
+                    leftStart + fragmentSize - 100, true, false));
+        }
+        return reads;
+    }
+
+    @Test(groups = "spark")
+    void testSampledMetadata() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, 10000000, 1);
+        final int nPartitions = 100;
+        final JavaRDD<GATKRead> reads =
+                SparkContextFactory.getTestSparkContext().parallelize(makeReadPairs(header, 50000), nPartitions);
+        final ReadMetadata exact = new ReadMetadata(Collections.emptySet(), header, reads);
+        Assert.assertFalse(exact.isSampled());
+        Assert.assertEquals(exact.getNReads(), 100000L);
+
+        final ReadMetadata sampled = new ReadMetadata(Collections.emptySet(), header, reads, .25);
+        Assert.assertTrue(sampled.isSampled());
+        Assert.assertEquals(sampled.getNPartitions(), nPartitions);
+        Assert.assertEquals(sampled.getNSampledPartitions(), 25);
+        Assert.assertEquals(sampled.getNReads(), exact.getNReads());
+        Assert.assertEquals(sampled.getCoverage(), exact.getCoverage());
+        final int exactMedian = exact.getStatistics(null).getMedianFragmentSize();
+        final int[] interval = sampled.getMedianConfidenceInterval(null);
+        Assert.assertTrue(interval[0] <= sampled.getStatistics(null).getMedianFragmentSize());
+        Assert.assertTrue(interval[1] >= sampled.getStatistics(null).getMedianFragmentSize());
+        Assert.assertTrue(interval[0] <= exactMedian && exactMedian <= interval[1]);
+        Assert.assertTrue(Math.abs(sampled.getStatistics(null).getMedianNegativeDeviation() -
+                exact.getStatistics(null).getMedianNegativeDeviation()) <= 3);
+        Assert.assertTrue(Math.abs(sampled.getStatistics(null).getMedianPositiveDeviation() -
+                exact.getStatistics(null).getMedianPositiveDeviation()) <= 3);
+
+        // a small input gets exact stats, no matter what fraction is asked for
+        final JavaRDD<GATKRead> fewerPartitions = reads.coalesce(ReadMetadata.MIN_SAMPLED_PARTITIONS);
+        final ReadMetadata notSampled = new ReadMetadata(Collections.emptySet(), header, fewerPartitions, .01);
+        Assert.assertFalse(notSampled.isSampled());
+        Assert.assertEquals(notSampled, exact);
+        Assert.assertEquals(notSampled.getMedianConfidenceInterval(null), new int[]{exactMedian, exactMedian});
+    }
+
+    @Test(groups = "spark")
+    void testChoosePartitions() {
+        Assert.assertEquals(ReadMetadata.choosePartitions(5, .1), new int[]{0, 1, 2, 3, 4});
+        final int[] partitions = ReadMetadata.choosePartitions(1000, .1);
+        Assert.assertEquals(partitions.length, 100);
+        for ( int idx = 0; idx != partitions.length; ++idx ) {
+            Assert.assertEquals(partitions[idx], 10 * idx);
+        }
+        Assert.assertEquals(ReadMetadata.choosePartitions(1000, .001).length, ReadMetadata.MIN_SAMPLED_PARTITIONS);
+        Assert.assertThrows(IllegalArgumentException.class, () ->
+                new ReadMetadata(Collections.emptySet(), ArtificialReadUtils.createArtificialSamHeader(),
+                        SparkContextFactory.getTestSparkContext().emptyRDD(), 0.));
+    }
+
+    @Test(groups = "spark")
+    void testMedianConfidenceInterval() {
+        // 10000 fragments evenly spread over sizes 300-399:  the median rank is known to within +/-98 fragments
+        final long[] counts = new long[1000];
+        Arrays.fill(counts, 300, 400, 100L);
+        Assert.assertEquals(ReadMetadata.medianConfidenceInterval(counts), new int[]{349, 350});
+
+        // a single fragment size has no uncertainty
+        final long[] spike = new long[1000];
+        spike[500] = 10000L;
+        Assert.assertEquals(ReadMetadata.medianConfidenceInterval(spike), new int[]{500, 500});
+    }
 }
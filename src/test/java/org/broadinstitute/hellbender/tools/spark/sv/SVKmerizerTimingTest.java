@@ -0,0 +1,74 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import java.util.Random;
+
+/**
+ * Timing comparison of the kmerizers:  kmers per second from SVKmerizer, SVDUSTFilteredKmerizer, and
+ * SVPackedKmerizer (unfiltered and DUST-filtered), each producing canonical kmers from random read-length sequences,
+ * the way QNameKmerizer and FindBadGenomicKmersSpark use them.
+ * Each kmerizer is run a few times so that the later passes reflect JIT-compiled code.
+ */
+public final class SVKmerizerTimingTest {
+    private static final int N_SEQS = 200000;
+    private static final int SEQ_LEN = 151;
+    private static final int KMER_SIZE = SVConstants.KMER_SIZE;
+    private static final int N_PASSES = 3;
+
+    @FunctionalInterface
+    public interface Kmerizer {
+        long countKmers( final byte[] seq );
+    }
+
+    private static void report( final String name, final byte[][] seqs, final Kmerizer kmerizer ) {
+        for ( int pass = 0; pass != N_PASSES; ++pass ) {
+            final long nanosecs = System.nanoTime();
+            long nKmers = 0;
+            for ( final byte[] seq : seqs ) {
+                nKmers += kmerizer.countKmers(seq);
+            }
+            final double secs = (System.nanoTime() - nanosecs)/1.E9;
+            System.out.println(name + " pass " + pass + ": " + nKmers + " kmers, " + (long)(nKmers/secs) + " per sec");
+        }
+    }
+
+    public static void main( final String[] args ) {
+        final Random rng = new Random(0xdeadf00);
+        final byte[] bases = {'A', 'C', 'G', 'T'};
+        final byte[][] seqs = new byte[N_SEQS][];
+        for ( int seqNo = 0; seqNo != N_SEQS; ++seqNo ) {
+            final byte[] seq = new byte[SEQ_LEN];
+            for ( int idx = 0; idx != SEQ_LEN; ++idx ) {
+                seq[idx] = bases[rng.nextInt(bases.length)];
+            }
+            seqs[seqNo] = seq;
+        }
+
+        final int maxDUSTScore = SVConstants.MAX_DUST_SCORE;
+        // sum the bits of the kmers, so that the JIT can't discard the work
+        final long[] checkSum = new long[1];
+        report("SVKmerizer", seqs, seq ->
+                SVKmerizer.stream(seq, KMER_SIZE, new SVKmerLong())
+                        .map(kmer -> kmer.canonical(KMER_SIZE))
+                        .peek(kmer -> checkSum[0] += ((SVKmerLong)kmer).getValLow())
+                        .count());
+        report("SVDUSTFilteredKmerizer", seqs, seq ->
+                SVDUSTFilteredKmerizer.stream(seq, KMER_SIZE, maxDUSTScore, new SVKmerLong())
+                        .map(kmer -> kmer.canonical(KMER_SIZE))
+                        .peek(kmer -> checkSum[0] += ((SVKmerLong)kmer).getValLow())
+                        .count());
+        final long[] nKmers = new long[1];
+        final SVPackedKmerizer unfilteredKmerizer = new SVPackedKmerizer(KMER_SIZE, Integer.MAX_VALUE);
+        report("SVPackedKmerizer (unfiltered)", seqs, seq -> {
+            nKmers[0] = 0;
+            unfilteredKmerizer.kmerizeCanonical(seq, (valHigh, valLow) -> { checkSum[0] += valLow; nKmers[0] += 1; });
+            return nKmers[0];
+        });
+        final SVPackedKmerizer dustKmerizer = new SVPackedKmerizer(KMER_SIZE, maxDUSTScore);
+        report("SVPackedKmerizer (DUST-filtered)", seqs, seq -> {
+            nKmers[0] = 0;
+            dustKmerizer.kmerizeCanonical(seq, (valHigh, valLow) -> { checkSum[0] += valLow; nKmers[0] += 1; });
+            return nKmers[0];
+        });
+        System.out.println("checksum: " + checkSum[0]);
+    }
+}
@@ -0,0 +1,78 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public final class SVPackedKmerizerUnitTest extends BaseTest {
+    private static final String BASES = "ACGTACGTacgtN";
+
+    // random sequences with the occasional N and lower-case base, and some low-complexity stretches
+    private static List<String> randomSequences( final Random rng ) {
+        final List<String> seqs = new ArrayList<>();
+        for ( int seqNo = 0; seqNo != 100; ++seqNo ) {
+            final StringBuilder sb = new StringBuilder();
+            final int len = rng.nextInt(300);
+            while ( sb.length() < len ) {
+                if ( rng.nextInt(50) == 0 ) {
+                    final String repeat = "CA".substring(0, 1 + rng.nextInt(2));
+                    for ( int idx = rng.nextInt(40); idx > 0; --idx ) sb.append(repeat);
+                } else {
+                    sb.append(BASES.charAt(rng.nextInt(BASES.length())));
+                }
+            }
+            seqs.add(sb.toString());
+        }
+        return seqs;
+    }
+
+    @DataProvider(name = "kmerizerParams")
+    public Object[][] getKmerizerParams() {
+        return new Object[][] {
+                { 7, 5 }, { 11, 20 }, { 31, SVConstants.MAX_DUST_SCORE }, { 51, SVConstants.MAX_DUST_SCORE }, { 63, 200 }
+        };
+    }
+
+    @Test(dataProvider = "kmerizerParams")
+    public void testSameKmersAsDUSTFilteredKmerizer( final int kSize, final int maxDUSTScore ) {
+        final SVPackedKmerizer kmerizer = new SVPackedKmerizer(kSize, maxDUSTScore);
+        for ( final String seq : randomSequences(new Random(kSize)) ) {
+            final List<SVKmer> expected =
+                    SVDUSTFilteredKmerizer.stream(seq, kSize, maxDUSTScore, new SVKmerLong()).collect(Collectors.toList());
+            final List<SVKmer> actual = new ArrayList<>();
+            kmerizer.kmerize(seq, (valHigh, valLow) -> actual.add(new SVKmerLong(valHigh, valLow)));
+            Assert.assertEquals(actual, expected, seq);
+
+            final List<SVKmer> expectedCanonical =
+                    expected.stream().map(kmer -> kmer.canonical(kSize)).collect(Collectors.toList());
+            final List<SVKmer> actualCanonical = new ArrayList<>();
+            kmerizer.kmerizeCanonical(seq.getBytes(),
+                    (valHigh, valLow) -> actualCanonical.add(new SVKmerLong(valHigh, valLow)));
+            Assert.assertEquals(actualCanonical, expectedCanonical, seq);
+        }
+    }
+
+    @Test
+    public void testSameKmersAsUnfilteredKmerizer() {
+        final int kSize = 31;
+        final SVPackedKmerizer kmerizer = new SVPackedKmerizer(kSize, Integer.MAX_VALUE);
+        for ( final String seq : randomSequences(new Random(0xdeadbeef)) ) {
+            final List<SVKmer> expected =
+                    SVKmerizer.stream(seq, kSize, new SVKmerLong()).collect(Collectors.toList());
+            final List<SVKmer> actual = new ArrayList<>();
+            kmerizer.kmerize(seq, (valHigh, valLow) -> actual.add(new SVKmerLong(valHigh, valLow)));
+            Assert.assertEquals(actual, expected, seq);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEvenKCanonical() {
+        new SVPackedKmerizer(10, SVConstants.MAX_DUST_SCORE).kmerizeCanonical("ACGTACGTACGT", (valHigh, valLow) -> {});
+    }
+}
@@ -0,0 +1,152 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.tools.spark.utils.MapPartitioner;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public final class StreamingEvidenceClustererUnitTest extends BaseTest {
+    private static final int N_CONTIGS = 2;
+    private static final int MIN_EVIDENCE_COUNT = 5;
+    private static final int WINDOW_SIZE = 1000;
+
+    private final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(N_CONTIGS, 1, 10000000, 1);
+    private final ReadMetadata readMetadata =
+            new ReadMetadata(Collections.emptySet(), header,
+                    new ReadMetadata.ReadGroupFragmentStatistics(400, 175, 20), 1, 1L, 1L, 1);
+
+    private BreakpointEvidence makeEvidence( final int contigIdx, final int start, final int width ) {
+        final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read" + contigIdx + "_" + start, contigIdx, start, 151);
+        return new BreakpointEvidence(read, readMetadata, start + width/2, width/2);
+    }
+
+    // random evidence on each contig, in a nearly sorted order (each piece no more than WINDOW_SIZE/2 out of place)
+    private List<BreakpointEvidence> makeEvidenceStream( final Random rng ) {
+        final List<BreakpointEvidence> evidenceList = new ArrayList<>();
+        for ( int contigIdx = 0; contigIdx != N_CONTIGS; ++contigIdx ) {
+            final List<Tuple> jittered = new ArrayList<>();
+            int position = 1000;
+            for ( int idx = 0; idx != 5000; ++idx ) {
+                // mostly sparse, with some dense patches
+                position += (idx / 500) % 2 == 0 ? rng.nextInt(200) : rng.nextInt(10);
+                final BreakpointEvidence evidence = makeEvidence(contigIdx, position, 2*(10 + rng.nextInt(200)));
+                jittered.add(new Tuple(evidence.getEventStartPosition() + rng.nextInt(WINDOW_SIZE/2), evidence));
+            }
+            jittered.sort(Comparator.comparingInt(tuple -> tuple.sortKey));
+            jittered.forEach(tuple -> evidenceList.add(tuple.evidence));
+        }
+        return evidenceList;
+    }
+
+    private static final class Tuple {
+        final int sortKey;
+        final BreakpointEvidence evidence;
+        Tuple( final int sortKey, final BreakpointEvidence evidence ) { this.sortKey = sortKey; this.evidence = evidence; }
+    }
+
+    // evidence is in a cluster if, at the start of some piece of evidence that it overlaps, there's enough evidence
+    private static Set<BreakpointEvidence> bruteForceClusteredEvidence( final List<BreakpointEvidence> evidenceList ) {
+        final Set<BreakpointEvidence> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for ( int contigIdx = 0; contigIdx != N_CONTIGS; ++contigIdx ) {
+            final List<BreakpointEvidence> sorted = new ArrayList<>();
+            for ( final BreakpointEvidence evidence : evidenceList ) {
+                if ( evidence.getContigIndex() == contigIdx ) sorted.add(evidence);
+            }
+            // a stable sort, so that evidence with the same start stays in arrival order
+            sorted.sort(Comparator.comparingInt(BreakpointEvidence::getEventStartPosition));
+            for ( int idx = 0; idx != sorted.size(); ++idx ) {
+                final int start = sorted.get(idx).getEventStartPosition();
+                final List<BreakpointEvidence> overlappers = new ArrayList<>();
+                for ( int idx2 = 0; idx2 <= idx; ++idx2 ) {
+                    if ( sorted.get(idx2).getContigEnd() > start ) overlappers.add(sorted.get(idx2));
+                }
+                if ( overlappers.size() >= MIN_EVIDENCE_COUNT ) result.addAll(overlappers);
+            }
+        }
+        return result;
+    }
+
+    private static List<BreakpointEvidence> cluster( final List<BreakpointEvidence> evidenceList,
+                                                     final StreamingEvidenceClusterer clusterer ) {
+        final List<BreakpointEvidence> result = new ArrayList<>();
+        new MapPartitioner<>(evidenceList.iterator(), clusterer, new BreakpointEvidence(N_CONTIGS))
+                .forEach(result::add);
+        return result;
+    }
+
+    @Test(groups = "spark")
+    public void testClustering() {
+        final List<BreakpointEvidence> evidenceList = makeEvidenceStream(new Random(0xdeadf00));
+        final List<StreamingEvidenceClusterer.Stats> reportedStats = new ArrayList<>();
+        final List<BreakpointEvidence> clustered =
+                cluster(evidenceList,
+                        new StreamingEvidenceClusterer(MIN_EVIDENCE_COUNT, WINDOW_SIZE, 1000000, reportedStats::add));
+
+        final Set<BreakpointEvidence> expected = bruteForceClusteredEvidence(evidenceList);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertTrue(expected.size() < evidenceList.size());
+        final Set<BreakpointEvidence> actual = Collections.newSetFromMap(new IdentityHashMap<>());
+        actual.addAll(clustered);
+        Assert.assertEquals(clustered.size(), actual.size(), "evidence reported more than once");
+        Assert.assertEquals(actual, expected);
+
+        // output is in coordinate order
+        for ( int idx = 1; idx < clustered.size(); ++idx ) {
+            final BreakpointEvidence prev = clustered.get(idx - 1);
+            final BreakpointEvidence cur = clustered.get(idx);
+            Assert.assertTrue(prev.getContigIndex() < cur.getContigIndex() ||
+                    (prev.getContigIndex() == cur.getContigIndex() &&
+                            prev.getEventStartPosition() <= cur.getEventStartPosition()));
+        }
+
+        // stats are reported at the end of each contig
+        Assert.assertEquals(reportedStats.size(), N_CONTIGS);
+        final StreamingEvidenceClusterer.Stats stats = reportedStats.get(N_CONTIGS - 1);
+        Assert.assertEquals(stats.getNEvidence(), evidenceList.size());
+        Assert.assertEquals(stats.getNReportedEvidence(), clustered.size());
+        Assert.assertEquals(stats.getNDownsampledEvidence(), 0L);
+        Assert.assertEquals(stats.getMaxSamplingLevel(), 0);
+        Assert.assertTrue(stats.getPeakBufferedEvidence() > 0);
+    }
+
+    @Test(groups = "spark")
+    public void testDownsampling() {
+        // a deep pile of evidence that can't all be buffered
+        final int maxBufferedEvidence = 1000;
+        final List<BreakpointEvidence> evidenceList = new ArrayList<>();
+        for ( int idx = 0; idx != 20000; ++idx ) {
+            evidenceList.add(makeEvidence(0, 100000 + idx / 10, 400));
+        }
+        final StreamingEvidenceClusterer clusterer =
+                new StreamingEvidenceClusterer(MIN_EVIDENCE_COUNT, WINDOW_SIZE, maxBufferedEvidence, null);
+        final List<BreakpointEvidence> clustered = cluster(evidenceList, clusterer);
+
+        final StreamingEvidenceClusterer.Stats stats = clusterer.getStats();
+        Assert.assertTrue(stats.getMaxSamplingLevel() > 0);
+        Assert.assertTrue(stats.getPeakBufferedEvidence() <= maxBufferedEvidence + 1);
+        Assert.assertTrue(stats.getNDownsampledEvidence() > 0);
+        Assert.assertEquals(stats.getNReportedEvidence() + stats.getNDownsampledEvidence(), evidenceList.size());
+        Assert.assertEquals(clustered.size(), stats.getNReportedEvidence());
+    }
+
+    @Test(groups = "spark")
+    public void testStatsMerge() {
+        final List<BreakpointEvidence> evidenceList = makeEvidenceStream(new Random(0xbadbeef));
+        final StreamingEvidenceClusterer clusterer1 =
+                new StreamingEvidenceClusterer(MIN_EVIDENCE_COUNT, WINDOW_SIZE, 1000000, null);
+        final StreamingEvidenceClusterer clusterer2 =
+                new StreamingEvidenceClusterer(MIN_EVIDENCE_COUNT, WINDOW_SIZE, 1000000, null);
+        cluster(evidenceList.subList(0, 3000), clusterer1);
+        cluster(evidenceList.subList(3000, evidenceList.size()), clusterer2);
+        final StreamingEvidenceClusterer.Stats merged = clusterer1.getStats().copy();
+        merged.merge(clusterer2.getStats());
+        Assert.assertEquals(merged.getNEvidence(), evidenceList.size());
+        Assert.assertEquals(merged.getPeakBufferedEvidence(),
+                Math.max(clusterer1.getStats().getPeakBufferedEvidence(), clusterer2.getStats().getPeakBufferedEvidence()));
+    }
+}
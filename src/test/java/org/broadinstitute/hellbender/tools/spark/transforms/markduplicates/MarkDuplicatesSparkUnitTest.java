@@ -7,6 +7,7 @@ import org.broadinstitute.hellbender.cmdline.argumentcollections.OpticalDuplicat
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.markduplicates.DuplicationMetrics;
 import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
@@ -16,6 +17,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 public class MarkDuplicatesSparkUnitTest extends BaseTest {
     @DataProvider(name = "md")
@@ -48,4 +50,24 @@ public class MarkDuplicatesSparkUnitTest extends BaseTest {
         Assert.assertEquals(dupes.count(), dupsExpected);
     }
 
+    @Test(dataProvider = "md", groups = "spark")
+    public void accumulatedMetricsTest(final String input, final long totalExpected, final long dupsExpected) throws IOException {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> reads = readSource.getParallelReads(input, null);
+        SAMFileHeader header = readSource.getHeader(input, null);
+        JavaRDD<GATKRead> markedReads = MarkDuplicatesSpark.mark(reads, header, MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, new OpticalDuplicateFinder(), 1);
+        Map<String, DuplicationMetrics> expectedMetrics = MarkDuplicatesSparkUtils.generateMetrics(header, markedReads).collectAsMap();
+
+        DuplicationMetricsAccumulator accumulator = DuplicationMetricsAccumulator.register(ctx, "test metrics");
+        JavaRDD<GATKRead> finalReads = MarkDuplicatesSparkUtils.cleanupTemporaryAttributesAndAccumulateMetrics(header, markedReads, accumulator);
+
+        // computing every partition twice must not count the reads twice
+        Assert.assertEquals(finalReads.count(), totalExpected);
+        Assert.assertEquals(finalReads.filter(GATKRead::isDuplicate).count(), dupsExpected);
+        Assert.assertEquals(finalReads.filter(read -> read.hasAttribute(MarkDuplicatesSparkUtils.OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME)).count(), 0);
+
+        Assert.assertEquals(accumulator.value(), expectedMetrics);
+    }
 }
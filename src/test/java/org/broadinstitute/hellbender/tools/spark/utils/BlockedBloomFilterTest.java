@@ -0,0 +1,111 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Random;
+
+public final class BlockedBloomFilterTest extends BaseTest {
+    private static final int RAND_SEED = 0xdeadf00;
+    private static final int N_KEYS = 100000;
+    private static final int N_PROBES = 1000000;
+    private static final double FALSE_POSITIVE_RATE = .01;
+
+    @Test
+    void noFalseNegativesTest() {
+        final Random rng = new Random(RAND_SEED);
+        final BlockedBloomFilter filter = new BlockedBloomFilter(N_KEYS, FALSE_POSITIVE_RATE);
+        final long[] keysHigh = new long[N_KEYS];
+        final long[] keysLow = new long[N_KEYS];
+        for ( int idx = 0; idx != N_KEYS; ++idx ) {
+            keysHigh[idx] = rng.nextLong();
+            keysLow[idx] = rng.nextLong();
+            filter.add(keysHigh[idx], keysLow[idx]);
+            filter.add(keysLow[idx]);
+            filter.add("read" + idx);
+        }
+        Assert.assertEquals(filter.getNAdds(), 3L * N_KEYS);
+        for ( int idx = 0; idx != N_KEYS; ++idx ) {
+            Assert.assertTrue(filter.mightContain(keysHigh[idx], keysLow[idx]));
+            Assert.assertTrue(filter.mightContain(keysLow[idx]));
+            Assert.assertTrue(filter.mightContain("read" + idx));
+        }
+    }
+
+    @Test
+    void falsePositiveRateTest() {
+        final Random rng = new Random(RAND_SEED);
+        final BlockedBloomFilter filter = new BlockedBloomFilter(N_KEYS, FALSE_POSITIVE_RATE);
+        final HashSet<Long> keys = new HashSet<>();
+        while ( keys.size() != N_KEYS ) {
+            final long key = rng.nextLong();
+            keys.add(key);
+            filter.add(key);
+        }
+        int nFalsePositives = 0;
+        int nProbes = 0;
+        while ( nProbes != N_PROBES ) {
+            final long key = rng.nextLong();
+            if ( keys.contains(key) ) continue;
+            nProbes += 1;
+            if ( filter.mightContain(key) ) nFalsePositives += 1;
+        }
+        // blocking costs a little accuracy, but not much
+        final double observedRate = (double)nFalsePositives / N_PROBES;
+        Assert.assertTrue(observedRate < 2 * FALSE_POSITIVE_RATE, "observed false positive rate " + observedRate);
+        Assert.assertTrue(filter.getFalsePositiveRate() < 2 * FALSE_POSITIVE_RATE);
+        Assert.assertTrue(filter.getFalsePositiveRate() > FALSE_POSITIVE_RATE / 2);
+
+        // and the filter is much smaller than the set
+        Assert.assertTrue(filter.getSizeInBytes() < 2 * N_KEYS);
+    }
+
+    @Test
+    void emptyFilterTest() {
+        final BlockedBloomFilter filter = new BlockedBloomFilter(0, FALSE_POSITIVE_RATE);
+        Assert.assertFalse(filter.mightContain("read"));
+        Assert.assertFalse(filter.mightContain(1L, 2L));
+        Assert.assertEquals(filter.getFalsePositiveRate(), 0.);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    void badFalsePositiveRateTest() {
+        new BlockedBloomFilter(N_KEYS, 1.);
+    }
+
+    @Test
+    void serializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final BlockedBloomFilter filter = new BlockedBloomFilter(N_KEYS, FALSE_POSITIVE_RATE);
+        final long[] keys = new long[N_KEYS];
+        for ( int idx = 0; idx != N_KEYS; ++idx ) {
+            keys[idx] = rng.nextLong();
+            filter.add(keys[idx]);
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, filter);
+        out.flush();
+
+        final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        final Input in = new Input(bis);
+        final BlockedBloomFilter filter2 = (BlockedBloomFilter)kryo.readClassAndObject(in);
+
+        Assert.assertEquals(filter2.getSizeInBytes(), filter.getSizeInBytes());
+        Assert.assertEquals(filter2.getNHashes(), filter.getNHashes());
+        Assert.assertEquals(filter2.getNAdds(), filter.getNAdds());
+        Assert.assertEquals(filter2.getFalsePositiveRate(), filter.getFalsePositiveRate());
+        for ( final long key : keys ) {
+            Assert.assertTrue(filter2.mightContain(key));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public final class CountMinSketchTest extends BaseTest {
+    private static final int RAND_SEED = 0xdeadf00;
+    private static final int N_KEYS = 10000;
+
+    // random keys with random counts, added one at a time to the sketches and to a map of the true counts
+    private static Map<Long, Integer> addRandomKeys( final Random rng, final CountMinSketch... sketches ) {
+        final Map<Long, Integer> counts = new HashMap<>();
+        for ( int idx = 0; idx != 5 * N_KEYS; ++idx ) {
+            final long key = rng.nextInt(N_KEYS);
+            counts.merge(key, 1, Integer::sum);
+            sketches[rng.nextInt(sketches.length)].add(~key, key, 1);
+        }
+        return counts;
+    }
+
+    @Test
+    void neverUndercountsTest() {
+        final Random rng = new Random(RAND_SEED);
+        // a narrow sketch, so there are lots of collisions
+        final CountMinSketch sketch = new CountMinSketch(3, N_KEYS / 4);
+        final Map<Long, Integer> counts = addRandomKeys(rng, sketch);
+        for ( final Map.Entry<Long, Integer> entry : counts.entrySet() ) {
+            final long key = entry.getKey();
+            Assert.assertTrue(sketch.estimate(~key, key) >= Math.min(CountMinSketch.MAX_COUNT, entry.getValue()));
+        }
+    }
+
+    @Test
+    void exactWhenWideTest() {
+        final Random rng = new Random(RAND_SEED);
+        final CountMinSketch sketch = new CountMinSketch(3, 1000 * N_KEYS);
+        final Map<Long, Integer> counts = addRandomKeys(rng, sketch);
+        int nExact = 0;
+        for ( final Map.Entry<Long, Integer> entry : counts.entrySet() ) {
+            final long key = entry.getKey();
+            if ( sketch.estimate(~key, key) == entry.getValue() ) nExact += 1;
+        }
+        Assert.assertTrue(nExact > .99 * counts.size());
+        Assert.assertEquals(sketch.estimate(1L, 1L), 0);
+    }
+
+    @Test
+    void saturationTest() {
+        final CountMinSketch sketch = new CountMinSketch(2, 100);
+        sketch.add(1L, 2L, 200);
+        sketch.add(1L, 2L, 200);
+        Assert.assertEquals(sketch.estimate(1L, 2L), CountMinSketch.MAX_COUNT);
+        sketch.merge(sketch);
+        Assert.assertEquals(sketch.estimate(1L, 2L), CountMinSketch.MAX_COUNT);
+    }
+
+    @Test
+    void mergeTest() {
+        final Random rng = new Random(RAND_SEED);
+        final CountMinSketch sketch1 = new CountMinSketch(3, N_KEYS / 4);
+        final CountMinSketch sketch2 = new CountMinSketch(3, N_KEYS / 4);
+        final CountMinSketch sketch3 = new CountMinSketch(3, N_KEYS / 4);
+        final Map<Long, Integer> counts = addRandomKeys(rng, sketch1, sketch2, sketch3);
+        final CountMinSketch merged = sketch1.merge(sketch2).merge(sketch3);
+        for ( final Map.Entry<Long, Integer> entry : counts.entrySet() ) {
+            final long key = entry.getKey();
+            Assert.assertTrue(merged.estimate(~key, key) >= Math.min(CountMinSketch.MAX_COUNT, entry.getValue()));
+        }
+    }
+
+    @Test
+    void addCountsTest() {
+        // counts made sparsely for each key's counters, then added in two runs, never undercount either
+        final Random rng = new Random(RAND_SEED);
+        final int depth = 3;
+        final int width = N_KEYS / 4;
+        final Map<Long, Integer> counts = new HashMap<>();
+        final byte[] counterCounts = new byte[depth * width];
+        for ( int idx = 0; idx != 5 * N_KEYS; ++idx ) {
+            final long key = rng.nextInt(N_KEYS);
+            counts.merge(key, 1, Integer::sum);
+            for ( int row = 0; row != depth; ++row ) {
+                final int counterIdx = CountMinSketch.getCounterIndex(width, row, ~key, key);
+                counterCounts[counterIdx] =
+                        (byte)Math.min(CountMinSketch.MAX_COUNT, (counterCounts[counterIdx] & 0xff) + 1);
+            }
+        }
+        final CountMinSketch sketch = new CountMinSketch(depth, width);
+        final int split = width + 17;
+        sketch.addCounts(0, Arrays.copyOfRange(counterCounts, 0, split));
+        sketch.addCounts(split, Arrays.copyOfRange(counterCounts, split, counterCounts.length));
+        for ( final Map.Entry<Long, Integer> entry : counts.entrySet() ) {
+            final long key = entry.getKey();
+            Assert.assertTrue(sketch.estimate(~key, key) >= Math.min(CountMinSketch.MAX_COUNT, entry.getValue()));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    void addCountsOverflowTest() {
+        new CountMinSketch(2, 100).addCounts(150, new byte[51]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    void mergeShapeTest() {
+        new CountMinSketch(3, 100).merge(new CountMinSketch(2, 100));
+    }
+
+    @Test
+    void serializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final CountMinSketch sketch = new CountMinSketch(3, N_KEYS);
+        final Map<Long, Integer> counts = addRandomKeys(rng, sketch);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, sketch);
+        out.flush();
+
+        final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        final Input in = new Input(bis);
+        final CountMinSketch sketch2 = (CountMinSketch)kryo.readClassAndObject(in);
+
+        Assert.assertEquals(sketch2.getDepth(), sketch.getDepth());
+        Assert.assertEquals(sketch2.getWidth(), sketch.getWidth());
+        for ( final long key : counts.keySet() ) {
+            Assert.assertEquals(sketch2.estimate(~key, key), sketch.estimate(~key, key));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.apache.commons.lang3.SerializationUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+public final class LongHashSetTest extends BaseTest {
+    private static final int RAND_SEED = 0xdeadf00;
+    private static final int N_VALS = 10000;
+    private static final int N_TRIALS = 100;
+
+    @Test
+    void noDupsTest() {
+        final LongHashSet longHashSet = new LongHashSet();
+        Assert.assertTrue(longHashSet.add(1L));
+        Assert.assertFalse(longHashSet.add(1L));
+        Assert.assertEquals(longHashSet.size(), 1);
+        Assert.assertTrue(longHashSet.contains(1L));
+        Assert.assertFalse(longHashSet.contains(2L));
+    }
+
+    @Test
+    void loadRandomLongsTest() {
+        final Random rng = new Random(RAND_SEED);
+        for ( int trialNo = 0; trialNo != N_TRIALS; ++trialNo ) {
+            final HashSet<Long> hashSet = new HashSet<>();
+            // start small so that we exercise resizing
+            final LongHashSet longHashSet = new LongHashSet(10);
+            final String trialMsg = "trialNo="+trialNo;
+            for ( int valNo = 0; valNo != N_VALS; ++valNo ) {
+                // a narrow range of values, so there are duplicates
+                final long randVal = rng.nextInt(5 * N_VALS);
+                Assert.assertEquals(longHashSet.add(randVal), hashSet.add(randVal), trialMsg);
+            }
+            Assert.assertEquals(longHashSet.size(), hashSet.size(), trialMsg);
+            for ( final Long val : hashSet ) {
+                Assert.assertTrue(longHashSet.contains(val), trialMsg+", testVal="+val);
+            }
+            final PrimitiveIterator.OfLong itr = longHashSet.iterator();
+            int count = 0;
+            while ( itr.hasNext() ) {
+                Assert.assertTrue(hashSet.contains(itr.nextLong()), trialMsg);
+                count += 1;
+            }
+            Assert.assertEquals(count, hashSet.size(), trialMsg);
+
+            // remove about half the values, making sure that what's left can still be found
+            for ( int valNo = 0; valNo != N_VALS; ++valNo ) {
+                final long randVal = rng.nextInt(5 * N_VALS);
+                Assert.assertEquals(longHashSet.remove(randVal), hashSet.remove(randVal), trialMsg);
+            }
+            Assert.assertEquals(longHashSet.size(), hashSet.size(), trialMsg);
+            for ( final Long val : hashSet ) {
+                Assert.assertTrue(longHashSet.contains(val), trialMsg+", testVal="+val);
+            }
+            for ( final Long val : hashSet ) {
+                Assert.assertTrue(longHashSet.remove(val), trialMsg+", testVal="+val);
+            }
+            Assert.assertTrue(longHashSet.isEmpty(), trialMsg);
+        }
+    }
+
+    @Test
+    void toArrayTest() {
+        final LongHashSet longHashSet = new LongHashSet();
+        for ( long val = 0; val != N_VALS; ++val ) {
+            longHashSet.add(3 * val);
+        }
+        final long[] vals = longHashSet.toArray();
+        Assert.assertEquals(vals.length, N_VALS);
+        Arrays.sort(vals);
+        for ( int idx = 0; idx != N_VALS; ++idx ) {
+            Assert.assertEquals(vals[idx], 3L * idx);
+        }
+    }
+
+    @Test
+    void clearTest() {
+        final LongHashSet longHashSet = new LongHashSet();
+        for ( long val = 0; val != N_VALS; ++val ) {
+            longHashSet.add(val);
+        }
+        final int capacity = longHashSet.capacity();
+        longHashSet.clear();
+        Assert.assertEquals(longHashSet.size(), 0);
+        Assert.assertEquals(longHashSet.capacity(), capacity);
+        Assert.assertFalse(longHashSet.iterator().hasNext());
+        Assert.assertFalse(longHashSet.contains(1L));
+    }
+
+    @Test
+    void equalsTest() {
+        final LongHashSet set1 = new LongHashSet();
+        final LongHashSet set2 = new LongHashSet(N_VALS);
+        for ( long val = 0; val != N_VALS; ++val ) {
+            set1.add(val);
+            set2.add(N_VALS - val - 1);
+        }
+        Assert.assertEquals(set1, set2);
+        Assert.assertEquals(set1.hashCode(), set2.hashCode());
+        set2.remove(0L);
+        Assert.assertNotEquals(set1, set2);
+    }
+
+    @Test
+    void serializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final LongHashSet longHashSet = new LongHashSet(N_VALS);
+        for ( int valNo = 0; valNo != N_VALS; ++valNo ) {
+            longHashSet.add(rng.nextLong());
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, longHashSet);
+        out.flush();
+
+        final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        final Input in = new Input(bis);
+        final LongHashSet longHashSet2 = (LongHashSet)kryo.readClassAndObject(in);
+
+        Assert.assertEquals(longHashSet2, longHashSet);
+    }
+
+    @Test
+    void javaSerializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final LongHashSet longHashSet = new LongHashSet(N_VALS);
+        for ( int valNo = 0; valNo != N_VALS; ++valNo ) {
+            longHashSet.add(rng.nextLong());
+        }
+
+        Assert.assertEquals(SerializationUtils.clone(longHashSet), longHashSet);
+    }
+}
@@ -0,0 +1,150 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import org.broadinstitute.hellbender.tools.spark.sv.KmerAndInterval;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmer;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmerLong;
+import org.broadinstitute.hellbender.tools.spark.sv.SVKmerShort;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Timing and memory comparison of the primitive kmer tables with the Hopscotch collections they replace:
+ * LongHashSet vs. HopscotchSet of SVKmerShorts (the PathSeq kmer library), and
+ * LongPairIntMultiMap vs. HopscotchUniqueMultiMap of KmerAndIntervals (the SV kmer-to-interval map).
+ * Run with a big heap (e.g., -Xmx8g) so that the memory numbers aren't distorted by GC pressure.
+ */
+public final class LongKeyedHashTableTimingTest {
+    private static final int N_KMERS = 5000000;
+    private static final int KMER_SIZE_SHORT = 31;
+    private static final int KMER_SIZE_LONG = 51;
+
+    @FunctionalInterface
+    public interface Action {
+        void execute();
+    }
+    private static double time( final Action action ) {
+        final long nanosecs = System.nanoTime();
+        action.execute();
+        return (System.nanoTime() - nanosecs)/1.E9;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for ( int idx = 0; idx != 3; ++idx ) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // returns the thing built, after reporting the number of bytes per kmer that it retains
+    private static <T> T measure( final String name, final Supplier<T> builder ) {
+        final long before = usedHeap();
+        final Object[] result = new Object[1];
+        final double secs = time(() -> result[0] = builder.get());
+        final long after = usedHeap();
+        System.out.println(name + " construction: " + secs + " secs, " +
+                (after - before)/(N_KMERS/1.E6)/1.E6 + " MB per million kmers");
+        @SuppressWarnings("unchecked")
+        final T built = (T)result[0];
+        return built;
+    }
+
+    private static void reportLookups( final String name, final Action action ) {
+        final double secs = time(action);
+        System.out.println(name + " lookups: " + (long)(2*N_KMERS/secs) + " per sec");
+    }
+
+    private static SVKmerShort randomShortKmer( final Random rng ) {
+        SVKmerShort kmer = new SVKmerShort(KMER_SIZE_SHORT);
+        for ( int idx = 0; idx != KMER_SIZE_SHORT; ++idx ) {
+            kmer = kmer.successor(SVKmer.Base.values()[rng.nextInt(4)], KMER_SIZE_SHORT);
+        }
+        return kmer;
+    }
+
+    private static SVKmerLong randomLongKmer( final Random rng ) {
+        SVKmerLong kmer = new SVKmerLong(KMER_SIZE_LONG);
+        for ( int idx = 0; idx != KMER_SIZE_LONG; ++idx ) {
+            kmer = kmer.successor(SVKmer.Base.values()[rng.nextInt(4)], KMER_SIZE_LONG);
+        }
+        return kmer;
+    }
+
+    public static void main( final String[] args ) {
+        final Random rng = new Random(0xdeadbeef);
+
+        // half the lookups are for kmers that are present, half for kmers that aren't
+        final SVKmerShort[] shortKmers = new SVKmerShort[2*N_KMERS];
+        for ( int idx = 0; idx != shortKmers.length; ++idx ) {
+            shortKmers[idx] = randomShortKmer(rng);
+        }
+
+        final HopscotchSet<SVKmer> hopscotchSet = measure("HopscotchSet<SVKmerShort>", () -> {
+            final HopscotchSet<SVKmer> set = new HopscotchSet<>(N_KMERS);
+            for ( int idx = 0; idx != N_KMERS; ++idx ) {
+                // copy the kmer so that the set owns it, as it does when deserialized on an executor
+                set.add(new SVKmerShort(shortKmers[idx]));
+            }
+            return set;
+        });
+        final LongHashSet longHashSet = measure("LongHashSet", () -> {
+            final LongHashSet set = new LongHashSet(N_KMERS);
+            for ( int idx = 0; idx != N_KMERS; ++idx ) {
+                set.add(shortKmers[idx].getValLow());
+            }
+            return set;
+        });
+        System.out.println("LongHashSet memoryUsage: " + longHashSet.memoryUsage()/(N_KMERS/1.E6)/1.E6 +
+                " MB per million kmers");
+
+        final int[] nFound = new int[1];
+        reportLookups("HopscotchSet<SVKmerShort>", () -> {
+            for ( final SVKmerShort kmer : shortKmers ) {
+                if ( hopscotchSet.contains(kmer) ) nFound[0] += 1;
+            }
+        });
+        reportLookups("LongHashSet", () -> {
+            for ( final SVKmerShort kmer : shortKmers ) {
+                if ( longHashSet.contains(kmer.getValLow()) ) nFound[0] -= 1;
+            }
+        });
+        if ( nFound[0] != 0 ) throw new IllegalStateException("sets disagree");
+
+        final SVKmerLong[] longKmers = new SVKmerLong[2*N_KMERS];
+        for ( int idx = 0; idx != longKmers.length; ++idx ) {
+            longKmers[idx] = randomLongKmer(rng);
+        }
+
+        final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> hopscotchMultiMap =
+                measure("HopscotchUniqueMultiMap<KmerAndInterval>", () -> {
+            final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> multiMap =
+                    new HopscotchUniqueMultiMap<>(N_KMERS);
+            for ( int idx = 0; idx != N_KMERS; ++idx ) {
+                multiMap.add(new KmerAndInterval(new SVKmerLong(longKmers[idx]), idx & 0xffff));
+            }
+            return multiMap;
+        });
+        final LongPairIntMultiMap longPairIntMultiMap = measure("LongPairIntMultiMap", () -> {
+            final LongPairIntMultiMap multiMap = new LongPairIntMultiMap(N_KMERS);
+            for ( int idx = 0; idx != N_KMERS; ++idx ) {
+                multiMap.add(longKmers[idx].getValHigh(), longKmers[idx].getValLow(), idx & 0xffff);
+            }
+            return multiMap;
+        });
+        System.out.println("LongPairIntMultiMap memoryUsage: " +
+                longPairIntMultiMap.memoryUsage()/(N_KMERS/1.E6)/1.E6 + " MB per million kmers");
+
+        reportLookups("HopscotchUniqueMultiMap<KmerAndInterval>", () -> {
+            for ( final SVKmerLong kmer : longKmers ) {
+                if ( hopscotchMultiMap.findEach(kmer).hasNext() ) nFound[0] += 1;
+            }
+        });
+        reportLookups("LongPairIntMultiMap", () -> {
+            for ( final SVKmerLong kmer : longKmers ) {
+                if ( longPairIntMultiMap.containsKey(kmer.getValHigh(), kmer.getValLow()) ) nFound[0] -= 1;
+            }
+        });
+        if ( nFound[0] != 0 ) throw new IllegalStateException("multimaps disagree");
+    }
+}
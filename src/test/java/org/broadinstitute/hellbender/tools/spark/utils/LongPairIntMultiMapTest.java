@@ -0,0 +1,157 @@
+package org.broadinstitute.hellbender.tools.spark.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.apache.commons.lang3.SerializationUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+public final class LongPairIntMultiMapTest extends BaseTest {
+    private static final int RAND_SEED = 0xdeadf00;
+    private static final int N_KEYS = 2000;
+    private static final int N_ENTRIES = 10000;
+
+    private static final class Entry {
+        final long keyHigh;
+        final long keyLow;
+        final int value;
+
+        Entry( final long keyHigh, final long keyLow, final int value ) {
+            this.keyHigh = keyHigh;
+            this.keyLow = keyLow;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals( final Object obj ) {
+            if ( !(obj instanceof Entry) ) return false;
+            final Entry that = (Entry)obj;
+            return keyHigh == that.keyHigh && keyLow == that.keyLow && value == that.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 47 * (47 * Long.hashCode(keyHigh) + Long.hashCode(keyLow)) + value;
+        }
+    }
+
+    private static Set<Entry> entries( final LongPairIntMultiMap multiMap ) {
+        final Set<Entry> entries = new HashSet<>();
+        multiMap.forEach((keyHigh, keyLow, value) -> Assert.assertTrue(entries.add(new Entry(keyHigh, keyLow, value))));
+        return entries;
+    }
+
+    @Test
+    void uniqueEntriesTest() {
+        final LongPairIntMultiMap multiMap = new LongPairIntMultiMap();
+        Assert.assertTrue(multiMap.add(1L, 2L, 3));
+        Assert.assertFalse(multiMap.add(1L, 2L, 3));
+        Assert.assertTrue(multiMap.add(1L, 2L, 4));
+        Assert.assertTrue(multiMap.add(2L, 1L, 3));
+        Assert.assertEquals(multiMap.size(), 3);
+        Assert.assertEquals(multiMap.countValues(1L, 2L), 2);
+        Assert.assertEquals(multiMap.countValues(2L, 1L), 1);
+        Assert.assertEquals(multiMap.countValues(2L, 2L), 0);
+        Assert.assertTrue(multiMap.containsKey(2L, 1L));
+        Assert.assertFalse(multiMap.containsKey(1L, 1L));
+    }
+
+    @Test
+    void loadRandomEntriesTest() {
+        final Random rng = new Random(RAND_SEED);
+        final long[] keysHigh = new long[N_KEYS];
+        final long[] keysLow = new long[N_KEYS];
+        for ( int keyId = 0; keyId != N_KEYS; ++keyId ) {
+            keysHigh[keyId] = rng.nextLong();
+            keysLow[keyId] = rng.nextLong();
+        }
+
+        // start small so that we exercise resizing
+        final LongPairIntMultiMap multiMap = new LongPairIntMultiMap(10);
+        final Map<Integer, Set<Integer>> expected = new HashMap<>();
+        for ( int entryId = 0; entryId != N_ENTRIES; ++entryId ) {
+            final int keyId = rng.nextInt(N_KEYS);
+            final int value = rng.nextInt(10);
+            Assert.assertEquals(multiMap.add(keysHigh[keyId], keysLow[keyId], value),
+                    expected.computeIfAbsent(keyId, id -> new HashSet<>()).add(value));
+        }
+        Assert.assertEquals(multiMap.size(), expected.values().stream().mapToInt(Set::size).sum());
+        for ( int keyId = 0; keyId != N_KEYS; ++keyId ) {
+            final Set<Integer> values = new HashSet<>();
+            multiMap.forEachValue(keysHigh[keyId], keysLow[keyId], values::add);
+            Assert.assertEquals(values, expected.getOrDefault(keyId, Collections.emptySet()));
+            Assert.assertEquals(multiMap.countValues(keysHigh[keyId], keysLow[keyId]), values.size());
+        }
+        final Map<Entry, Integer> keyCounts = new HashMap<>();
+        multiMap.forEachKey((keyHigh, keyLow, nValues) ->
+                Assert.assertNull(keyCounts.put(new Entry(keyHigh, keyLow, 0), nValues)));
+        final Map<Entry, Integer> expectedKeyCounts = new HashMap<>();
+        expected.forEach((keyId, values) -> expectedKeyCounts.put(new Entry(keysHigh[keyId], keysLow[keyId], 0), values.size()));
+        Assert.assertEquals(keyCounts, expectedKeyCounts);
+
+        // remove every other key, making sure the rest are undisturbed
+        for ( int keyId = 0; keyId < N_KEYS; keyId += 2 ) {
+            final Set<Integer> values = expected.remove(keyId);
+            Assert.assertEquals(multiMap.removeKey(keysHigh[keyId], keysLow[keyId]), values == null ? 0 : values.size());
+        }
+        final Set<Entry> expectedEntries = new HashSet<>();
+        expected.forEach((keyId, values) ->
+                values.forEach(value -> expectedEntries.add(new Entry(keysHigh[keyId], keysLow[keyId], value))));
+        Assert.assertEquals(entries(multiMap), expectedEntries);
+
+        final Set<Entry> iteratedEntries = new HashSet<>();
+        multiMap.iterator(Entry::new).forEachRemaining(iteratedEntries::add);
+        Assert.assertEquals(iteratedEntries, expectedEntries);
+    }
+
+    @Test
+    void serializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final LongPairIntMultiMap multiMap = new LongPairIntMultiMap(N_ENTRIES);
+        for ( int entryId = 0; entryId != N_ENTRIES; ++entryId ) {
+            multiMap.add(rng.nextLong(), rng.nextLong(), rng.nextInt());
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, multiMap);
+        out.flush();
+
+        final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        final Input in = new Input(bis);
+        final LongPairIntMultiMap multiMap2 = (LongPairIntMultiMap)kryo.readClassAndObject(in);
+
+        Assert.assertEquals(multiMap2.size(), multiMap.size());
+        Assert.assertEquals(entries(multiMap2), entries(multiMap));
+    }
+
+    @Test
+    void javaSerializationTest() {
+        final Random rng = new Random(RAND_SEED);
+        final LongPairIntMultiMap multiMap = new LongPairIntMultiMap(N_ENTRIES);
+        for ( int entryId = 0; entryId != N_ENTRIES; ++entryId ) {
+            multiMap.add(rng.nextLong(), rng.nextLong(), rng.nextInt());
+        }
+
+        final LongPairIntMultiMap multiMap2 = SerializationUtils.clone(multiMap);
+        Assert.assertEquals(multiMap2.size(), multiMap.size());
+        Assert.assertEquals(entries(multiMap2), entries(multiMap));
+    }
+
+    @Test
+    void capacityLimitTest() {
+        // two-word keys take 2 longs per slot, so the keys array of the largest table must still fit in an array
+        for ( final int keyWords : new int[]{1, 2} ) {
+            final int capacity = LongKeyedHashTable.computeCapacity(Integer.MAX_VALUE, keyWords);
+            Assert.assertEquals(capacity, LongKeyedHashTable.maxCapacity(keyWords));
+            Assert.assertTrue((long)keyWords * capacity <= LongKeyedHashTable.MAX_ARRAY_LENGTH);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.broadinstitute.hellbender.utils.collections;
+
+import com.google.common.collect.Lists;
+import htsjdk.samtools.util.Locatable;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public final class PackedIntervalIndexUnitTest extends BaseTest {
+
+    @DataProvider(name="intervals")
+    public Object[][] intervals(){
+        ArrayList<Locatable> input = Lists.newArrayList(
+                new SimpleInterval("1",  10, 100),
+                new SimpleInterval("2", 200, 300),
+                new SimpleInterval("1",  20, 30),
+                new SimpleInterval("1",  1, 500)
+        );
+        ArrayList<Locatable> empty = new ArrayList<>();
+
+        // returns input, query range, expected SimpleIntervals
+        return new Object[][]{
+                new Object[]{input, new SimpleInterval("1", 100, 200), Lists.newArrayList(new SimpleInterval("1", 1, 500), new SimpleInterval("1", 10, 100))},
+                new Object[]{input, new SimpleInterval("1", 31, 40), Lists.newArrayList(new SimpleInterval("1", 1, 500), new SimpleInterval("1", 10, 100))},
+                new Object[]{input, new SimpleInterval("1", 30, 30), Lists.newArrayList(new SimpleInterval("1", 1, 500), new SimpleInterval("1", 10, 100), new SimpleInterval("1", 20, 30))},
+                new Object[]{input, new SimpleInterval("1", 501, 600), empty},
+                new Object[]{input, new SimpleInterval("2", 100, 200), Lists.newArrayList(new SimpleInterval("2", 200, 300))},
+                new Object[]{input, new SimpleInterval("2", 100, 199), empty},
+                new Object[]{input, new SimpleInterval("3", 100, 200), empty},
+                new Object[]{empty, new SimpleInterval("1", 100, 200), empty},
+        };
+    }
+
+    @Test(dataProvider = "intervals")
+    public void testOverlap(ArrayList<Locatable> input, SimpleInterval query, ArrayList<Locatable> expected) throws Exception {
+        PackedIntervalIndex<Locatable> index = new PackedIntervalIndex<>(input);
+        Assert.assertEquals(index.size(), input.size());
+        Assert.assertEquals(index.getOverlapping(query), expected);
+    }
+
+    @Test
+    public void testOverlapMatchesExhaustiveSearch() {
+        final Random random = new Random(13);
+        final List<SimpleInterval> input = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            final String contig = random.nextBoolean() ? "1" : "2";
+            final int start = 1 + random.nextInt(100000);
+            // mostly short intervals, with a few long ones
+            final int length = random.nextInt(20) == 0 ? random.nextInt(10000) : random.nextInt(100);
+            input.add(new SimpleInterval(contig, start, start + length));
+        }
+        final PackedIntervalIndex<SimpleInterval> index = new PackedIntervalIndex<>(input);
+        for (int i = 0; i < 1000; i++) {
+            final int start = 1 + random.nextInt(100000);
+            final SimpleInterval query = new SimpleInterval(random.nextBoolean() ? "1" : "2", start, start + random.nextInt(1000));
+            final List<SimpleInterval> expected = input.stream().filter(query::overlaps)
+                    .sorted(Comparator.comparingInt(SimpleInterval::getStart).thenComparingInt(SimpleInterval::getEnd))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(index.getOverlapping(query), expected, "query " + query);
+        }
+    }
+}
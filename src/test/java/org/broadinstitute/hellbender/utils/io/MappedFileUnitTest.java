@@ -0,0 +1,53 @@
+package org.broadinstitute.hellbender.utils.io;
+
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public final class MappedFileUnitTest extends BaseTest {
+
+    private static File writeTestFile() throws IOException {
+        final File file = createTempFile("mappedFile", ".bin");
+        try ( final DataOutputStream output = new DataOutputStream(new FileOutputStream(file)) ) {
+            output.writeByte(0x7F);
+            output.writeInt(0x12345678);
+            output.writeLong(0x0123456789ABCDEFL);
+            output.writeInt(-2);
+        }
+        return file;
+    }
+
+    @Test
+    public void testReads() throws IOException {
+        final MappedFile file = MappedFile.map(writeTestFile().getAbsolutePath(), null, ".bin");
+        Assert.assertEquals(file.length(), 17L);
+        Assert.assertEquals(file.getByte(0), (byte)0x7F);
+        Assert.assertEquals(file.getInt(1), 0x12345678);
+        Assert.assertEquals(file.getLong(5), 0x0123456789ABCDEFL);
+        Assert.assertEquals(file.getInt(13), -2);
+    }
+
+    @Test
+    public void testSingleton() throws IOException {
+        final String path1 = writeTestFile().getAbsolutePath();
+        final String path2 = writeTestFile().getAbsolutePath();
+        final MappedFile.Singleton<MappedFile> singleton = new MappedFile.Singleton<>(".bin");
+        final MappedFile file1 = singleton.get(path1, null, file -> file);
+        Assert.assertSame(singleton.get(path1, null, file -> { throw new AssertionError("remapped " + path1); }), file1);
+        final MappedFile file2 = singleton.get(path2, null, file -> file);
+        Assert.assertNotSame(file2, file1);
+        singleton.close();
+        Assert.assertNotSame(singleton.get(path2, null, file -> file), file2);
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testMissingFile() {
+        new MappedFile.Singleton<MappedFile>(".bin").get(new File(createTempDir("mappedFile"), "missing.bin").getAbsolutePath(), null, file -> file);
+    }
+}